@@ -0,0 +1,16 @@
+#!/bin/sh
+# Sweeps thread counts and writes one JMH JSON result file per run into benchmarks/results/.
+# Extra arguments are passed to JMH, e.g. ./run.sh -p strategy=TOKEN_BUCKET -p keyCount=1,1000
+set -e
+
+cd "$(dirname "$0")"
+THREADS="${THREADS:-1 2 4 8 16 32 64}"
+PATTERN="${PATTERN:-RateLimiterBenchmark}"
+
+(cd .. && mvn -B -q install -DskipTests)
+mvn -B -q package
+
+mkdir -p results
+for t in $THREADS; do
+    java -jar target/benchmarks.jar "$PATTERN" -t "$t" -rf json -rff "results/threads-$t.json" "$@"
+done
@@ -0,0 +1,110 @@
+package Benchmarks;
+
+import Core.RateLimiter;
+import Core.Request;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * One micro-batch through allowRequests vs the same requests through allowRequest one by one. Both
+ * build the same Request list, so the difference is the admission work alone. Time is per batch.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class BatchBenchmark {
+
+    private static final int SAMPLES_PER_THREAD = 1 << 16;
+
+    @Param({"FIXED_WINDOW", "SLIDING_WINDOW_COUNTER", "TOKEN_BUCKET", "ATOMIC_FIXED_WINDOW", "ATOMIC_TOKEN_BUCKET"})
+    public Strategy strategy;
+
+    @Param({"64", "512"})
+    public int batchSize;
+
+    @Param({"100", "1000"})
+    public int keyCount;
+
+    @Param({"1.0"})
+    public double zipfExponent;
+
+    @Param({"1000000"})
+    public int requestLimit;
+
+    RateLimiter limiter;
+    String[] userIds;
+    String[] ips;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        limiter = strategy.create(requestLimit, 1);
+        userIds = new String[keyCount];
+        ips = new String[keyCount];
+
+        for (int i = 0; i < keyCount; i++) {
+            userIds[i] = "user" + i;
+            ips[i] = "10.0." + ((i >>> 8) & 0xFF) + "." + (i & 0xFF);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class KeyStream {
+        private int[] samples;
+        private int cursor;
+
+        @Setup(Level.Trial)
+        public void setUp(BatchBenchmark benchmark, ThreadParams threadParams) {
+            SplittableRandom random = new SplittableRandom(31L * threadParams.getThreadIndex() + 17);
+            ZipfSampler zipf = new ZipfSampler(benchmark.keyCount, benchmark.zipfExponent);
+
+            samples = new int[SAMPLES_PER_THREAD];
+            for (int i = 0; i < samples.length; i++) {
+                samples[i] = zipf.sample(random);
+            }
+        }
+
+        List<Request> nextBatch(BatchBenchmark benchmark) {
+            long now = System.currentTimeMillis();
+            List<Request> batch = new ArrayList<>(benchmark.batchSize);
+
+            for (int i = 0; i < benchmark.batchSize; i++) {
+                int key = samples[cursor];
+                cursor = (cursor + 1) & (SAMPLES_PER_THREAD - 1);
+                batch.add(new Request(benchmark.userIds[key], benchmark.ips[key], now));
+            }
+            return batch;
+        }
+    }
+
+    @Benchmark
+    public boolean[] batch(KeyStream keys) {
+        return limiter.allowRequests(keys.nextBatch(this));
+    }
+
+    @Benchmark
+    public void singleCalls(KeyStream keys, Blackhole blackhole) {
+        for (Request request : keys.nextBatch(this)) {
+            blackhole.consume(limiter.allowRequest(request.getUserId(), request.getIp(), request.getTimestamp()));
+        }
+    }
+}
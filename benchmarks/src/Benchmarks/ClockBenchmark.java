@@ -0,0 +1,71 @@
+package Benchmarks;
+
+import Core.Resolver.InterningKeyResolver;
+import Core.Time.CachedClock;
+import Core.Time.Clock;
+import Core.Time.ClockedRateLimiter;
+import FixedWindow.FixedWindowRateLimiter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * allowRequestNow stamped by the system clock (one System.currentTimeMillis() per request) against a
+ * CachedClock refreshed by its ticker once per millisecond.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClockBenchmark {
+    private static final int DISTINCT_CALLERS = 1024;
+
+    @Param({"system", "cached"})
+    public String clock;
+
+    private final String[] userIds = new String[DISTINCT_CALLERS];
+    private final String[] ips = new String[DISTINCT_CALLERS];
+    private CachedClock cachedClock;
+    private ClockedRateLimiter rateLimiter;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        for (int i = 0; i < DISTINCT_CALLERS; i++) {
+            userIds[i] = "user" + i;
+            ips[i] = "10.0." + (i >> 8) + "." + (i & 0xFF);
+        }
+
+        Clock source = Clock.system();
+        if (clock.equals("cached")) {
+            cachedClock = new CachedClock().start();
+            source = cachedClock;
+        }
+        rateLimiter = new ClockedRateLimiter(new FixedWindowRateLimiter(Integer.MAX_VALUE, 60, new InterningKeyResolver()), source);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (cachedClock != null) cachedClock.close();
+    }
+
+    @Benchmark
+    public boolean allowRequestNow() {
+        int i = next++ & (DISTINCT_CALLERS - 1);
+        return rateLimiter.allowRequestNow(userIds[i], ips[i]);
+    }
+}
@@ -0,0 +1,54 @@
+package Benchmarks;
+
+import Core.Resolver.HybridKeyResolver;
+import FixedWindow.AtomicFixedWindowRateLimiter;
+import Striped.StripedCounter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// A single node-wide key: one shared map entry vs a striped budget. Run with -t to scale threads.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HotKeyBenchmark {
+
+    @Param({"100000000"})
+    public int limitPerSecond;
+
+    @Param({"4096"})
+    public int maxCachedPermits;
+
+    private AtomicFixedWindowRateLimiter singleEntry;
+    private StripedCounter striped;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        singleEntry = new AtomicFixedWindowRateLimiter(limitPerSecond, 1, new HybridKeyResolver());
+        striped = new StripedCounter(limitPerSecond, 1, maxCachedPermits);
+    }
+
+    @Benchmark
+    public boolean singleMapEntry() {
+        return singleEntry.tryAcquire(HybridKeyResolver.GLOBAL_KEY, System.currentTimeMillis());
+    }
+
+    @Benchmark
+    public boolean stripedCounter() {
+        return striped.tryAcquire(System.currentTimeMillis());
+    }
+}
@@ -0,0 +1,110 @@
+package Benchmarks;
+
+import Core.LimitOverrides;
+import Core.RateLimiter;
+import Core.Resolver.HybridKeyResolver;
+import Core.Resolver.InterningKeyResolver;
+import Core.Resolver.KeyResolver;
+import FixedWindow.AtomicFixedWindowRateLimiter;
+import FixedWindow.FixedWindowRateLimiter;
+import LeakyBucket.LeakyBucketRateLimiter;
+import SlidingWindowLog.RingBufferSlidingLogRateLimiter;
+import TokenBucket.AtomicTokenBucketRateLimiter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * What per-key limit overrides add to allowRequest: the same requests with an empty override table and
+ * with one overriding every other caller's user key. The difference should stay well under 20 ns/op.
+ *
+ * Every limit is out of reach so each request does the same work either way. The clock moves on by a
+ * millisecond per round through the callers, which keeps the sliding log's per-key logs bounded.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LimitOverridesBenchmark {
+    private static final int DISTINCT_CALLERS = 1024;
+
+    @Param({"FIXED_WINDOW", "ATOMIC_FIXED_WINDOW", "ATOMIC_TOKEN_BUCKET", "LEAKY_BUCKET", "RING_BUFFER_SLIDING_LOG"})
+    public String limiter;
+
+    @Param({"0", "512"})
+    public int overrides;
+
+    private final String[] userIds = new String[DISTINCT_CALLERS];
+    private final String[] ips = new String[DISTINCT_CALLERS];
+    private RateLimiter rateLimiter;
+    private long now;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Map<String, Integer> limits = new HashMap<>();
+        for (int i = 0; i < DISTINCT_CALLERS; i++) {
+            userIds[i] = "user" + i;
+            ips[i] = "10.0." + (i >> 8) + "." + (i & 0xFF);
+            if (limits.size() < overrides && i % 2 == 0) limits.put(HybridKeyResolver.USER_KEY_PREFIX + userIds[i], Integer.MAX_VALUE);
+        }
+
+        createLimiter(new InterningKeyResolver()).replaceAll(limits);
+        now = System.currentTimeMillis();
+    }
+
+    // Sets rateLimiter and returns its override table.
+    private LimitOverrides createLimiter(KeyResolver resolver) {
+        switch (limiter) {
+            case "FIXED_WINDOW": {
+                FixedWindowRateLimiter fixedWindow = new FixedWindowRateLimiter(Integer.MAX_VALUE, 60, resolver);
+                rateLimiter = fixedWindow;
+                return fixedWindow.getLimitOverrides();
+            }
+            case "ATOMIC_FIXED_WINDOW": {
+                AtomicFixedWindowRateLimiter fixedWindow = new AtomicFixedWindowRateLimiter(Integer.MAX_VALUE, 60, resolver);
+                rateLimiter = fixedWindow;
+                return fixedWindow.getLimitOverrides();
+            }
+            case "ATOMIC_TOKEN_BUCKET": {
+                AtomicTokenBucketRateLimiter tokenBucket = new AtomicTokenBucketRateLimiter(resolver, 1_000_000_000L, Integer.MAX_VALUE);
+                rateLimiter = tokenBucket;
+                return tokenBucket.getLimitOverrides();
+            }
+            case "LEAKY_BUCKET": {
+                LeakyBucketRateLimiter leakyBucket = new LeakyBucketRateLimiter(resolver, 1_000_000_000L, Integer.MAX_VALUE);
+                rateLimiter = leakyBucket;
+                return leakyBucket.getLimitOverrides();
+            }
+            case "RING_BUFFER_SLIDING_LOG": {
+                RingBufferSlidingLogRateLimiter slidingLog = new RingBufferSlidingLogRateLimiter(Integer.MAX_VALUE, 1, resolver);
+                rateLimiter = slidingLog;
+                return slidingLog.getLimitOverrides();
+            }
+            default:
+                throw new IllegalArgumentException("unknown limiter: " + limiter);
+        }
+    }
+
+    @Benchmark
+    public boolean allowRequest() {
+        int n = next++;
+        int i = n & (DISTINCT_CALLERS - 1);
+        return rateLimiter.allowRequest(userIds[i], ips[i], now + (n >>> 10));
+    }
+}
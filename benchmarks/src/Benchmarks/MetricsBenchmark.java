@@ -0,0 +1,80 @@
+package Benchmarks;
+
+import Core.Metrics.InstrumentedRateLimiter;
+import Core.Metrics.RecordingMetrics;
+import Core.RateLimiter;
+import Core.Resolver.InterningKeyResolver;
+import Core.Resolver.KeyResolver;
+import TokenBucket.AtomicTokenBucketRateLimiter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/*
+ * Cost of metrics on allowRequest: the same limiter bare ("none"), wrapped in an InstrumentedRateLimiter
+ * that drops every decision ("noop", sampling and the calls only), and one that records into
+ * RecordingMetrics. Run with -t above 1 as well, the counters are shared between threads.
+ * One caller in eight runs over its limit, so the denied path and the heavy hitters are exercised too.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetricsBenchmark {
+    private static final int DISTINCT_CALLERS = 1024;
+
+    @Param({"none", "noop", "recording"})
+    public String metrics;
+
+    private final String[] userIds = new String[DISTINCT_CALLERS];
+    private final String[] ips = new String[DISTINCT_CALLERS];
+    private RateLimiter rateLimiter;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        for (int i = 0; i < DISTINCT_CALLERS; i++) {
+            userIds[i] = i % 8 == 0 ? "heavy" + i : "user" + i;
+            ips[i] = "10.0." + (i >> 8) + "." + (i & 0xFF);
+        }
+
+        InterningKeyResolver resolver = new InterningKeyResolver();
+        Function<KeyResolver, RateLimiter> bucket = keys -> new AtomicTokenBucketRateLimiter(keys, 1_000_000, 1_000_000);
+        switch (metrics) {
+            case "noop":
+                rateLimiter = new InstrumentedRateLimiter(resolver, bucket, (permits, allowed, latencyInNanos) -> {
+                });
+                break;
+            case "recording":
+                rateLimiter = new InstrumentedRateLimiter(resolver, bucket, new RecordingMetrics().forLimiter("bucket"));
+                break;
+            default:
+                rateLimiter = bucket.apply(resolver);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Caller {
+        int next;
+    }
+
+    @Benchmark
+    public boolean allowRequest(Caller caller) {
+        int i = caller.next++ & (DISTINCT_CALLERS - 1);
+        // the heavy callers ask for 100k permits at a time and soon run dry
+        return rateLimiter.allowRequest(userIds[i], ips[i], System.currentTimeMillis(), i % 8 == 0 ? 100_000 : 1);
+    }
+}
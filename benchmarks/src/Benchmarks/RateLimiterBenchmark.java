@@ -0,0 +1,116 @@
+package Benchmarks;
+
+import Core.RateLimiter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * allowRequest throughput and latency per strategy. Thread count is not a @Param because JMH fixes
+ * it per run: use -t (benchmarks/run.sh sweeps 1..64) and -rf json for machine-readable results.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx8g"})
+public class RateLimiterBenchmark {
+
+    public enum KeyDistribution { UNIFORM, ZIPF }
+
+    public enum KeyPath { SINGLE_KEY, DUAL_KEY }
+
+    private static final int SAMPLES_PER_THREAD = 1 << 16;
+
+    @Param({"TOKEN_BUCKET", "ATOMIC_TOKEN_BUCKET", "OFF_HEAP_TOKEN_BUCKET", "LEAKY_BUCKET", "FIXED_WINDOW", "ATOMIC_FIXED_WINDOW", "OFF_HEAP_FIXED_WINDOW", "SLIDING_LOG", "RING_BUFFER_SLIDING_LOG", "SLIDING_WINDOW_COUNTER", "SKETCH_SLIDING_WINDOW_COUNTER"})
+    public Strategy strategy;
+
+    @Param({"1", "1000", "1000000", "10000000"})
+    public int keyCount;
+
+    @Param({"UNIFORM", "ZIPF"})
+    public KeyDistribution distribution;
+
+    @Param({"SINGLE_KEY", "DUAL_KEY"})
+    public KeyPath keyPath;
+
+    @Param({"1000"})
+    public int requestLimit;
+
+    @Param({"1"})
+    public int windowSizeInSeconds;
+
+    @Param({"1.0"})
+    public double zipfExponent;
+
+    RateLimiter limiter;
+    String[] userIds;
+    String[] ips;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        limiter = strategy.create(requestLimit, windowSizeInSeconds);
+        userIds = new String[keyCount];
+        ips = new String[keyCount];
+
+        for (int i = 0; i < keyCount; i++) {
+            userIds[i] = "user" + i;
+            ips[i] = keyPath == KeyPath.DUAL_KEY
+                    ? (10 + (i >>> 24)) + "." + ((i >>> 16) & 0xFF) + "." + ((i >>> 8) & 0xFF) + "." + (i & 0xFF)
+                    : "";
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class KeyStream {
+        private int[] samples;
+        private int cursor;
+
+        @Setup(Level.Trial)
+        public void setUp(RateLimiterBenchmark benchmark, ThreadParams threadParams) {
+            SplittableRandom random = new SplittableRandom(31L * threadParams.getThreadIndex() + 17);
+            ZipfSampler zipf = benchmark.distribution == KeyDistribution.ZIPF
+                    ? new ZipfSampler(benchmark.keyCount, benchmark.zipfExponent)
+                    : null;
+
+            samples = new int[SAMPLES_PER_THREAD];
+            for (int i = 0; i < samples.length; i++) {
+                samples[i] = zipf != null ? zipf.sample(random) : random.nextInt(benchmark.keyCount);
+            }
+        }
+
+        int next() {
+            int key = samples[cursor];
+            cursor = (cursor + 1) & (SAMPLES_PER_THREAD - 1);
+            return key;
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public boolean throughput(KeyStream keys) {
+        int key = keys.next();
+        return limiter.allowRequest(userIds[key], ips[key], System.currentTimeMillis());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public boolean latency(KeyStream keys) {
+        int key = keys.next();
+        return limiter.allowRequest(userIds[key], ips[key], System.currentTimeMillis());
+    }
+}
@@ -0,0 +1,86 @@
+package Benchmarks;
+
+import Core.Resolver.HybridKeyResolver;
+import Core.Snapshot.Checkpointer;
+import Core.Store.OffHeapLongStateStore;
+import FixedWindow.AtomicFixedWindowRateLimiter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/*
+ * Warm restart: one full checkpoint of an off-heap store holding keyCount keys, and restoring it into an
+ * empty store of the same size (a page copy per 4096 slots). Each measurement is a single restart.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-XX:MaxDirectMemorySize=4g")
+public class SnapshotBenchmark {
+    private static final long NOW = 1_700_000_000_000L;
+
+    @Param({"10000000"})
+    public long keyCount;
+
+    private Path directory;
+    private Checkpointer source;
+    private AtomicFixedWindowRateLimiter target;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("snapshot-benchmark");
+        AtomicFixedWindowRateLimiter limiter = newLimiter();
+        for (long i = 0; i < keyCount; i++) {
+            limiter.tryAcquire("key" + i, NOW);
+        }
+        source = new Checkpointer(directory, Map.of("windows", limiter), 1000, 0, Runnable::run);
+        source.checkpoint(NOW);
+    }
+
+    @Setup(Level.Invocation)
+    public void emptyTarget() {
+        target = newLimiter();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public void checkpoint() {
+        source.checkpoint(NOW);
+    }
+
+    @Benchmark
+    public AtomicFixedWindowRateLimiter restore() {
+        new Checkpointer(directory, Map.of("windows", target), 1000, 0, Runnable::run).restore();
+        return target;
+    }
+
+    private AtomicFixedWindowRateLimiter newLimiter() {
+        return new AtomicFixedWindowRateLimiter(100, 60, new HybridKeyResolver(), OffHeapLongStateStore.factory(keyCount));
+    }
+}
@@ -0,0 +1,90 @@
+package Benchmarks;
+
+import Core.RateLimiter;
+import Core.Resolver.HybridKeyResolver;
+import Core.Store.OffHeapLongStateStore;
+import FixedWindow.AtomicFixedWindowRateLimiter;
+import FixedWindow.FixedWindowRateLimiter;
+import LeakyBucket.LeakyBucketRateLimiter;
+import SlidingWindowCounter.SketchSlidingWindowCounterRateLimiter;
+import SlidingWindowCounter.SlidingWindowCounterRateLimiter;
+import SlidingWindowLog.RingBufferSlidingLogRateLimiter;
+import SlidingWindowLog.SlidingLogRateLimiter;
+import TokenBucket.AtomicTokenBucketRateLimiter;
+import TokenBucket.TokenBucketRateLimiter;
+
+public enum Strategy {
+    TOKEN_BUCKET {
+        @Override
+        RateLimiter create(int requestLimit, int windowSizeInSeconds) {
+            return new TokenBucketRateLimiter(new HybridKeyResolver(), requestLimit / windowSizeInSeconds, requestLimit);
+        }
+    },
+    ATOMIC_TOKEN_BUCKET {
+        @Override
+        RateLimiter create(int requestLimit, int windowSizeInSeconds) {
+            return new AtomicTokenBucketRateLimiter(new HybridKeyResolver(), requestLimit / windowSizeInSeconds, requestLimit);
+        }
+    },
+    OFF_HEAP_TOKEN_BUCKET {
+        @Override
+        RateLimiter create(int requestLimit, int windowSizeInSeconds) {
+            return new AtomicTokenBucketRateLimiter(new HybridKeyResolver(), requestLimit / windowSizeInSeconds, requestLimit,
+                    OffHeapLongStateStore.factory(OFF_HEAP_KEYS));
+        }
+    },
+    LEAKY_BUCKET {
+        @Override
+        RateLimiter create(int requestLimit, int windowSizeInSeconds) {
+            return new LeakyBucketRateLimiter(new HybridKeyResolver(), requestLimit / windowSizeInSeconds, requestLimit);
+        }
+    },
+    FIXED_WINDOW {
+        @Override
+        RateLimiter create(int requestLimit, int windowSizeInSeconds) {
+            return new FixedWindowRateLimiter(requestLimit, windowSizeInSeconds, new HybridKeyResolver());
+        }
+    },
+    ATOMIC_FIXED_WINDOW {
+        @Override
+        RateLimiter create(int requestLimit, int windowSizeInSeconds) {
+            return new AtomicFixedWindowRateLimiter(requestLimit, windowSizeInSeconds, new HybridKeyResolver());
+        }
+    },
+    OFF_HEAP_FIXED_WINDOW {
+        @Override
+        RateLimiter create(int requestLimit, int windowSizeInSeconds) {
+            return new AtomicFixedWindowRateLimiter(requestLimit, windowSizeInSeconds, new HybridKeyResolver(),
+                    OffHeapLongStateStore.factory(OFF_HEAP_KEYS));
+        }
+    },
+    SLIDING_LOG {
+        @Override
+        RateLimiter create(int requestLimit, int windowSizeInSeconds) {
+            return new SlidingLogRateLimiter(requestLimit, windowSizeInSeconds, new HybridKeyResolver());
+        }
+    },
+    RING_BUFFER_SLIDING_LOG {
+        @Override
+        RateLimiter create(int requestLimit, int windowSizeInSeconds) {
+            return new RingBufferSlidingLogRateLimiter(requestLimit, windowSizeInSeconds, new HybridKeyResolver());
+        }
+    },
+    SLIDING_WINDOW_COUNTER {
+        @Override
+        RateLimiter create(int requestLimit, int windowSizeInSeconds) {
+            return new SlidingWindowCounterRateLimiter(requestLimit, windowSizeInSeconds, new HybridKeyResolver());
+        }
+    },
+    SKETCH_SLIDING_WINDOW_COUNTER {
+        @Override
+        RateLimiter create(int requestLimit, int windowSizeInSeconds) {
+            return new SketchSlidingWindowCounterRateLimiter(requestLimit, windowSizeInSeconds, new HybridKeyResolver());
+        }
+    };
+
+    // Room for the largest keyCount with both keys per request: ~680 MB of direct memory.
+    private static final long OFF_HEAP_KEYS = 32_000_000L;
+
+    abstract RateLimiter create(int requestLimit, int windowSizeInSeconds);
+}
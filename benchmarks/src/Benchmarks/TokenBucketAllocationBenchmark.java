@@ -0,0 +1,54 @@
+package Benchmarks;
+
+import Core.Resolver.HybridKeyResolver;
+import TokenBucket.AtomicTokenBucketRateLimiter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Steady-state allocation of the CAS token bucket. Run with -prof gc: gc.alloc.rate.norm must be 0 B/op
+ * for both the allowed and the denied path.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenBucketAllocationBenchmark {
+
+    private AtomicTokenBucketRateLimiter alwaysFull;
+    private AtomicTokenBucketRateLimiter alwaysEmpty;
+    private long timestamp;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        alwaysFull = new AtomicTokenBucketRateLimiter(new HybridKeyResolver(), 1_000_000_000L, Integer.MAX_VALUE / 2);
+        alwaysEmpty = new AtomicTokenBucketRateLimiter(new HybridKeyResolver(), 1, 1);
+        timestamp = System.currentTimeMillis();
+
+        alwaysFull.tryAcquire("USER_ID: user1", timestamp);
+        alwaysEmpty.tryAcquire("USER_ID: user1", timestamp);
+    }
+
+    @Benchmark
+    public boolean allowed() {
+        return alwaysFull.tryAcquire("USER_ID: user1", timestamp++);
+    }
+
+    @Benchmark
+    public boolean denied() {
+        return alwaysEmpty.tryAcquire("USER_ID: user1", timestamp);
+    }
+}
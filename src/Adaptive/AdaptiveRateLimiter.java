@@ -0,0 +1,174 @@
+package Adaptive;
+
+import Core.KeyLimiter;
+import Core.RateLimiter;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * A global permit rate that follows how the backend is doing instead of a limit fixed for the worst case.
+ * Callers report each admitted request's outcome (recordSuccess with its latency, or recordError), and
+ * once per interval a RateController turns the interval's outcomes into the next rate: AimdController
+ * backs off on thresholds, GradientController follows the latency trend.
+ *
+ * The budget is one shared token bucket held as a single long, its "empty at" time in nanoseconds, as in
+ * AtomicTokenBucketRateLimiter: a request moves it forward by `permits` token intervals with a CAS, and a
+ * new rate only changes the interval. It holds `burst` worth of the current rate, and at least one permit.
+ *
+ * It is meant as a guard in front of per-key limits, not instead of them. Given a delegate, a request
+ * takes its permits here first and then goes to the delegate, getting them back if the delegate rejects
+ * it. As a KeyLimiter it ignores the key, so as the tier of the GLOBAL key (see Tiered) it charges every
+ * request to the one budget.
+ *
+ * Reporting only adds to LongAdders. Adjustment runs on the request path, on the first request after the
+ * interval ends, by whichever thread wins a CAS on the interval's end. Until minSamples outcomes have come
+ * in the rate stays as it is and they carry over, so a quiet period neither raises nor lowers it. Outcomes
+ * reported while an interval is being closed may count towards the next.
+ */
+public class AdaptiveRateLimiter implements RateLimiter, KeyLimiter {
+    public static final Duration DEFAULT_BURST = Duration.ofMillis(100);
+    public static final long DEFAULT_INTERVAL_IN_MS = 100;
+    public static final int DEFAULT_MIN_SAMPLES = 20;
+
+    private static final long NANOS_PER_MILLI = 1_000_000L;
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    private static final RateLimiter NO_DELEGATE = (userId, ip, incomingTimestamp, permits) -> true;
+
+    private final RateLimiter delegate;
+    private final RateController controller;
+    private final long burstInNanos;
+    private final long intervalInMs;
+    private final int minSamples;
+    private final AtomicLong emptyAt = new AtomicLong();
+    private final AtomicLong nextAdjustmentAt = new AtomicLong(Long.MIN_VALUE);
+    private final LongAdder successes = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder latencySumInNanos = new LongAdder();
+    private volatile double rate;
+    private volatile long tokenIntervalInNanos;
+
+    public AdaptiveRateLimiter(RateController controller) {
+        this(NO_DELEGATE, controller);
+    }
+
+    public AdaptiveRateLimiter(RateController controller, Duration burst, long intervalInMs, int minSamples) {
+        this(NO_DELEGATE, controller, burst, intervalInMs, minSamples);
+    }
+
+    public AdaptiveRateLimiter(RateLimiter delegate, RateController controller) {
+        this(delegate, controller, DEFAULT_BURST, DEFAULT_INTERVAL_IN_MS, DEFAULT_MIN_SAMPLES);
+    }
+
+    public AdaptiveRateLimiter(RateLimiter delegate, RateController controller, Duration burst, long intervalInMs, int minSamples) {
+        if (intervalInMs < 1) throw new IllegalArgumentException("intervalInMs must be positive: " + intervalInMs);
+        if (minSamples < 1) throw new IllegalArgumentException("minSamples must be positive: " + minSamples);
+
+        this.delegate = delegate;
+        this.controller = controller;
+        this.burstInNanos = burst.toNanos();
+        this.intervalInMs = intervalInMs;
+        this.minSamples = minSamples;
+        setRate(controller.initialRate());
+    }
+
+    @Override
+    public boolean allowRequest(String userId, String ip, long incomingTimestamp, int permits) {
+        RateLimiter.checkPermits(permits);
+        tick(incomingTimestamp);
+        if (!take(incomingTimestamp, permits)) return false;
+
+        if (delegate.allowRequest(userId, ip, incomingTimestamp, permits)) return true;
+        giveBack(permits);
+        return false;
+    }
+
+    @Override
+    public void releasePermits(String userId, String ip, long incomingTimestamp, int permits) {
+        delegate.releasePermits(userId, ip, incomingTimestamp, permits);
+        giveBack(permits);
+    }
+
+    // Adjusts the rate if an interval has ended.
+    @Override
+    public void tick(long now) {
+        long due = nextAdjustmentAt.get();
+        if (now < due || !nextAdjustmentAt.compareAndSet(due, now + intervalInMs)) return;
+        // the first request only starts the first interval
+        if (due == Long.MIN_VALUE) return;
+
+        if (successes.sum() + errors.sum() < minSamples) return;
+
+        long successCount = successes.sumThenReset();
+        long errorCount = errors.sumThenReset();
+        long latencySum = latencySumInNanos.sumThenReset();
+        OutcomeSample sample = new OutcomeSample(successCount, errorCount, successCount == 0 ? 0 : latencySum / successCount);
+        setRate(controller.nextRate(rate, sample));
+    }
+
+    @Override
+    public void recordAccess(String key) {
+    }
+
+    // Every key shares the one budget.
+    @Override
+    public boolean tryAcquire(String key, long incomingTimestamp, int permits) {
+        return take(incomingTimestamp, permits);
+    }
+
+    @Override
+    public void release(String key, long incomingTimestamp, int permits) {
+        giveBack(permits);
+    }
+
+    // A request that was let through came back in `latencyInNanos`.
+    public void recordSuccess(long latencyInNanos) {
+        successes.increment();
+        latencySumInNanos.add(latencyInNanos);
+    }
+
+    // A request that was let through failed in a way that points at overload: a timeout, a 503, a
+    // rejection by the backend.
+    public void recordError() {
+        errors.increment();
+    }
+
+    public double getRate() {
+        return rate;
+    }
+
+    public RateController getController() {
+        return controller;
+    }
+
+    public RateLimiter getDelegate() {
+        return delegate;
+    }
+
+    private boolean take(long incomingTimestamp, int permits) {
+        long now = incomingTimestamp * NANOS_PER_MILLI;
+        long tokenInterval = tokenIntervalInNanos;
+        long cost = permits * tokenInterval;
+        long oldestEmptyAt = now - Math.max(burstInNanos, tokenInterval);
+
+        while (true) {
+            long state = emptyAt.get();
+            long next = Math.max(state, oldestEmptyAt) + cost;
+            if (next > now) return false;
+            if (emptyAt.compareAndSet(state, next)) return true;
+        }
+    }
+
+    // At the current rate, which may not be the one they were taken at.
+    private void giveBack(int permits) {
+        emptyAt.addAndGet(-permits * tokenIntervalInNanos);
+    }
+
+    private void setRate(double rate) {
+        if (!(rate > 0)) throw new IllegalStateException("rate must be positive: " + rate);
+
+        this.tokenIntervalInNanos = Math.max(1, (long) (NANOS_PER_SECOND / rate));
+        this.rate = rate;
+    }
+}
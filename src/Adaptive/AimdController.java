@@ -0,0 +1,57 @@
+package Adaptive;
+
+import java.time.Duration;
+
+/*
+ * Additive increase, multiplicative decrease: the rate goes up by a fixed step after every healthy
+ * interval and is cut by backoffRatio after an interval whose mean latency or error rate crossed its
+ * threshold. It probes slowly for headroom and retreats fast, which is what keeps a degrading backend
+ * from being pushed over.
+ */
+public class AimdController implements RateController {
+    public static final double DEFAULT_BACKOFF_RATIO = 0.9;
+    public static final double DEFAULT_ERROR_RATE_THRESHOLD = 0.01;
+    // Steps from minRate to maxRate.
+    private static final int DEFAULT_INCREASE_STEPS = 100;
+
+    private final double minRate;
+    private final double maxRate;
+    private final double initialRate;
+    private final double increase;
+    private final double backoffRatio;
+    private final long latencyThresholdInNanos;
+    private final double errorRateThreshold;
+
+    // Starts at maxRate and steps up by 1% of the range.
+    public AimdController(double minRate, double maxRate, Duration latencyThreshold) {
+        this(minRate, maxRate, maxRate, (maxRate - minRate) / DEFAULT_INCREASE_STEPS, DEFAULT_BACKOFF_RATIO,
+                latencyThreshold, DEFAULT_ERROR_RATE_THRESHOLD);
+    }
+
+    public AimdController(double minRate, double maxRate, double initialRate, double increase, double backoffRatio,
+                          Duration latencyThreshold, double errorRateThreshold) {
+        if (minRate <= 0 || minRate > maxRate) throw new IllegalArgumentException("need 0 < minRate <= maxRate: " + minRate + ", " + maxRate);
+        if (initialRate < minRate || initialRate > maxRate) throw new IllegalArgumentException("initialRate out of range: " + initialRate);
+        if (backoffRatio <= 0 || backoffRatio >= 1) throw new IllegalArgumentException("backoffRatio must be in (0, 1): " + backoffRatio);
+
+        this.minRate = minRate;
+        this.maxRate = maxRate;
+        this.initialRate = initialRate;
+        this.increase = increase;
+        this.backoffRatio = backoffRatio;
+        this.latencyThresholdInNanos = latencyThreshold.toNanos();
+        this.errorRateThreshold = errorRateThreshold;
+    }
+
+    @Override
+    public double initialRate() {
+        return initialRate;
+    }
+
+    @Override
+    public double nextRate(double rate, OutcomeSample sample) {
+        boolean overloaded = sample.getErrorRate() > errorRateThreshold || sample.getMeanLatencyInNanos() > latencyThresholdInNanos;
+        double next = overloaded ? rate * backoffRatio : rate + increase;
+        return Math.max(minRate, Math.min(maxRate, next));
+    }
+}
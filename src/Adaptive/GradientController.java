@@ -0,0 +1,89 @@
+package Adaptive;
+
+/*
+ * Vegas-style gradient control: the rate follows the ratio of the backend's usual latency to its latency
+ * right now, rather than waiting for a threshold to be crossed.
+ *
+ * The usual latency is a slow moving average of the interval means. While an interval's mean stays within
+ * `tolerance` times of it the gradient is 1 and the rate grows by its square root, a queue's worth of
+ * headroom; as latency rises past that the gradient falls towards 0.5 and the rate with it. An interval
+ * over the error threshold takes the smallest gradient. Each step is smoothed into the current rate.
+ *
+ * Under a long overload the average drifts up towards the overloaded latency. When the latency then
+ * recovers to less than half of it, it is pulled down 5% per interval so the baseline does not stay
+ * inflated.
+ */
+public class GradientController implements RateController {
+    public static final double DEFAULT_TOLERANCE = 1.5;
+    public static final double DEFAULT_SMOOTHING = 0.2;
+    public static final int DEFAULT_BASELINE_INTERVALS = 600;
+    public static final double DEFAULT_ERROR_RATE_THRESHOLD = 0.01;
+
+    private static final double MIN_GRADIENT = 0.5;
+
+    private final double minRate;
+    private final double maxRate;
+    private final double initialRate;
+    private final double tolerance;
+    private final double smoothing;
+    private final double baselineWeight;
+    private final double errorRateThreshold;
+    // touched by nextRate only, one thread at a time
+    private double baselineLatencyInNanos;
+
+    public GradientController(double minRate, double maxRate, double initialRate) {
+        this(minRate, maxRate, initialRate, DEFAULT_TOLERANCE, DEFAULT_SMOOTHING, DEFAULT_BASELINE_INTERVALS,
+                DEFAULT_ERROR_RATE_THRESHOLD);
+    }
+
+    // The baseline averages about the last baselineIntervals interval means.
+    public GradientController(double minRate, double maxRate, double initialRate, double tolerance, double smoothing,
+                              int baselineIntervals, double errorRateThreshold) {
+        if (minRate <= 0 || minRate > maxRate) throw new IllegalArgumentException("need 0 < minRate <= maxRate: " + minRate + ", " + maxRate);
+        if (initialRate < minRate || initialRate > maxRate) throw new IllegalArgumentException("initialRate out of range: " + initialRate);
+        if (tolerance < 1) throw new IllegalArgumentException("tolerance must be at least 1: " + tolerance);
+        if (smoothing <= 0 || smoothing > 1) throw new IllegalArgumentException("smoothing must be in (0, 1]: " + smoothing);
+        if (baselineIntervals < 1) throw new IllegalArgumentException("baselineIntervals must be positive: " + baselineIntervals);
+
+        this.minRate = minRate;
+        this.maxRate = maxRate;
+        this.initialRate = initialRate;
+        this.tolerance = tolerance;
+        this.smoothing = smoothing;
+        this.baselineWeight = 2.0 / (baselineIntervals + 1);
+        this.errorRateThreshold = errorRateThreshold;
+    }
+
+    @Override
+    public double initialRate() {
+        return initialRate;
+    }
+
+    @Override
+    public double nextRate(double rate, OutcomeSample sample) {
+        double gradient;
+        if (sample.getErrorRate() > errorRateThreshold) {
+            gradient = MIN_GRADIENT;
+        } else {
+            double latency = sample.getMeanLatencyInNanos();
+            if (latency <= 0) return rate;
+
+            if (baselineLatencyInNanos == 0) {
+                baselineLatencyInNanos = latency;
+            } else {
+                baselineLatencyInNanos += (latency - baselineLatencyInNanos) * baselineWeight;
+                if (baselineLatencyInNanos > 2 * latency) baselineLatencyInNanos *= 0.95;
+            }
+            gradient = Math.max(MIN_GRADIENT, Math.min(1, tolerance * baselineLatencyInNanos / latency));
+        }
+
+        double target = rate * gradient + Math.sqrt(rate);
+        double next = rate + (target - rate) * smoothing;
+        return Math.max(minRate, Math.min(maxRate, next));
+    }
+
+    // 0 until the first interval with successes.
+    public double getBaselineLatencyInNanos() {
+        return baselineLatencyInNanos;
+    }
+}
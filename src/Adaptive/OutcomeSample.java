@@ -0,0 +1,42 @@
+package Adaptive;
+
+// What the requests let through during one adjustment interval came back with, as reported to an
+// AdaptiveRateLimiter.
+public final class OutcomeSample {
+    private final long successCount;
+    private final long errorCount;
+    private final long meanLatencyInNanos;
+
+    public OutcomeSample(long successCount, long errorCount, long meanLatencyInNanos) {
+        this.successCount = successCount;
+        this.errorCount = errorCount;
+        this.meanLatencyInNanos = meanLatencyInNanos;
+    }
+
+    public long getSuccessCount() {
+        return successCount;
+    }
+
+    public long getErrorCount() {
+        return errorCount;
+    }
+
+    public long getCount() {
+        return successCount + errorCount;
+    }
+
+    // Of the successes only; 0 if there were none.
+    public long getMeanLatencyInNanos() {
+        return meanLatencyInNanos;
+    }
+
+    public double getErrorRate() {
+        long count = getCount();
+        return count == 0 ? 0 : (double) errorCount / count;
+    }
+
+    @Override
+    public String toString() {
+        return getCount() + " outcomes, " + errorCount + " errors, mean latency " + meanLatencyInNanos + "ns";
+    }
+}
@@ -0,0 +1,13 @@
+package Adaptive;
+
+/*
+ * Decides the permit rate of an AdaptiveRateLimiter from the outcomes of the requests it let through.
+ *
+ * nextRate is called once per adjustment interval that saw enough outcomes, by one thread at a time, so
+ * an implementation can keep state between calls without synchronising. Rates are permits per second.
+ */
+public interface RateController {
+    double initialRate();
+
+    double nextRate(double rate, OutcomeSample sample);
+}
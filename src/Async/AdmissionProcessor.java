@@ -0,0 +1,197 @@
+package Async;
+
+import Core.Request;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Flow.Processor over an AsyncRateLimiter: each request from upstream becomes a decision downstream, in
+ * arrival order even when later decisions finish first.
+ *
+ * Demand is what bounds the work: upstream is asked for no more than the subscriber has asked for, and
+ * never for more than `prefetch` requests beyond the decisions already delivered, so a slow subscriber
+ * slows the source instead of filling the executor. A decision that fails, overload included, ends the
+ * stream with its error and cancels upstream.
+ *
+ * All state changes happen in drain(), which one thread runs at a time by the usual work-in-progress
+ * counter: a thread finding it taken leaves its work to the running one instead of waiting.
+ */
+final class AdmissionProcessor implements Flow.Processor<Request, Boolean>, Flow.Subscription {
+    static final int DEFAULT_PREFETCH = 256;
+
+    private final AsyncRateLimiter limiter;
+    private final int prefetch;
+    private final Queue<CompletableFuture<Boolean>> inFlight = new ConcurrentLinkedQueue<>();
+    private final AtomicLong requested = new AtomicLong();
+    private final AtomicInteger wip = new AtomicInteger();
+    private final AtomicInteger subscribers = new AtomicInteger();
+    private volatile Flow.Subscription upstream;
+    private volatile Flow.Subscriber<? super Boolean> downstream;
+    private volatile boolean upstreamDone;
+    private volatile Throwable upstreamError;
+    private volatile boolean cancelled;
+
+    // touched by drain() only
+    private long emitted;
+    private long requestedUpstream;
+    private boolean terminated;
+
+    AdmissionProcessor(AsyncRateLimiter limiter, int prefetch) {
+        if (prefetch < 1) throw new IllegalArgumentException("prefetch must be positive: " + prefetch);
+
+        this.limiter = limiter;
+        this.prefetch = prefetch;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super Boolean> subscriber) {
+        if (subscribers.getAndIncrement() != 0) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException("AdmissionProcessor allows a single subscriber"));
+            return;
+        }
+
+        subscriber.onSubscribe(this);
+        downstream = subscriber;
+        drain();
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        if (upstream != null || cancelled) {
+            subscription.cancel();
+            return;
+        }
+        upstream = subscription;
+        drain();
+    }
+
+    @Override
+    public void onNext(Request request) {
+        CompletableFuture<Boolean> decision = limiter.allowRequest(request.getUserId(), request.getIp(),
+                request.getTimestamp(), request.getPermits()).toCompletableFuture();
+        inFlight.offer(decision);
+        if (decision.isDone()) {
+            drain();
+        } else {
+            decision.whenComplete((allowed, error) -> drain());
+        }
+    }
+
+    @Override
+    public void onError(Throwable error) {
+        upstreamError = error;
+        upstreamDone = true;
+        drain();
+    }
+
+    @Override
+    public void onComplete() {
+        upstreamDone = true;
+        drain();
+    }
+
+    @Override
+    public void request(long n) {
+        if (n <= 0) {
+            // rule 3.9: the stream ends with an error, and nothing more is pulled for it
+            upstreamError = new IllegalArgumentException("demand must be positive: " + n);
+            upstreamDone = true;
+            inFlight.clear();
+            Flow.Subscription subscription = upstream;
+            if (subscription != null) subscription.cancel();
+        } else {
+            requested.accumulateAndGet(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+        }
+        drain();
+    }
+
+    @Override
+    public void cancel() {
+        cancelled = true;
+        Flow.Subscription subscription = upstream;
+        if (subscription != null) subscription.cancel();
+    }
+
+    private void drain() {
+        if (wip.getAndIncrement() != 0) return;
+
+        int missed = 1;
+        do {
+            Flow.Subscriber<? super Boolean> subscriber = downstream;
+            if (subscriber != null && !terminated) {
+                if (cancelled) {
+                    terminated = true;
+                    inFlight.clear();
+                } else {
+                    emit(subscriber);
+                }
+            }
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private void emit(Flow.Subscriber<? super Boolean> subscriber) {
+        long demand = requested.get();
+        CompletableFuture<Boolean> head;
+
+        while (emitted < demand && (head = inFlight.peek()) != null && head.isDone()) {
+            inFlight.poll();
+            boolean allowed;
+            try {
+                allowed = head.join();
+            } catch (CompletionException e) {
+                terminate(subscriber, e.getCause());
+                return;
+            }
+            subscriber.onNext(allowed);
+            emitted++;
+            if (cancelled) return;
+        }
+
+        if (upstreamDone && inFlight.isEmpty()) {
+            Throwable error = upstreamError;
+            terminated = true;
+            if (error != null) {
+                subscriber.onError(error);
+            } else {
+                subscriber.onComplete();
+            }
+            return;
+        }
+
+        Flow.Subscription subscription = upstream;
+        if (subscription != null && !upstreamDone) {
+            // requests asked for but not delivered yet, whether still upstream or being decided
+            long outstanding = requestedUpstream - emitted;
+            long wanted = Math.min(demand - emitted, prefetch) - outstanding;
+            if (wanted > 0) {
+                requestedUpstream += wanted;
+                subscription.request(wanted);
+            }
+        }
+    }
+
+    private void terminate(Flow.Subscriber<? super Boolean> subscriber, Throwable error) {
+        terminated = true;
+        cancelled = true;
+        inFlight.clear();
+        Flow.Subscription subscription = upstream;
+        if (subscription != null) subscription.cancel();
+        subscriber.onError(error);
+    }
+}
@@ -0,0 +1,279 @@
+package Async;
+
+import Core.RateLimiter;
+import Core.Request;
+import Core.Resolver.KeyResolver;
+import Core.Resolver.KeySink;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/*
+ * Non-blocking front for a RateLimiter, for event-loop threads (Netty, Reactor) that must never park.
+ *
+ * A decision runs inline, on the calling thread, when nothing can make it wait: the limiter is local and
+ * no other decision going through this front holds any of the request's keys, so the per-key locks the
+ * limiter takes (ConcurrentHashMap bins, KeyWaiters) are not contended by it. The keys are the ones the
+ * limiter's own resolver gives, so keys many users share (GLOBAL, a tenant, an ip prefix) count as
+ * well. Everything else goes to `executor`: every decision of a remote limiter (Redis, a lease refill),
+ * and a decision one of whose keys is being decided right now. Keys are claimed by hash over a fixed set
+ * of stripes with a single CAS each, never waited for. An offloaded local decision holds its stripes from
+ * submission until it has run, so while the executor queues or decides a key, the same key's callers are
+ * offloaded behind it rather than run inline into the locks it takes.
+ *
+ * A shared key thus serialises the inline path: while one event loop decides a GLOBAL request, the
+ * others offload theirs. Keys landing on the same stripe are offloaded the same way, which is only ever
+ * a detour, never a wait.
+ *
+ * At most maxPending decisions are queued on or running in the executor. Past that a decision fails at
+ * once with a RejectedExecutionException, which is the backpressure signal; shed the request or retry it
+ * later. The executor itself must not block or run tasks on the caller (no CallerRunsPolicy).
+ *
+ * Stages complete on the calling thread (inline) or on an executor thread, so an event loop should hop
+ * back before touching channel state. processor() gives the same decisions as a Flow.Processor, in order
+ * and under the subscriber's demand.
+ */
+public class AsyncRateLimiter {
+    public static final int DEFAULT_MAX_PENDING = 1024;
+
+    private static final int STRIPES = 1024;
+    private static final CompletionStage<Boolean> ALLOWED = CompletableFuture.completedStage(true);
+    private static final CompletionStage<Boolean> REJECTED = CompletableFuture.completedStage(false);
+    private static final CompletionStage<Void> DONE = CompletableFuture.completedStage(null);
+    private static final int[] NO_STRIPES = new int[0];
+
+    private final RateLimiter delegate;
+    private final KeyResolver resolver;
+    private final Executor executor;
+    private final int maxPending;
+    private final boolean remote;
+    // Decisions holding each stripe: an inline one only takes it from 0, offloaded ones add to it.
+    private final AtomicIntegerArray busyStripes = new AtomicIntegerArray(STRIPES);
+    private final AtomicInteger pending = new AtomicInteger();
+    private final LongAdder inlineDecisions = new LongAdder();
+    private final LongAdder offloadedDecisions = new LongAdder();
+    private final LongAdder overloadRejections = new LongAdder();
+    private final ThreadLocal<Stripes> scratch = ThreadLocal.withInitial(Stripes::new);
+
+    // resolver: the one delegate resolves its keys with.
+    public AsyncRateLimiter(RateLimiter delegate, KeyResolver resolver, Executor executor) {
+        this(delegate, resolver, executor, DEFAULT_MAX_PENDING, false);
+    }
+
+    // remote: the limiter may block on I/O, so none of its decisions run inline.
+    public AsyncRateLimiter(RateLimiter delegate, KeyResolver resolver, Executor executor, int maxPending, boolean remote) {
+        if (maxPending < 1) throw new IllegalArgumentException("maxPending must be positive: " + maxPending);
+
+        this.delegate = delegate;
+        this.resolver = resolver;
+        this.executor = executor;
+        this.maxPending = maxPending;
+        this.remote = remote;
+    }
+
+    public CompletionStage<Boolean> allowRequest(String userId, String ip, long incomingTimestamp) {
+        return allowRequest(userId, ip, incomingTimestamp, 1);
+    }
+
+    public CompletionStage<Boolean> allowRequest(String userId, String ip, long incomingTimestamp, int permits) {
+        RateLimiter.checkPermits(permits);
+        if (remote) return offload(NO_STRIPES, () -> delegate.allowRequest(userId, ip, incomingTimestamp, permits));
+
+        Stripes stripes = scratch.get();
+        stripes.clear();
+        stripes.addKeysOf(resolver, userId, ip);
+        if (enter(stripes)) {
+            try {
+                boolean allowed = delegate.allowRequest(userId, ip, incomingTimestamp, permits);
+                inlineDecisions.increment();
+                return allowed ? ALLOWED : REJECTED;
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedStage(e);
+            } finally {
+                exit(stripes);
+            }
+        }
+
+        return offload(stripes.toArray(), () -> delegate.allowRequest(userId, ip, incomingTimestamp, permits));
+    }
+
+    // Inline only if every request's keys can be claimed; a batch is decided in one go either way.
+    public CompletionStage<boolean[]> allowRequests(List<Request> requests) {
+        if (remote) return offload(NO_STRIPES, () -> delegate.allowRequests(requests));
+
+        Stripes stripes = scratch.get();
+        stripes.clear();
+        for (Request request : requests) {
+            stripes.addKeysOf(resolver, request.getUserId(), request.getIp());
+        }
+        if (enter(stripes)) {
+            try {
+                boolean[] allowed = delegate.allowRequests(requests);
+                inlineDecisions.add(allowed.length);
+                return CompletableFuture.completedStage(allowed);
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedStage(e);
+            } finally {
+                exit(stripes);
+            }
+        }
+
+        return offload(stripes.toArray(), () -> delegate.allowRequests(requests));
+    }
+
+    public CompletionStage<Void> releasePermits(String userId, String ip, long incomingTimestamp, int permits) {
+        Supplier<Void> release = () -> {
+            delegate.releasePermits(userId, ip, incomingTimestamp, permits);
+            return null;
+        };
+        if (remote) return offload(NO_STRIPES, release);
+
+        Stripes stripes = scratch.get();
+        stripes.clear();
+        stripes.addKeysOf(resolver, userId, ip);
+        if (enter(stripes)) {
+            try {
+                release.get();
+                return DONE;
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedStage(e);
+            } finally {
+                exit(stripes);
+            }
+        }
+
+        return offload(stripes.toArray(), release);
+    }
+
+    // Requests in, decisions out, in the same order. At most `prefetch` requests are pulled ahead of the
+    // subscriber's demand.
+    public Flow.Processor<Request, Boolean> processor(int prefetch) {
+        return new AdmissionProcessor(this, prefetch);
+    }
+
+    public Flow.Processor<Request, Boolean> processor() {
+        return processor(Math.min(maxPending, AdmissionProcessor.DEFAULT_PREFETCH));
+    }
+
+    public RateLimiter getDelegate() {
+        return delegate;
+    }
+
+    public int getPendingCount() {
+        return pending.get();
+    }
+
+    public long getInlineDecisionCount() {
+        return inlineDecisions.sum();
+    }
+
+    public long getOffloadedDecisionCount() {
+        return offloadedDecisions.sum();
+    }
+
+    public long getOverloadRejectionCount() {
+        return overloadRejections.sum();
+    }
+
+    // Holds `stripes` until the decision has run, whoever else holds them; a remote limiter, which never
+    // runs inline, passes none.
+    private <T> CompletionStage<T> offload(int[] stripes, Supplier<T> decision) {
+        if (pending.incrementAndGet() > maxPending) {
+            pending.decrementAndGet();
+            overloadRejections.increment();
+            return CompletableFuture.failedStage(new RejectedExecutionException("more than " + maxPending + " decisions pending"));
+        }
+
+        if (!remote) hold(stripes, 1);
+        CompletableFuture<T> result = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    result.complete(decision.get());
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                } finally {
+                    if (!remote) hold(stripes, -1);
+                    pending.decrementAndGet();
+                }
+            });
+            offloadedDecisions.increment();
+        } catch (RejectedExecutionException e) {
+            if (!remote) hold(stripes, -1);
+            pending.decrementAndGet();
+            overloadRejections.increment();
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    private boolean enter(Stripes stripes) {
+        for (int i = 0; i < stripes.count; i++) {
+            if (!busyStripes.compareAndSet(stripes.stripes[i], 0, 1)) {
+                while (--i >= 0) {
+                    busyStripes.decrementAndGet(stripes.stripes[i]);
+                }
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Offloaded decisions may have joined an inline one on its stripes meanwhile, so leave theirs in place.
+    private void exit(Stripes stripes) {
+        for (int i = 0; i < stripes.count; i++) {
+            busyStripes.decrementAndGet(stripes.stripes[i]);
+        }
+    }
+
+    private void hold(int[] stripes, int delta) {
+        for (int stripe : stripes) {
+            busyStripes.addAndGet(stripe, delta);
+        }
+    }
+
+    // The distinct stripes of the keys one call resolves to; reused by the thread for every call.
+    private static final class Stripes {
+        private final KeySink keys = new KeySink();
+        private final long[] seen = new long[STRIPES / 64];
+        private int[] stripes = new int[8];
+        private int count;
+
+        private void clear() {
+            for (int i = 0; i < count; i++) {
+                seen[stripes[i] >>> 6] = 0;
+            }
+            count = 0;
+        }
+
+        private void addKeysOf(KeyResolver resolver, String userId, String ip) {
+            resolver.resolveKeys(userId, ip, keys);
+            for (int i = 0; i < keys.size(); i++) {
+                long hash = keys.hash(i);
+                add((int) (hash ^ (hash >>> 32)) & (STRIPES - 1));
+            }
+        }
+
+        private void add(int stripe) {
+            long bit = 1L << stripe;
+            if ((seen[stripe >>> 6] & bit) != 0) return;
+
+            seen[stripe >>> 6] |= bit;
+            if (count == stripes.length) stripes = Arrays.copyOf(stripes, count * 2);
+            stripes[count++] = stripe;
+        }
+
+        private int[] toArray() {
+            return Arrays.copyOf(stripes, count);
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package Blocking;
+
+import Core.RateLimiter;
+import Core.WaitableKeyLimiter;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ * Waits for permits on a key instead of rejecting right away: acquire blocks the calling thread (parking,
+ * so a virtual thread unmounts), acquireAsync returns a future.
+ *
+ * Waiters of a key queue up in arrival order, and a request that finds others waiting joins the queue
+ * even if it would fit, so a large request is not starved by small ones behind it. Only the head of a
+ * queue is ever timed: the PermitTimer wakes the key up at the head's exact next-permit time, hands out
+ * permits from the front for as long as they fit, and sleeps again until the new head's time. Nothing
+ * polls or spins.
+ *
+ * A request the limiter says can never fit, or that could not even start before its deadline, fails at
+ * once. Futures are completed on the timer's thread, so callbacks chained on them should be async.
+ * A served waiter's deadline task is cancelled, so it leaves the timer's wheel.
+ *
+ * The wrapper itself holds no monitors: per-key ReentrantLocks and CompletableFuture, which parks. The
+ * limiter it calls may. TokenBucketRateLimiter, SlidingWindowCounterRateLimiter and FixedWindowRateLimiter
+ * update keys in ConcurrentHashMap.compute, whose bin monitor pins a virtual thread's carrier while held.
+ * For virtual threads use AtomicTokenBucketRateLimiter, which CASes a long per key (on the off-heap store
+ * with no monitor at all).
+ */
+public class BlockingRateLimiter {
+    private static final long NOT_SCHEDULED = Long.MIN_VALUE;
+
+    private final WaitableKeyLimiter limiter;
+    private final PermitTimer timer;
+    private final Map<String, KeyWaiters> waiting = new ConcurrentHashMap<>();
+
+    public BlockingRateLimiter(WaitableKeyLimiter limiter, PermitTimer timer) {
+        this.limiter = limiter;
+        this.timer = timer;
+    }
+
+    public boolean acquire(String key, Duration timeout) throws InterruptedException {
+        return acquire(key, 1, timeout);
+    }
+
+    // True once the permits are charged to the key, false if the timeout ran out first.
+    public boolean acquire(String key, int permits, Duration timeout) throws InterruptedException {
+        CompletableFuture<Boolean> acquired = acquireAsync(key, permits, timeout);
+        try {
+            return acquired.get();
+        } catch (InterruptedException e) {
+            // leaves the queue; if the permits were handed out meanwhile they go back
+            if (!acquired.complete(false) && acquired.join()) limiter.release(key, timer.now(), permits);
+            throw e;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    public CompletableFuture<Boolean> acquireAsync(String key, int permits, Duration timeout) {
+        RateLimiter.checkPermits(permits);
+        long now = timer.now();
+        long deadline = now + Math.max(0, timeout.toMillis());
+        limiter.tick(now);
+
+        // nobody waiting: no queue to join, so no entry to create either
+        if (!waiting.containsKey(key)) {
+            limiter.recordAccess(key);
+            if (limiter.tryAcquire(key, now, permits)) return CompletableFuture.completedFuture(true);
+        }
+
+        while (true) {
+            KeyWaiters waiters = waiting.computeIfAbsent(key, KeyWaiters::new);
+            waiters.lock.lock();
+            try {
+                if (waiters.retired) continue;
+
+                if (waiters.queue.isEmpty()) {
+                    limiter.recordAccess(key);
+                    if (limiter.tryAcquire(key, now, permits)) {
+                        retireIfIdle(waiters);
+                        return CompletableFuture.completedFuture(true);
+                    }
+
+                    long permitAt = limiter.nextPermitAt(key, now, permits);
+                    if (permitAt > deadline) {
+                        retireIfIdle(waiters);
+                        return CompletableFuture.completedFuture(false);
+                    }
+                    Waiter waiter = enqueue(waiters, permits, deadline);
+                    scheduleServe(waiters, permitAt);
+                    return waiter.acquired;
+                }
+
+                if (limiter.nextPermitAt(key, now, permits) == WaitableKeyLimiter.NEVER) {
+                    return CompletableFuture.completedFuture(false);
+                }
+                return enqueue(waiters, permits, deadline).acquired;
+            } finally {
+                waiters.lock.unlock();
+            }
+        }
+    }
+
+    // Requests waiting on all keys.
+    public int getWaiterCount() {
+        int count = 0;
+        for (KeyWaiters waiters : waiting.values()) {
+            count += waiters.queue.size();
+        }
+        return count;
+    }
+
+    // Caller holds waiters.lock.
+    private Waiter enqueue(KeyWaiters waiters, int permits, long deadline) {
+        Waiter waiter = new Waiter(permits);
+        waiter.expiry = timer.schedule(deadline, () -> expire(waiters, waiter));
+        waiters.queue.offer(waiter);
+        return waiter;
+    }
+
+    private void expire(KeyWaiters waiters, Waiter waiter) {
+        if (waiter.acquired.complete(false)) serve(waiters);
+    }
+
+    // Hands out permits from the front of the queue while they fit. Futures are completed after the lock
+    // is released, so callbacks never run under it.
+    private void serve(KeyWaiters waiters) {
+        List<Waiter> served = new ArrayList<>();
+        List<Waiter> failed = new ArrayList<>();
+        waiters.lock.lock();
+        try {
+            long now = timer.now();
+            limiter.tick(now);
+
+            Waiter head;
+            while ((head = waiters.queue.peek()) != null) {
+                if (head.acquired.isDone()) {
+                    waiters.queue.poll();
+                    continue;
+                }
+
+                limiter.recordAccess(waiters.key);
+                if (!limiter.tryAcquire(waiters.key, now, head.permits)) {
+                    long permitAt = limiter.nextPermitAt(waiters.key, now, head.permits);
+                    if (permitAt == WaitableKeyLimiter.NEVER) {
+                        // e.g. a limit lowered under it, or a bucket that stopped refilling
+                        waiters.queue.poll();
+                        failed.add(head);
+                        continue;
+                    }
+                    scheduleServe(waiters, Math.max(now + 1, permitAt));
+                    break;
+                }
+                waiters.queue.poll();
+                served.add(head);
+            }
+
+            retireIfIdle(waiters);
+        } finally {
+            waiters.lock.unlock();
+        }
+
+        for (Waiter waiter : served) {
+            // lost to a timeout or an interrupt that completed it first: the permits go back
+            if (!waiter.acquired.complete(true)) limiter.release(waiters.key, timer.now(), waiter.permits);
+            waiter.expiry.cancel();
+        }
+        for (Waiter waiter : failed) {
+            waiter.acquired.complete(false);
+            waiter.expiry.cancel();
+        }
+    }
+
+    // Caller holds waiters.lock. Keeps only the earliest wake-up per key.
+    private void scheduleServe(KeyWaiters waiters, long at) {
+        if (waiters.serveAt != NOT_SCHEDULED && waiters.serveAt <= at) return;
+
+        waiters.serveAt = at;
+        timer.schedule(at, () -> serveIfScheduled(waiters, at));
+    }
+
+    private void serveIfScheduled(KeyWaiters waiters, long at) {
+        waiters.lock.lock();
+        try {
+            if (waiters.serveAt != at) return;
+            waiters.serveAt = NOT_SCHEDULED;
+        } finally {
+            waiters.lock.unlock();
+        }
+        serve(waiters);
+    }
+
+    // Caller holds waiters.lock. A retired entry is never used again; whoever still holds it starts over.
+    private void retireIfIdle(KeyWaiters waiters) {
+        if (!waiters.queue.isEmpty()) return;
+
+        waiters.retired = true;
+        waiting.remove(waiters.key, waiters);
+    }
+
+    private static final class KeyWaiters {
+        private final String key;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final ConcurrentLinkedQueue<Waiter> queue = new ConcurrentLinkedQueue<>();
+        // guarded by lock
+        private long serveAt = NOT_SCHEDULED;
+        private boolean retired;
+
+        private KeyWaiters(String key) {
+            this.key = key;
+        }
+    }
+
+    private static final class Waiter {
+        private final int permits;
+        private final CompletableFuture<Boolean> acquired = new CompletableFuture<>();
+        // The deadline task, cancelled once the waiter is served so it leaves the timer's wheel; set
+        // before the waiter is queued.
+        private PermitTimer.Task expiry;
+
+        private Waiter(int permits) {
+            this.permits = permits;
+        }
+    }
+}
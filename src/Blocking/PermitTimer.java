@@ -0,0 +1,174 @@
+package Blocking;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/*
+ * Hashed timer wheel that runs tasks at (or up to one run late after) their deadline, on whatever thread
+ * calls runDueTasks: the daemon thread start() launches, or a test driving a fake clock.
+ *
+ * Like Core.Eviction.TimerWheel, deadlines further out than one revolution land early in their slot and
+ * are put back until they are due. A task scheduled while a run is under way may land in a slot the run
+ * has just passed, so it also goes on a ready queue that every run drains; it runs once either way. A
+ * cancelled task is dropped the next time its slot comes round instead of being put back.
+ *
+ * Uses no monitors, so threads that schedule tasks never pin a virtual thread's carrier.
+ */
+public class PermitTimer implements Closeable {
+    public static final long DEFAULT_TICK_IN_MS = 1;
+    public static final int DEFAULT_SLOT_COUNT = 1024;
+
+    private final LongSupplier clock;
+    private final long tickInMs;
+    private final ConcurrentLinkedQueue<Task>[] slots;
+    private final int mask;
+    private final ConcurrentLinkedQueue<Task> ready = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock running = new ReentrantLock();
+    // Ticks up to this one have been scanned for good; the current tick is scanned again every run.
+    private volatile long scannedTick;
+    private volatile Thread thread;
+    private volatile boolean closed;
+
+    public PermitTimer() {
+        this(System::currentTimeMillis, DEFAULT_TICK_IN_MS, DEFAULT_SLOT_COUNT);
+    }
+
+    @SuppressWarnings("unchecked")
+    public PermitTimer(LongSupplier clock, long tickInMs, int slotCount) {
+        if (Integer.bitCount(slotCount) != 1) throw new IllegalArgumentException("slotCount must be a power of two: " + slotCount);
+
+        this.clock = clock;
+        this.tickInMs = tickInMs;
+        this.slots = (ConcurrentLinkedQueue<Task>[]) new ConcurrentLinkedQueue<?>[slotCount];
+        this.mask = slotCount - 1;
+        this.scannedTick = Math.floorDiv(clock.getAsLong(), tickInMs) - 1;
+
+        for (int i = 0; i < slotCount; i++) {
+            slots[i] = new ConcurrentLinkedQueue<>();
+        }
+    }
+
+    // Runs the wheel on a daemon thread, waking up once per tick.
+    public PermitTimer start() {
+        Thread timer = new Thread(this::runUntilClosed, "permit-timer");
+        timer.setDaemon(true);
+        thread = timer;
+        timer.start();
+        return this;
+    }
+
+    public long now() {
+        return clock.getAsLong();
+    }
+
+    public Task schedule(long deadline, Runnable task) {
+        Task scheduled = new Task(deadline, task);
+        long tick = Math.max(tickOf(deadline), scannedTick + 1);
+        slot(tick).offer(scheduled);
+
+        if (tick <= scannedTick || running.isLocked()) ready.offer(scheduled);
+        return scheduled;
+    }
+
+    // Tasks on the wheel, cancelled ones not yet dropped included; walks every slot.
+    public int getScheduledCount() {
+        int count = 0;
+        for (ConcurrentLinkedQueue<Task> slot : slots) {
+            count += slot.size();
+        }
+        return count;
+    }
+
+    // Runs every task whose deadline has passed. Returns at once if another thread is already at it.
+    public void runDueTasks() {
+        if (!running.tryLock()) return;
+        try {
+            long now = clock.getAsLong();
+            long nowTick = tickOf(now);
+            long first = Math.max(scannedTick + 1, nowTick - mask);
+
+            for (long tick = first; tick <= nowTick; tick++) {
+                runDue(slot(tick), now);
+                if (tick < nowTick) scannedTick = tick;
+            }
+            scannedTick = nowTick - 1;
+
+            Task task;
+            while ((task = ready.poll()) != null) {
+                if (task.done.get()) continue;
+                if (task.deadline <= now) {
+                    task.run();
+                } else {
+                    slot(Math.max(tickOf(task.deadline), nowTick)).offer(task);
+                }
+            }
+        } finally {
+            running.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        Thread timer = thread;
+        if (timer != null) LockSupport.unpark(timer);
+    }
+
+    private void runDue(ConcurrentLinkedQueue<Task> slot, long now) {
+        List<Task> notDue = null;
+        Task task;
+        while ((task = slot.poll()) != null) {
+            if (task.done.get()) continue;
+            if (task.deadline <= now) {
+                task.run();
+            } else {
+                if (notDue == null) notDue = new ArrayList<>();
+                notDue.add(task);
+            }
+        }
+        if (notDue != null) slot.addAll(notDue);
+    }
+
+    private void runUntilClosed() {
+        long tickInNanos = TimeUnit.MILLISECONDS.toNanos(tickInMs);
+        while (!closed) {
+            runDueTasks();
+            LockSupport.parkNanos(this, tickInNanos);
+        }
+    }
+
+    private long tickOf(long timestamp) {
+        return Math.floorDiv(timestamp, tickInMs);
+    }
+
+    private ConcurrentLinkedQueue<Task> slot(long tick) {
+        return slots[(int) (tick & mask)];
+    }
+
+    public static final class Task {
+        private final long deadline;
+        private final Runnable action;
+        private final AtomicBoolean done = new AtomicBoolean();
+
+        private Task(long deadline, Runnable action) {
+            this.deadline = deadline;
+            this.action = action;
+        }
+
+        // False if it has already run.
+        public boolean cancel() {
+            return done.compareAndSet(false, true);
+        }
+
+        private void run() {
+            if (done.compareAndSet(false, true)) action.run();
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package Core.Batch;
+
+import Core.Request;
+
+import java.util.List;
+
+@FunctionalInterface
+public interface KeyBatchAdmission {
+    // Charges `key` for requests.get(indices[0 .. count)), in that order, with a single state update and
+    // clears allowed[index] for every request the key rejects.
+    void admit(String key, List<Request> requests, int[] indices, int count, boolean[] allowed);
+}
@@ -0,0 +1,309 @@
+package Core.Batch;
+
+import Core.KeyRelease;
+import Core.Request;
+import Core.Resolver.KeyResolver;
+import Core.Resolver.KeySink;
+import Core.Store.KeyHash;
+
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * Batch admission shared by the limiters: keys are resolved once per caller, then charged level by
+ * level (every request's first key, then the second key of the requests still allowed, ...) with one
+ * KeyBatchAdmission call per distinct key and level.
+ *
+ * This keeps the single request semantics - a request stops at the first key that rejects it, and the
+ * keys before that are released again once the level is done - and matches calling allowRequest in list
+ * order, except that a key showing up at different levels (e.g. an IP that is first key for anonymous
+ * requests, second otherwise) is charged for its level 0 requests first, and that permits given back at
+ * the end of a level are not seen by requests already decided on that key.
+ *
+ * Grouping only pays when callers repeat. A batch with more than a third distinct (userId, ip) pairs
+ * skips the groups and charges request by request, still resolving each pair once, which is exactly
+ * allowRequest in list order.
+ *
+ * Distinct (userId, ip) pairs and distinct (level, key) groups are found through open addressing tables
+ * of ints, and everything else lives in int arrays indexed by request, pair or group. All of it is per
+ * thread scratch space kept between batches, so a batch allocates nothing but the result.
+ */
+public final class RequestBatch {
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private RequestBatch() {
+    }
+
+    public static boolean[] admit(List<Request> requests, KeyResolver resolver, KeyBatchAdmission admission,
+                                  KeyRelease release) {
+        int size = requests.size();
+        boolean[] allowed = new boolean[size];
+        Arrays.fill(allowed, true);
+
+        Scratch scratch = SCRATCH.get();
+        if (scratch.inUse) {
+            // an admission that batches through another limiter on this thread gets its own
+            scratch = new Scratch();
+        }
+
+        scratch.inUse = true;
+        try {
+            scratch.admit(requests, resolver, admission, release, allowed);
+        } finally {
+            scratch.reset();
+            scratch.inUse = false;
+        }
+        return allowed;
+    }
+
+    public static long latestTimestamp(List<Request> requests) {
+        long latest = Long.MIN_VALUE;
+        for (Request request : requests) {
+            latest = Math.max(latest, request.getTimestamp());
+        }
+        return latest;
+    }
+
+    private static final class Scratch {
+        private static final int INITIAL_CAPACITY = 64;
+        // Below this many requests per distinct pair, grouping costs more than it saves (BatchBenchmark).
+        private static final int MIN_REQUESTS_PER_PAIR_TO_GROUP = 3;
+
+        private final KeySink sink = new KeySink();
+        private boolean inUse;
+
+        // per request: its pair, and the next request of its group at the level being charged
+        private int[] pairOf = new int[INITIAL_CAPACITY];
+        private int[] next = new int[INITIAL_CAPACITY];
+        private int[] indices = new int[INITIAL_CAPACITY];
+        // the requests charged at the current level, in list order
+        private int[] charged = new int[INITIAL_CAPACITY];
+
+        // per pair: its ids, and its keys and groups at slotKeys / slots[firstSlot[pair] .. firstSlot[pair + 1])
+        private int pairCount;
+        private int[] pairTable = new int[2 * INITIAL_CAPACITY];
+        private String[] pairUserId = new String[INITIAL_CAPACITY];
+        private String[] pairIp = new String[INITIAL_CAPACITY];
+        private int[] firstSlot = new int[INITIAL_CAPACITY + 1];
+        private int slotCount;
+        private String[] slotKeys = new String[2 * INITIAL_CAPACITY];
+        private int[] slots = new int[2 * INITIAL_CAPACITY];
+
+        // per group, in order of creation
+        private int groupCount;
+        private int levelCount;
+        private int[] groupTable = new int[4 * INITIAL_CAPACITY];
+        private String[] groupKey = new String[2 * INITIAL_CAPACITY];
+        private int[] groupLevel = new int[2 * INITIAL_CAPACITY];
+        private int[] groupFirst = new int[2 * INITIAL_CAPACITY];
+        private int[] groupLast = new int[2 * INITIAL_CAPACITY];
+        private int[] groupSize = new int[2 * INITIAL_CAPACITY];
+
+        void admit(List<Request> requests, KeyResolver resolver, KeyBatchAdmission admission, KeyRelease release,
+                   boolean[] allowed) {
+            int size = requests.size();
+            ensureRequests(size);
+            for (int i = 0; i < size; i++) {
+                pairOf[i] = pairOf(requests.get(i), resolver);
+            }
+
+            if (pairCount * MIN_REQUESTS_PER_PAIR_TO_GROUP > size) {
+                admitOneByOne(requests, admission, release, allowed);
+            } else {
+                admitGrouped(requests, admission, release, allowed);
+            }
+        }
+
+        // Few callers repeat, so groups would hold one request each: the tables would cost more than the
+        // state updates they save. Each request goes through its keys on its own, as allowRequest does.
+        private void admitOneByOne(List<Request> requests, KeyBatchAdmission admission, KeyRelease release,
+                                   boolean[] allowed) {
+            for (int i = 0; i < requests.size(); i++) {
+                int first = firstSlot[pairOf[i]];
+                int keyCount = firstSlot[pairOf[i] + 1] - first;
+                indices[0] = i;
+                for (int level = 0; level < keyCount; level++) {
+                    admission.admit(slotKeys[first + level], requests, indices, 1, allowed);
+                    if (!allowed[i]) {
+                        release(requests.get(i), first, level, release);
+                        break;
+                    }
+                }
+            }
+        }
+
+        private void admitGrouped(List<Request> requests, KeyBatchAdmission admission, KeyRelease release,
+                                  boolean[] allowed) {
+            int size = requests.size();
+            for (int pair = 0; pair < pairCount; pair++) {
+                for (int slot = firstSlot[pair]; slot < firstSlot[pair + 1]; slot++) {
+                    slots[slot] = groupOf(slot - firstSlot[pair], slotKeys[slot]);
+                }
+            }
+
+            // Each group is a linked list threaded through `next`, copied out to `indices` when admitted.
+            // Every request is still allowed at level 0, so all of them join their first group up front.
+            for (int i = 0; i < size; i++) {
+                int pair = pairOf[i];
+                if (firstSlot[pair + 1] > firstSlot[pair]) addToGroup(slots[firstSlot[pair]], i);
+            }
+
+            int chargedCount = 0;
+            for (int level = 0; level < levelCount; level++) {
+                if (level > 0) {
+                    chargedCount = 0;
+                    for (int i = 0; i < size; i++) {
+                        int pair = pairOf[i];
+                        if (allowed[i] && firstSlot[pair + 1] - firstSlot[pair] > level) {
+                            addToGroup(slots[firstSlot[pair] + level], i);
+                            charged[chargedCount++] = i;
+                        }
+                    }
+                }
+
+                for (int group = 0; group < groupCount; group++) {
+                    int count = groupSize[group];
+                    if (groupLevel[group] != level || count == 0) continue;
+
+                    for (int n = 0, i = groupFirst[group]; n < count; n++, i = next[i]) {
+                        indices[n] = i;
+                    }
+                    admission.admit(groupKey[group], requests, indices, count, allowed);
+                }
+
+                if (level > 0) {
+                    releaseRejected(level, chargedCount, requests, allowed, release);
+                }
+            }
+        }
+
+        // Requests charged at `level` and rejected there give back what their earlier keys granted.
+        private void releaseRejected(int level, int chargedCount, List<Request> requests, boolean[] allowed,
+                                     KeyRelease release) {
+            for (int n = 0; n < chargedCount; n++) {
+                int i = charged[n];
+                if (allowed[i]) continue;
+
+                release(requests.get(i), firstSlot[pairOf[i]], level, release);
+            }
+        }
+
+        // Gives back what the request's keys below `level` granted, the pair's keys starting at `first`.
+        private void release(Request request, int first, int level, KeyRelease release) {
+            for (int earlier = level - 1; earlier >= 0; earlier--) {
+                release.release(slotKeys[first + earlier], request.getTimestamp(), request.getPermits());
+            }
+        }
+
+        private int pairOf(Request request, KeyResolver resolver) {
+            String userId = request.getUserId();
+            String ip = request.getIp();
+
+            int mask = pairTable.length - 1;
+            int slot = (int) KeyHash.mix(31L * userId.hashCode() + ip.hashCode()) & mask;
+            for (int entry; (entry = pairTable[slot]) != 0; slot = (slot + 1) & mask) {
+                int pair = entry - 1;
+                if (pairUserId[pair].equals(userId) && pairIp[pair].equals(ip)) return pair;
+            }
+
+            int pair = pairCount++;
+            pairTable[slot] = pair + 1;
+            pairUserId[pair] = userId;
+            pairIp[pair] = ip;
+
+            resolver.resolveKeys(userId, ip, sink);
+            int keyCount = sink.size();
+            if (slotCount + keyCount > slots.length) {
+                slots = Arrays.copyOf(slots, 2 * (slotCount + keyCount));
+                slotKeys = Arrays.copyOf(slotKeys, slots.length);
+            }
+            for (int level = 0; level < keyCount; level++) {
+                slotKeys[slotCount++] = sink.key(level);
+            }
+            firstSlot[pair + 1] = slotCount;
+            levelCount = Math.max(levelCount, keyCount);
+            return pair;
+        }
+
+        private int groupOf(int level, String key) {
+            int mask = groupTable.length - 1;
+            int slot = (int) KeyHash.mix(((long) level << 32) ^ key.hashCode()) & mask;
+            for (int entry; (entry = groupTable[slot]) != 0; slot = (slot + 1) & mask) {
+                int group = entry - 1;
+                if (groupLevel[group] == level && groupKey[group].equals(key)) return group;
+            }
+
+            int group = groupCount++;
+            if (group == groupKey.length) growGroups();
+            groupKey[group] = key;
+            groupLevel[group] = level;
+            groupSize[group] = 0;
+
+            if (2 * groupCount > groupTable.length) {
+                rehashGroups();
+            } else {
+                groupTable[slot] = group + 1;
+            }
+            return group;
+        }
+
+        private void addToGroup(int group, int index) {
+            if (groupSize[group] == 0) {
+                groupFirst[group] = index;
+            } else {
+                next[groupLast[group]] = index;
+            }
+            groupLast[group] = index;
+            groupSize[group]++;
+        }
+
+        // Pairs never outnumber requests, so their tables are sized for the batch up front.
+        private void ensureRequests(int size) {
+            if (size > pairOf.length) {
+                int capacity = Integer.highestOneBit(size - 1) << 1;
+                pairOf = new int[capacity];
+                next = new int[capacity];
+                indices = new int[capacity];
+                charged = new int[capacity];
+                pairUserId = new String[capacity];
+                pairIp = new String[capacity];
+                firstSlot = new int[capacity + 1];
+                pairTable = new int[2 * capacity];
+            }
+        }
+
+        private void growGroups() {
+            int capacity = 2 * groupKey.length;
+            groupKey = Arrays.copyOf(groupKey, capacity);
+            groupLevel = Arrays.copyOf(groupLevel, capacity);
+            groupFirst = Arrays.copyOf(groupFirst, capacity);
+            groupLast = Arrays.copyOf(groupLast, capacity);
+            groupSize = Arrays.copyOf(groupSize, capacity);
+        }
+
+        private void rehashGroups() {
+            groupTable = new int[2 * groupTable.length];
+            int mask = groupTable.length - 1;
+            for (int group = 0; group < groupCount; group++) {
+                int slot = (int) KeyHash.mix(((long) groupLevel[group] << 32) ^ groupKey[group].hashCode()) & mask;
+                while (groupTable[slot] != 0) slot = (slot + 1) & mask;
+                groupTable[slot] = group + 1;
+            }
+        }
+
+        // Drops the batch's strings and empties the tables for the next one.
+        void reset() {
+            Arrays.fill(pairTable, 0);
+            Arrays.fill(groupTable, 0);
+            Arrays.fill(pairUserId, 0, pairCount, null);
+            Arrays.fill(pairIp, 0, pairCount, null);
+            Arrays.fill(slotKeys, 0, slotCount, null);
+            Arrays.fill(groupKey, 0, groupCount, null);
+            sink.clear();
+            pairCount = 0;
+            slotCount = 0;
+            groupCount = 0;
+            levelCount = 0;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package Core;
+
+/*
+ * A decision with what a gateway needs to answer it: the permits left (X-RateLimit-Remaining), when the
+ * key is back to its full limit (X-RateLimit-Reset) and, for a rejection, how long until the same request
+ * would be allowed (Retry-After).
+ *
+ * The caller owns it and hands it to every call, one per thread or per connection, like a KeySink; the
+ * limiter overwrites it, so a decision allocates no result. Of a request's keys it describes the tightest:
+ * the one with the fewest permits left, or the one that rejected. The retry time is the latest of every
+ * key's, since the request needs room on all of them.
+ *
+ * Fields a limiter cannot tell stay UNKNOWN; RateLimiter's default fills in only isAllowed.
+ */
+public final class Decision {
+    public static final long UNKNOWN = -1;
+    public static final long NEVER = WaitableKeyLimiter.NEVER;
+
+    private boolean allowed;
+    private long decidedAt;
+    private long limit;
+    private long remaining;
+    private long resetAt;
+    private long retryAt;
+
+    // Starts over for a request at `now`, allowed until a key says otherwise.
+    public void start(long now) {
+        allowed = true;
+        decidedAt = now;
+        limit = UNKNOWN;
+        remaining = UNKNOWN;
+        resetAt = UNKNOWN;
+        retryAt = now;
+    }
+
+    // A key that admitted the request, with what it has left after it.
+    public void recordKey(long limit, long remaining, long resetAt) {
+        if (!allowed || (this.remaining != UNKNOWN && this.remaining <= remaining)) return;
+
+        this.limit = limit;
+        this.remaining = remaining;
+        this.resetAt = resetAt;
+    }
+
+    // The key that rejected the request, with what it has left; the keys before it are not charged either.
+    public void recordRejectingKey(long limit, long remaining, long resetAt) {
+        allowed = false;
+        this.limit = limit;
+        this.remaining = remaining;
+        this.resetAt = resetAt;
+    }
+
+    // `retryAt` is NEVER for a request over the limit, UNKNOWN if the limiter cannot tell.
+    public void reject(long retryAt) {
+        allowed = false;
+        this.retryAt = retryAt;
+    }
+
+    public boolean isAllowed() {
+        return allowed;
+    }
+
+    public long getDecidedAt() {
+        return decidedAt;
+    }
+
+    public long getLimit() {
+        return limit;
+    }
+
+    public long getRemaining() {
+        return remaining;
+    }
+
+    public long getResetAt() {
+        return resetAt;
+    }
+
+    public long getRetryAt() {
+        return retryAt;
+    }
+
+    // 0 for an allowed request.
+    public long getRetryAfterMillis() {
+        if (retryAt == UNKNOWN || retryAt == NEVER) return retryAt;
+        return Math.max(0, retryAt - decidedAt);
+    }
+
+    public long getResetAfterMillis() {
+        if (resetAt == UNKNOWN || resetAt == NEVER) return resetAt;
+        return Math.max(0, resetAt - decidedAt);
+    }
+
+    @Override
+    public String toString() {
+        return (allowed ? "allowed" : "rejected") + " remaining=" + remaining + "/" + limit
+                + " resetAfter=" + getResetAfterMillis() + "ms retryAfter=" + getRetryAfterMillis() + "ms";
+    }
+}
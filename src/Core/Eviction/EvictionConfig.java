@@ -0,0 +1,43 @@
+package Core.Eviction;
+
+public final class EvictionConfig {
+    public static final EvictionConfig DISABLED = new EvictionConfig(false, 0, Integer.MAX_VALUE, EvictionPolicy.LRU);
+    public static final EvictionConfig DEFAULT = idleExpiry(1000);
+
+    private final boolean enabled;
+    private final long sweepIntervalInMs;
+    private final int maxKeys;
+    private final EvictionPolicy policy;
+
+    private EvictionConfig(boolean enabled, long sweepIntervalInMs, int maxKeys, EvictionPolicy policy) {
+        this.enabled = enabled;
+        this.sweepIntervalInMs = sweepIntervalInMs;
+        this.maxKeys = maxKeys;
+        this.policy = policy;
+    }
+
+    public static EvictionConfig idleExpiry(long sweepIntervalInMs) {
+        return new EvictionConfig(true, sweepIntervalInMs, Integer.MAX_VALUE, EvictionPolicy.LRU);
+    }
+
+    public static EvictionConfig bounded(long sweepIntervalInMs, int maxKeys, EvictionPolicy policy) {
+        if (maxKeys <= 0) throw new IllegalArgumentException("maxKeys must be positive: " + maxKeys);
+        return new EvictionConfig(true, sweepIntervalInMs, maxKeys, policy);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public long getSweepIntervalInMs() {
+        return sweepIntervalInMs;
+    }
+
+    public int getMaxKeys() {
+        return maxKeys;
+    }
+
+    public EvictionPolicy getPolicy() {
+        return policy;
+    }
+}
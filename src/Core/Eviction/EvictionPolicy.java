@@ -0,0 +1,10 @@
+package Core.Eviction;
+
+public enum EvictionPolicy {
+    // Evicts the key whose expiry check is furthest away on the timer wheel (approximate LRU: active keys
+    // are pushed back every time the sweep finds them in use).
+    LRU,
+    // New keys wait in a small admission window; when the cap is hit a key only replaces the LRU victim if
+    // the frequency sketch has seen it more often, so one-off keys cannot flush frequently used ones.
+    W_TINY_LFU
+}
@@ -0,0 +1,7 @@
+package Core.Eviction;
+
+public enum EvictionResult {
+    EVICTED,
+    RETAINED,
+    ABSENT
+}
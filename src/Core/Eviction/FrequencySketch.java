@@ -0,0 +1,55 @@
+package Core.Eviction;
+
+/*
+ * Count-min sketch of saturating counters (max 15) used as the TinyLFU admission filter. Counters are
+ * halved every sampleSize increments so old popularity fades. Updates are deliberately unsynchronised:
+ * a lost increment only makes an estimate slightly lower.
+ */
+final class FrequencySketch {
+    private static final int DEPTH = 4;
+    private static final int MAX_COUNT = 15;
+    private static final int[] SEEDS = {0x97CB3127, 0xB4B82E5F, 0x2A4F8E3D, 0x6C8E9CF5};
+
+    private final int[] table;
+    private final int width;
+    private final int sampleSize;
+    private int additions;
+
+    FrequencySketch(int expectedKeys) {
+        this.width = Integer.highestOneBit(Math.max(16, expectedKeys - 1)) << 1;
+        this.table = new int[width * DEPTH];
+        this.sampleSize = 10 * width;
+    }
+
+    void increment(int hash) {
+        for (int row = 0; row < DEPTH; row++) {
+            int index = index(hash, row);
+            if (table[index] < MAX_COUNT) table[index]++;
+        }
+
+        if (++additions >= sampleSize) {
+            reset();
+        }
+    }
+
+    int frequency(int hash) {
+        int frequency = MAX_COUNT;
+        for (int row = 0; row < DEPTH; row++) {
+            frequency = Math.min(frequency, table[index(hash, row)]);
+        }
+        return frequency;
+    }
+
+    private int index(int hash, int row) {
+        int h = hash * SEEDS[row];
+        h ^= h >>> 16;
+        return row * width + (h & (width - 1));
+    }
+
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] >>>= 1;
+        }
+        additions >>>= 1;
+    }
+}
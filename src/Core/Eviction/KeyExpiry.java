@@ -0,0 +1,221 @@
+package Core.Eviction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/*
+ * Drops limiter keys once their state is equivalent to a fresh one (full bucket, expired window).
+ *
+ * Every new key is put on a timer wheel at `now + ttl`, ttl being the time after which an untouched key is
+ * guaranteed to be fresh. The wheel is swept incrementally from the request path itself: tick() costs a
+ * volatile read until a slot is due, then one caller sweeps at most MAX_KEYS_PER_SWEEP keys while the
+ * others carry on. Keys still in use are simply pushed one ttl further out.
+ *
+ * With a key cap, the wheel doubles as the eviction order (see EvictionPolicy).
+ */
+public final class KeyExpiry {
+    private static final int SLOT_COUNT = 512;
+    private static final int MAX_KEYS_PER_SWEEP = 4096;
+    private static final int MIN_ADMISSION_WINDOW = 16;
+
+    private final boolean enabled;
+    private final long ttlInMs;
+    private final int maxKeys;
+    private final KeyStateEvictor evictor;
+    private final TimerWheel wheel;
+    private final FrequencySketch sketch;
+    private final ConcurrentLinkedQueue<String> admissionWindow;
+    private final int admissionWindowSize;
+
+    private final AtomicLong trackedKeys = new AtomicLong();
+    private final AtomicInteger windowedKeys = new AtomicInteger();
+    private final LongAdder idleEvictions = new LongAdder();
+    private final LongAdder capacityEvictions = new LongAdder();
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+    private volatile long nextSweepAt = Long.MIN_VALUE;
+    private long sweptTick = Long.MIN_VALUE;
+
+    public KeyExpiry(EvictionConfig config, long ttlInMs, KeyStateEvictor evictor) {
+        this.enabled = config.isEnabled();
+        this.ttlInMs = ttlInMs;
+        this.maxKeys = config.getMaxKeys();
+        this.evictor = evictor;
+        this.wheel = enabled ? new TimerWheel(Math.max(1, config.getSweepIntervalInMs()), SLOT_COUNT) : null;
+
+        boolean tinyLfu = enabled && config.getPolicy() == EvictionPolicy.W_TINY_LFU && maxKeys != Integer.MAX_VALUE;
+        this.sketch = tinyLfu ? new FrequencySketch(maxKeys) : null;
+        this.admissionWindow = tinyLfu ? new ConcurrentLinkedQueue<>() : null;
+        this.admissionWindowSize = Math.max(MIN_ADMISSION_WINDOW, maxKeys / 100);
+    }
+
+    public void onNewKey(String key, long now) {
+        if (!enabled) return;
+
+        trackedKeys.incrementAndGet();
+        if (admissionWindow != null) {
+            admissionWindow.offer(key);
+            windowedKeys.incrementAndGet();
+        } else {
+            wheel.schedule(key, now + ttlInMs);
+        }
+    }
+
+    public void recordAccess(String key) {
+        if (sketch != null) sketch.increment(key.hashCode());
+    }
+
+    public void tick(long now) {
+        if (!enabled) return;
+        if (now < nextSweepAt && trackedKeys.get() <= maxKeys && windowedKeys.get() <= admissionWindowSize) return;
+        if (!sweeping.compareAndSet(false, true)) return;
+
+        try {
+            sweepIdleKeys(now);
+            enforceCapacity(now);
+        } finally {
+            sweeping.set(false);
+        }
+    }
+
+    public long getTrackedKeyCount() {
+        return trackedKeys.get();
+    }
+
+    public long getIdleEvictionCount() {
+        return idleEvictions.sum();
+    }
+
+    public long getCapacityEvictionCount() {
+        return capacityEvictions.sum();
+    }
+
+    public long getEvictionCount() {
+        return getIdleEvictionCount() + getCapacityEvictionCount();
+    }
+
+    // Evictor helper for limiters whose state is only mutated inside map.compute: the idle check is
+    // repeated under the bin lock so a concurrent request cannot be lost.
+    public static <V> EvictionResult removeIf(Map<String, V> map, String key, boolean force, Predicate<V> isFresh) {
+        V state = map.get(key);
+        if (state == null) return EvictionResult.ABSENT;
+        if (!force && !isFresh.test(state)) return EvictionResult.RETAINED;
+
+        boolean[] removed = new boolean[1];
+        map.computeIfPresent(key, (id, current) -> {
+            if (force || isFresh.test(current)) {
+                removed[0] = true;
+                return null;
+            }
+            return current;
+        });
+
+        if (removed[0]) return EvictionResult.EVICTED;
+        return map.containsKey(key) ? EvictionResult.RETAINED : EvictionResult.ABSENT;
+    }
+
+    private void sweepIdleKeys(long now) {
+        if (now < nextSweepAt) return;
+
+        long currentTick = wheel.tickOf(now);
+        if (sweptTick == Long.MIN_VALUE) {
+            sweptTick = currentTick - 1;
+        } else if (currentTick - sweptTick > SLOT_COUNT) {
+            // the clock jumped more than a revolution: every slot is due exactly once
+            sweptTick = currentTick - SLOT_COUNT;
+        }
+
+        int budget = MAX_KEYS_PER_SWEEP;
+        while (sweptTick < currentTick) {
+            ConcurrentLinkedQueue<String> slot = wheel.slot(sweptTick + 1);
+            budget = sweepSlot(slot, now, budget);
+            if (budget == 0 && !slot.isEmpty()) {
+                // slot not finished, carry on from here on the next request
+                return;
+            }
+            sweptTick++;
+        }
+
+        nextSweepAt = wheel.startOf(currentTick + 1);
+    }
+
+    private int sweepSlot(ConcurrentLinkedQueue<String> slot, long now, int budget) {
+        List<String> stillActive = new ArrayList<>();
+
+        String key;
+        while (budget > 0 && (key = slot.poll()) != null) {
+            budget--;
+
+            EvictionResult result = evictor.evict(key, now, false);
+            if (result == EvictionResult.EVICTED) {
+                trackedKeys.decrementAndGet();
+                idleEvictions.increment();
+            } else if (result == EvictionResult.RETAINED) {
+                stillActive.add(key);
+            }
+        }
+
+        for (String active : stillActive) {
+            wheel.schedule(active, now + ttlInMs);
+        }
+
+        return budget;
+    }
+
+    private void enforceCapacity(long now) {
+        if (admissionWindow != null) {
+            while (windowedKeys.get() > admissionWindowSize) {
+                String candidate = admissionWindow.poll();
+                if (candidate == null) break;
+                windowedKeys.decrementAndGet();
+
+                if (trackedKeys.get() > maxKeys) {
+                    String victim = pollOldest();
+                    if (victim != null && sketch.frequency(victim.hashCode()) >= sketch.frequency(candidate.hashCode())) {
+                        wheel.schedule(victim, now + ttlInMs);
+                        evictForCapacity(candidate, now);
+                        continue;
+                    }
+                    if (victim != null) evictForCapacity(victim, now);
+                }
+
+                wheel.schedule(candidate, now + ttlInMs);
+            }
+        }
+
+        for (int attempts = 0; trackedKeys.get() > maxKeys && attempts < MAX_KEYS_PER_SWEEP; attempts++) {
+            String victim = pollOldest();
+            if (victim == null && admissionWindow != null) {
+                victim = admissionWindow.poll();
+                if (victim != null) windowedKeys.decrementAndGet();
+            }
+            if (victim == null) break;
+
+            evictForCapacity(victim, now);
+        }
+    }
+
+    private void evictForCapacity(String key, long now) {
+        if (evictor.evict(key, now, true) == EvictionResult.EVICTED) {
+            trackedKeys.decrementAndGet();
+            capacityEvictions.increment();
+        }
+    }
+
+    private String pollOldest() {
+        long start = sweptTick == Long.MIN_VALUE ? 0 : sweptTick + 1;
+
+        for (int i = 0; i < wheel.slotCount(); i++) {
+            String key = wheel.slot(start + i).poll();
+            if (key != null) return key;
+        }
+
+        return null;
+    }
+}
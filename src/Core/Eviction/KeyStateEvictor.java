@@ -0,0 +1,7 @@
+package Core.Eviction;
+
+@FunctionalInterface
+public interface KeyStateEvictor {
+    // Removes the key if its state is equivalent to a fresh one at `now`, or unconditionally when forced.
+    EvictionResult evict(String key, long now, boolean force);
+}
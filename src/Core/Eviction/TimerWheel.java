@@ -0,0 +1,42 @@
+package Core.Eviction;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// Hashed wheel of key queues. Deadlines further out than one revolution land early and are simply
+// rescheduled by the sweep, so there is no per-entry round counter.
+final class TimerWheel {
+    private final long tickInMs;
+    private final ConcurrentLinkedQueue<String>[] slots;
+    private final int mask;
+
+    @SuppressWarnings("unchecked")
+    TimerWheel(long tickInMs, int slotCount) {
+        this.tickInMs = tickInMs;
+        this.slots = (ConcurrentLinkedQueue<String>[]) new ConcurrentLinkedQueue<?>[slotCount];
+        this.mask = slotCount - 1;
+
+        for (int i = 0; i < slotCount; i++) {
+            slots[i] = new ConcurrentLinkedQueue<>();
+        }
+    }
+
+    void schedule(String key, long deadline) {
+        slot(tickOf(deadline)).offer(key);
+    }
+
+    long tickOf(long timestamp) {
+        return Math.floorDiv(timestamp, tickInMs);
+    }
+
+    long startOf(long tick) {
+        return tick * tickInMs;
+    }
+
+    ConcurrentLinkedQueue<String> slot(long tick) {
+        return slots[(int) (tick & mask)];
+    }
+
+    int slotCount() {
+        return slots.length;
+    }
+}
@@ -0,0 +1,18 @@
+package Core;
+
+/*
+ * The per-key half of a strategy: charges or hands back permits on one key that has already been
+ * resolved. RateLimiter.allowRequest is this run over every key of a request; TieredRateLimiter runs it
+ * with a different KeyLimiter per key class.
+ *
+ * Same order as in allowRequest: tick once per request, then recordAccess and tryAcquire per key.
+ */
+public interface KeyLimiter extends KeyRelease {
+    // Advances key expiry to `now`.
+    void tick(long now);
+
+    // Counts a use of `key` for the eviction policy.
+    void recordAccess(String key);
+
+    boolean tryAcquire(String key, long incomingTimestamp, int permits);
+}
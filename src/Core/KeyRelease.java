@@ -0,0 +1,24 @@
+package Core;
+
+import Core.Resolver.KeySink;
+
+/*
+ * Second phase of multi-key admission. A request is charged against its keys one after the other; the
+ * first key that rejects it ends the request, and the keys already charged hand the permits back.
+ * Rejections cost the extra updates, requests that fit every key go through untouched.
+ */
+@FunctionalInterface
+public interface KeyRelease {
+    // Returns `permits` charged to `key` at `incomingTimestamp`. Nothing happens if the state they were
+    // charged to has moved on (window over, bucket refilled).
+    void release(String key, long incomingTimestamp, int permits);
+
+    // Releases keys.key(charged - 1) down to keys.key(0). keys.key(charged), if there is one, is the key
+    // that rejected the request; the sink's RejectionListener hears of it.
+    static void rollback(KeySink keys, int charged, long incomingTimestamp, int permits, KeyRelease release) {
+        if (charged < keys.size()) keys.rejectedBy(charged);
+        for (int i = charged - 1; i >= 0; i--) {
+            release.release(keys.key(i), incomingTimestamp, permits);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package Core;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * Per-key limits that replace a limiter's configured one, e.g. a higher limit for "USER_ID: <premium id>".
+ * Changes apply to the next request of the key, keeping its counted state.
+ *
+ * The table is copy on write: writers build a new map under the lock and publish it with one volatile
+ * write, so a reader sees either all of a change or none of it, and a lookup is one volatile read plus a
+ * HashMap get on a key whose hash String already caches. Meant for tables changed now and then, not per
+ * request; replaceAll swaps the whole table in one step, for reloading it from config.
+ *
+ * maxLimit is for checks that have no key at hand, like a state store deciding whether a token bucket is
+ * full. It is raised before a table is published and lowered only after, so it is never below the largest
+ * limit a reader can see.
+ */
+public final class LimitOverrides {
+    private volatile Map<String, Integer> limits = Map.of();
+    private volatile int maxOverride;
+
+    public int limitFor(String key, int defaultLimit) {
+        Integer limit = limits.get(key);
+        return limit != null ? limit : defaultLimit;
+    }
+
+    // The largest limit any key has: defaultLimit or an override above it.
+    public int maxLimit(int defaultLimit) {
+        return Math.max(defaultLimit, maxOverride);
+    }
+
+    public synchronized void set(String key, int limit) {
+        Map<String, Integer> updated = new HashMap<>(limits);
+        updated.put(key, checkLimit(limit));
+        publish(updated);
+    }
+
+    public synchronized void remove(String key) {
+        if (!limits.containsKey(key)) return;
+
+        Map<String, Integer> updated = new HashMap<>(limits);
+        updated.remove(key);
+        publish(updated);
+    }
+
+    public synchronized void replaceAll(Map<String, Integer> overrides) {
+        Map<String, Integer> updated = new HashMap<>(overrides);
+        updated.values().forEach(LimitOverrides::checkLimit);
+        publish(updated);
+    }
+
+    // The table as of now; later changes do not show in it.
+    public Map<String, Integer> snapshot() {
+        return Map.copyOf(limits);
+    }
+
+    private void publish(Map<String, Integer> updated) {
+        int max = 0;
+        for (int limit : updated.values()) {
+            max = Math.max(max, limit);
+        }
+
+        maxOverride = Math.max(maxOverride, max);
+        limits = updated.isEmpty() ? Map.of() : updated;
+        maxOverride = max;
+    }
+
+    private static int checkLimit(Integer limit) {
+        if (limit == null || limit < 1) throw new IllegalArgumentException("limit must be positive: " + limit);
+        return limit;
+    }
+}
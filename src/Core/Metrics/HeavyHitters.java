@@ -0,0 +1,129 @@
+package Core.Metrics;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+ * The k most frequent keys of a stream, e.g. of rejected keys. A count-min sketch estimates the count of
+ * every key in fixed memory; only the current top k are kept by name, and their counts are read back from
+ * the sketch. Estimates can run high (collisions), never low.
+ *
+ * add(key, count) stands for count occurrences at once, e.g. one sampled key of every count.
+ *
+ * add is lock free for keys already in the top k and for keys whose estimate stays below the smallest
+ * one in it; only a key about to enter the top k takes the lock. To displace a key, a newcomer's estimate
+ * must beat it by more than 1 + 1/64 of it, so keys of about equal counts do not keep swapping places
+ * (and taking the lock).
+ */
+public final class HeavyHitters {
+    private static final int DEPTH = 4;
+    private static final int[] SEEDS = {0x97CB3127, 0xB4B82E5F, 0x2A4F8E3D, 0x6C8E9CF5};
+
+    private final int k;
+    private final int width;
+    private final AtomicLongArray table;
+    private final Set<String> top = ConcurrentHashMap.newKeySet();
+    // Estimate a newcomer needs to beat, as of the last change to the top k; 0 until it fills up. Only
+    // grows stale low, which lets more keys try the lock, never fewer.
+    private volatile long floor;
+
+    public HeavyHitters(int k) {
+        this(k, 1024);
+    }
+
+    public HeavyHitters(int k, int width) {
+        if (k < 1) throw new IllegalArgumentException("k must be positive: " + k);
+
+        this.k = k;
+        this.width = Integer.highestOneBit(Math.max(16, width - 1)) << 1;
+        this.table = new AtomicLongArray(this.width * DEPTH);
+    }
+
+    public void add(String key) {
+        add(key, 1);
+    }
+
+    public void add(String key, long count) {
+        int hash = key.hashCode();
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            estimate = Math.min(estimate, table.addAndGet(index(hash, row), count));
+        }
+
+        if (estimate > floor && !top.contains(key)) offer(key, estimate);
+    }
+
+    public long estimate(String key) {
+        int hash = key.hashCode();
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            estimate = Math.min(estimate, table.get(index(hash, row)));
+        }
+        return estimate;
+    }
+
+    // Most frequent first.
+    public List<Map.Entry<String, Long>> top() {
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(k);
+        for (String key : top) {
+            entries.add(Map.entry(key, estimate(key)));
+        }
+        entries.sort(Map.Entry.<String, Long>comparingByValue(Comparator.reverseOrder()));
+        return entries;
+    }
+
+    public synchronized void reset() {
+        top.clear();
+        for (int i = 0; i < table.length(); i++) {
+            table.set(i, 0);
+        }
+        floor = 0;
+    }
+
+    private synchronized void offer(String key, long estimate) {
+        if (top.contains(key)) return;
+
+        if (top.size() < k) {
+            top.add(key);
+        } else {
+            String smallest = smallest();
+            long smallestEstimate = estimate(smallest);
+            if (estimate <= displacing(smallestEstimate)) {
+                floor = displacing(smallestEstimate);
+                return;
+            }
+            top.remove(smallest);
+            top.add(key);
+        }
+
+        floor = top.size() < k ? 0 : displacing(estimate(smallest()));
+    }
+
+    private static long displacing(long estimate) {
+        return estimate + 1 + (estimate >>> 6);
+    }
+
+    private String smallest() {
+        String smallest = null;
+        long smallestEstimate = Long.MAX_VALUE;
+        for (String key : top) {
+            long estimate = estimate(key);
+            if (estimate < smallestEstimate) {
+                smallest = key;
+                smallestEstimate = estimate;
+            }
+        }
+        return smallest;
+    }
+
+    private int index(int hash, int row) {
+        int h = hash * SEEDS[row];
+        h ^= h >>> 16;
+        return row * width + (h & (width - 1));
+    }
+}
@@ -0,0 +1,112 @@
+package Core.Metrics;
+
+import Core.Decision;
+import Core.RateLimiter;
+import Core.Request;
+import Core.Resolver.KeyResolver;
+import Core.Resolver.KeySink;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+
+/*
+ * Reports every decision of the wrapped limiter to a RateLimiterMetrics, with the time the delegate took
+ * and, for a rejection, the key that rejected it.
+ *
+ * The delegate is built around a resolver that leaves a RejectionListener on each sink it resolves into,
+ * so the rejecting key reaches the metrics straight from KeyRelease.rollback. Nothing is copied or looked
+ * up per request for it, and requests that are allowed carry no keys to the metrics at all.
+ *
+ * Reading the clock costs about as much as a whole decision, so only one request in timingInterval is
+ * timed, picked at random per thread; the others report NOT_TIMED. A batch is always timed as a whole and
+ * each of its requests is reported with an equal share.
+ */
+public class InstrumentedRateLimiter implements RateLimiter {
+    public static final int DEFAULT_TIMING_INTERVAL = 64;
+
+    private final KeyResolver resolver;
+    private final RateLimiterMetrics metrics;
+    private final KeySink.RejectionListener reportRejection;
+    private final int timingInterval;
+    private final RateLimiter delegate;
+
+    public InstrumentedRateLimiter(KeyResolver resolver, Function<KeyResolver, RateLimiter> delegateFactory,
+                                   RateLimiterMetrics metrics) {
+        this(resolver, delegateFactory, metrics, DEFAULT_TIMING_INTERVAL);
+    }
+
+    public InstrumentedRateLimiter(KeyResolver resolver, Function<KeyResolver, RateLimiter> delegateFactory,
+                                   RateLimiterMetrics metrics, int timingInterval) {
+        if (timingInterval < 1) throw new IllegalArgumentException("timingInterval must be positive: " + timingInterval);
+
+        this.resolver = resolver;
+        this.metrics = metrics;
+        this.reportRejection = metrics::recordRejectingKey;
+        this.timingInterval = timingInterval;
+        this.delegate = delegateFactory.apply(new ReportingKeyResolver());
+    }
+
+    @Override
+    public boolean allowRequest(String userId, String ip, long incomingTimestamp, int permits) {
+        return decide(userId, ip, incomingTimestamp, permits, null);
+    }
+
+    @Override
+    public boolean allowRequest(String userId, String ip, long incomingTimestamp, int permits, Decision decision) {
+        return decide(userId, ip, incomingTimestamp, permits, decision);
+    }
+
+    private boolean decide(String userId, String ip, long incomingTimestamp, int permits, Decision decision) {
+        if (ThreadLocalRandom.current().nextInt(timingInterval) != 0) {
+            boolean allowed = delegateAllowRequest(userId, ip, incomingTimestamp, permits, decision);
+            metrics.recordDecision(permits, allowed, RateLimiterMetrics.NOT_TIMED);
+            return allowed;
+        }
+
+        long start = System.nanoTime();
+        boolean allowed = delegateAllowRequest(userId, ip, incomingTimestamp, permits, decision);
+        metrics.recordDecision(permits, allowed, System.nanoTime() - start);
+        return allowed;
+    }
+
+    @Override
+    public boolean[] allowRequests(List<Request> requests) {
+        long start = System.nanoTime();
+        boolean[] allowed = delegate.allowRequests(requests);
+        long latencyInNanos = (System.nanoTime() - start) / Math.max(1, requests.size());
+
+        for (int i = 0; i < allowed.length; i++) {
+            metrics.recordDecision(requests.get(i).getPermits(), allowed[i], latencyInNanos);
+        }
+        return allowed;
+    }
+
+    @Override
+    public void releasePermits(String userId, String ip, long incomingTimestamp, int permits) {
+        delegate.releasePermits(userId, ip, incomingTimestamp, permits);
+    }
+
+    private boolean delegateAllowRequest(String userId, String ip, long incomingTimestamp, int permits, Decision decision) {
+        return decision == null
+                ? delegate.allowRequest(userId, ip, incomingTimestamp, permits)
+                : delegate.allowRequest(userId, ip, incomingTimestamp, permits, decision);
+    }
+
+    public RateLimiter getDelegate() {
+        return delegate;
+    }
+
+    private final class ReportingKeyResolver implements KeyResolver {
+        @Override
+        public List<String> resolveKey(String userId, String ip) {
+            return resolver.resolveKey(userId, ip);
+        }
+
+        @Override
+        public void resolveKeys(String userId, String ip, KeySink sink) {
+            resolver.resolveKeys(userId, ip, sink);
+            sink.setRejectionListener(reportRejection);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package Core.Metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+ * Log-linear histogram of non-negative values (latencies in ns), laid out like HdrHistogram: every power
+ * of two is split into SUB_BUCKETS equal buckets, so any recorded value is known to within 1/16 (~6%)
+ * whatever its magnitude, in a fixed 960 counters.
+ *
+ * record is one atomic increment (plus a CAS on a new maximum), so it never blocks. Reads walk the
+ * counters without stopping writers, and may miss values recorded meanwhile.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long value) {
+        long recorded = Math.max(0, value);
+        counts.getAndIncrement(indexOf(recorded));
+        if (recorded > max.get()) max.accumulateAndGet(recorded, Math::max);
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    // Highest value of the bucket holding the percentile (0 < percentile <= 100), capped at the maximum
+    // recorded; 0 when nothing has been recorded.
+    public long getValueAtPercentile(double percentile) {
+        long count = getCount();
+        if (count == 0) return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) return Math.min(highestValueOf(i), getMax());
+        }
+        return getMax();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        max.set(0);
+    }
+
+    // Values below SUB_BUCKETS get a bucket each; above, the top SUB_BUCKET_BITS bits after the leading
+    // one pick the bucket within the value's power of two.
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    static long highestValueOf(int index) {
+        if (index < SUB_BUCKETS) return index;
+
+        int shift = index / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,22 @@
+package Core.Metrics;
+
+/*
+ * Receives one call per decision made by an InstrumentedRateLimiter, for that one limiter. Called on the
+ * request thread, so an implementation must be thread safe and cheap; RecordingMetrics.forLimiter hands
+ * out the bundled one.
+ *
+ * There is no switch to turn it off: a limiter that is not wrapped in an InstrumentedRateLimiter has no
+ * metrics code on its path at all.
+ */
+@FunctionalInterface
+public interface RateLimiterMetrics {
+    // latencyInNanos of a decision that was not timed.
+    long NOT_TIMED = -1;
+
+    void recordDecision(int permits, boolean allowed, long latencyInNanos);
+
+    // The key that rejected a request, called while it is being decided and so before its recordDecision.
+    // Limiters that do not reject key by key (see KeyRelease.rollback) never call it.
+    default void recordRejectingKey(String key) {
+    }
+}
@@ -0,0 +1,164 @@
+package Core.Metrics;
+
+import Core.Eviction.KeyExpiry;
+import Core.Resolver.HybridKeyResolver;
+import Core.Resolver.TenantKeyResolver;
+import Core.Store.LongStateStore;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/*
+ * In-memory metrics, one LimiterStats per limiter name: allowed / denied requests in total, denied ones
+ * by the class of the key that rejected them, a latency histogram, and the most denied keys. Gauges (key
+ * count, evictions) are read only when asked for. Pass forLimiter(name) to the limiter's
+ * InstrumentedRateLimiter.
+ *
+ * Only a rejecting key is looked at, so an allowed request costs one counter and, when timed, a histogram
+ * slot. A key's class is the first of keyClasses it starts with, the way TieredRateLimiter picks a tier;
+ * keys matching none are counted under OTHER_KEY_CLASS. A rejection whose limiter did not say which key
+ * it was counts in the total only.
+ *
+ * The counts are exact; the most denied keys are sampled. One rejecting key in deniedKeySampling, picked
+ * at random, goes to the sketch standing for that many, so their counts are estimates to within a few
+ * samples. A key rejected often enough to matter is sampled often enough to show. 1 feeds every key.
+ */
+public class RecordingMetrics {
+    public static final List<String> DEFAULT_KEY_CLASSES = List.of(HybridKeyResolver.USER_KEY_PREFIX,
+            HybridKeyResolver.IP_KEY_PREFIX, TenantKeyResolver.TENANT_KEY_PREFIX, HybridKeyResolver.GLOBAL_KEY);
+    public static final String OTHER_KEY_CLASS = "other";
+    public static final int DEFAULT_TOP_KEYS = 10;
+    public static final int DEFAULT_DENIED_KEY_SAMPLING = 8;
+
+    private final String[] keyClasses;
+    private final int topKeys;
+    private final int deniedKeySampling;
+    private final Map<String, LimiterStats> limiters = new ConcurrentHashMap<>();
+
+    public RecordingMetrics() {
+        this(DEFAULT_KEY_CLASSES, DEFAULT_TOP_KEYS);
+    }
+
+    public RecordingMetrics(List<String> keyClasses, int topKeys) {
+        this(keyClasses, topKeys, DEFAULT_DENIED_KEY_SAMPLING);
+    }
+
+    public RecordingMetrics(List<String> keyClasses, int topKeys, int deniedKeySampling) {
+        if (deniedKeySampling < 1) throw new IllegalArgumentException("deniedKeySampling must be positive: " + deniedKeySampling);
+
+        this.keyClasses = keyClasses.toArray(new String[0]);
+        this.topKeys = topKeys;
+        this.deniedKeySampling = deniedKeySampling;
+    }
+
+    // Created on first use; the same instance for every call with one name.
+    public LimiterStats forLimiter(String limiter) {
+        return limiters.computeIfAbsent(limiter, name -> new LimiterStats());
+    }
+
+    public Set<String> getLimiterNames() {
+        return Set.copyOf(limiters.keySet());
+    }
+
+    // null for a limiter never asked for.
+    public LimiterStats getStats(String limiter) {
+        return limiters.get(limiter);
+    }
+
+    private int classOf(String key) {
+        for (int i = 0; i < keyClasses.length; i++) {
+            if (key.startsWith(keyClasses[i])) return i;
+        }
+        return keyClasses.length;
+    }
+
+    public final class LimiterStats implements RateLimiterMetrics {
+        private final LongAdder allowed = new LongAdder();
+        private final LongAdder denied = new LongAdder();
+        private final LongAdder[] deniedByClass = adders(keyClasses.length + 1);
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final HeavyHitters deniedKeys = new HeavyHitters(topKeys);
+        private final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+        private LimiterStats() {
+        }
+
+        @Override
+        public void recordDecision(int permits, boolean allowed, long latencyInNanos) {
+            if (latencyInNanos != NOT_TIMED) latency.record(latencyInNanos);
+            (allowed ? this.allowed : denied).increment();
+        }
+
+        @Override
+        public void recordRejectingKey(String key) {
+            deniedByClass[classOf(key)].increment();
+            if (deniedKeySampling == 1 || ThreadLocalRandom.current().nextInt(deniedKeySampling) == 0) {
+                deniedKeys.add(key, deniedKeySampling);
+            }
+        }
+
+        // Read on demand, e.g. a limiter's getKeyExpiry()::getTrackedKeyCount.
+        public void registerGauge(String gauge, LongSupplier value) {
+            gauges.put(gauge, value);
+        }
+
+        public void registerKeyExpiry(KeyExpiry keyExpiry) {
+            registerGauge("keys", keyExpiry::getTrackedKeyCount);
+            registerGauge("evictions", keyExpiry::getEvictionCount);
+        }
+
+        public void registerStateStore(LongStateStore store) {
+            registerGauge("keys", store::size);
+            registerGauge("evictions", store::getEvictionCount);
+        }
+
+        public long getAllowedCount() {
+            return allowed.sum();
+        }
+
+        public long getDeniedCount() {
+            return denied.sum();
+        }
+
+        // Requests a key of keyClass rejected; keyClass is one of the configured prefixes, or OTHER_KEY_CLASS.
+        public long getDeniedCount(String keyClass) {
+            return deniedByClass[indexOfClass(keyClass)].sum();
+        }
+
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+
+        public List<Map.Entry<String, Long>> getTopDeniedKeys() {
+            return deniedKeys.top();
+        }
+
+        public Map<String, Long> getGauges() {
+            Map<String, Long> values = new LinkedHashMap<>();
+            gauges.forEach((name, gauge) -> values.put(name, gauge.getAsLong()));
+            return values;
+        }
+
+        private int indexOfClass(String keyClass) {
+            if (keyClass.equals(OTHER_KEY_CLASS)) return keyClasses.length;
+            for (int i = 0; i < keyClasses.length; i++) {
+                if (keyClasses[i].equals(keyClass)) return i;
+            }
+            throw new IllegalArgumentException("unknown key class: " + keyClass);
+        }
+    }
+
+    private static LongAdder[] adders(int count) {
+        LongAdder[] adders = new LongAdder[count];
+        for (int i = 0; i < count; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+}
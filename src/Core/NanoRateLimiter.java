@@ -0,0 +1,7 @@
+package Core;
+
+// Limiters that also take request times in nanoseconds (Core.Time.Clock.nanos()), so they can refill in
+// steps smaller than the millisecond allowRequest is limited to.
+public interface NanoRateLimiter extends RateLimiter {
+    boolean allowRequestAtNanos(String userId, String ip, long nanoTimestamp, int permits);
+}
@@ -1,5 +1,46 @@
 package Core;
 
+import java.util.List;
+
 public interface RateLimiter {
-    boolean allowRequest(String userId, String ip, long incomingTimestamp);
+    default boolean allowRequest(String userId, String ip, long incomingTimestamp) {
+        return allowRequest(userId, ip, incomingTimestamp, 1);
+    }
+
+    // Charges `permits` units against every key of the request, with one state update per key whatever the
+    // weight. All or nothing across keys: a key that rejects rolls back the ones charged before it (see
+    // KeyRelease). A request costing more than the limit is never allowed.
+    boolean allowRequest(String userId, String ip, long incomingTimestamp, int permits);
+
+    // The same decision, with its details written into `decision` (remaining permits, reset and retry
+    // times). The default knows only whether the request was allowed; the rest stays Decision.UNKNOWN.
+    default boolean allowRequest(String userId, String ip, long incomingTimestamp, int permits, Decision decision) {
+        decision.start(incomingTimestamp);
+        boolean allowed = allowRequest(userId, ip, incomingTimestamp, permits);
+        if (!allowed) decision.reject(Decision.UNKNOWN);
+        return allowed;
+    }
+
+    // allowed[i] is the decision for requests.get(i). Requests are decided in list order.
+    default boolean[] allowRequests(List<Request> requests) {
+        boolean[] allowed = new boolean[requests.size()];
+
+        for (int i = 0; i < allowed.length; i++) {
+            Request request = requests.get(i);
+            allowed[i] = allowRequest(request.getUserId(), request.getIp(), request.getTimestamp(), request.getPermits());
+        }
+
+        return allowed;
+    }
+
+    // Hands back `permits` of an earlier allowRequest at `incomingTimestamp` that ended up unused, on every
+    // key of the request. Best effort, like the rollback in KeyRelease; limiters that cannot un-count keep
+    // them, which is what the default does.
+    default void releasePermits(String userId, String ip, long incomingTimestamp, int permits) {
+    }
+
+    static int checkPermits(int permits) {
+        if (permits < 1) throw new IllegalArgumentException("permits must be positive: " + permits);
+        return permits;
+    }
 }
@@ -0,0 +1,35 @@
+package Core;
+
+public class Request {
+    private final String userId;
+    private final String ip;
+    private final long timestamp;
+    private final int permits;
+
+    public Request(String userId, String ip, long timestamp) {
+        this(userId, ip, timestamp, 1);
+    }
+
+    public Request(String userId, String ip, long timestamp, int permits) {
+        this.userId = userId;
+        this.ip = ip;
+        this.timestamp = timestamp;
+        this.permits = RateLimiter.checkPermits(permits);
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public String getIp() {
+        return ip;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public int getPermits() {
+        return permits;
+    }
+}
@@ -4,15 +4,29 @@ import java.util.ArrayList;
 import java.util.List;
 
 public class HybridKeyResolver implements KeyResolver {
+    public static final String USER_KEY_PREFIX = "USER_ID: ";
+    public static final String IP_KEY_PREFIX = "IP: ";
+    public static final String GLOBAL_KEY = "GLOBAL";
+
+    private final boolean includeGlobalKey;
+
+    public HybridKeyResolver() {
+        this(false);
+    }
+
+    public HybridKeyResolver(boolean includeGlobalKey) {
+        this.includeGlobalKey = includeGlobalKey;
+    }
+
     @Override
     public List<String> resolveKey(String userId, String ip) {
         List<String> keys = new ArrayList<>();
 
-        if (!userId.isEmpty() && !userId.isBlank()) keys.add("USER_ID: "+userId);
+        if (!userId.isBlank()) keys.add(USER_KEY_PREFIX + userId);
 
-        if (!ip.isEmpty() && !ip.isBlank()) keys.add("IP: "+ip);
+        if (!ip.isBlank()) keys.add(IP_KEY_PREFIX + ip);
 
-        //keys.add("GLOBAL: "+100);
+        if (includeGlobalKey) keys.add(GLOBAL_KEY);
 
         return keys;
     }
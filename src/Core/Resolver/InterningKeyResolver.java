@@ -0,0 +1,112 @@
+package Core.Resolver;
+
+import Core.Store.KeyHash;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * HybridKeyResolver's keys ("USER_ID: <id>", "IP: <ip>", optionally GLOBAL) without building them per call.
+ *
+ * Recent user ids and ips are kept with their key string and KeyHash.hash64 in one direct-mapped cache per
+ * part, and resolveKeys then costs one array probe per part and no allocation. The key strings are the same
+ * instances every time, so their String.hashCode is cached too and the limiters' own maps do not hash them
+ * again. Blank parts are cached as well, which also saves scanning them on every request.
+ *
+ * A value whose slot holds another one replaces it, so the caches never grow past cacheSize entries per
+ * part. A flood of one-off ips evicts the regulars and costs allocation while it lasts, but no memory.
+ */
+public class InterningKeyResolver implements KeyResolver {
+    public static final int DEFAULT_CACHE_SIZE = 1 << 16;
+
+    // No key, for empty parts; a blank part gets a cached entry without a key.
+    private static final CachedKey NONE = new CachedKey("", null);
+    private static final CachedKey GLOBAL = new CachedKey("", HybridKeyResolver.GLOBAL_KEY);
+
+    private final boolean includeGlobalKey;
+    private final CachedKey[] userKeys;
+    private final CachedKey[] ipKeys;
+
+    public InterningKeyResolver() {
+        this(false);
+    }
+
+    public InterningKeyResolver(boolean includeGlobalKey) {
+        this(includeGlobalKey, DEFAULT_CACHE_SIZE);
+    }
+
+    // cacheSize is per part (user ids, ips).
+    public InterningKeyResolver(boolean includeGlobalKey, int cacheSize) {
+        if (Integer.bitCount(cacheSize) != 1) throw new IllegalArgumentException("cacheSize must be a power of two: " + cacheSize);
+
+        this.includeGlobalKey = includeGlobalKey;
+        this.userKeys = new CachedKey[cacheSize];
+        this.ipKeys = new CachedKey[cacheSize];
+    }
+
+    @Override
+    public List<String> resolveKey(String userId, String ip) {
+        List<String> keys = new ArrayList<>(3);
+
+        CachedKey user = lookup(userKeys, userId, HybridKeyResolver.USER_KEY_PREFIX);
+        if (user.key != null) keys.add(user.key);
+
+        CachedKey address = lookup(ipKeys, ip, HybridKeyResolver.IP_KEY_PREFIX);
+        if (address.key != null) keys.add(address.key);
+
+        if (includeGlobalKey) keys.add(GLOBAL.key);
+
+        return keys;
+    }
+
+    @Override
+    public void resolveKeys(String userId, String ip, KeySink sink) {
+        sink.clear();
+
+        CachedKey user = lookup(userKeys, userId, HybridKeyResolver.USER_KEY_PREFIX);
+        if (user.key != null) sink.add(user.key, user.hash);
+
+        CachedKey address = lookup(ipKeys, ip, HybridKeyResolver.IP_KEY_PREFIX);
+        if (address.key != null) sink.add(address.key, address.hash);
+
+        if (includeGlobalKey) sink.add(GLOBAL.key, GLOBAL.hash);
+    }
+
+    // Scans both caches.
+    public int getCachedValueCount() {
+        return occupied(userKeys) + occupied(ipKeys);
+    }
+
+    private static CachedKey lookup(CachedKey[] cache, String value, String prefix) {
+        if (value.isEmpty()) return NONE;
+
+        int slot = (int) KeyHash.mix(value.hashCode()) & (cache.length - 1);
+        CachedKey cached = cache[slot];
+        if (cached != null && cached.value.equals(value)) return cached;
+
+        CachedKey key = new CachedKey(value, value.isBlank() ? null : prefix + value);
+        cache[slot] = key;
+        return key;
+    }
+
+    private static int occupied(CachedKey[] cache) {
+        int count = 0;
+        for (CachedKey cached : cache) {
+            if (cached != null) count++;
+        }
+        return count;
+    }
+
+    // Immutable, so racing writers of one cache slot can only replace a whole entry.
+    private static final class CachedKey {
+        private final String value;
+        private final String key;
+        private final long hash;
+
+        private CachedKey(String value, String key) {
+            this.value = value;
+            this.key = key;
+            this.hash = key == null ? 0 : KeyHash.hash64(key);
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package Core.Resolver;
+
+/*
+ * An IPv4 or IPv6 address as two longs, parsed without regex, splitting or allocating, so one instance per
+ * thread can be reused for every request.
+ *
+ * IPv4 addresses are held IPv4-mapped (::ffff:a.b.c.d), so both families share one 128-bit space and one
+ * IpPrefixTrie; an IPv6 address written in mapped form counts as IPv4. Bit 0 is the most significant bit of
+ * `high`.
+ *
+ * Accepts dotted quads, and IPv6 in full, "::" compressed and embedded-IPv4 forms. Zone ids ("%eth0"),
+ * brackets and ports are not addresses and fail to parse.
+ */
+public final class IpAddress {
+    public static final int BITS = 128;
+    // Where an IPv4 address starts in the mapped form.
+    public static final int IPV4_OFFSET = 96;
+
+    private static final long IPV4_MAPPED_HIGH_BITS_OF_LOW = 0xFFFFL << 32;
+
+    private long high;
+    private long low;
+
+    // Throws IllegalArgumentException when `text` is not an address.
+    public static IpAddress of(String text) {
+        IpAddress address = new IpAddress();
+        if (!address.parse(text)) throw new IllegalArgumentException("not an IP address: " + text);
+        return address;
+    }
+
+    // Returns false, leaving this address unchanged, when `text` is not an address.
+    public boolean parse(CharSequence text) {
+        int end = text.length();
+        for (int i = 0; i < end; i++) {
+            if (text.charAt(i) == ':') return parseV6(text, end);
+        }
+
+        long v4 = parseV4(text, 0, end);
+        if (v4 < 0) return false;
+
+        high = 0;
+        low = IPV4_MAPPED_HIGH_BITS_OF_LOW | v4;
+        return true;
+    }
+
+    public long getHigh() {
+        return high;
+    }
+
+    public long getLow() {
+        return low;
+    }
+
+    public boolean isV4() {
+        return high == 0 && (low & 0xFFFF_FFFF_0000_0000L) == IPV4_MAPPED_HIGH_BITS_OF_LOW;
+    }
+
+    // Prefix lengths of this address' family are counted from here in the 128-bit form.
+    public int familyOffset() {
+        return isV4() ? IPV4_OFFSET : 0;
+    }
+
+    public int familyBits() {
+        return BITS - familyOffset();
+    }
+
+    // Text of the network of `prefixLength` bits (counted in this address' family) this address is in,
+    // e.g. "203.0.113.0/24" or "2001:db8:0:1:0:0:0:0/64".
+    public String networkToString(int prefixLength) {
+        int absoluteLength = familyOffset() + prefixLength;
+        long networkHigh = high & highMask(absoluteLength);
+        long networkLow = low & lowMask(absoluteLength);
+
+        StringBuilder text = new StringBuilder(isV4() ? 18 : 43);
+        if (isV4()) {
+            for (int shift = 24; shift >= 0; shift -= 8) {
+                text.append((networkLow >>> shift) & 0xFF);
+                if (shift > 0) text.append('.');
+            }
+        } else {
+            for (int group = 0; group < 8; group++) {
+                long bits = group < 4 ? networkHigh : networkLow;
+                text.append(Long.toHexString((bits >>> (48 - 16 * (group & 3))) & 0xFFFF));
+                if (group < 7) text.append(':');
+            }
+        }
+        return text.append('/').append(prefixLength).toString();
+    }
+
+    @Override
+    public String toString() {
+        return networkToString(familyBits());
+    }
+
+    // Masks keeping the first `length` bits of the 128-bit form, for `high` and for `low`.
+    static long highMask(int length) {
+        if (length <= 0) return 0;
+        return length >= 64 ? -1L : -1L << (64 - length);
+    }
+
+    static long lowMask(int length) {
+        if (length <= 64) return 0;
+        return length >= 128 ? -1L : -1L << (128 - length);
+    }
+
+    private boolean parseV6(CharSequence text, int end) {
+        // Groups before "::" collect in head, groups after it in tail; the gap is the zeros in between.
+        long headHigh = 0, headLow = 0, tailHigh = 0, tailLow = 0;
+        int headGroups = 0, tailGroups = 0;
+        boolean compressed = false;
+        int i = 0;
+
+        if (end >= 2 && text.charAt(0) == ':' && text.charAt(1) == ':') {
+            compressed = true;
+            i = 2;
+        }
+
+        while (i < end) {
+            int groupStart = i;
+            int group = 0;
+            while (i < end && i - groupStart < 5) {
+                int digit = Character.digit(text.charAt(i), 16);
+                if (digit < 0) break;
+                group = (group << 4) | digit;
+                i++;
+            }
+
+            if (i < end && text.charAt(i) == '.') {
+                long v4 = parseV4(text, groupStart, end);
+                if (v4 < 0 || headGroups + tailGroups > 6) return false;
+
+                if (compressed) {
+                    tailHigh = (tailHigh << 32) | (tailLow >>> 32);
+                    tailLow = (tailLow << 32) | v4;
+                    tailGroups += 2;
+                } else {
+                    headHigh = (headHigh << 32) | (headLow >>> 32);
+                    headLow = (headLow << 32) | v4;
+                    headGroups += 2;
+                }
+                i = end;
+                break;
+            }
+
+            int digits = i - groupStart;
+            if (digits == 0 || digits > 4 || headGroups + tailGroups == 8) return false;
+
+            if (compressed) {
+                tailHigh = (tailHigh << 16) | (tailLow >>> 48);
+                tailLow = (tailLow << 16) | group;
+                tailGroups++;
+            } else {
+                headHigh = (headHigh << 16) | (headLow >>> 48);
+                headLow = (headLow << 16) | group;
+                headGroups++;
+            }
+
+            if (i == end) break;
+            if (text.charAt(i) != ':' || ++i == end) return false;
+            if (text.charAt(i) == ':') {
+                if (compressed) return false;
+                compressed = true;
+                i++;
+            }
+        }
+
+        int groups = headGroups + tailGroups;
+        if (compressed ? groups > 7 : groups != 8) return false;
+
+        // shift head up past the gap and the tail
+        int shift = 16 * (8 - headGroups);
+        if (shift >= 128) {
+            headHigh = 0;
+            headLow = 0;
+        } else if (shift >= 64) {
+            headHigh = headLow << (shift - 64);
+            headLow = 0;
+        } else if (shift > 0) {
+            headHigh = (headHigh << shift) | (headLow >>> (64 - shift));
+            headLow <<= shift;
+        }
+
+        high = headHigh | tailHigh;
+        low = headLow | tailLow;
+        return true;
+    }
+
+    // The address as an unsigned 32-bit value, or -1.
+    private static long parseV4(CharSequence text, int start, int end) {
+        long value = 0;
+        int octets = 0;
+        int i = start;
+
+        while (octets < 4) {
+            int octetStart = i;
+            int octet = 0;
+            while (i < end && i - octetStart < 3) {
+                char c = text.charAt(i);
+                if (c < '0' || c > '9') break;
+                octet = octet * 10 + (c - '0');
+                i++;
+            }
+            if (i == octetStart || octet > 255) return -1;
+
+            value = (value << 8) | octet;
+            octets++;
+
+            if (octets < 4) {
+                if (i == end || text.charAt(i) != '.') return -1;
+                i++;
+            }
+        }
+
+        return i == end ? value : -1;
+    }
+}
@@ -0,0 +1,151 @@
+package Core.Resolver;
+
+/*
+ * Longest-prefix-match table over 128-bit addresses (IpAddress form), as a path-compressed binary radix
+ * trie: a node stands for a whole run of bits, so a lookup visits at most one node per stored prefix on the
+ * address' path and compares each with two masked XORs, O(prefix length) whatever the table size.
+ *
+ * Lookups are lock free. Updates copy the path they change and publish a new root, so a lookup sees the
+ * table entirely before or entirely after an update, as with LimitOverrides.
+ */
+public final class IpPrefixTrie<V> {
+    private volatile Node<V> root;
+    private int size;
+
+    // The value of the longest stored prefix containing the address, or null.
+    public V lookup(long high, long low) {
+        V longest = null;
+        Node<V> node = root;
+
+        while (node != null && node.contains(high, low)) {
+            if (node.value != null) longest = node.value;
+            if (node.length == IpAddress.BITS) break;
+            node = bit(high, low, node.length) == 0 ? node.zero : node.one;
+        }
+
+        return longest;
+    }
+
+    public V lookup(IpAddress address) {
+        return lookup(address.getHigh(), address.getLow());
+    }
+
+    // Bits past `length` are ignored.
+    public synchronized void put(long high, long low, int length, V value) {
+        if (value == null) throw new IllegalArgumentException("value must not be null");
+        checkLength(length);
+
+        root = insert(root, high & IpAddress.highMask(length), low & IpAddress.lowMask(length), length, value);
+    }
+
+    public synchronized void remove(long high, long low, int length) {
+        checkLength(length);
+
+        root = delete(root, high & IpAddress.highMask(length), low & IpAddress.lowMask(length), length);
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    private Node<V> insert(Node<V> node, long high, long low, int length, V value) {
+        if (node == null) {
+            size++;
+            return new Node<>(high, low, length, value, null, null);
+        }
+
+        int common = Math.min(commonPrefixLength(node.high, node.low, high, low), Math.min(node.length, length));
+
+        if (common == node.length && common == length) {
+            if (node.value == null) size++;
+            return new Node<>(node.high, node.low, length, value, node.zero, node.one);
+        }
+
+        if (common == node.length) {
+            if (bit(high, low, common) == 0) {
+                return new Node<>(node.high, node.low, node.length, node.value, insert(node.zero, high, low, length, value), node.one);
+            }
+            return new Node<>(node.high, node.low, node.length, node.value, node.zero, insert(node.one, high, low, length, value));
+        }
+
+        size++;
+        if (common == length) {
+            // the new prefix contains the node
+            return bit(node.high, node.low, length) == 0
+                    ? new Node<>(high, low, length, value, node, null)
+                    : new Node<>(high, low, length, value, null, node);
+        }
+
+        // the two part ways after `common` bits: fork there
+        Node<V> leaf = new Node<>(high, low, length, value, null, null);
+        long forkHigh = high & IpAddress.highMask(common);
+        long forkLow = low & IpAddress.lowMask(common);
+        return bit(high, low, common) == 0
+                ? new Node<>(forkHigh, forkLow, common, null, leaf, node)
+                : new Node<>(forkHigh, forkLow, common, null, node, leaf);
+    }
+
+    private Node<V> delete(Node<V> node, long high, long low, int length) {
+        if (node == null || node.length > length || !node.contains(high, low)) return node;
+
+        if (node.length == length) {
+            if (node.value == null) return node;
+            size--;
+            return compact(node.high, node.low, node.length, null, node.zero, node.one);
+        }
+
+        if (bit(high, low, node.length) == 0) {
+            Node<V> zero = delete(node.zero, high, low, length);
+            return zero == node.zero ? node : compact(node.high, node.low, node.length, node.value, zero, node.one);
+        }
+        Node<V> one = delete(node.one, high, low, length);
+        return one == node.one ? node : compact(node.high, node.low, node.length, node.value, node.zero, one);
+    }
+
+    // A node without a value is only kept as a fork between two children.
+    private static <V> Node<V> compact(long high, long low, int length, V value, Node<V> zero, Node<V> one) {
+        if (value == null && zero == null) return one;
+        if (value == null && one == null) return zero;
+        return new Node<>(high, low, length, value, zero, one);
+    }
+
+    private static int commonPrefixLength(long high, long low, long otherHigh, long otherLow) {
+        long differentHigh = high ^ otherHigh;
+        if (differentHigh != 0) return Long.numberOfLeadingZeros(differentHigh);
+        return 64 + Long.numberOfLeadingZeros(low ^ otherLow);
+    }
+
+    private static int bit(long high, long low, int index) {
+        return index < 64 ? (int) (high >>> (63 - index)) & 1 : (int) (low >>> (127 - index)) & 1;
+    }
+
+    private static void checkLength(int length) {
+        if (length < 0 || length > IpAddress.BITS) throw new IllegalArgumentException("prefix length out of range: " + length);
+    }
+
+    private static final class Node<V> {
+        private final long high;
+        private final long low;
+        private final int length;
+        private final long highMask;
+        private final long lowMask;
+        private final V value;
+        private final Node<V> zero;
+        private final Node<V> one;
+
+        private Node(long high, long low, int length, V value, Node<V> zero, Node<V> one) {
+            this.high = high;
+            this.low = low;
+            this.length = length;
+            this.highMask = IpAddress.highMask(length);
+            this.lowMask = IpAddress.lowMask(length);
+            this.value = value;
+            this.zero = zero;
+            this.one = one;
+        }
+
+        private boolean contains(long otherHigh, long otherLow) {
+            return ((otherHigh ^ high) & highMask) == 0 && ((otherLow ^ low) & lowMask) == 0;
+        }
+    }
+}
@@ -4,4 +4,13 @@ import java.util.List;
 
 public interface KeyResolver {
     List<String> resolveKey(String userId, String ip);
+
+    // Replaces the sink's content with the keys of this request. Resolvers that can do so without
+    // allocating override it; the default goes through resolveKey.
+    default void resolveKeys(String userId, String ip, KeySink sink) {
+        sink.clear();
+        for (String key : resolveKey(userId, ip)) {
+            sink.add(key);
+        }
+    }
 }
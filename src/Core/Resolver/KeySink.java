@@ -0,0 +1,83 @@
+package Core.Resolver;
+
+import Core.Store.KeyHash;
+
+import java.util.Arrays;
+
+/*
+ * Reusable output buffer for KeyResolver.resolveKeys: the resolved keys of one request plus their 64-bit
+ * hashes (KeyHash.hash64), kept in parallel arrays so reading them back allocates nothing.
+ *
+ * A resolver that has the hash at hand passes it along; otherwise it is computed on first use only, so
+ * consumers that never ask for it (map backed stores) never pay for it. Not thread safe: each thread
+ * needs its own sink, typically one per limiter in a ThreadLocal.
+ *
+ * Whoever resolves into a sink may leave a RejectionListener on it, which KeyRelease.rollback tells the
+ * key that rejected a request. It stays across clear(), as the sink belongs to one limiter.
+ */
+public final class KeySink {
+    private static final long UNHASHED = 0L;
+    private static final int INITIAL_CAPACITY = 4;
+
+    private String[] keys = new String[INITIAL_CAPACITY];
+    private long[] hashes = new long[INITIAL_CAPACITY];
+    private int size;
+    private RejectionListener rejectionListener;
+
+    @FunctionalInterface
+    public interface RejectionListener {
+        void rejectedBy(String key);
+    }
+
+    public void clear() {
+        Arrays.fill(keys, 0, size, null);
+        size = 0;
+    }
+
+    public void add(String key) {
+        add(key, UNHASHED);
+    }
+
+    // hash must be KeyHash.hash64(key).
+    public void add(String key, long hash) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            hashes = Arrays.copyOf(hashes, size * 2);
+        }
+
+        keys[size] = key;
+        hashes[size] = hash;
+        size++;
+    }
+
+    // Copies another sink's entry without forcing its hash.
+    public void add(KeySink other, int index) {
+        add(other.keys[index], other.hashes[index]);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public String key(int index) {
+        return keys[index];
+    }
+
+    public void setRejectionListener(RejectionListener rejectionListener) {
+        this.rejectionListener = rejectionListener;
+    }
+
+    public void rejectedBy(int index) {
+        if (rejectionListener != null) rejectionListener.rejectedBy(keys[index]);
+    }
+
+    public long hash(int index) {
+        long hash = hashes[index];
+        if (hash == UNHASHED) {
+            // a key that really hashes to 0 is just hashed again next time
+            hash = KeyHash.hash64(keys[index]);
+            hashes[index] = hash;
+        }
+        return hash;
+    }
+}
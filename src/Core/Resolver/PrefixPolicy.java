@@ -0,0 +1,39 @@
+package Core.Resolver;
+
+/*
+ * What SubnetKeyResolver does with addresses inside one CIDR range: key them by their network of some
+ * prefix length (counted in the address' own family, so /24 for IPv4 and /64 for IPv6 are the usual
+ * ones), or allow them, i.e. give them no IP key at all.
+ */
+public final class PrefixPolicy {
+    private static final PrefixPolicy ALLOW = new PrefixPolicy(-1);
+
+    private final int prefixLength;
+
+    private PrefixPolicy(int prefixLength) {
+        this.prefixLength = prefixLength;
+    }
+
+    public static PrefixPolicy allow() {
+        return ALLOW;
+    }
+
+    // A prefix as long as the address' family keys every address on its own.
+    public static PrefixPolicy aggregate(int prefixLength) {
+        if (prefixLength < 0 || prefixLength > IpAddress.BITS) throw new IllegalArgumentException("prefix length out of range: " + prefixLength);
+        return new PrefixPolicy(prefixLength);
+    }
+
+    public boolean isAllowed() {
+        return this == ALLOW;
+    }
+
+    public int getPrefixLength() {
+        return prefixLength;
+    }
+
+    @Override
+    public String toString() {
+        return isAllowed() ? "PrefixPolicy{allow}" : "PrefixPolicy{aggregate /" + prefixLength + "}";
+    }
+}
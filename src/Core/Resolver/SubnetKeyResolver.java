@@ -0,0 +1,151 @@
+package Core.Resolver;
+
+import Core.Store.KeyHash;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Another resolver's keys, with the ip keyed by its network rather than by itself: "IP: 203.0.113.0/24"
+ * for every address of that /24, "IP: 2001:db8:0:1:0:0:0:0/64" for every address of that /64. A client
+ * rotating through a range then trips one shared limit instead of leaving one never-full key per address
+ * in every limiter.
+ *
+ * The delegate resolves the request without its ip (so it adds the user and global keys only), then the
+ * subnet key is added. An ip that does not parse is left to the delegate, which keys it as it is.
+ *
+ * Ranges can get their own policy (setPolicy, longest prefix wins): a different prefix length, or allow,
+ * which gives their addresses no IP key at all. Policies live in an IpPrefixTrie and can change while
+ * requests are resolved.
+ *
+ * Addresses are parsed into a per-thread IpAddress, and recent subnet keys are kept with their hash in a
+ * small direct-mapped cache, so resolving a known subnet allocates nothing beyond what the delegate does.
+ */
+public class SubnetKeyResolver implements KeyResolver {
+    public static final int DEFAULT_IPV4_PREFIX_LENGTH = 24;
+    public static final int DEFAULT_IPV6_PREFIX_LENGTH = 64;
+    public static final int DEFAULT_KEY_CACHE_SIZE = 1 << 12;
+
+    private final KeyResolver delegate;
+    private final int ipv4PrefixLength;
+    private final int ipv6PrefixLength;
+    private final IpPrefixTrie<PrefixPolicy> policies = new IpPrefixTrie<>();
+    private final ThreadLocal<IpAddress> addresses = ThreadLocal.withInitial(IpAddress::new);
+    private final SubnetKey[] keyCache;
+
+    public SubnetKeyResolver(KeyResolver delegate) {
+        this(delegate, DEFAULT_IPV4_PREFIX_LENGTH, DEFAULT_IPV6_PREFIX_LENGTH);
+    }
+
+    public SubnetKeyResolver(KeyResolver delegate, int ipv4PrefixLength, int ipv6PrefixLength) {
+        this(delegate, ipv4PrefixLength, ipv6PrefixLength, DEFAULT_KEY_CACHE_SIZE);
+    }
+
+    public SubnetKeyResolver(KeyResolver delegate, int ipv4PrefixLength, int ipv6PrefixLength, int keyCacheSize) {
+        if (ipv4PrefixLength < 0 || ipv4PrefixLength > 32) throw new IllegalArgumentException("ipv4PrefixLength out of range: " + ipv4PrefixLength);
+        if (ipv6PrefixLength < 0 || ipv6PrefixLength > 128) throw new IllegalArgumentException("ipv6PrefixLength out of range: " + ipv6PrefixLength);
+        if (Integer.bitCount(keyCacheSize) != 1) throw new IllegalArgumentException("keyCacheSize must be a power of two: " + keyCacheSize);
+
+        this.delegate = delegate;
+        this.ipv4PrefixLength = ipv4PrefixLength;
+        this.ipv6PrefixLength = ipv6PrefixLength;
+        this.keyCache = new SubnetKey[keyCacheSize];
+    }
+
+    @Override
+    public List<String> resolveKey(String userId, String ip) {
+        IpAddress address = addresses.get();
+        if (!address.parse(ip)) return delegate.resolveKey(userId, ip);
+
+        List<String> keys = new ArrayList<>(delegate.resolveKey(userId, ""));
+        SubnetKey subnetKey = subnetKey(address);
+        if (subnetKey != null) keys.add(subnetKey.key);
+
+        return keys;
+    }
+
+    @Override
+    public void resolveKeys(String userId, String ip, KeySink sink) {
+        IpAddress address = addresses.get();
+        if (!address.parse(ip)) {
+            delegate.resolveKeys(userId, ip, sink);
+            return;
+        }
+
+        delegate.resolveKeys(userId, "", sink);
+        SubnetKey subnetKey = subnetKey(address);
+        if (subnetKey != null) sink.add(subnetKey.key, subnetKey.hash);
+    }
+
+    // `cidr` is "<address>/<length>", or a bare address for that address alone. The policy's prefix length
+    // must fit the range's family.
+    public void setPolicy(String cidr, PrefixPolicy policy) {
+        IpAddress network = new IpAddress();
+        int length = parseCidr(cidr, network);
+        if (!policy.isAllowed() && policy.getPrefixLength() > network.familyBits()) {
+            throw new IllegalArgumentException(policy + " is longer than the addresses of " + cidr);
+        }
+
+        policies.put(network.getHigh(), network.getLow(), network.familyOffset() + length, policy);
+    }
+
+    public void removePolicy(String cidr) {
+        IpAddress network = new IpAddress();
+        int length = parseCidr(cidr, network);
+        policies.remove(network.getHigh(), network.getLow(), network.familyOffset() + length);
+    }
+
+    public int getPolicyCount() {
+        return policies.size();
+    }
+
+    // Null for an allowed address.
+    private SubnetKey subnetKey(IpAddress address) {
+        PrefixPolicy policy = policies.lookup(address);
+        if (policy != null && policy.isAllowed()) return null;
+
+        int prefixLength = policy != null ? policy.getPrefixLength() : address.isV4() ? ipv4PrefixLength : ipv6PrefixLength;
+        int absoluteLength = address.familyOffset() + prefixLength;
+        long high = address.getHigh() & IpAddress.highMask(absoluteLength);
+        long low = address.getLow() & IpAddress.lowMask(absoluteLength);
+
+        int slot = (int) KeyHash.mix(high * 31 + low + absoluteLength) & (keyCache.length - 1);
+        SubnetKey cached = keyCache[slot];
+        if (cached != null && cached.high == high && cached.low == low && cached.length == absoluteLength) return cached;
+
+        SubnetKey subnetKey = new SubnetKey(high, low, absoluteLength, HybridKeyResolver.IP_KEY_PREFIX + address.networkToString(prefixLength));
+        keyCache[slot] = subnetKey;
+        return subnetKey;
+    }
+
+    private static int parseCidr(String cidr, IpAddress network) {
+        int slash = cidr.indexOf('/');
+        if (!network.parse(slash < 0 ? cidr : cidr.substring(0, slash))) throw new IllegalArgumentException("not a CIDR range: " + cidr);
+        if (slash < 0) return network.familyBits();
+
+        try {
+            int length = Integer.parseInt(cidr.substring(slash + 1));
+            if (length < 0 || length > network.familyBits()) throw new IllegalArgumentException("prefix length out of range: " + cidr);
+            return length;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("not a CIDR range: " + cidr, e);
+        }
+    }
+
+    // Immutable, so racing writers of one cache slot can only replace a whole entry.
+    private static final class SubnetKey {
+        private final long high;
+        private final long low;
+        private final int length;
+        private final String key;
+        private final long hash;
+
+        private SubnetKey(long high, long low, int length, String key) {
+            this.high = high;
+            this.low = low;
+            this.length = length;
+            this.key = key;
+            this.hash = KeyHash.hash64(key);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package Core.Resolver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/*
+ * Another resolver's keys plus "TENANT: <tenant>", a key shared by every user of one tenant. tenantOf maps
+ * a user id to its tenant, or to null for users that have none.
+ *
+ * The tenant key string is built once per tenant and reused, so resolveKeys allocates nothing beyond what
+ * the delegate and tenantOf do. Tenants are expected to be few; their keys are never dropped.
+ */
+public class TenantKeyResolver implements KeyResolver {
+    public static final String TENANT_KEY_PREFIX = "TENANT: ";
+
+    private final KeyResolver delegate;
+    private final Function<String, String> tenantOf;
+    private final Map<String, String> tenantKeys = new ConcurrentHashMap<>();
+
+    public TenantKeyResolver(KeyResolver delegate, Function<String, String> tenantOf) {
+        this.delegate = delegate;
+        this.tenantOf = tenantOf;
+    }
+
+    @Override
+    public List<String> resolveKey(String userId, String ip) {
+        List<String> keys = new ArrayList<>(delegate.resolveKey(userId, ip));
+
+        String tenantKey = tenantKey(userId);
+        if (tenantKey != null) keys.add(tenantKey);
+
+        return keys;
+    }
+
+    @Override
+    public void resolveKeys(String userId, String ip, KeySink sink) {
+        delegate.resolveKeys(userId, ip, sink);
+
+        String tenantKey = tenantKey(userId);
+        if (tenantKey != null) sink.add(tenantKey);
+    }
+
+    private String tenantKey(String userId) {
+        if (userId.isBlank()) return null;
+
+        String tenant = tenantOf.apply(userId);
+        if (tenant == null) return null;
+
+        String key = tenantKeys.get(tenant);
+        return key != null ? key : tenantKeys.computeIfAbsent(tenant, id -> TENANT_KEY_PREFIX + id);
+    }
+}
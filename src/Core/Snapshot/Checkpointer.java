@@ -0,0 +1,168 @@
+package Core.Snapshot;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/*
+ * Periodic checkpoints of a set of limiters into one directory, and the warm restart from them.
+ *
+ * Every checkpoint is one file, numbered in sequence. A full one holds every key; the deltasPerFull
+ * checkpoints after it only hold the keys updated since the previous checkpoint, so their size and the
+ * writing follow the traffic. Finding those keys still visits every key, as no store keeps a list of the
+ * ones it changed: an on-heap map takes each key's bin lock to read its update time (MapSnapshot), the
+ * long state stores read each slot. Restore loads the newest full file, then the deltas after it in
+ * order. Older files are deleted once a newer full one is committed.
+ *
+ * Deltas do not record evictions. A key evicted after being checkpointed comes back on restore with its
+ * old state. That state is already as good as fresh, which is why it was evicted, so it is evicted again.
+ *
+ * tick() is called from the request path like the stores' own tick: it costs a volatile read until a
+ * checkpoint is due, then hands the checkpoint to the executor.
+ */
+public class Checkpointer {
+    private static final String FULL = ".full";
+    private static final String DELTA = ".delta";
+
+    private final Path directory;
+    private final Map<String, Snapshottable> sections;
+    private final long intervalInMs;
+    private final int deltasPerFull;
+    private final Executor executor;
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile long nextCheckpointAt = Long.MIN_VALUE;
+    private volatile Exception lastFailure;
+
+    // Guarded by this.
+    private long sequence;
+    private long lastCheckpointAt = Long.MIN_VALUE;
+    private int deltasSinceFull = -1;
+
+    // `sections`: a stable name per limiter, kept across restarts.
+    public Checkpointer(Path directory, Map<String, ? extends Snapshottable> sections, long intervalInMs, int deltasPerFull,
+                        Executor executor) {
+        this.directory = directory;
+        this.sections = new LinkedHashMap<>(sections);
+        this.intervalInMs = intervalInMs;
+        this.deltasPerFull = deltasPerFull;
+        this.executor = executor;
+    }
+
+    public void tick(long now) {
+        if (now < nextCheckpointAt) return;
+        if (nextCheckpointAt == Long.MIN_VALUE) {
+            nextCheckpointAt = now + intervalInMs;
+            return;
+        }
+        if (!running.compareAndSet(false, true)) return;
+
+        nextCheckpointAt = now + intervalInMs;
+        executor.execute(() -> {
+            try {
+                checkpoint(now);
+            } catch (RuntimeException e) {
+                lastFailure = e;
+            } finally {
+                running.set(false);
+            }
+        });
+    }
+
+    // Writes a checkpoint now: a full one if none was written yet or enough deltas have piled up.
+    public synchronized void checkpoint(long now) {
+        boolean full = deltasSinceFull < 0 || deltasSinceFull >= deltasPerFull;
+        // one interval of overlap: a request stamped just before the last checkpoint may have landed after it
+        long changedSince = full ? Long.MIN_VALUE : lastCheckpointAt - intervalInMs;
+        long number = sequence + 1;
+
+        try {
+            Files.createDirectories(directory);
+            try (SnapshotWriter out = new SnapshotWriter(directory.resolve(fileName(number, full)), now)) {
+                for (Map.Entry<String, Snapshottable> section : sections.entrySet()) {
+                    out.beginSection(section.getKey());
+                    section.getValue().writeSnapshot(out, changedSince);
+                    out.endSection();
+                }
+                out.commit();
+            }
+            if (full) deleteBefore(number);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        sequence = number;
+        lastCheckpointAt = now;
+        deltasSinceFull = full ? 0 : deltasSinceFull + 1;
+    }
+
+    // Loads the newest full checkpoint and the deltas after it. Returns how many files were loaded.
+    public synchronized int restore() {
+        List<Path> files = checkpointFiles();
+        int newestFull = -1;
+        for (int i = 0; i < files.size(); i++) {
+            if (files.get(i).getFileName().toString().endsWith(FULL)) newestFull = i;
+        }
+        if (newestFull < 0) return 0;
+
+        try {
+            for (int i = newestFull; i < files.size(); i++) {
+                try (SnapshotReader in = new SnapshotReader(files.get(i))) {
+                    for (String name = in.nextSection(); name != null; name = in.nextSection()) {
+                        Snapshottable section = sections.get(name);
+                        if (section != null) section.readSnapshot(in);
+                    }
+                    lastCheckpointAt = in.getCreatedAt();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        sequence = sequenceOf(files.get(files.size() - 1));
+        deltasSinceFull = files.size() - 1 - newestFull;
+        return files.size() - newestFull;
+    }
+
+    public Exception getLastFailure() {
+        return lastFailure;
+    }
+
+    private List<Path> checkpointFiles() {
+        List<Path> files = new ArrayList<>();
+        if (!Files.isDirectory(directory)) return files;
+
+        try (Stream<Path> listing = Files.list(directory)) {
+            listing.filter(file -> {
+                String name = file.getFileName().toString();
+                return name.endsWith(FULL) || name.endsWith(DELTA);
+            }).sorted().forEach(files::add);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return files;
+    }
+
+    private void deleteBefore(long number) throws IOException {
+        for (Path file : checkpointFiles()) {
+            if (sequenceOf(file) < number) Files.deleteIfExists(file);
+        }
+    }
+
+    // Zero padded so that name order is sequence order.
+    private static String fileName(long number, boolean full) {
+        return String.format("%019d", number) + (full ? FULL : DELTA);
+    }
+
+    private static long sequenceOf(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.indexOf('.')));
+    }
+}
@@ -0,0 +1,54 @@
+package Core.Snapshot;
+
+import Core.Eviction.KeyExpiry;
+
+import java.util.Map;
+
+/*
+ * Snapshot format of the on-heap limiters' key maps: one record per key, the key then the value's own
+ * fields, closed by SnapshotWriter.endKeys().
+ *
+ * Values are written from inside computeIfPresent, the lock their updates take, so a record never shows
+ * an update half applied and only the one bin being written waits for it. Values guarded by their own
+ * monitor instead (TimestampLog) take it in their codec.
+ *
+ * A delta takes that lock for every key too, since the update time is read under it; only the keys
+ * updated since `changedSince` are written.
+ */
+public final class MapSnapshot {
+    private MapSnapshot() {
+    }
+
+    public interface Codec<V> {
+        // Request time of the value's last update, or any later time; Long.MIN_VALUE if it holds nothing.
+        long lastUpdatedAt(V value);
+
+        void write(V value, SnapshotWriter out);
+
+        V read(SnapshotReader in);
+    }
+
+    public static <V> void write(Map<String, V> map, SnapshotWriter out, long changedSince, Codec<V> codec) {
+        for (String key : map.keySet()) {
+            map.computeIfPresent(key, (id, value) -> {
+                if (codec.lastUpdatedAt(value) >= changedSince) {
+                    out.putKey(id);
+                    codec.write(value, out);
+                }
+                return value;
+            });
+        }
+        out.endKeys();
+    }
+
+    // Keys new to the map are handed to keyExpiry as if first seen at their last update.
+    public static <V> void read(SnapshotReader in, Map<String, V> map, Codec<V> codec, KeyExpiry keyExpiry) {
+        for (String key = in.nextKey(); key != null; key = in.nextKey()) {
+            V value = codec.read(in);
+            if (map.put(key, value) == null) {
+                long lastUpdatedAt = codec.lastUpdatedAt(value);
+                keyExpiry.onNewKey(key, lastUpdatedAt == Long.MIN_VALUE ? in.getCreatedAt() : lastUpdatedAt);
+            }
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package Core.Snapshot;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Reads a file written by SnapshotWriter, through read-only mapped regions.
+public final class SnapshotReader implements Closeable {
+    private static final int REGION_BYTES = 64 << 20;
+
+    private final FileChannel channel;
+    private final long length;
+    private final long createdAt;
+    private MappedByteBuffer region;
+    private long regionStart;
+    private long sectionEnd;
+
+    public SnapshotReader(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        long fileSize = channel.size();
+        if (fileSize < SnapshotWriter.HEADER_BYTES) throw new IOException("not a snapshot: " + file);
+
+        map(0, Math.min(fileSize, REGION_BYTES));
+        if (region.getInt() != SnapshotWriter.MAGIC) throw new IOException("not a snapshot: " + file);
+        int version = region.getInt();
+        if (version != SnapshotWriter.VERSION) throw new IOException("unsupported snapshot version " + version + ": " + file);
+
+        this.length = region.getLong();
+        this.createdAt = region.getLong();
+        if (length > fileSize) throw new IOException("truncated snapshot: " + file);
+        this.sectionEnd = position();
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    // Name of the next section, or null after the last one. Skips what was left unread of the previous.
+    public String nextSection() {
+        seek(sectionEnd);
+        if (position() >= length) return null;
+
+        String name = getString();
+        long sectionLength = getLong();
+        sectionEnd = position() + sectionLength;
+        return name;
+    }
+
+    public int getInt() {
+        return ensure(Integer.BYTES).getInt();
+    }
+
+    public long getLong() {
+        return ensure(Long.BYTES).getLong();
+    }
+
+    public double getDouble() {
+        return ensure(Double.BYTES).getDouble();
+    }
+
+    public String getString() {
+        int size = getInt();
+        byte[] bytes = new byte[size];
+        ensure(size).get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Key of the next record, or null once the section's keys are done.
+    public String nextKey() {
+        int size = getInt();
+        if (size == SnapshotWriter.END_OF_KEYS) return null;
+
+        byte[] bytes = new byte[size];
+        ensure(size).get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // A little endian view of the next `bytes` bytes, see SnapshotWriter.reserve.
+    public ByteBuffer read(int bytes) {
+        ByteBuffer source = ensure(bytes);
+        ByteBuffer view = source.slice(source.position(), bytes).order(ByteOrder.LITTLE_ENDIAN);
+        source.position(source.position() + bytes);
+        return view;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private long position() {
+        return regionStart + region.position();
+    }
+
+    private void seek(long at) {
+        if (at >= regionStart && at - regionStart <= region.limit()) {
+            region.position((int) (at - regionStart));
+        } else {
+            map(at, Math.min(length - at, REGION_BYTES));
+        }
+    }
+
+    private ByteBuffer ensure(int bytes) {
+        if (region.remaining() < bytes) {
+            long at = position();
+            if (at + bytes > length) throw new UncheckedIOException(new IOException("snapshot ends in the middle of a record"));
+            map(at, Math.min(length - at, Math.max(REGION_BYTES, bytes)));
+        }
+        return region;
+    }
+
+    private void map(long start, long size) {
+        try {
+            region = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.max(0, size));
+            region.order(ByteOrder.LITTLE_ENDIAN);
+            regionStart = start;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package Core.Snapshot;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * Writes a snapshot file through memory mapped regions of REGION_BYTES, mapping the next one whenever a
+ * write would cross the end of the current one, so the file never has to be sized up front. A region is
+ * forced to disk before it is let go: FileChannel.force does not cover pages written through a mapping.
+ *
+ * Layout (little endian): header (magic, version, data length, createdAt), then named sections, each
+ * with its byte length so a reader can skip the ones it does not know. The file is written under a
+ * temporary name and moved into place by commit(), so a crash leaves the previous snapshot untouched.
+ *
+ * Writes throw UncheckedIOException: they mostly happen inside map iterations and compute lambdas.
+ */
+public final class SnapshotWriter implements Closeable {
+    static final int MAGIC = 0x4E534C52;
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 24;
+    static final int END_OF_KEYS = -1;
+
+    private static final int REGION_BYTES = 8 << 20;
+
+    private final Path target;
+    private final Path temporary;
+    private final FileChannel channel;
+    private final long createdAt;
+    private MappedByteBuffer region;
+    private long regionStart;
+    private long sectionLengthAt = -1;
+    private boolean committed;
+
+    public SnapshotWriter(Path target, long createdAt) throws IOException {
+        this.target = target;
+        this.temporary = target.resolveSibling(target.getFileName() + ".tmp");
+        this.createdAt = createdAt;
+        this.channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        map(0, REGION_BYTES);
+        region.position(HEADER_BYTES);
+    }
+
+    public void beginSection(String name) {
+        if (sectionLengthAt >= 0) throw new IllegalStateException("section not ended");
+
+        putString(name);
+        sectionLengthAt = position();
+        putLong(0);
+    }
+
+    public void endSection() {
+        long length = position() - sectionLengthAt - Long.BYTES;
+        patchLong(sectionLengthAt, length);
+        sectionLengthAt = -1;
+    }
+
+    public void putInt(int value) {
+        ensure(Integer.BYTES).putInt(value);
+    }
+
+    public void putLong(long value) {
+        ensure(Long.BYTES).putLong(value);
+    }
+
+    public void putDouble(double value) {
+        ensure(Double.BYTES).putDouble(value);
+    }
+
+    public void putString(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        putInt(bytes.length);
+        ensure(bytes.length).put(bytes);
+    }
+
+    // Records of keyed state: key, then the state's own fields, until endKeys().
+    public void putKey(String key) {
+        putString(key);
+    }
+
+    public void endKeys() {
+        putInt(END_OF_KEYS);
+    }
+
+    // A little endian view of the next `bytes` bytes of the file, to be filled in place by the caller.
+    public ByteBuffer reserve(int bytes) {
+        ByteBuffer target = ensure(bytes);
+        ByteBuffer view = target.slice(target.position(), bytes).order(ByteOrder.LITTLE_ENDIAN);
+        target.position(target.position() + bytes);
+        return view;
+    }
+
+    // Makes the file durable and moves it into place.
+    public void commit() throws IOException {
+        if (sectionLengthAt >= 0) throw new IllegalStateException("section not ended");
+
+        long length = position();
+        MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+        header.order(ByteOrder.LITTLE_ENDIAN).putInt(MAGIC).putInt(VERSION).putLong(length).putLong(createdAt);
+        header.force();
+        region.force();
+        channel.force(true);
+        channel.truncate(length);
+        channel.close();
+
+        Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        committed = true;
+    }
+
+    // Without a commit the partial file is thrown away.
+    @Override
+    public void close() throws IOException {
+        if (committed) return;
+
+        channel.close();
+        Files.deleteIfExists(temporary);
+    }
+
+    private long position() {
+        return regionStart + region.position();
+    }
+
+    private ByteBuffer ensure(int bytes) {
+        if (region.remaining() < bytes) {
+            region.force();
+            map(position(), Math.max(REGION_BYTES, bytes));
+        }
+        return region;
+    }
+
+    private void map(long start, int size) {
+        try {
+            region = channel.map(FileChannel.MapMode.READ_WRITE, start, size);
+            region.order(ByteOrder.LITTLE_ENDIAN);
+            regionStart = start;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void patchLong(long at, long value) {
+        if (at >= regionStart) {
+            region.putLong((int) (at - regionStart), value);
+            return;
+        }
+
+        try {
+            MappedByteBuffer patch = channel.map(FileChannel.MapMode.READ_WRITE, at, Long.BYTES);
+            patch.order(ByteOrder.LITTLE_ENDIAN).putLong(0, value);
+            patch.force();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package Core.Snapshot;
+
+/*
+ * Limiter state that can be checkpointed to a file and loaded back on startup (see Checkpointer).
+ *
+ * Writing must not stop the limiter: state is copied one key (or one page) at a time while requests keep
+ * updating the rest, so a snapshot is not a single point in time but every key in it is consistent.
+ */
+public interface Snapshottable {
+    // Writes the keys updated at or after `changedSince` (request time), or every key for Long.MIN_VALUE.
+    // Writing more than that is allowed, missing one is not.
+    void writeSnapshot(SnapshotWriter out, long changedSince);
+
+    // Loads what writeSnapshot wrote over the current state, key by key. Meant for startup, before the
+    // limiter takes traffic.
+    void readSnapshot(SnapshotReader in);
+}
@@ -0,0 +1,123 @@
+package Core.Store;
+
+import Core.Eviction.EvictionConfig;
+import Core.Eviction.EvictionResult;
+import Core.Eviction.KeyExpiry;
+import Core.Snapshot.SnapshotReader;
+import Core.Snapshot.SnapshotWriter;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * On-heap store: one AtomicLong per key in a ConcurrentHashMap, evicted through KeyExpiry.
+ *
+ * Eviction first swaps the cell to EVICTED, so a request still holding the cell sees the marker and
+ * retries on a new one instead of updating a cell that is no longer in the map.
+ */
+public class ConcurrentMapLongStateStore implements LongStateStore {
+    private static final long EVICTED = Long.MIN_VALUE;
+
+    private final Map<String, AtomicLong> states = new ConcurrentHashMap<>();
+    private final Freshness freshness;
+    private final KeyExpiry keyExpiry;
+
+    public ConcurrentMapLongStateStore(EvictionConfig evictionConfig, long ttlInMs, Freshness freshness) {
+        this.freshness = freshness;
+        this.keyExpiry = new KeyExpiry(evictionConfig, ttlInMs, this::evictIfFresh);
+    }
+
+    public static Factory factory(EvictionConfig evictionConfig) {
+        return (ttlInMs, freshness) -> new ConcurrentMapLongStateStore(evictionConfig, ttlInMs, freshness);
+    }
+
+    @Override
+    public long apply(String key, long now, long argument, Transition transition) {
+        AtomicLong cell = cellFor(key, now);
+
+        while (true) {
+            long state = cell.get();
+            if (state == EVICTED) {
+                states.remove(key, cell);
+                cell = cellFor(key, now);
+                continue;
+            }
+
+            long next = transition.next(state, now, argument);
+            if (next == state || cell.compareAndSet(state, next)) {
+                return state;
+            }
+        }
+    }
+
+    @Override
+    public void tick(long now) {
+        keyExpiry.tick(now);
+    }
+
+    @Override
+    public void recordAccess(String key) {
+        keyExpiry.recordAccess(key);
+    }
+
+    @Override
+    public long size() {
+        return states.size();
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return keyExpiry.getEvictionCount();
+    }
+
+    public KeyExpiry getKeyExpiry() {
+        return keyExpiry;
+    }
+
+    // No update times are kept here, so a delta holds every key that was not yet fresh at `changedSince`:
+    // a key updated since then cannot be.
+    @Override
+    public void writeSnapshot(SnapshotWriter out, long changedSince) {
+        states.forEach((key, cell) -> {
+            long state = cell.get();
+            if (state == EVICTED || (changedSince != Long.MIN_VALUE && freshness.isFresh(state, changedSince))) return;
+
+            out.putKey(key);
+            out.putLong(state);
+        });
+        out.endKeys();
+    }
+
+    @Override
+    public void readSnapshot(SnapshotReader in) {
+        for (String key = in.nextKey(); key != null; key = in.nextKey()) {
+            if (states.put(key, new AtomicLong(in.getLong())) == null) keyExpiry.onNewKey(key, in.getCreatedAt());
+        }
+    }
+
+    private AtomicLong cellFor(String key, long now) {
+        AtomicLong cell = states.get(key);
+        if (cell != null) {
+            return cell;
+        }
+
+        return states.computeIfAbsent(key, id -> {
+            keyExpiry.onNewKey(id, now);
+            return new AtomicLong(FRESH_STATE);
+        });
+    }
+
+    private EvictionResult evictIfFresh(String key, long now, boolean force) {
+        AtomicLong cell = states.get(key);
+        if (cell == null) return EvictionResult.ABSENT;
+
+        long state = cell.get();
+        if (state == EVICTED) return EvictionResult.ABSENT;
+        if (!force && !freshness.isFresh(state, now)) return EvictionResult.RETAINED;
+        if (!cell.compareAndSet(state, EVICTED)) return EvictionResult.RETAINED;
+
+        states.remove(key, cell);
+        return EvictionResult.EVICTED;
+    }
+}
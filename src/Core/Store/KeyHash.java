@@ -0,0 +1,25 @@
+package Core.Store;
+
+public final class KeyHash {
+    private KeyHash() {
+    }
+
+    // 64-bit FNV-1a over the UTF-16 chars followed by the murmur3 finalizer. Allocation free.
+    public static long hash64(CharSequence key) {
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001B3L;
+        }
+        return mix(hash);
+    }
+
+    public static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
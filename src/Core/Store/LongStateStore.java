@@ -0,0 +1,66 @@
+package Core.Store;
+
+import Core.Resolver.KeySink;
+import Core.Snapshot.SnapshotReader;
+import Core.Snapshot.SnapshotWriter;
+import Core.Snapshot.Snapshottable;
+
+/*
+ * Per-key state for limiters whose whole state fits in one long (CAS token bucket, CAS fixed window).
+ *
+ * Limiters never get hold of the state cell itself: they hand the store a pure Transition and the store
+ * runs the read / compute / CAS loop wherever the long actually lives (a map entry, an off-heap slot).
+ * A key that has never been seen starts at FRESH_STATE, so every encoding must treat 0 as "fresh".
+ * Long.MIN_VALUE is reserved by the stores to mark evicted state and must never be produced.
+ */
+public interface LongStateStore extends Snapshottable {
+    long FRESH_STATE = 0L;
+
+    @FunctionalInterface
+    interface Transition {
+        // Returns the next state, or `state` itself to leave it untouched (no write happens then).
+        long next(long state, long now, long argument);
+    }
+
+    @FunctionalInterface
+    interface Freshness {
+        // True when the state is equivalent to FRESH_STATE at `now`, so the key can be dropped.
+        boolean isFresh(long state, long now);
+    }
+
+    @FunctionalInterface
+    interface Factory {
+        // ttlInMs: upper bound for an untouched key to become fresh.
+        LongStateStore create(long ttlInMs, Freshness freshness);
+    }
+
+    // Applies the transition atomically and returns the state it was applied to, so the caller can tell
+    // what was decided by re-running the (pure) transition on it.
+    long apply(String key, long now, long argument, Transition transition);
+
+    // Same as apply on keys.key(index). Stores that address keys by hash override it to take the hash the
+    // resolver already has instead of computing it again.
+    default long apply(KeySink keys, int index, long now, long argument, Transition transition) {
+        return apply(keys.key(index), now, argument, transition);
+    }
+
+    // Incremental idle-key eviction, called from the request path.
+    void tick(long now);
+
+    // Access hint for frequency based eviction policies.
+    default void recordAccess(String key) {
+    }
+
+    long size();
+
+    long getEvictionCount();
+
+    // Stores whose state lives elsewhere (a remote server) have nothing to checkpoint.
+    @Override
+    default void writeSnapshot(SnapshotWriter out, long changedSince) {
+    }
+
+    @Override
+    default void readSnapshot(SnapshotReader in) {
+    }
+}
@@ -0,0 +1,459 @@
+package Core.Store;
+
+import Core.Resolver.KeySink;
+import Core.Snapshot.SnapshotReader;
+import Core.Snapshot.SnapshotWriter;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ * Open addressing table in direct memory: 16 bytes per slot (64-bit key fingerprint + state word), sized
+ * for a 0.75 load factor, i.e. ~21 bytes per tracked key and no per-key objects for the GC to trace.
+ *
+ * Keys are never stored, only their 64-bit hash, so two keys colliding on all 64 bits share a state. At
+ * 50M keys the odds of any such pair are below 1e-4, and the only effect is two keys sharing one limit.
+ *
+ * Lookups and state updates are lock free (VarHandle CAS on the buffer). Claiming or freeing a slot takes
+ * the segment's lock, which only happens for a new key or an eviction. Linear probing is bounded by
+ * MAX_PROBES; a key that finds no slot within that distance is charged to one shared overflow state, so a
+ * full table degrades into a common limit for the newcomers rather than failing open.
+ *
+ * Idle keys are found by walking the slots, paced so that a full pass takes about one ttl, a chunk at a
+ * time from the request path. An evicted slot gets the EVICTED state before it is freed, so updaters
+ * still holding it notice and look the key up again. Freeing leaves no tombstone: under the segment lock
+ * the keys after the slot that probed past it are shifted back into the gap (each frozen with EVICTED
+ * while it moves, like an evicted one), until the gap reaches an empty slot. Lookups therefore still stop
+ * at the first empty slot however many keys have come and gone; a lock-free lookup that races a shift
+ * and misses falls back to claim(), which looks again under the lock. TOMBSTONE only comes in with
+ * snapshots of older stores and is treated as an occupied slot with no key.
+ *
+ * Snapshots are page images of PAGE_SLOTS slots. Every write flags its page, so a delta checkpoint only
+ * copies the pages written since the previous one, and restoring into a store of the same size is a bulk
+ * copy per page.
+ */
+public class OffHeapLongStateStore implements LongStateStore {
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    private static final VarHandle FLAGS = MethodHandles.arrayElementVarHandle(byte[].class);
+
+    private static final long EMPTY = 0L;
+    private static final long TOMBSTONE = 1L;
+    private static final long EVICTED = Long.MIN_VALUE;
+    private static final int SLOT_BYTES = 16;
+    private static final int STATE_OFFSET = 8;
+    private static final double LOAD_FACTOR = 0.75;
+    private static final int SEGMENT_COUNT = 16;
+    private static final int MIN_SEGMENT_SLOTS = 64;
+    private static final int MAX_SEGMENT_SLOTS = Integer.MAX_VALUE / SLOT_BYTES;
+    private static final int MAX_PROBES = 1024;
+    private static final int SWEEP_CHUNK = 1024;
+    private static final int MAX_SLOTS_PER_SWEEP = 4096;
+    private static final long MIN_PASS_IN_MS = 1000;
+    private static final int PAGE_SLOTS = 4096;
+    private static final int END_OF_PAGES = -1;
+
+    private final ByteBuffer[] segments;
+    private final ReentrantLock[] locks;
+    private final byte[][] dirtyPages;
+    private final int segmentBits;
+    private final int slotsPerSegment;
+    private final long slotCount;
+    private final long passInMs;
+    private final Freshness freshness;
+
+    private final AtomicLong overflow = new AtomicLong(FRESH_STATE);
+    private final AtomicLong size = new AtomicLong();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder overflowRequests = new LongAdder();
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+    private volatile long nextSweepAt = Long.MIN_VALUE;
+    private long passStartedAt = Long.MIN_VALUE;
+    private long sweepCursor;
+
+    public OffHeapLongStateStore(long maxKeys, long ttlInMs, Freshness freshness) {
+        int segmentCount = SEGMENT_COUNT;
+        long slotsNeeded = (long) Math.ceil(maxKeys / LOAD_FACTOR);
+        while (slotsNeeded / segmentCount > MAX_SEGMENT_SLOTS) {
+            segmentCount <<= 1;
+        }
+
+        this.segmentBits = Integer.numberOfTrailingZeros(segmentCount);
+        this.slotsPerSegment = (int) Math.max(MIN_SEGMENT_SLOTS, (slotsNeeded + segmentCount - 1) / segmentCount);
+        this.slotCount = (long) slotsPerSegment * segmentCount;
+        this.passInMs = Math.max(MIN_PASS_IN_MS, ttlInMs);
+        this.freshness = freshness;
+
+        this.segments = new ByteBuffer[segmentCount];
+        this.locks = new ReentrantLock[segmentCount];
+        this.dirtyPages = new byte[segmentCount][];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = ByteBuffer.allocateDirect(slotsPerSegment * SLOT_BYTES).order(ByteOrder.nativeOrder());
+            locks[i] = new ReentrantLock();
+            dirtyPages[i] = new byte[(slotsPerSegment + PAGE_SLOTS - 1) / PAGE_SLOTS];
+        }
+    }
+
+    public static Factory factory(long maxKeys) {
+        return (ttlInMs, freshness) -> new OffHeapLongStateStore(maxKeys, ttlInMs, freshness);
+    }
+
+    @Override
+    public long apply(String key, long now, long argument, Transition transition) {
+        return applyToFingerprint(fingerprint(KeyHash.hash64(key)), now, argument, transition);
+    }
+
+    @Override
+    public long apply(KeySink keys, int index, long now, long argument, Transition transition) {
+        return applyToFingerprint(fingerprint(keys.hash(index)), now, argument, transition);
+    }
+
+    private long applyToFingerprint(long fingerprint, long now, long argument, Transition transition) {
+        int segmentIndex = segmentOf(fingerprint);
+        ByteBuffer segment = segments[segmentIndex];
+        int slot = find(segment, fingerprint);
+
+        while (true) {
+            if (slot < 0) slot = claim(fingerprint);
+            if (slot < 0) return applyToOverflow(now, argument, transition);
+
+            int stateOffset = slot * SLOT_BYTES + STATE_OFFSET;
+            long state = (long) LONGS.getVolatile(segment, stateOffset);
+            if (state == EVICTED) {
+                // evicted under us: claim() retires the slot and starts the key over
+                slot = -1;
+                continue;
+            }
+            if ((long) LONGS.getVolatile(segment, slot * SLOT_BYTES) != fingerprint) {
+                slot = find(segment, fingerprint);
+                continue;
+            }
+
+            long next = transition.next(state, now, argument);
+            if (next == state) {
+                return state;
+            }
+            if (LONGS.compareAndSet(segment, stateOffset, state, next)) {
+                markDirty(segmentIndex, slot);
+                return state;
+            }
+        }
+    }
+
+    @Override
+    public void tick(long now) {
+        if (now < nextSweepAt) return;
+        if (!sweeping.compareAndSet(false, true)) return;
+
+        try {
+            sweep(now);
+        } finally {
+            sweeping.set(false);
+        }
+    }
+
+    @Override
+    public long size() {
+        return size.get();
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    public long getOverflowCount() {
+        return overflowRequests.sum();
+    }
+
+    public long capacity() {
+        return slotCount;
+    }
+
+    public long getMemoryInBytes() {
+        return slotCount * SLOT_BYTES;
+    }
+
+    // Slots a lookup of `key` reads before it finds the key or an empty slot; MAX_PROBES if neither.
+    public int probeLength(String key) {
+        long fingerprint = fingerprint(KeyHash.hash64(key));
+        ByteBuffer segment = segments[segmentOf(fingerprint)];
+        int slot = homeSlot(fingerprint);
+
+        for (int probe = 1; probe <= MAX_PROBES; probe++) {
+            long stored = (long) LONGS.getVolatile(segment, slot * SLOT_BYTES);
+            if (stored == fingerprint || stored == EMPTY) return probe;
+            if (++slot == slotsPerSegment) slot = 0;
+        }
+        return MAX_PROBES;
+    }
+
+    // Pages are copied slot by slot with the reads a lookup does. A page's flag is cleared before it is
+    // copied, so a write racing the copy flags it again for the next checkpoint.
+    @Override
+    public void writeSnapshot(SnapshotWriter out, long changedSince) {
+        boolean full = changedSince == Long.MIN_VALUE;
+        out.putInt(segments.length);
+        out.putInt(slotsPerSegment);
+        out.putLong(overflow.get());
+
+        for (int segmentIndex = 0; segmentIndex < segments.length; segmentIndex++) {
+            ByteBuffer segment = segments[segmentIndex];
+            byte[] pages = dirtyPages[segmentIndex];
+
+            for (int page = 0; page < pages.length; page++) {
+                boolean dirty = FLAGS.compareAndSet(pages, page, (byte) 1, (byte) 0);
+                if (!dirty && !full) continue;
+
+                int first = page * PAGE_SLOTS;
+                int count = Math.min(PAGE_SLOTS, slotsPerSegment - first);
+                out.putInt(segmentIndex);
+                out.putInt(page);
+                ByteBuffer image = out.reserve(count * SLOT_BYTES);
+                for (int slot = first; slot < first + count; slot++) {
+                    image.putLong((long) LONGS.getVolatile(segment, slot * SLOT_BYTES));
+                    image.putLong((long) LONGS.getVolatile(segment, slot * SLOT_BYTES + STATE_OFFSET));
+                }
+            }
+        }
+        out.putInt(END_OF_PAGES);
+    }
+
+    // Page images go back in place when the store has the snapshot's layout, otherwise key by key.
+    @Override
+    public void readSnapshot(SnapshotReader in) {
+        int segmentCount = in.getInt();
+        int snapshotSlotsPerSegment = in.getInt();
+        overflow.set(in.getLong());
+        boolean sameLayout = segmentCount == segments.length && snapshotSlotsPerSegment == slotsPerSegment
+                && ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN;
+
+        for (int segmentIndex = in.getInt(); segmentIndex != END_OF_PAGES; segmentIndex = in.getInt()) {
+            int first = in.getInt() * PAGE_SLOTS;
+            int count = Math.min(PAGE_SLOTS, snapshotSlotsPerSegment - first);
+            ByteBuffer image = in.read(count * SLOT_BYTES);
+
+            if (sameLayout) {
+                segments[segmentIndex].put(first * SLOT_BYTES, image, 0, count * SLOT_BYTES);
+            } else {
+                for (int i = 0; i < count; i++) {
+                    restoreSlot(image.getLong(), image.getLong());
+                }
+            }
+        }
+
+        retireEvictedSlots();
+    }
+
+    private int find(ByteBuffer segment, long fingerprint) {
+        int slot = homeSlot(fingerprint);
+
+        for (int probe = 0; probe < MAX_PROBES; probe++) {
+            long stored = (long) LONGS.getVolatile(segment, slot * SLOT_BYTES);
+            if (stored == fingerprint) return slot;
+            if (stored == EMPTY) return -1;
+            if (++slot == slotsPerSegment) slot = 0;
+        }
+
+        return -1;
+    }
+
+    private int claim(long fingerprint) {
+        int segmentIndex = segmentOf(fingerprint);
+        ByteBuffer segment = segments[segmentIndex];
+        ReentrantLock lock = locks[segmentIndex];
+
+        lock.lock();
+        try {
+            int slot = homeSlot(fingerprint);
+            int free = -1;
+
+            for (int probe = 0; probe < MAX_PROBES && probe < slotsPerSegment; probe++) {
+                long stored = (long) LONGS.getVolatile(segment, slot * SLOT_BYTES);
+                if (stored == fingerprint && !retireIfEvicted(segmentIndex, slot)) return slot;
+                if (stored == EMPTY || stored == TOMBSTONE || stored == fingerprint) {
+                    if (free < 0) free = slot;
+                    if (stored == EMPTY) break;
+                }
+                if (++slot == slotsPerSegment) slot = 0;
+            }
+
+            if (free >= 0) {
+                // state first: a lock-free reader that sees the fingerprint must see a fresh state
+                LONGS.setVolatile(segment, free * SLOT_BYTES + STATE_OFFSET, FRESH_STATE);
+                LONGS.setRelease(segment, free * SLOT_BYTES, fingerprint);
+                size.incrementAndGet();
+                markDirty(segmentIndex, free);
+            }
+            return free;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Caller holds the segment lock.
+    private boolean retireIfEvicted(int segmentIndex, int slot) {
+        ByteBuffer segment = segments[segmentIndex];
+        if ((long) LONGS.getVolatile(segment, slot * SLOT_BYTES + STATE_OFFSET) != EVICTED) return false;
+
+        free(segmentIndex, slot);
+        size.decrementAndGet();
+        return true;
+    }
+
+    // Caller holds the segment lock; the slot's state is EVICTED, or it holds no key. Backward shift
+    // deletion: every later key of the run whose home is not between the gap and itself moves into the gap,
+    // leaving its own slot as the next gap, and the last gap becomes empty.
+    private void free(int segmentIndex, int slot) {
+        ByteBuffer segment = segments[segmentIndex];
+        int gap = slot;
+
+        for (int next = slot, probe = 1; probe < slotsPerSegment; probe++) {
+            if (++next == slotsPerSegment) next = 0;
+            long fingerprint = (long) LONGS.getVolatile(segment, next * SLOT_BYTES);
+            if (fingerprint == EMPTY) break;
+            if (fingerprint == TOMBSTONE || distance(homeSlot(fingerprint), next) < distance(gap, next)) continue;
+
+            long state = freeze(segment, next);
+            // being evicted: it is freed once the evictor gets the lock
+            if (state == EVICTED) continue;
+
+            // fingerprint first: a lock-free reader that sees the moved state must not see the old key
+            LONGS.setRelease(segment, gap * SLOT_BYTES, fingerprint);
+            LONGS.setVolatile(segment, gap * SLOT_BYTES + STATE_OFFSET, state);
+            markDirty(segmentIndex, gap);
+            gap = next;
+        }
+
+        LONGS.setRelease(segment, gap * SLOT_BYTES, EMPTY);
+        markDirty(segmentIndex, gap);
+    }
+
+    // Swaps the state to EVICTED so lock-free updaters let go of the slot; returns what it was.
+    private static long freeze(ByteBuffer segment, int slot) {
+        int stateOffset = slot * SLOT_BYTES + STATE_OFFSET;
+        while (true) {
+            long state = (long) LONGS.getVolatile(segment, stateOffset);
+            if (state == EVICTED || LONGS.compareAndSet(segment, stateOffset, state, EVICTED)) return state;
+        }
+    }
+
+    private int distance(int from, int to) {
+        return to >= from ? to - from : to + slotsPerSegment - from;
+    }
+
+    private long applyToOverflow(long now, long argument, Transition transition) {
+        overflowRequests.increment();
+
+        while (true) {
+            long state = overflow.get();
+            long next = transition.next(state, now, argument);
+            if (next == state || overflow.compareAndSet(state, next)) {
+                return state;
+            }
+        }
+    }
+
+    private void sweep(long now) {
+        if (passStartedAt == Long.MIN_VALUE || (sweepCursor == slotCount && now - passStartedAt >= passInMs)) {
+            passStartedAt = now;
+            sweepCursor = 0;
+        }
+
+        long elapsed = Math.min(Math.max(0, now - passStartedAt), passInMs);
+        long target = elapsed * slotCount / passInMs;
+
+        for (int budget = MAX_SLOTS_PER_SWEEP; sweepCursor < target && budget > 0; budget--) {
+            int segmentIndex = (int) (sweepCursor / slotsPerSegment);
+            // a freed slot may have a later key shifted into it: look at it again
+            if (!evictIfFresh(segmentIndex, (int) (sweepCursor % slotsPerSegment), now)) sweepCursor++;
+        }
+
+        if (sweepCursor < target) {
+            // behind schedule, the next request carries on
+            return;
+        }
+        nextSweepAt = sweepCursor == slotCount
+                ? passStartedAt + passInMs
+                : passStartedAt + Math.min(sweepCursor + SWEEP_CHUNK, slotCount) * passInMs / slotCount;
+    }
+
+    // True if it freed the slot.
+    private boolean evictIfFresh(int segmentIndex, int slot, long now) {
+        ByteBuffer segment = segments[segmentIndex];
+        long fingerprint = (long) LONGS.getVolatile(segment, slot * SLOT_BYTES);
+        if (fingerprint == EMPTY || fingerprint == TOMBSTONE) return false;
+
+        int stateOffset = slot * SLOT_BYTES + STATE_OFFSET;
+        long state = (long) LONGS.getVolatile(segment, stateOffset);
+        if (state == EVICTED || !freshness.isFresh(state, now)) return false;
+        if (!LONGS.compareAndSet(segment, stateOffset, state, EVICTED)) return false;
+
+        evictions.increment();
+        ReentrantLock lock = locks[segmentIndex];
+        lock.lock();
+        try {
+            // a racing claim() may already have freed (and even reused) the slot
+            return (long) LONGS.getVolatile(segment, slot * SLOT_BYTES) == fingerprint && retireIfEvicted(segmentIndex, slot);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void restoreSlot(long fingerprint, long state) {
+        if (fingerprint == EMPTY || fingerprint == TOMBSTONE || state == EVICTED) return;
+
+        int slot = find(segments[segmentOf(fingerprint)], fingerprint);
+        if (slot < 0) slot = claim(fingerprint);
+        if (slot >= 0) LONGS.setVolatile(segments[segmentOf(fingerprint)], slot * SLOT_BYTES + STATE_OFFSET, state);
+    }
+
+    // After a restore: slots copied mid eviction, and tombstones of older snapshots, are freed, and the
+    // size is counted again. A slot a shift fills is looked at again.
+    private void retireEvictedSlots() {
+        long live = 0;
+        for (int segmentIndex = 0; segmentIndex < segments.length; segmentIndex++) {
+            ByteBuffer segment = segments[segmentIndex];
+            locks[segmentIndex].lock();
+            try {
+                for (int slot = 0; slot < slotsPerSegment; slot++) {
+                    long fingerprint = (long) LONGS.getVolatile(segment, slot * SLOT_BYTES);
+                    if (fingerprint == EMPTY) continue;
+
+                    if (fingerprint == TOMBSTONE || (long) LONGS.getVolatile(segment, slot * SLOT_BYTES + STATE_OFFSET) == EVICTED) {
+                        free(segmentIndex, slot--);
+                    }
+                }
+                for (int slot = 0; slot < slotsPerSegment; slot++) {
+                    if ((long) LONGS.getVolatile(segment, slot * SLOT_BYTES) != EMPTY) live++;
+                }
+            } finally {
+                locks[segmentIndex].unlock();
+            }
+        }
+        size.set(live);
+    }
+
+    private void markDirty(int segmentIndex, int slot) {
+        byte[] pages = dirtyPages[segmentIndex];
+        int page = slot / PAGE_SLOTS;
+        if ((byte) FLAGS.getOpaque(pages, page) == 0) FLAGS.setOpaque(pages, page, (byte) 1);
+    }
+
+    private int segmentOf(long fingerprint) {
+        return (int) (fingerprint >>> (Long.SIZE - segmentBits));
+    }
+
+    private int homeSlot(long fingerprint) {
+        return (int) (((fingerprint & 0xFFFFFFFFL) * slotsPerSegment) >>> 32);
+    }
+
+    private static long fingerprint(long hash) {
+        return hash == EMPTY || hash == TOMBSTONE ? hash + 2 : hash;
+    }
+}
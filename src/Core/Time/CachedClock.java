@@ -0,0 +1,76 @@
+package Core.Time;
+
+import java.io.Closeable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * Coarse clock: millis() is a volatile read of a time that a daemon ticker refreshes from `source` once
+ * per tick, instead of a call into the OS on every request. It lags the real time by up to one tick.
+ *
+ * nanos() is not cached, it reads `source` every time: it is meant for refilling below one millisecond,
+ * which a value that only moves once per tick could not do.
+ *
+ * Until start() (or if the ticker is never started) the time only moves when update() is called.
+ */
+public class CachedClock implements Clock, Closeable {
+    public static final long DEFAULT_TICK_IN_MS = 1;
+
+    private final Clock source;
+    private final long tickInMs;
+    private volatile long millis;
+    private volatile Thread thread;
+    private volatile boolean closed;
+
+    public CachedClock() {
+        this(Clock.system(), DEFAULT_TICK_IN_MS);
+    }
+
+    public CachedClock(Clock source, long tickInMs) {
+        if (tickInMs < 1) throw new IllegalArgumentException("tickInMs must be positive: " + tickInMs);
+
+        this.source = source;
+        this.tickInMs = tickInMs;
+        this.millis = source.millis();
+    }
+
+    // Refreshes the time on a daemon thread, once per tick.
+    public CachedClock start() {
+        Thread ticker = new Thread(this::runUntilClosed, "cached-clock");
+        ticker.setDaemon(true);
+        thread = ticker;
+        ticker.start();
+        return this;
+    }
+
+    @Override
+    public long millis() {
+        return millis;
+    }
+
+    @Override
+    public long nanos() {
+        return source.nanos();
+    }
+
+    // Never moves the time backwards, should the source do so.
+    public void update() {
+        long now = source.millis();
+        if (now > millis) millis = now;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        Thread ticker = thread;
+        if (ticker != null) LockSupport.unpark(ticker);
+    }
+
+    private void runUntilClosed() {
+        long tickInNanos = TimeUnit.MILLISECONDS.toNanos(tickInMs);
+        while (!closed) {
+            update();
+            LockSupport.parkNanos(this, tickInNanos);
+        }
+    }
+}
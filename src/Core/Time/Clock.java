@@ -0,0 +1,22 @@
+package Core.Time;
+
+/*
+ * Source of request timestamps for callers that do not bring their own (see ClockedRateLimiter).
+ *
+ * millis() is epoch milliseconds, the unit every limiter works in. nanos() is epoch nanoseconds for the
+ * limiters that can refill below one millisecond (NanoRateLimiter); only its difference between two calls
+ * is exact, and it may drift from millis() by a few milliseconds over a process' life.
+ */
+public interface Clock {
+    long NANOS_PER_MILLI = 1_000_000L;
+
+    long millis();
+
+    default long nanos() {
+        return millis() * NANOS_PER_MILLI;
+    }
+
+    static Clock system() {
+        return SystemClock.INSTANCE;
+    }
+}
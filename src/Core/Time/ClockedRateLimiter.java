@@ -0,0 +1,68 @@
+package Core.Time;
+
+import Core.NanoRateLimiter;
+import Core.RateLimiter;
+import Core.Request;
+
+import java.util.List;
+
+/*
+ * Takes request times from a Clock rather than from the caller: allowRequestNow(userId, ip) stamps the
+ * request with clock.millis(), which on a CachedClock is one volatile read instead of a call into the OS.
+ *
+ * In nanosecond mode the limiter must be a NanoRateLimiter, and requests are stamped with clock.nanos()
+ * so token intervals below one millisecond refill smoothly.
+ *
+ * Calls that carry their own timestamp go straight to the limiter, so this can stand in for it anywhere.
+ */
+public class ClockedRateLimiter implements RateLimiter {
+    private final RateLimiter delegate;
+    private final NanoRateLimiter nanoDelegate;
+    private final Clock clock;
+
+    public ClockedRateLimiter(RateLimiter delegate, Clock clock) {
+        this(delegate, clock, false);
+    }
+
+    public ClockedRateLimiter(RateLimiter delegate, Clock clock, boolean nanos) {
+        if (nanos && !(delegate instanceof NanoRateLimiter)) {
+            throw new IllegalArgumentException(delegate.getClass().getSimpleName() + " does not take nanosecond timestamps");
+        }
+
+        this.delegate = delegate;
+        this.nanoDelegate = nanos ? (NanoRateLimiter) delegate : null;
+        this.clock = clock;
+    }
+
+    public boolean allowRequestNow(String userId, String ip) {
+        return allowRequestNow(userId, ip, 1);
+    }
+
+    public boolean allowRequestNow(String userId, String ip, int permits) {
+        if (nanoDelegate != null) return nanoDelegate.allowRequestAtNanos(userId, ip, clock.nanos(), permits);
+        return delegate.allowRequest(userId, ip, clock.millis(), permits);
+    }
+
+    @Override
+    public boolean allowRequest(String userId, String ip, long incomingTimestamp, int permits) {
+        return delegate.allowRequest(userId, ip, incomingTimestamp, permits);
+    }
+
+    @Override
+    public boolean[] allowRequests(List<Request> requests) {
+        return delegate.allowRequests(requests);
+    }
+
+    @Override
+    public void releasePermits(String userId, String ip, long incomingTimestamp, int permits) {
+        delegate.releasePermits(userId, ip, incomingTimestamp, permits);
+    }
+
+    public Clock getClock() {
+        return clock;
+    }
+
+    public RateLimiter getDelegate() {
+        return delegate;
+    }
+}
@@ -0,0 +1,46 @@
+package Core.Time;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Clock that only moves when told to, for tests. Starts at START, the first millisecond of a minute, so
+ * windows of up to a minute start with it.
+ */
+public final class ManualClock implements Clock {
+    // 2024-01-01T00:00:00Z
+    public static final long START = 1_704_067_200_000L;
+
+    private final AtomicLong nanos;
+
+    public ManualClock() {
+        this(START);
+    }
+
+    public ManualClock(long millis) {
+        this.nanos = new AtomicLong(millis * NANOS_PER_MILLI);
+    }
+
+    @Override
+    public long millis() {
+        return Math.floorDiv(nanos.get(), NANOS_PER_MILLI);
+    }
+
+    @Override
+    public long nanos() {
+        return nanos.get();
+    }
+
+    public void set(long millis) {
+        nanos.set(millis * NANOS_PER_MILLI);
+    }
+
+    // Both return the new time in milliseconds.
+    public long advance(Duration duration) {
+        return Math.floorDiv(nanos.addAndGet(duration.toNanos()), NANOS_PER_MILLI);
+    }
+
+    public long advanceMillis(long millis) {
+        return advance(Duration.ofMillis(millis));
+    }
+}
@@ -0,0 +1,24 @@
+package Core.Time;
+
+// System.currentTimeMillis(), with nanos() running off System.nanoTime() from when the class was loaded.
+final class SystemClock implements Clock {
+    static final SystemClock INSTANCE = new SystemClock();
+
+    private final long epochNanosAtStart;
+    private final long nanoTimeAtStart;
+
+    private SystemClock() {
+        this.nanoTimeAtStart = System.nanoTime();
+        this.epochNanosAtStart = System.currentTimeMillis() * NANOS_PER_MILLI;
+    }
+
+    @Override
+    public long millis() {
+        return System.currentTimeMillis();
+    }
+
+    @Override
+    public long nanos() {
+        return epochNanosAtStart + (System.nanoTime() - nanoTimeAtStart);
+    }
+}
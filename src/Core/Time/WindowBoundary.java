@@ -0,0 +1,74 @@
+package Core.Time;
+
+import java.time.Instant;
+
+/*
+ * Start of the fixed window a timestamp falls in, remembered for the latest window seen. Timestamps of
+ * that window, nearly all of them, get its start back from two compares instead of a division, and the
+ * Instant for it without allocating one; the division runs once per window, when the first timestamp of
+ * the next one comes in.
+ *
+ * Only moves forward: a late timestamp of an older window is computed, not cached, so stragglers cannot
+ * make it flip back and forth.
+ */
+public final class WindowBoundary {
+    private final long windowSizeInMs;
+    private volatile Window latest;
+
+    public WindowBoundary(long windowSizeInMs) {
+        if (windowSizeInMs < 1) throw new IllegalArgumentException("windowSizeInMs must be positive: " + windowSizeInMs);
+
+        this.windowSizeInMs = windowSizeInMs;
+        this.latest = new Window(0, 0, 0);
+    }
+
+    public long startOf(long timestamp) {
+        return windowOf(timestamp).start;
+    }
+
+    public Window windowOf(long timestamp) {
+        Window window = latest;
+        if (timestamp >= window.start && timestamp < window.end) return window;
+
+        long index = timestamp / windowSizeInMs;
+        Window next = new Window(index, index * windowSizeInMs, windowSizeInMs);
+        if (next.start > window.start) latest = next;
+        return next;
+    }
+
+    public long getWindowSizeInMs() {
+        return windowSizeInMs;
+    }
+
+    public static final class Window {
+        private final long index;
+        private final long start;
+        private final long end;
+        private final Instant startInstant;
+
+        private Window(long index, long start, long windowSizeInMs) {
+            this.index = index;
+            this.start = start;
+            this.end = start + windowSizeInMs;
+            this.startInstant = Instant.ofEpochMilli(start);
+        }
+
+        // timestamp / windowSizeInMs
+        public long getIndex() {
+            return index;
+        }
+
+        public long getStart() {
+            return start;
+        }
+
+        // Exclusive.
+        public long getEnd() {
+            return end;
+        }
+
+        public Instant getStartInstant() {
+            return startInstant;
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package Core;
+
+import Core.Resolver.KeySink;
+
+/*
+ * A KeyLimiter that can tell when a key will next have room, so a caller can wait for exactly that long
+ * instead of polling (see Blocking.BlockingRateLimiter).
+ */
+public interface WaitableKeyLimiter extends KeyLimiter {
+    long NEVER = Long.MAX_VALUE;
+
+    // Earliest time at or after `now` at which tryAcquire(key, time, permits) would succeed if nothing else
+    // is charged to the key meanwhile, or NEVER if `permits` exceeds the key's limit. Clock rounding can
+    // make it a millisecond early; a caller that then fails to acquire asks again.
+    long nextPermitAt(String key, long now, int permits);
+
+    // When every key of a request has room: the latest of their nextPermitAt.
+    static long nextPermitAt(WaitableKeyLimiter limiter, KeySink keys, long now, int permits) {
+        long next = now;
+        for (int i = 0; i < keys.size(); i++) {
+            next = Math.max(next, limiter.nextPermitAt(keys.key(i), now, permits));
+        }
+        return next;
+    }
+}
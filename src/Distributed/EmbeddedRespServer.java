@@ -0,0 +1,296 @@
+package Distributed;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/*
+ * In-process stand-in for a Redis server, so the distributed limiters can be run and tested offline.
+ *
+ * Speaks the RESP2 subset they use: PING, GET, SET [PX], INCRBY, PEXPIRE, DEL, DBSIZE, FLUSHALL,
+ * SCRIPT LOAD|FLUSH, EVAL and EVALSHA. As on Redis, every command and every script runs alone (here
+ * under the server's monitor), which is what makes the scripts atomic. Expiry is checked lazily on access.
+ *
+ * There is no Lua interpreter. Each script in RateLimitScripts is registered with a Java body that makes
+ * the same redis.call()s, and is looked up by the SHA1 of its source, as SCRIPT LOAD / EVALSHA would do.
+ * Any other script is refused. RedisScriptsIntegrationTest checks each body against its Lua on a real Redis.
+ */
+public class EmbeddedRespServer implements Closeable {
+
+    @FunctionalInterface
+    public interface Commands {
+        // redis.call() for script bodies; runs under the lock the script already holds.
+        Object call(String... command);
+    }
+
+    @FunctionalInterface
+    public interface ScriptBody {
+        Object run(Commands redis, List<String> keys, List<String> args);
+    }
+
+    private final ServerSocket serverSocket;
+    private final ExecutorService connections = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "embedded-resp-server");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Set<RespConnection> openConnections = ConcurrentHashMap.newKeySet();
+
+    private final Map<String, Entry> data = new HashMap<>();
+    private final Map<String, ScriptBody> knownScripts = new HashMap<>();
+    private final Set<String> loadedScripts = new HashSet<>();
+
+    public EmbeddedRespServer() throws IOException {
+        this(0);
+    }
+
+    // Port 0 picks a free one, see getPort().
+    public EmbeddedRespServer(int port) throws IOException {
+        this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+
+        register(RateLimitScripts.TOKEN_BUCKET, EmbeddedRespServer::tokenBucket);
+        register(RateLimitScripts.SLIDING_WINDOW_COUNTER, EmbeddedRespServer::slidingWindowCounter);
+        register(RateLimitScripts.COMPARE_AND_SET, EmbeddedRespServer::compareAndSet);
+
+        connections.execute(this::accept);
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public synchronized void register(RespScript script, ScriptBody body) {
+        knownScripts.put(script.getSha(), body);
+    }
+
+    // Runs one command as if a client had sent it.
+    public synchronized Object execute(String... command) {
+        try {
+            return dispatch(command);
+        } catch (RespException e) {
+            return e;
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            return new RespException("ERR syntax error in " + command[0]);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        for (RespConnection connection : openConnections) {
+            connection.close();
+        }
+        connections.shutdownNow();
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                RespConnection connection = new RespConnection(socket);
+                openConnections.add(connection);
+                connections.execute(() -> serve(connection));
+            } catch (IOException e) {
+                // closed, or a client that went away during the handshake
+            }
+        }
+    }
+
+    private void serve(RespConnection connection) {
+        try (connection) {
+            while (true) {
+                Object request = connection.read();
+                connection.writeReply(request instanceof List ? execute(toCommand((List<?>) request))
+                        : new RespException("ERR expected an array of bulk strings"));
+                if (!connection.hasBufferedInput()) connection.flush();
+            }
+        } catch (IOException e) {
+            // client disconnected
+        } finally {
+            openConnections.remove(connection);
+        }
+    }
+
+    private Object dispatch(String... command) {
+        long now = System.currentTimeMillis();
+
+        switch (command[0].toUpperCase()) {
+            case "PING":
+                return "PONG";
+            case "GET":
+                return value(command[1], now);
+            case "SET": {
+                long expireAt = command.length > 3 && command[3].equalsIgnoreCase("PX") ? now + Long.parseLong(command[4]) : 0;
+                data.put(command[1], new Entry(command[2], expireAt));
+                return "OK";
+            }
+            case "INCRBY": {
+                String current = value(command[1], now);
+                long updated = (current == null ? 0 : parseInteger(current)) + Long.parseLong(command[2]);
+                Entry entry = data.get(command[1]);
+                data.put(command[1], new Entry(Long.toString(updated), current == null ? 0 : entry.expireAt));
+                return updated;
+            }
+            case "PEXPIRE": {
+                if (value(command[1], now) == null) return 0L;
+                data.put(command[1], new Entry(data.get(command[1]).value, now + Long.parseLong(command[2])));
+                return 1L;
+            }
+            case "DEL": {
+                long removed = 0;
+                for (int i = 1; i < command.length; i++) {
+                    if (value(command[i], now) != null && data.remove(command[i]) != null) removed++;
+                }
+                return removed;
+            }
+            case "DBSIZE":
+                data.values().removeIf(entry -> entry.isExpired(now));
+                return (long) data.size();
+            case "FLUSHALL":
+                data.clear();
+                return "OK";
+            case "SCRIPT":
+                return script(command);
+            case "EVAL":
+                return run(load(command[1]), command);
+            case "EVALSHA":
+                if (!loadedScripts.contains(command[1])) return new RespException("NOSCRIPT No matching script. Please use EVAL.");
+                return run(command[1], command);
+            default:
+                return new RespException("ERR unknown command '" + command[0] + "'");
+        }
+    }
+
+    private Object script(String... command) {
+        switch (command[1].toUpperCase()) {
+            case "LOAD":
+                return load(command[2]);
+            case "FLUSH":
+                loadedScripts.clear();
+                return "OK";
+            default:
+                return new RespException("ERR unknown SCRIPT subcommand '" + command[1] + "'");
+        }
+    }
+
+    private String load(String source) {
+        String sha = RespScript.sha1(source);
+        if (!knownScripts.containsKey(sha)) throw new RespException("ERR the embedded server only runs registered scripts");
+
+        loadedScripts.add(sha);
+        return sha;
+    }
+
+    // EVAL / EVALSHA <script> <numkeys> <key>... <arg>...
+    private Object run(String sha, String... command) {
+        int keyCount = Integer.parseInt(command[2]);
+        List<String> keys = List.of(command).subList(3, 3 + keyCount);
+        List<String> args = List.of(command).subList(3 + keyCount, command.length);
+
+        return knownScripts.get(sha).run(call -> RespClient.unwrap(dispatch(call)), keys, args);
+    }
+
+    private String value(String key, long now) {
+        Entry entry = data.get(key);
+        if (entry == null) return null;
+        if (entry.isExpired(now)) {
+            data.remove(key);
+            return null;
+        }
+        return entry.value;
+    }
+
+    private static long parseInteger(String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new RespException("ERR value is not an integer or out of range");
+        }
+    }
+
+    private static String[] toCommand(List<?> request) {
+        List<String> command = new ArrayList<>(request.size());
+        for (Object argument : request) {
+            command.add(String.valueOf(argument));
+        }
+        return command.toArray(new String[0]);
+    }
+
+    // RateLimitScripts.TOKEN_BUCKET
+    private static Object tokenBucket(Commands redis, List<String> keys, List<String> args) {
+        long now = Long.parseLong(args.get(0));
+        long interval = Long.parseLong(args.get(1));
+        long burst = Long.parseLong(args.get(2));
+        long cost = interval * Long.parseLong(args.get(3));
+
+        long[] next = new long[keys.size()];
+        for (int i = 0; i < keys.size(); i++) {
+            String stored = (String) redis.call("GET", keys.get(i));
+            long emptyAt = Math.max(stored == null ? 0 : Long.parseLong(stored), now - burst);
+            if (now - emptyAt < cost) return 0L;
+            next[i] = emptyAt + cost;
+        }
+        for (int i = 0; i < keys.size(); i++) {
+            long ttl = (next[i] + burst - now + 999) / 1000;
+            redis.call("SET", keys.get(i), Long.toString(next[i]), "PX", Long.toString(ttl));
+        }
+        return 1L;
+    }
+
+    // RateLimitScripts.SLIDING_WINDOW_COUNTER
+    private static Object slidingWindowCounter(Commands redis, List<String> keys, List<String> args) {
+        long now = Long.parseLong(args.get(0));
+        long window = Long.parseLong(args.get(1));
+        long limit = Long.parseLong(args.get(2));
+        long permits = Long.parseLong(args.get(3));
+        long current = Math.floorDiv(now, window);
+        double overlap = 1 - (double) (now - current * window) / window;
+
+        for (String key : keys) {
+            String count = (String) redis.call("GET", key + ":" + current);
+            String previous = (String) redis.call("GET", key + ":" + (current - 1));
+            long counted = count == null ? 0 : Long.parseLong(count);
+            long previouslyCounted = previous == null ? 0 : Long.parseLong(previous);
+            if (overlap * previouslyCounted + counted + permits > limit) return 0L;
+        }
+        for (String key : keys) {
+            redis.call("INCRBY", key + ":" + current, Long.toString(permits));
+            redis.call("PEXPIRE", key + ":" + current, Long.toString(2 * window));
+        }
+        return 1L;
+    }
+
+    // RateLimitScripts.COMPARE_AND_SET
+    private static Object compareAndSet(Commands redis, List<String> keys, List<String> args) {
+        String stored = (String) redis.call("GET", keys.get(0));
+        if (!(stored == null ? "0" : stored).equals(args.get(0))) return 0L;
+
+        redis.call("SET", keys.get(0), args.get(1), "PX", args.get(2));
+        return 1L;
+    }
+
+    private static final class Entry {
+        private final String value;
+        private final long expireAt;
+
+        private Entry(String value, long expireAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+
+        private boolean isExpired(long now) {
+            return expireAt != 0 && expireAt <= now;
+        }
+    }
+}
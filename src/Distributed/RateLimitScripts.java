@@ -0,0 +1,63 @@
+package Distributed;
+
+/*
+ * Server-side scripts of the distributed limiters. Each one checks every key of a request before it writes
+ * any, so a request is admitted on all of its keys or on none, in a single round trip.
+ *
+ * Numbers travel as decimal strings. Lua only has doubles, so every value is kept an integer below 2^53:
+ * token bucket times are microseconds, not nanoseconds.
+ *
+ * All keys of one script call must live on one server. On Redis Cluster that means a shared hash tag in
+ * the key prefix.
+ */
+public final class RateLimitScripts {
+    private RateLimitScripts() {
+    }
+
+    // KEYS: the request's buckets. ARGV: now (us), token interval (us), burst (us), permits.
+    // Each key holds the time its bucket is empty at, like AtomicTokenBucketRateLimiter, and expires once
+    // the bucket would be full again.
+    public static final RespScript TOKEN_BUCKET = new RespScript(String.join("\n",
+            "local now = tonumber(ARGV[1])",
+            "local interval = tonumber(ARGV[2])",
+            "local burst = tonumber(ARGV[3])",
+            "local cost = interval * tonumber(ARGV[4])",
+            "local next = {}",
+            "for i, key in ipairs(KEYS) do",
+            "  local empty_at = math.max(tonumber(redis.call('GET', key) or 0), now - burst)",
+            "  if now - empty_at < cost then return 0 end",
+            "  next[i] = empty_at + cost",
+            "end",
+            "for i, key in ipairs(KEYS) do",
+            "  redis.call('SET', key, string.format('%.0f', next[i]), 'PX', math.ceil((next[i] + burst - now) / 1000))",
+            "end",
+            "return 1"));
+
+    // KEYS: the request's counters. ARGV: now (ms), window (ms), limit, permits.
+    // Per key one counter per window, "<key>:<window index>"; the previous one is weighted by how much of
+    // it still overlaps the sliding window, like SlidingWindowCounterRateLimiter.
+    public static final RespScript SLIDING_WINDOW_COUNTER = new RespScript(String.join("\n",
+            "local now = tonumber(ARGV[1])",
+            "local window = tonumber(ARGV[2])",
+            "local limit = tonumber(ARGV[3])",
+            "local permits = tonumber(ARGV[4])",
+            "local current = math.floor(now / window)",
+            "local overlap = 1 - (now - current * window) / window",
+            "for i, key in ipairs(KEYS) do",
+            "  local count = tonumber(redis.call('GET', key .. ':' .. current) or 0)",
+            "  local previous = tonumber(redis.call('GET', key .. ':' .. (current - 1)) or 0)",
+            "  if overlap * previous + count + permits > limit then return 0 end",
+            "end",
+            "for i, key in ipairs(KEYS) do",
+            "  redis.call('INCRBY', key .. ':' .. current, permits)",
+            "  redis.call('PEXPIRE', key .. ':' .. current, 2 * window)",
+            "end",
+            "return 1"));
+
+    // KEYS: one state key. ARGV: expected state, next state, ttl (ms). A missing key reads as "0".
+    // The compare-and-set behind RedisLongStateStore.
+    public static final RespScript COMPARE_AND_SET = new RespScript(String.join("\n",
+            "if (redis.call('GET', KEYS[1]) or '0') ~= ARGV[1] then return 0 end",
+            "redis.call('SET', KEYS[1], ARGV[2], 'PX', ARGV[3])",
+            "return 1"));
+}
@@ -0,0 +1,27 @@
+package Distributed;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Helpers shared by the scripted limiters.
+final class RedisBatch {
+    private RedisBatch() {
+    }
+
+    static List<String> prefixed(String keyPrefix, List<String> keys) {
+        List<String> prefixed = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            prefixed.add(keyPrefix + key);
+        }
+        return prefixed;
+    }
+
+    // Script replies to decisions; an error reply fails the whole batch, like a single call would.
+    static boolean[] decisions(List<Object> replies) {
+        boolean[] allowed = new boolean[replies.size()];
+        for (int i = 0; i < allowed.length; i++) {
+            allowed[i] = Long.valueOf(1).equals(RespClient.unwrap(replies.get(i)));
+        }
+        return allowed;
+    }
+}
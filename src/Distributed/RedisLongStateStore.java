@@ -0,0 +1,67 @@
+package Distributed;
+
+import Core.Store.LongStateStore;
+
+import java.util.List;
+
+/*
+ * LongStateStore kept on a Redis server, so the atomic limiters (AtomicTokenBucketRateLimiter,
+ * AtomicFixedWindowRateLimiter, LeakyBucketRateLimiter) can share their state between processes unchanged.
+ *
+ * The transition stays in Java: apply reads the state, computes the next one and writes it with the
+ * COMPARE_AND_SET script, retrying when another node got there first. That is two round trips per key;
+ * RedisTokenBucketRateLimiter and RedisSlidingWindowCounterRateLimiter run their whole decision on the
+ * server in one.
+ *
+ * Idle keys are left to Redis expiry (the factory's ttl), so tick has nothing to do.
+ */
+public class RedisLongStateStore implements LongStateStore {
+    private final RespClient client;
+    private final String keyPrefix;
+    private final String ttlInMs;
+
+    public RedisLongStateStore(RespClient client, String keyPrefix, long ttlInMs) {
+        this.client = client;
+        this.keyPrefix = keyPrefix;
+        this.ttlInMs = Long.toString(Math.max(1, ttlInMs));
+    }
+
+    public static LongStateStore.Factory factory(RespClient client, String keyPrefix) {
+        return (ttlInMs, freshness) -> new RedisLongStateStore(client, keyPrefix, ttlInMs);
+    }
+
+    @Override
+    public long apply(String key, long now, long argument, Transition transition) {
+        String redisKey = keyPrefix + key;
+
+        while (true) {
+            Object stored = client.call("GET", redisKey);
+            long state = stored == null ? FRESH_STATE : Long.parseLong((String) stored);
+            long next = transition.next(state, now, argument);
+            if (next == state) {
+                return state;
+            }
+
+            Object swapped = client.evalSha(RateLimitScripts.COMPARE_AND_SET, List.of(redisKey),
+                    Long.toString(state), Long.toString(next), ttlInMs);
+            if (Long.valueOf(1).equals(swapped)) {
+                return state;
+            }
+        }
+    }
+
+    @Override
+    public void tick(long now) {
+    }
+
+    // Every key on the server, not only this store's.
+    @Override
+    public long size() {
+        return (Long) client.call("DBSIZE");
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return 0;
+    }
+}
@@ -0,0 +1,59 @@
+package Distributed;
+
+import Core.RateLimiter;
+import Core.Request;
+import Core.Resolver.KeyResolver;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Sliding window counter shared by every node pointing at the same Redis server and key prefix.
+ *
+ * Same estimate as SlidingWindowCounterRateLimiter (current window plus the overlapping part of the
+ * previous one), decided server side by RateLimitScripts.SLIDING_WINDOW_COUNTER: one EVALSHA per request,
+ * all keys checked before any is counted. Window counters expire on their own after two windows.
+ */
+public class RedisSlidingWindowCounterRateLimiter implements RateLimiter {
+    private final RespClient client;
+    private final String keyPrefix;
+    private final KeyResolver resolver;
+    private final String requestLimit;
+    private final String windowSizeInMs;
+
+    public RedisSlidingWindowCounterRateLimiter(RespClient client, String keyPrefix, int requestLimit, long windowSizeInSeconds, KeyResolver resolver) {
+        this.client = client;
+        this.keyPrefix = keyPrefix;
+        this.resolver = resolver;
+        this.requestLimit = Integer.toString(requestLimit);
+        this.windowSizeInMs = Long.toString(windowSizeInSeconds * 1000);
+    }
+
+    @Override
+    public boolean allowRequest(String userId, String ip, long incomingRequestTimestamp, int permits) {
+        RateLimiter.checkPermits(permits);
+        return Long.valueOf(1).equals(client.evalSha(RateLimitScripts.SLIDING_WINDOW_COUNTER, keys(userId, ip),
+                arguments(incomingRequestTimestamp, permits)));
+    }
+
+    // One round trip for the whole batch; the server still decides the requests one by one, in list order.
+    @Override
+    public boolean[] allowRequests(List<Request> requests) {
+        List<List<String>> keys = new ArrayList<>(requests.size());
+        List<String[]> arguments = new ArrayList<>(requests.size());
+        for (Request request : requests) {
+            keys.add(keys(request.getUserId(), request.getIp()));
+            arguments.add(arguments(request.getTimestamp(), request.getPermits()));
+        }
+
+        return RedisBatch.decisions(client.evalSha(RateLimitScripts.SLIDING_WINDOW_COUNTER, keys, arguments));
+    }
+
+    private List<String> keys(String userId, String ip) {
+        return RedisBatch.prefixed(keyPrefix, resolver.resolveKey(userId, ip));
+    }
+
+    private String[] arguments(long incomingRequestTimestamp, int permits) {
+        return new String[]{Long.toString(incomingRequestTimestamp), windowSizeInMs, requestLimit, Integer.toString(permits)};
+    }
+}
@@ -0,0 +1,73 @@
+package Distributed;
+
+import Core.RateLimiter;
+import Core.Request;
+import Core.Resolver.KeyResolver;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Token bucket shared by every node pointing at the same Redis server and key prefix.
+ *
+ * The decision runs server side (RateLimitScripts.TOKEN_BUCKET): one EVALSHA per request checks and
+ * charges all of its keys atomically, so there is nothing to roll back. State per key is the "bucket empty
+ * at" time of AtomicTokenBucketRateLimiter, in microseconds.
+ *
+ * The rate is whole tokens per second, from 1 up to one per microsecond, the server side resolution; the
+ * interval between tokens is that many microseconds, rounded down.
+ *
+ * Timestamps come from the caller as everywhere else, so nodes need reasonably synchronised clocks.
+ */
+public class RedisTokenBucketRateLimiter implements RateLimiter {
+    private static final long MICROS_PER_MILLI = 1_000L;
+    private static final long MICROS_PER_SECOND = 1_000_000L;
+
+    private final RespClient client;
+    private final String keyPrefix;
+    private final KeyResolver resolver;
+    private final String tokenIntervalInMicros;
+    private final String burstInMicros;
+
+    public RedisTokenBucketRateLimiter(RespClient client, String keyPrefix, KeyResolver resolver, long tokenRefillRateInSec, int capacity) {
+        if (tokenRefillRateInSec < 1 || tokenRefillRateInSec > MICROS_PER_SECOND) {
+            throw new IllegalArgumentException("tokenRefillRateInSec must be in [1, " + MICROS_PER_SECOND + "]: " + tokenRefillRateInSec);
+        }
+        long tokenInterval = MICROS_PER_SECOND / tokenRefillRateInSec;
+
+        this.client = client;
+        this.keyPrefix = keyPrefix;
+        this.resolver = resolver;
+        this.tokenIntervalInMicros = Long.toString(tokenInterval);
+        this.burstInMicros = Long.toString(capacity * tokenInterval);
+    }
+
+    @Override
+    public boolean allowRequest(String userId, String ip, long incomingRequestTimestamp, int permits) {
+        RateLimiter.checkPermits(permits);
+        return Long.valueOf(1).equals(client.evalSha(RateLimitScripts.TOKEN_BUCKET, keys(userId, ip),
+                arguments(incomingRequestTimestamp, permits)));
+    }
+
+    // One round trip for the whole batch; the server still decides the requests one by one, in list order.
+    @Override
+    public boolean[] allowRequests(List<Request> requests) {
+        List<List<String>> keys = new ArrayList<>(requests.size());
+        List<String[]> arguments = new ArrayList<>(requests.size());
+        for (Request request : requests) {
+            keys.add(keys(request.getUserId(), request.getIp()));
+            arguments.add(arguments(request.getTimestamp(), request.getPermits()));
+        }
+
+        return RedisBatch.decisions(client.evalSha(RateLimitScripts.TOKEN_BUCKET, keys, arguments));
+    }
+
+    private List<String> keys(String userId, String ip) {
+        return RedisBatch.prefixed(keyPrefix, resolver.resolveKey(userId, ip));
+    }
+
+    private String[] arguments(long incomingRequestTimestamp, int permits) {
+        return new String[]{Long.toString(incomingRequestTimestamp * MICROS_PER_MILLI), tokenIntervalInMicros,
+                burstInMicros, Integer.toString(permits)};
+    }
+}
@@ -0,0 +1,167 @@
+package Distributed;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+/*
+ * Minimal Redis (RESP2) client, just what the distributed limiters need.
+ *
+ * Connections are pooled. A caller holds one for a whole pipeline and writes every command before it reads
+ * any reply, so a batch costs one round trip whatever its size. Scripts go out as EVALSHA; they are loaded
+ * on first use, and loaded again when the server answers NOSCRIPT (restart, SCRIPT FLUSH). Only the
+ * commands that got NOSCRIPT are sent again, since those never ran.
+ *
+ * I/O failures surface as UncheckedIOException and drop the connection; error replies are RespExceptions.
+ */
+public class RespClient implements Closeable {
+    public static final int DEFAULT_POOL_SIZE = 8;
+    public static final int DEFAULT_TIMEOUT_IN_MS = 1000;
+
+    private final InetSocketAddress address;
+    private final int timeoutInMs;
+    private final Semaphore slots;
+    private final BlockingQueue<RespConnection> idle;
+    private final Set<String> loadedScripts = ConcurrentHashMap.newKeySet();
+    private volatile boolean closed;
+
+    public RespClient(String host, int port) {
+        this(host, port, DEFAULT_POOL_SIZE, DEFAULT_TIMEOUT_IN_MS);
+    }
+
+    public RespClient(String host, int port, int poolSize, int timeoutInMs) {
+        if (poolSize < 1) throw new IllegalArgumentException("poolSize must be positive: " + poolSize);
+
+        this.address = new InetSocketAddress(host, port);
+        this.timeoutInMs = timeoutInMs;
+        this.slots = new Semaphore(poolSize);
+        this.idle = new ArrayBlockingQueue<>(poolSize);
+    }
+
+    // Runs one command, throwing its error reply if it has one.
+    public Object call(String... command) {
+        return unwrap(pipeline(List.<String[]>of(command)).get(0));
+    }
+
+    // Replies in command order; error replies are returned, not thrown.
+    public List<Object> pipeline(List<String[]> commands) {
+        slots.acquireUninterruptibly();
+        RespConnection connection = null;
+        try {
+            connection = connection();
+            for (String[] command : commands) {
+                connection.writeCommand(command);
+            }
+            connection.flush();
+
+            List<Object> replies = new ArrayList<>(commands.size());
+            for (int i = 0; i < commands.size(); i++) {
+                replies.add(connection.read());
+            }
+
+            idle.offer(connection);
+            connection = null;
+            return replies;
+        } catch (IOException e) {
+            throw new UncheckedIOException("redis at " + address + ": " + e.getMessage(), e);
+        } finally {
+            if (connection != null) closeQuietly(connection);
+            slots.release();
+        }
+    }
+
+    public Object evalSha(RespScript script, List<String> keys, String... args) {
+        return unwrap(evalSha(script, List.of(keys), List.<String[]>of(args)).get(0));
+    }
+
+    // One EVALSHA per entry of `keys` / `args`, pipelined.
+    public List<Object> evalSha(RespScript script, List<List<String>> keys, List<String[]> args) {
+        load(script);
+
+        List<String[]> commands = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            commands.add(evalShaCommand(script, keys.get(i), args.get(i)));
+        }
+
+        List<Object> replies = pipeline(commands);
+        List<Integer> notRun = new ArrayList<>();
+        for (int i = 0; i < replies.size(); i++) {
+            if (replies.get(i) instanceof RespException && ((RespException) replies.get(i)).isNoScript()) notRun.add(i);
+        }
+        if (notRun.isEmpty()) return replies;
+
+        loadedScripts.remove(script.getSha());
+        load(script);
+        List<String[]> retries = new ArrayList<>(notRun.size());
+        for (int i : notRun) {
+            retries.add(commands.get(i));
+        }
+        List<Object> retried = pipeline(retries);
+        for (int n = 0; n < notRun.size(); n++) {
+            replies.set(notRun.get(n), retried.get(n));
+        }
+        return replies;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        RespConnection connection;
+        while ((connection = idle.poll()) != null) {
+            closeQuietly(connection);
+        }
+    }
+
+    static Object unwrap(Object reply) {
+        if (reply instanceof RespException) throw (RespException) reply;
+        return reply;
+    }
+
+    private void load(RespScript script) {
+        if (loadedScripts.contains(script.getSha())) return;
+
+        Object sha = call("SCRIPT", "LOAD", script.getSource());
+        if (!script.getSha().equals(sha)) throw new RespException("SCRIPT LOAD returned " + sha + ", expected " + script.getSha());
+        loadedScripts.add(script.getSha());
+    }
+
+    private RespConnection connection() throws IOException {
+        if (closed) throw new IOException("client closed");
+
+        RespConnection connection = idle.poll();
+        if (connection != null) return connection;
+
+        Socket socket = new Socket();
+        socket.connect(address, timeoutInMs);
+        socket.setSoTimeout(timeoutInMs);
+        return new RespConnection(socket);
+    }
+
+    private static String[] evalShaCommand(RespScript script, List<String> keys, String[] args) {
+        String[] command = new String[3 + keys.size() + args.length];
+        command[0] = "EVALSHA";
+        command[1] = script.getSha();
+        command[2] = Integer.toString(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            command[3 + i] = keys.get(i);
+        }
+        System.arraycopy(args, 0, command, 3 + keys.size(), args.length);
+        return command;
+    }
+
+    private static void closeQuietly(RespConnection connection) {
+        try {
+            connection.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
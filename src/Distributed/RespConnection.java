@@ -0,0 +1,142 @@
+package Distributed;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * One socket speaking RESP2 in both directions: RespClient writes commands and reads replies with it, the
+ * embedded server the other way round.
+ *
+ * Replies decode to String (simple and bulk strings), Long (integers), null (nil), List<Object> (arrays)
+ * and RespException (errors, returned rather than thrown so one failed command in a pipeline does not
+ * hide the replies after it).
+ */
+final class RespConnection implements Closeable {
+    private static final byte[] CRLF = {'\r', '\n'};
+
+    private final Socket socket;
+    private final InputStream in;
+    private final OutputStream out;
+
+    RespConnection(Socket socket) throws IOException {
+        this.socket = socket;
+        this.socket.setTcpNoDelay(true);
+        this.in = new BufferedInputStream(socket.getInputStream());
+        this.out = new BufferedOutputStream(socket.getOutputStream());
+    }
+
+    // Buffered: nothing is sent until flush().
+    void writeCommand(String... command) throws IOException {
+        out.write('*');
+        writeNumber(command.length);
+        for (String argument : command) {
+            writeBulk(argument);
+        }
+    }
+
+    void writeReply(Object reply) throws IOException {
+        if (reply == null) {
+            out.write('$');
+            writeNumber(-1);
+        } else if (reply instanceof Long) {
+            out.write(':');
+            writeNumber((Long) reply);
+        } else if (reply instanceof RespException) {
+            out.write('-');
+            out.write(((RespException) reply).getMessage().getBytes(StandardCharsets.UTF_8));
+            out.write(CRLF);
+        } else if (reply instanceof List) {
+            List<?> items = (List<?>) reply;
+            out.write('*');
+            writeNumber(items.size());
+            for (Object item : items) {
+                writeReply(item);
+            }
+        } else {
+            writeBulk(reply.toString());
+        }
+    }
+
+    void flush() throws IOException {
+        out.flush();
+    }
+
+    // True while more of a pipeline is already here, so the server can hold its replies back until the end.
+    boolean hasBufferedInput() throws IOException {
+        return in.available() > 0;
+    }
+
+    Object read() throws IOException {
+        int type = in.read();
+        if (type < 0) throw new EOFException("connection closed");
+
+        switch (type) {
+            case '+':
+                return readLine();
+            case '-':
+                return new RespException(readLine());
+            case ':':
+                return Long.parseLong(readLine());
+            case '$':
+                return readBulk(Integer.parseInt(readLine()));
+            case '*':
+                int count = Integer.parseInt(readLine());
+                if (count < 0) return null;
+                List<Object> items = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    items.add(read());
+                }
+                return items;
+            default:
+                throw new IOException("unexpected RESP type byte: " + type);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+
+    private void writeBulk(String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.write('$');
+        writeNumber(bytes.length);
+        out.write(bytes);
+        out.write(CRLF);
+    }
+
+    private void writeNumber(long value) throws IOException {
+        out.write(Long.toString(value).getBytes(StandardCharsets.US_ASCII));
+        out.write(CRLF);
+    }
+
+    private String readBulk(int length) throws IOException {
+        if (length < 0) return null;
+
+        byte[] bytes = in.readNBytes(length);
+        if (bytes.length < length || in.read() != '\r' || in.read() != '\n') throw new EOFException("truncated bulk string");
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private String readLine() throws IOException {
+        StringBuilder line = new StringBuilder();
+        while (true) {
+            int c = in.read();
+            if (c < 0) throw new EOFException("connection closed");
+            if (c == '\r') {
+                if (in.read() != '\n') throw new IOException("malformed RESP line");
+                return line.toString();
+            }
+            line.append((char) c);
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package Distributed;
+
+// An error reply from the server, e.g. "NOSCRIPT No matching script".
+public class RespException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public RespException(String message) {
+        super(message);
+    }
+
+    public boolean isNoScript() {
+        return getMessage().startsWith("NOSCRIPT");
+    }
+}
@@ -0,0 +1,37 @@
+package Distributed;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+// A Lua script and its SHA1, the name it is invoked by (EVALSHA) once loaded on the server.
+public final class RespScript {
+    private final String source;
+    private final String sha;
+
+    public RespScript(String source) {
+        this.source = source;
+        this.sha = sha1(source);
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public String getSha() {
+        return sha;
+    }
+
+    static String sha1(String source) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(source.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is required of every JVM", e);
+        }
+    }
+}
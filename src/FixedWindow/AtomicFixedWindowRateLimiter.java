@@ -0,0 +1,247 @@
+package FixedWindow;
+
+import Core.Batch.RequestBatch;
+import Core.Eviction.EvictionConfig;
+import Core.KeyLimiter;
+import Core.KeyRelease;
+import Core.LimitOverrides;
+import Core.RateLimiter;
+import Core.Request;
+import Core.Resolver.KeyResolver;
+import Core.Resolver.KeySink;
+import Core.Snapshot.SnapshotReader;
+import Core.Snapshot.SnapshotWriter;
+import Core.Snapshot.Snapshottable;
+import Core.Store.ConcurrentMapLongStateStore;
+import Core.Store.LongStateStore;
+import Core.Time.WindowBoundary;
+
+import java.util.List;
+
+/*
+ * Fixed window counter without bin locks. Each key is one long holding the window index in the high
+ * 32 bits and the request count in the low 32 bits, updated with a CAS by the LongStateStore.
+ *
+ * A full window is rejected without writing anything, so a flood of denied requests costs one volatile
+ * read each. Admission and the roll over to a new window are the same single CAS.
+ *
+ * A key's limit (the configured one or its override) travels in the transition argument next to what the
+ * request asks for, so the transition stays pure and the store never needs the key.
+ */
+public class AtomicFixedWindowRateLimiter implements RateLimiter, KeyLimiter, Snapshottable {
+    private static final int COUNT_BITS = 32;
+    private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+
+    private final int requestLimit;
+    private final long windowSizeInMs;
+    private final WindowBoundary windows;
+    private final KeyResolver keyResolver;
+    private final ThreadLocal<KeySink> keySinks = ThreadLocal.withInitial(KeySink::new);
+    private final LongStateStore userRequests;
+    private final LongStateStore.Transition countRequests = this::countRequests;
+    private final LongStateStore.Transition countPermits = this::countPermits;
+    private final LongStateStore.Transition uncountRequests = this::uncountRequests;
+    private final KeyRelease releaseKey = this::release;
+    private final LimitOverrides limitOverrides = new LimitOverrides();
+
+    public AtomicFixedWindowRateLimiter(int requestLimit, long windowSizeInSeconds, KeyResolver resolver) {
+        this(requestLimit, windowSizeInSeconds, resolver, EvictionConfig.DEFAULT);
+    }
+
+    public AtomicFixedWindowRateLimiter(int requestLimit, long windowSizeInSeconds, KeyResolver resolver, EvictionConfig evictionConfig) {
+        this(requestLimit, windowSizeInSeconds, resolver, ConcurrentMapLongStateStore.factory(evictionConfig));
+    }
+
+    public AtomicFixedWindowRateLimiter(int requestLimit, long windowSizeInSeconds, KeyResolver resolver, LongStateStore.Factory storeFactory) {
+        this.requestLimit = requestLimit;
+        this.windowSizeInMs = windowSizeInSeconds * 1000L;
+        this.windows = new WindowBoundary(windowSizeInMs);
+        this.keyResolver = resolver;
+        this.userRequests = storeFactory.create(windowSizeInMs, this::isExpired);
+    }
+
+    @Override
+    public boolean allowRequest(String userId, String ip, long incomingTimestamp, int permits) {
+        RateLimiter.checkPermits(permits);
+        userRequests.tick(incomingTimestamp);
+        KeySink keys = keySinks.get();
+        keyResolver.resolveKeys(userId, ip, keys);
+
+        for (int i = 0; i < keys.size(); i++) {
+            String key = keys.key(i);
+            userRequests.recordAccess(key);
+            int limit = limitOverrides.limitFor(key, requestLimit);
+            long state = userRequests.apply(keys, i, incomingTimestamp, argument(limit, permits), countPermits);
+            if (admitted(state, incomingTimestamp, limit, permits, 1) == 0) {
+                KeyRelease.rollback(keys, i, incomingTimestamp, permits, releaseKey);
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    public boolean tryAcquire(String key, long incomingTimestamp) {
+        return tryAcquire(key, incomingTimestamp, 1);
+    }
+
+    @Override
+    public boolean tryAcquire(String key, long incomingTimestamp, int permits) {
+        int limit = limitOverrides.limitFor(key, requestLimit);
+        long state = userRequests.apply(key, incomingTimestamp, argument(limit, permits), countPermits);
+        return admitted(state, incomingTimestamp, limit, permits, 1) > 0;
+    }
+
+    // Single-permit requests of a key sharing a timestamp are admitted with a single CAS. Weighted ones take
+    // a CAS each: the argument has room for the limit and either a count or a weight, not all three.
+    @Override
+    public boolean[] allowRequests(List<Request> requests) {
+        userRequests.tick(RequestBatch.latestTimestamp(requests));
+
+        return RequestBatch.admit(requests, keyResolver, (key, batch, indices, count, allowed) -> {
+            userRequests.recordAccess(key);
+            int limit = limitOverrides.limitFor(key, requestLimit);
+            for (int run = 0; run < count; ) {
+                Request first = batch.get(indices[run]);
+                long incomingTimestamp = first.getTimestamp();
+                int permits = first.getPermits();
+                if (permits != 1) {
+                    long state = userRequests.apply(key, incomingTimestamp, argument(limit, permits), countPermits);
+                    if (admitted(state, incomingTimestamp, limit, permits, 1) == 0) {
+                        allowed[indices[run]] = false;
+                    }
+                    run++;
+                    continue;
+                }
+
+                int end = run + 1;
+                while (end < count && sameTimestampAndWeight(first, batch.get(indices[end]))) end++;
+
+                long state = userRequests.apply(key, incomingTimestamp, argument(limit, end - run), countRequests);
+                for (int i = run + (int) admitted(state, incomingTimestamp, limit, 1, end - run); i < end; i++) {
+                    allowed[indices[i]] = false;
+                }
+                run = end;
+            }
+        }, releaseKey);
+    }
+
+    // Per-key replacements for the configured limit; see LimitOverrides.
+    public LimitOverrides getLimitOverrides() {
+        return limitOverrides;
+    }
+
+    public LongStateStore getStateStore() {
+        return userRequests;
+    }
+
+    // Counts as many of the single-permit requests as the window has room for.
+    private long countRequests(long state, long incomingTimestamp, long argument) {
+        return count(state, incomingTimestamp, limitOf(argument), 1, amountOf(argument));
+    }
+
+    // Counts one request of the given weight if it fits.
+    private long countPermits(long state, long incomingTimestamp, long argument) {
+        return count(state, incomingTimestamp, limitOf(argument), amountOf(argument), 1);
+    }
+
+    private long count(long state, long incomingTimestamp, int limit, long permits, long requests) {
+        long admitted = admitted(state, incomingTimestamp, limit, permits, requests);
+        if (admitted == 0) {
+            return state;
+        }
+
+        long counted = admitted * permits;
+        return inWindow(state, incomingTimestamp) ? state + counted : pack(currentWindowIndex(incomingTimestamp), counted);
+    }
+
+    @Override
+    public void writeSnapshot(SnapshotWriter out, long changedSince) {
+        userRequests.writeSnapshot(out, changedSince);
+    }
+
+    @Override
+    public void readSnapshot(SnapshotReader in) {
+        userRequests.readSnapshot(in);
+    }
+
+    @Override
+    public void tick(long now) {
+        userRequests.tick(now);
+    }
+
+    @Override
+    public void recordAccess(String key) {
+        userRequests.recordAccess(key);
+    }
+
+    @Override
+    public void releasePermits(String userId, String ip, long incomingTimestamp, int permits) {
+        KeySink keys = keySinks.get();
+        keyResolver.resolveKeys(userId, ip, keys);
+        KeyRelease.rollback(keys, keys.size(), incomingTimestamp, permits, releaseKey);
+    }
+
+    @Override
+    public void release(String key, long incomingTimestamp, int permits) {
+        userRequests.apply(key, incomingTimestamp, permits, uncountRequests);
+    }
+
+    // Takes the permits off the window they were counted in; a window emptied that way is simply fresh.
+    private long uncountRequests(long state, long incomingTimestamp, long permits) {
+        if (!inWindow(state, incomingTimestamp)) {
+            return state;
+        }
+
+        return count(state) <= permits ? LongStateStore.FRESH_STATE : state - permits;
+    }
+
+    private long admitted(long state, long incomingTimestamp, int limit, long permits, long requests) {
+        long room = inWindow(state, incomingTimestamp) ? limit - count(state) : limit;
+        return Math.max(0, Math.min(requests, room / permits));
+    }
+
+    // True until the stored window ends, so a late request from an older window is charged to the window
+    // the key has already moved to. Multiplying instead of dividing keeps the division off the hot path.
+    private boolean inWindow(long state, long incomingTimestamp) {
+        return incomingTimestamp < (Integer.toUnsignedLong(windowIndex(state)) + 1) * windowSizeInMs;
+    }
+
+    private int currentWindowIndex(long incomingTimestamp) {
+        return (int) windows.windowOf(incomingTimestamp).getIndex();
+    }
+
+    private boolean isExpired(long state, long now) {
+        return (Integer.toUnsignedLong(windowIndex(state)) + 1) * windowSizeInMs <= now;
+    }
+
+    private static boolean sameTimestampAndWeight(Request first, Request other) {
+        return other.getTimestamp() == first.getTimestamp() && other.getPermits() == first.getPermits();
+    }
+
+    // Transition argument: the key's limit in the high 32 bits; in the low 32 the number of requests for
+    // countRequests, the permits of the one request for countPermits.
+    private static long argument(int limit, int amount) {
+        return ((long) limit << 32) | amount;
+    }
+
+    private static int limitOf(long argument) {
+        return (int) (argument >>> 32);
+    }
+
+    private static long amountOf(long argument) {
+        return argument & 0xFFFFFFFFL;
+    }
+
+    private static long pack(int windowIndex, long count) {
+        return ((long) windowIndex << COUNT_BITS) | count;
+    }
+
+    private static int windowIndex(long state) {
+        return (int) (state >>> COUNT_BITS);
+    }
+
+    private static long count(long state) {
+        return state & COUNT_MASK;
+    }
+}
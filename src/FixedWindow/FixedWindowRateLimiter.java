@@ -1,8 +1,23 @@
 package FixedWindow;
 
+import Core.Batch.RequestBatch;
+import Core.Decision;
+import Core.Eviction.EvictionConfig;
+import Core.Eviction.EvictionResult;
+import Core.Eviction.KeyExpiry;
+import Core.KeyRelease;
+import Core.LimitOverrides;
 import Core.RateLimiter;
+import Core.Request;
 import Core.Resolver.KeyResolver;
+import Core.Resolver.KeySink;
+import Core.Snapshot.MapSnapshot;
+import Core.Snapshot.SnapshotReader;
+import Core.Snapshot.SnapshotWriter;
+import Core.Snapshot.Snapshottable;
+import Core.Time.WindowBoundary;
 import Core.UserBucket;
+import Core.WaitableKeyLimiter;
 
 import java.time.Duration;
 import java.time.Instant;
@@ -11,45 +26,207 @@ import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 
-public class FixedWindowRateLimiter implements RateLimiter {
+public class FixedWindowRateLimiter implements RateLimiter, WaitableKeyLimiter, Snapshottable {
 
     private final int requestLimit;
     private final long windowSizeInMs;
+    private final WindowBoundary windows;
     private KeyResolver keyResolver;
+    private final ThreadLocal<KeySink> keySinks = ThreadLocal.withInitial(KeySink::new);
+    private final KeyRelease releaseKey = this::release;
+    private final KeyExpiry keyExpiry;
+    private final LimitOverrides limitOverrides = new LimitOverrides();
     Map<String, UserBucket> userRequests = new ConcurrentHashMap<>();
+    private final MapSnapshot.Codec<UserBucket> snapshotCodec = new MapSnapshot.Codec<>() {
+        @Override
+        public long lastUpdatedAt(UserBucket bucket) {
+            return bucket.getWindowStartTime().toEpochMilli() + windowSizeInMs - 1;
+        }
+
+        @Override
+        public void write(UserBucket bucket, SnapshotWriter out) {
+            out.putLong(bucket.getWindowStartTime().toEpochMilli());
+            out.putInt(bucket.getRequestCount());
+        }
+
+        @Override
+        public UserBucket read(SnapshotReader in) {
+            return new UserBucket(Instant.ofEpochMilli(in.getLong()), in.getInt());
+        }
+    };
 
     public FixedWindowRateLimiter(int requestLimit, long windowSizeInSeconds, KeyResolver resolver) {
+        this(requestLimit, windowSizeInSeconds, resolver, EvictionConfig.DEFAULT);
+    }
+
+    public FixedWindowRateLimiter(int requestLimit, long windowSizeInSeconds, KeyResolver resolver, EvictionConfig evictionConfig) {
         this.requestLimit = requestLimit;
         this.windowSizeInMs = windowSizeInSeconds * 1000L;
+        this.windows = new WindowBoundary(windowSizeInMs);
         this.keyResolver = resolver;
+        this.keyExpiry = new KeyExpiry(evictionConfig, windowSizeInMs, this::evictIfExpired);
     }
 
     @Override
-    public boolean allowRequest(String userId, String ip, long incomingTimestamp) {
-        List<String> keys = keyResolver.resolveKey(userId, ip);
+    public boolean allowRequest(String userId, String ip, long incomingTimestamp, int permits) {
+        return admit(userId, ip, incomingTimestamp, permits, null);
+    }
+
+    // Remaining is what is left of the key's window, reset is the window's end.
+    @Override
+    public boolean allowRequest(String userId, String ip, long incomingTimestamp, int permits, Decision decision) {
+        decision.start(incomingTimestamp);
+        return admit(userId, ip, incomingTimestamp, permits, decision);
+    }
+
+    private boolean admit(String userId, String ip, long incomingTimestamp, int permits, Decision decision) {
+        RateLimiter.checkPermits(permits);
+        keyExpiry.tick(incomingTimestamp);
+        KeySink keys = keySinks.get();
+        keyResolver.resolveKeys(userId, ip, keys);
+        for (int i = 0; i < keys.size(); i++) {
+            String key = keys.key(i);
+            keyExpiry.recordAccess(key);
+            if (!tryAcquire(key, incomingTimestamp, permits, decision)) {
+                KeyRelease.rollback(keys, i, incomingTimestamp, permits, releaseKey);
+                if (decision != null) decision.reject(WaitableKeyLimiter.nextPermitAt(this, keys, incomingTimestamp, permits));
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public boolean tryAcquire(String key, long incomingTimestamp, int permits) {
+        return tryAcquire(key, incomingTimestamp, permits, null);
+    }
+
+    private boolean tryAcquire(String key, long incomingTimestamp, int permits, Decision decision) {
         AtomicBoolean requestAllowed = new AtomicBoolean(true);
-        for (String key: keys) {
-            long currentWindowStart = (incomingTimestamp / windowSizeInMs) * windowSizeInMs;
-            Instant currentWindowStartInstant = Instant.ofEpochMilli(currentWindowStart);
+        int limit = limitOverrides.limitFor(key, requestLimit);
+        WindowBoundary.Window currentWindow = windows.windowOf(incomingTimestamp);
+        Instant currentWindowStartInstant = currentWindow.getStartInstant();
+
+        userRequests.compute(key, (id, bucket) -> {
+            if (bucket == null || !checkValidWindow(bucket.getWindowStartTime(), currentWindowStartInstant)) {
+                if (bucket == null) keyExpiry.onNewKey(id, incomingTimestamp);
+                bucket = new UserBucket(currentWindowStartInstant, 0);
+            }
+
+            if (bucket.getRequestCount() + permits > limit) {
+                requestAllowed.set(false);
+                if (decision != null) decision.recordRejectingKey(limit, Math.max(0, limit - bucket.getRequestCount()), currentWindow.getEnd());
+                return bucket;
+            }
+
+            bucket.setRequestCount(bucket.getRequestCount() + permits);
+            if (decision != null) decision.recordKey(limit, limit - bucket.getRequestCount(), currentWindow.getEnd());
+            return bucket;
+        });
+
+        return requestAllowed.get();
+    }
+
+    // The key's window has room, or the next one will. Read under the bucket's bin lock, since its count is
+    // updated in place.
+    @Override
+    public long nextPermitAt(String key, long now, int permits) {
+        int limit = limitOverrides.limitFor(key, requestLimit);
+        if (permits > limit) return NEVER;
+
+        WindowBoundary.Window currentWindow = windows.windowOf(now);
+        long[] next = {now};
+        userRequests.computeIfPresent(key, (id, bucket) -> {
+            if (bucket.getWindowStartTime().toEpochMilli() == currentWindow.getStart() && bucket.getRequestCount() + permits > limit) {
+                next[0] = currentWindow.getEnd();
+            }
+            return bucket;
+        });
+        return next[0];
+    }
 
+    // One compute per key for the whole batch instead of one per request.
+    @Override
+    public boolean[] allowRequests(List<Request> requests) {
+        keyExpiry.tick(RequestBatch.latestTimestamp(requests));
+
+        return RequestBatch.admit(requests, keyResolver, (key, batch, indices, count, allowed) -> {
+            keyExpiry.recordAccess(key);
+            int limit = limitOverrides.limitFor(key, requestLimit);
             userRequests.compute(key, (id, bucket) -> {
-                if (bucket != null && checkValidWindow(bucket.getWindowStartTime(), currentWindowStartInstant)) {
-                    if (bucket.getRequestCount() >= requestLimit) {
-                        requestAllowed.set(false);
-                        return bucket;
+                for (int i = 0; i < count; i++) {
+                    Request request = batch.get(indices[i]);
+                    long incomingTimestamp = request.getTimestamp();
+                    WindowBoundary.Window currentWindow = windows.windowOf(incomingTimestamp);
+
+                    if (bucket == null || bucket.getWindowStartTime().toEpochMilli() != currentWindow.getStart()) {
+                        if (bucket == null) keyExpiry.onNewKey(id, incomingTimestamp);
+                        bucket = new UserBucket(currentWindow.getStartInstant(), 0);
                     }
 
-                    bucket.setRequestCount(bucket.getRequestCount() + 1);
-                    return bucket;
-                } else {
-                    return new UserBucket(currentWindowStartInstant, 1);
+                    if (bucket.getRequestCount() + request.getPermits() > limit) {
+                        allowed[indices[i]] = false;
+                    } else {
+                        bucket.setRequestCount(bucket.getRequestCount() + request.getPermits());
+                    }
                 }
+                return bucket;
             });
+        }, releaseKey);
+    }
 
-            if (!requestAllowed.get()) break;
-        }
+    // Per-key replacements for the configured limit; see LimitOverrides.
+    public LimitOverrides getLimitOverrides() {
+        return limitOverrides;
+    }
 
-        return requestAllowed.get();
+    public KeyExpiry getKeyExpiry() {
+        return keyExpiry;
+    }
+
+    @Override
+    public void writeSnapshot(SnapshotWriter out, long changedSince) {
+        MapSnapshot.write(userRequests, out, changedSince, snapshotCodec);
+    }
+
+    @Override
+    public void readSnapshot(SnapshotReader in) {
+        MapSnapshot.read(in, userRequests, snapshotCodec, keyExpiry);
+    }
+
+    @Override
+    public void tick(long now) {
+        keyExpiry.tick(now);
+    }
+
+    @Override
+    public void recordAccess(String key) {
+        keyExpiry.recordAccess(key);
+    }
+
+    @Override
+    public void releasePermits(String userId, String ip, long incomingTimestamp, int permits) {
+        KeySink keys = keySinks.get();
+        keyResolver.resolveKeys(userId, ip, keys);
+        KeyRelease.rollback(keys, keys.size(), incomingTimestamp, permits, releaseKey);
+    }
+
+    @Override
+    public void release(String key, long incomingTimestamp, int permits) {
+        long currentWindowStart = windows.startOf(incomingTimestamp);
+
+        userRequests.computeIfPresent(key, (id, bucket) -> {
+            if (bucket.getWindowStartTime().toEpochMilli() == currentWindowStart) {
+                bucket.setRequestCount(Math.max(0, bucket.getRequestCount() - permits));
+            }
+            return bucket;
+        });
+    }
+
+    private EvictionResult evictIfExpired(String key, long now, boolean force) {
+        return KeyExpiry.removeIf(userRequests, key, force,
+                bucket -> bucket.getWindowStartTime().toEpochMilli() + windowSizeInMs <= now);
     }
 
     private boolean checkValidWindow(Instant bucketWindowStart, Instant currentWindowStart) {
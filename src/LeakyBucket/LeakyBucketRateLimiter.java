@@ -0,0 +1,264 @@
+package LeakyBucket;
+
+import Core.Batch.RequestBatch;
+import Core.Eviction.EvictionConfig;
+import Core.KeyLimiter;
+import Core.KeyRelease;
+import Core.LimitOverrides;
+import Core.RateLimiter;
+import Core.Request;
+import Core.Resolver.KeyResolver;
+import Core.Resolver.KeySink;
+import Core.Snapshot.SnapshotReader;
+import Core.Snapshot.SnapshotWriter;
+import Core.Snapshot.Snapshottable;
+import Core.Store.ConcurrentMapLongStateStore;
+import Core.Store.LongStateStore;
+
+import java.util.List;
+
+/*
+ * Leaky bucket as a meter (GCRA): instead of a queue, each key keeps the time at which its bucket will have
+ * drained, in nanoseconds. A request of N permits pours N leak intervals into the bucket, i.e. moves that
+ * time to max(drainedAt, now) + N * interval, and fits if the bucket then holds no more than `capacity`
+ * intervals. Draining is implicit in the clock moving forward, so the update is a single CAS on one long.
+ *
+ * allowRequest polices: a request that fits passes at once. shapeRequest uses the same state but hands back
+ * how long the request has to wait for the water ahead of it to leak, so callers that honour the delay
+ * send on at the leak rate no matter how bursty the traffic they receive.
+ *
+ * The leak rate is whole permits per second, from 1 up to one per nanosecond; the leak interval is that
+ * many nanoseconds, rounded down.
+ *
+ * A state of 0 (drained in 1970) reads as an empty bucket, which is what a new key gets. A key's capacity
+ * (the configured one or its override) travels in the transition argument, so the store never needs the key;
+ * draining does not depend on it, so neither does eviction.
+ */
+public class LeakyBucketRateLimiter implements RateLimiter, KeyLimiter, Snapshottable {
+    public static final long REJECTED = -1L;
+
+    private static final long NANOS_PER_MILLI = 1_000_000L;
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    private final LongStateStore buckets;
+    private final KeyResolver resolver;
+    private final ThreadLocal<KeySink> keySinks = ThreadLocal.withInitial(KeySink::new);
+    private final long leakIntervalInNanos;
+    private final int capacity;
+    private final LongStateStore.Transition pour = this::pour;
+    private final LongStateStore.Transition pourPermits = this::pourPermits;
+    private final LongStateStore.Transition drain = this::drain;
+    private final KeyRelease releaseKey = this::release;
+    private final LimitOverrides limitOverrides = new LimitOverrides();
+
+    public LeakyBucketRateLimiter(KeyResolver resolver, long leakRatePerSec, int capacity) {
+        this(resolver, leakRatePerSec, capacity, EvictionConfig.DEFAULT);
+    }
+
+    public LeakyBucketRateLimiter(KeyResolver resolver, long leakRatePerSec, int capacity, EvictionConfig evictionConfig) {
+        this(resolver, leakRatePerSec, capacity, ConcurrentMapLongStateStore.factory(evictionConfig));
+    }
+
+    public LeakyBucketRateLimiter(KeyResolver resolver, long leakRatePerSec, int capacity, LongStateStore.Factory storeFactory) {
+        if (leakRatePerSec < 1 || leakRatePerSec > NANOS_PER_SECOND) {
+            throw new IllegalArgumentException("leakRatePerSec must be in [1, " + NANOS_PER_SECOND + "]: " + leakRatePerSec);
+        }
+
+        this.resolver = resolver;
+        this.leakIntervalInNanos = NANOS_PER_SECOND / leakRatePerSec;
+        this.capacity = capacity;
+        long capacityInNanos = capacity * leakIntervalInNanos;
+        this.buckets = storeFactory.create((capacityInNanos + NANOS_PER_MILLI - 1) / NANOS_PER_MILLI, this::isEmpty);
+    }
+
+    @Override
+    public boolean allowRequest(String userId, String ip, long incomingTimestamp, int permits) {
+        return shapeRequest(userId, ip, incomingTimestamp, permits) != REJECTED;
+    }
+
+    public long shapeRequest(String userId, String ip, long incomingTimestamp) {
+        return shapeRequest(userId, ip, incomingTimestamp, 1);
+    }
+
+    // Returns the delay in ms before the request may be sent on, or REJECTED if a bucket would overflow.
+    public long shapeRequest(String userId, String ip, long incomingTimestamp, int permits) {
+        RateLimiter.checkPermits(permits);
+        buckets.tick(incomingTimestamp);
+        KeySink keys = keySinks.get();
+        resolver.resolveKeys(userId, ip, keys);
+
+        long delayInMs = 0;
+        for (int i = 0; i < keys.size(); i++) {
+            String key = keys.key(i);
+            buckets.recordAccess(key);
+            int keyCapacity = limitOverrides.limitFor(key, capacity);
+            long drainedAt = buckets.apply(keys, i, incomingTimestamp, argument(keyCapacity, permits), pourPermits);
+            long keyDelayInMs = delayInMs(drainedAt, incomingTimestamp, keyCapacity, permits);
+            if (keyDelayInMs == REJECTED) {
+                KeyRelease.rollback(keys, i, incomingTimestamp, permits, releaseKey);
+                return REJECTED;
+            }
+            delayInMs = Math.max(delayInMs, keyDelayInMs);
+        }
+
+        return delayInMs;
+    }
+
+    public boolean tryAcquire(String key, long incomingTimestamp) {
+        return tryAcquire(key, incomingTimestamp, 1);
+    }
+
+    @Override
+    public boolean tryAcquire(String key, long incomingTimestamp, int permits) {
+        return tryPour(key, incomingTimestamp, permits) != REJECTED;
+    }
+
+    // Allocation free once the key exists.
+    public long tryPour(String key, long incomingTimestamp, int permits) {
+        int keyCapacity = limitOverrides.limitFor(key, capacity);
+        long drainedAt = buckets.apply(key, incomingTimestamp, argument(keyCapacity, permits), pourPermits);
+        return delayInMs(drainedAt, incomingTimestamp, keyCapacity, permits);
+    }
+
+    // Single-permit requests of a key sharing a timestamp are admitted with a single CAS. Weighted ones take
+    // a CAS each: the argument has room for the capacity and either a count or a weight, not all three.
+    @Override
+    public boolean[] allowRequests(List<Request> requests) {
+        buckets.tick(RequestBatch.latestTimestamp(requests));
+
+        return RequestBatch.admit(requests, resolver, (key, batch, indices, count, allowed) -> {
+            buckets.recordAccess(key);
+            int keyCapacity = limitOverrides.limitFor(key, capacity);
+            for (int run = 0; run < count; ) {
+                Request first = batch.get(indices[run]);
+                long incomingTimestamp = first.getTimestamp();
+                int permits = first.getPermits();
+                if (permits != 1) {
+                    long drainedAt = buckets.apply(key, incomingTimestamp, argument(keyCapacity, permits), pourPermits);
+                    if (admitted(drainedAt, incomingTimestamp, keyCapacity, permits, 1) == 0) {
+                        allowed[indices[run]] = false;
+                    }
+                    run++;
+                    continue;
+                }
+
+                int end = run + 1;
+                while (end < count && sameTimestampAndWeight(first, batch.get(indices[end]))) end++;
+
+                long drainedAt = buckets.apply(key, incomingTimestamp, argument(keyCapacity, end - run), pour);
+                for (int i = run + (int) admitted(drainedAt, incomingTimestamp, keyCapacity, 1, end - run); i < end; i++) {
+                    allowed[indices[i]] = false;
+                }
+                run = end;
+            }
+        }, releaseKey);
+    }
+
+    // Per-key replacements for the configured capacity; see LimitOverrides.
+    public LimitOverrides getLimitOverrides() {
+        return limitOverrides;
+    }
+
+    public LongStateStore getStateStore() {
+        return buckets;
+    }
+
+    // Pours in as many of the single-permit requests as the bucket has room for.
+    private long pour(long drainedAt, long incomingTimestamp, long argument) {
+        return pour(drainedAt, incomingTimestamp, capacityOf(argument), 1, amountOf(argument));
+    }
+
+    // Pours in one request of the given weight if it fits.
+    private long pourPermits(long drainedAt, long incomingTimestamp, long argument) {
+        return pour(drainedAt, incomingTimestamp, capacityOf(argument), amountOf(argument), 1);
+    }
+
+    private long pour(long drainedAt, long incomingTimestamp, int keyCapacity, long permits, long requests) {
+        long admitted = admitted(drainedAt, incomingTimestamp, keyCapacity, permits, requests);
+        if (admitted == 0) {
+            return drainedAt;
+        }
+
+        long now = incomingTimestamp * NANOS_PER_MILLI;
+        return Math.max(drainedAt, now) + admitted * permits * leakIntervalInNanos;
+    }
+
+    @Override
+    public void writeSnapshot(SnapshotWriter out, long changedSince) {
+        buckets.writeSnapshot(out, changedSince);
+    }
+
+    @Override
+    public void readSnapshot(SnapshotReader in) {
+        buckets.readSnapshot(in);
+    }
+
+    @Override
+    public void tick(long now) {
+        buckets.tick(now);
+    }
+
+    @Override
+    public void recordAccess(String key) {
+        buckets.recordAccess(key);
+    }
+
+    @Override
+    public void releasePermits(String userId, String ip, long incomingTimestamp, int permits) {
+        KeySink keys = keySinks.get();
+        resolver.resolveKeys(userId, ip, keys);
+        KeyRelease.rollback(keys, keys.size(), incomingTimestamp, permits, releaseKey);
+    }
+
+    @Override
+    public void release(String key, long incomingTimestamp, int permits) {
+        buckets.apply(key, incomingTimestamp, permits, drain);
+    }
+
+    // Takes `permits` intervals back out of the bucket, never below empty.
+    private long drain(long drainedAt, long incomingTimestamp, long permits) {
+        long now = incomingTimestamp * NANOS_PER_MILLI;
+        if (drainedAt <= now) {
+            return drainedAt;
+        }
+
+        return Math.max(now, drainedAt - permits * leakIntervalInNanos);
+    }
+
+    private long admitted(long drainedAt, long incomingTimestamp, int keyCapacity, long permits, long requests) {
+        long now = incomingTimestamp * NANOS_PER_MILLI;
+        long room = Math.max(0, keyCapacity * leakIntervalInNanos - (Math.max(drainedAt, now) - now));
+        return Math.min(requests, room / (permits * leakIntervalInNanos));
+    }
+
+    private long delayInMs(long drainedAt, long incomingTimestamp, int keyCapacity, int permits) {
+        if (admitted(drainedAt, incomingTimestamp, keyCapacity, permits, 1) == 0) {
+            return REJECTED;
+        }
+
+        long waitInNanos = Math.max(0, drainedAt - incomingTimestamp * NANOS_PER_MILLI);
+        return (waitInNanos + NANOS_PER_MILLI - 1) / NANOS_PER_MILLI;
+    }
+
+    private boolean isEmpty(long drainedAt, long now) {
+        return drainedAt <= now * NANOS_PER_MILLI;
+    }
+
+    private static boolean sameTimestampAndWeight(Request first, Request other) {
+        return other.getTimestamp() == first.getTimestamp() && other.getPermits() == first.getPermits();
+    }
+
+    // Transition argument: the key's capacity in the high 32 bits; in the low 32 the number of requests for
+    // pour, the permits of the one request for pourPermits.
+    private static long argument(int keyCapacity, int amount) {
+        return ((long) keyCapacity << 32) | amount;
+    }
+
+    private static int capacityOf(long argument) {
+        return (int) (argument >>> 32);
+    }
+
+    private static long amountOf(long argument) {
+        return argument & 0xFFFFFFFFL;
+    }
+}
@@ -0,0 +1,299 @@
+package Leasing;
+
+import Core.RateLimiter;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Serves requests from permits leased in blocks from another limiter (the authority, typically a
+ * distributed one), so most requests are decided by one local CAS and never reach it.
+ *
+ * A lease belongs to one (userId, ip) pair and is charged to the authority like a single weighted request,
+ * so every key of the pair pays for the whole block up front. Leased permits are only good for
+ * leaseDurationInMs after they were granted: spending them later would let them count against a window
+ * they were not charged to. Unused ones are handed back (RateLimiter.releasePermits) once they expire or
+ * the pair goes idle.
+ *
+ * An idle pair's lease is retired under its monitor before it leaves the map: it takes no more blocks, and
+ * a request still holding it hands the block it was granted straight back, so no permits stay stranded on
+ * a lease nobody can reach.
+ *
+ * Each granted block keeps its own permits and expiry, since a background refill lands while the previous
+ * block still has some left. Requests spend the oldest block first, and a block goes back to the authority
+ * stamped with the time it was granted at, so it is credited to the window it was charged to.
+ *
+ * The size of the next lease follows the rate the pair spent permits at since the last one, between
+ * minLease and maxLease: a hot pair leases enough for a whole lease duration and gets refilled in the
+ * background when a quarter is left, a cold one leases minLease at a time on the request thread and
+ * holds nothing back. When the authority refuses a block the lease shrinks back to minLease and the
+ * request asks for its own permits only, so the last permits of the budget are still usable.
+ */
+public class LeasingRateLimiter implements RateLimiter {
+    public static final int DEFAULT_MIN_LEASE = 1;
+    public static final int DEFAULT_MAX_LEASE = 1000;
+    public static final long DEFAULT_LEASE_DURATION_IN_MS = 1000;
+
+    private final RateLimiter authority;
+    private final int minLease;
+    private final int maxLease;
+    private final long leaseDurationInMs;
+    private final Executor executor;
+    private final Map<String, Map<String, Lease>> leases = new ConcurrentHashMap<>();
+    private final AtomicLong nextSweepAt = new AtomicLong();
+    private final AtomicLong remoteCallCount = new AtomicLong();
+
+    public LeasingRateLimiter(RateLimiter authority) {
+        this(authority, DEFAULT_MIN_LEASE, DEFAULT_MAX_LEASE, DEFAULT_LEASE_DURATION_IN_MS, ForkJoinPool.commonPool());
+    }
+
+    // Background refills and returns run on `executor`.
+    public LeasingRateLimiter(RateLimiter authority, int minLease, int maxLease, long leaseDurationInMs, Executor executor) {
+        if (minLease < 1 || maxLease < minLease) {
+            throw new IllegalArgumentException("lease sizes must satisfy 1 <= minLease <= maxLease: " + minLease + ", " + maxLease);
+        }
+
+        this.authority = authority;
+        this.minLease = minLease;
+        this.maxLease = maxLease;
+        this.leaseDurationInMs = leaseDurationInMs;
+        this.executor = executor;
+    }
+
+    @Override
+    public boolean allowRequest(String userId, String ip, long incomingTimestamp, int permits) {
+        RateLimiter.checkPermits(permits);
+        sweepIfDue(incomingTimestamp);
+        Lease lease = lease(userId, ip, incomingTimestamp);
+        if (lease.lastUsedAt != incomingTimestamp) lease.lastUsedAt = incomingTimestamp;
+
+        long left = lease.take(permits, incomingTimestamp);
+        if (left < 0) {
+            return leaseRemotely(lease, incomingTimestamp, permits);
+        }
+
+        if (lease.size > minLease && left * 4 <= lease.size && lease.refilling.compareAndSet(false, true)) {
+            executor.execute(() -> {
+                try {
+                    leaseRemotely(lease, incomingTimestamp, 0);
+                } finally {
+                    lease.refilling.set(false);
+                }
+            });
+        }
+        return true;
+    }
+
+    // Hands back the permits of every pair idle since `now - leaseDurationInMs` and forgets the pair.
+    // Runs on its own every lease duration; call it with Long.MAX_VALUE to return everything on shutdown.
+    public void returnIdleLeases(long now) {
+        for (Map.Entry<String, Map<String, Lease>> entry : leases.entrySet()) {
+            entry.getValue().values().removeIf(lease -> {
+                if (lease.lastUsedAt > now - leaseDurationInMs) return false;
+                lease.retire();
+                returnPermits(lease, Long.MAX_VALUE);
+                return true;
+            });
+            // under the entry's lock, which lease() creates leases under
+            leases.computeIfPresent(entry.getKey(), (userId, byIp) -> byIp.isEmpty() ? null : byIp);
+        }
+    }
+
+    // Calls made to the authority, background ones included.
+    public long getRemoteCallCount() {
+        return remoteCallCount.get();
+    }
+
+    // Permits leased and not spent yet, across all pairs.
+    public long getLeasedPermitCount() {
+        long leased = 0;
+        for (Map<String, Lease> byIp : leases.values()) {
+            for (Lease lease : byIp.values()) {
+                leased += lease.remaining(Long.MIN_VALUE);
+            }
+        }
+        return leased;
+    }
+
+    // Charges `permits` for the request plus the next lease in one call. permits = 0 is a background refill.
+    private boolean leaseRemotely(Lease lease, long incomingTimestamp, int permits) {
+        returnPermits(lease, incomingTimestamp);
+
+        int size = lease.resize(incomingTimestamp, minLease, maxLease, leaseDurationInMs);
+        int block = Math.max(size, permits);
+        remoteCallCount.incrementAndGet();
+        if (authority.allowRequest(lease.userId, lease.ip, incomingTimestamp, block)) {
+            grant(lease, block, block - permits, incomingTimestamp);
+            return true;
+        }
+
+        lease.size = minLease;
+        if (permits == 0 || block == permits) return false;
+
+        remoteCallCount.incrementAndGet();
+        if (authority.allowRequest(lease.userId, lease.ip, incomingTimestamp, permits)) {
+            grant(lease, permits, 0, incomingTimestamp);
+            return true;
+        }
+        return false;
+    }
+
+    // A lease retired since the call keeps nothing: the permits it would have kept go straight back.
+    private void grant(Lease lease, int charged, int kept, long grantedAt) {
+        if (lease.grant(charged, kept, grantedAt, grantedAt + leaseDurationInMs) || kept == 0) return;
+
+        remoteCallCount.incrementAndGet();
+        executor.execute(() -> authority.releasePermits(lease.userId, lease.ip, grantedAt, kept));
+    }
+
+    // Hands back the unused permits of every block expired by `now`, each at the time it was granted.
+    private void returnPermits(Lease lease, long now) {
+        for (Block block : lease.blocks) {
+            if (now < block.expiresAt) continue;
+
+            long unused = block.permits.getAndSet(0);
+            if (unused == 0) continue;
+
+            lease.returned(unused);
+            remoteCallCount.incrementAndGet();
+            executor.execute(() -> authority.releasePermits(lease.userId, lease.ip, block.grantedAt, (int) unused));
+        }
+    }
+
+    private void sweepIfDue(long now) {
+        long due = nextSweepAt.get();
+        if (now >= due && nextSweepAt.compareAndSet(due, now + leaseDurationInMs)) {
+            executor.execute(() -> returnIdleLeases(now));
+        }
+    }
+
+    private Lease lease(String userId, String ip, long now) {
+        Map<String, Lease> byIp = leases.get(userId);
+        Lease lease = byIp == null ? null : byIp.get(ip);
+        if (lease != null && !lease.retired) return lease;
+
+        // Created under the user's entry lock, so returnIdleLeases cannot drop the map it goes into; a
+        // retired lease is on its way out of the map and is replaced.
+        Lease[] created = new Lease[1];
+        leases.compute(userId, (id, current) -> {
+            Map<String, Lease> map = current != null ? current : new ConcurrentHashMap<>();
+            created[0] = map.compute(ip, (address, old) -> old != null && !old.retired ? old : new Lease(userId, address, now));
+            return map;
+        });
+        return created[0];
+    }
+
+    private static final class Lease {
+        private static final Block[] NO_BLOCKS = new Block[0];
+
+        private final String userId;
+        private final String ip;
+        private final AtomicBoolean refilling = new AtomicBoolean();
+        // Oldest first; replaced whole under the lease's monitor.
+        private volatile Block[] blocks = NO_BLOCKS;
+        private volatile long lastUsedAt;
+        private volatile int size;
+        // Set under the monitor once the lease leaves the map; grant() adds no block after it.
+        private volatile boolean retired;
+
+        // Rate measurement since the last resize, under the lease's monitor.
+        private long measuredSince;
+        private long permitsAtMeasure;
+        private long chargedSinceMeasure;
+
+        private Lease(String userId, String ip, long now) {
+            this.userId = userId;
+            this.ip = ip;
+            this.lastUsedAt = now;
+            this.measuredSince = now;
+        }
+
+        // Takes `count` permits from the oldest live block holding them; returns what is left, or -1.
+        private long take(int count, long now) {
+            Block[] current = blocks;
+            for (Block block : current) {
+                if (now < block.expiresAt && block.take(count)) return remaining(current, now);
+            }
+            return -1;
+        }
+
+        // Permits of the blocks live at `now`.
+        private long remaining(long now) {
+            return remaining(blocks, now);
+        }
+
+        private static long remaining(Block[] blocks, long now) {
+            long remaining = 0;
+            for (Block block : blocks) {
+                if (now < block.expiresAt) remaining += block.permits.get();
+            }
+            return remaining;
+        }
+
+        // Next lease: enough for one lease duration at the rate spent since the last resize, moving
+        // halfway there from the current size so a single burst does not swing it to an extreme.
+        private synchronized int resize(long now, int minLease, int maxLease, long leaseDurationInMs) {
+            long remaining = remaining(now);
+            long spent = Math.max(0, permitsAtMeasure + chargedSinceMeasure - remaining);
+            long target = spent * leaseDurationInMs / Math.max(1, now - measuredSince);
+
+            size = (int) Math.max(minLease, Math.min(maxLease, (size + target + 1) / 2));
+            measuredSince = now;
+            permitsAtMeasure = remaining;
+            chargedSinceMeasure = 0;
+            return size;
+        }
+
+        // Adds a block and drops the spent ones; expired blocks with permits stay until returned. False,
+        // and nothing kept, once the lease is retired.
+        private synchronized boolean grant(int charged, int kept, long grantedAt, long expiresAt) {
+            if (retired) return false;
+
+            chargedSinceMeasure += charged;
+            if (kept == 0) return true;
+
+            Block[] current = blocks;
+            int live = 0;
+            Block[] next = new Block[current.length + 1];
+            for (Block block : current) {
+                if (block.permits.get() > 0) next[live++] = block;
+            }
+            next[live++] = new Block(kept, grantedAt, expiresAt);
+            blocks = live == next.length ? next : Arrays.copyOf(next, live);
+            return true;
+        }
+
+        private synchronized void retire() {
+            retired = true;
+        }
+
+        private synchronized void returned(long unused) {
+            permitsAtMeasure -= unused;
+        }
+    }
+
+    private static final class Block {
+        private final AtomicLong permits;
+        private final long grantedAt;
+        private final long expiresAt;
+
+        private Block(long permits, long grantedAt, long expiresAt) {
+            this.permits = new AtomicLong(permits);
+            this.grantedAt = grantedAt;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean take(int count) {
+            while (true) {
+                long available = permits.get();
+                if (available < count) return false;
+                if (permits.compareAndSet(available, available - count)) return true;
+            }
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package SlidingWindowCounter;
+
+import Core.Snapshot.SnapshotReader;
+import Core.Snapshot.SnapshotWriter;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+ * Counts per key in a fixed `depth` x `width` table of atomic longs. A key adds to one counter per row and
+ * its estimate is the smallest of them, so estimates are never low, and high by more than epsilon times
+ * the table's total count with probability at most 1 - confidence.
+ *
+ * Rows are indexed from the key's 64-bit hash (KeyHash.hash64) by double hashing, so callers that already
+ * hold the hash (KeySink) never hash the key again.
+ */
+public final class CountMinSketch {
+    private static final int SNAPSHOT_CHUNK_LONGS = 4096;
+
+    private final int width;
+    private final int depth;
+    private final int mask;
+    private final AtomicLongArray counters;
+
+    public CountMinSketch(int width, int depth) {
+        if (Integer.bitCount(width) != 1) throw new IllegalArgumentException("width must be a power of two: " + width);
+        if (depth < 1) throw new IllegalArgumentException("depth must be positive: " + depth);
+
+        this.width = width;
+        this.depth = depth;
+        this.mask = width - 1;
+        this.counters = new AtomicLongArray(width * depth);
+    }
+
+    // width = e / epsilon rounded up to a power of two, depth = ln(1 / (1 - confidence)).
+    public static CountMinSketch withError(double epsilon, double confidence) {
+        if (epsilon <= 0 || epsilon >= 1) throw new IllegalArgumentException("epsilon must be in (0, 1): " + epsilon);
+        if (confidence <= 0 || confidence >= 1) throw new IllegalArgumentException("confidence must be in (0, 1): " + confidence);
+
+        int width = Integer.highestOneBit((int) Math.ceil(Math.E / epsilon) - 1) << 1;
+        int depth = (int) Math.ceil(Math.log(1 / (1 - confidence)));
+        return new CountMinSketch(width, depth);
+    }
+
+    // Adds `count` (negative to take it back) and returns the key's estimate after it.
+    public long add(long hash, long count) {
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counters.addAndGet(index(hash, row), count));
+        }
+        return estimate;
+    }
+
+    public long estimate(long hash) {
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counters.get(index(hash, row)));
+        }
+        return estimate;
+    }
+
+    // Not atomic: an add racing it may survive in part.
+    public void clear() {
+        for (int i = 0; i < counters.length(); i++) {
+            counters.set(i, 0);
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public long getMemoryInBytes() {
+        return (long) counters.length() * Long.BYTES;
+    }
+
+    void writeSnapshot(SnapshotWriter out) {
+        for (int first = 0; first < counters.length(); first += SNAPSHOT_CHUNK_LONGS) {
+            int count = Math.min(SNAPSHOT_CHUNK_LONGS, counters.length() - first);
+            ByteBuffer chunk = out.reserve(count * Long.BYTES);
+            for (int i = first; i < first + count; i++) {
+                chunk.putLong(counters.get(i));
+            }
+        }
+    }
+
+    // The snapshot must be of a table with the same dimensions.
+    void readSnapshot(SnapshotReader in) {
+        for (int first = 0; first < counters.length(); first += SNAPSHOT_CHUNK_LONGS) {
+            int count = Math.min(SNAPSHOT_CHUNK_LONGS, counters.length() - first);
+            ByteBuffer chunk = in.read(count * Long.BYTES);
+            for (int i = first; i < first + count; i++) {
+                counters.set(i, chunk.getLong());
+            }
+        }
+    }
+
+    static void skipSnapshot(SnapshotReader in, int width, int depth) {
+        long length = (long) width * depth;
+        for (long first = 0; first < length; first += SNAPSHOT_CHUNK_LONGS) {
+            in.read((int) Math.min(SNAPSHOT_CHUNK_LONGS, length - first) * Long.BYTES);
+        }
+    }
+
+    private int index(long hash, int row) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        return row * width + ((h1 + row * h2) & mask);
+    }
+}
@@ -0,0 +1,225 @@
+package SlidingWindowCounter;
+
+import Core.Eviction.EvictionConfig;
+import Core.KeyLimiter;
+import Core.KeyRelease;
+import Core.RateLimiter;
+import Core.Resolver.KeyResolver;
+import Core.Resolver.KeySink;
+import Core.Snapshot.SnapshotReader;
+import Core.Snapshot.SnapshotWriter;
+import Core.Snapshot.Snapshottable;
+import Core.Store.KeyHash;
+import Core.Time.WindowBoundary;
+
+/*
+ * Sliding window counter whose per-key counts live in two count-min sketches, the current window's and
+ * the previous one's, instead of a map. Memory is fixed by the sketch dimensions, whether the limiter sees
+ * a thousand keys or a hundred million, which suits keys that come and go in numbers, like anonymous ips.
+ *
+ * Estimates are never low, so a key can be rejected early, by the traffic of the keys sharing its
+ * counters, but never let past its limit. A key whose count reaches half the limit moves to exact counting
+ * (a SlidingWindowCounterRateLimiter of at most maxHeavyKeys keys), seeded with its estimates: the keys
+ * that are near their limit are decided exactly, and their traffic stops adding to everyone else's.
+ *
+ * A request adds its permits first and takes them back if the estimate is then over the limit, so
+ * concurrent requests of one key cannot overshoot together. Windows rotate once per window, under a lock:
+ * the older sketch is dropped and a new, empty one becomes the current one. Sketches are never cleared in
+ * place, so a request racing the rotation still reads complete counts of the windows it started in, and is
+ * decided as if it had come just before the rotation. A count it adds to a dropped sketch is lost, but that
+ * window is over.
+ */
+public class SketchSlidingWindowCounterRateLimiter implements RateLimiter, KeyLimiter, Snapshottable {
+    // 2 x 32768 x 7 longs, about 3.7 MB.
+    public static final double DEFAULT_EPSILON = 1e-4;
+    public static final double DEFAULT_CONFIDENCE = 0.999;
+    public static final int DEFAULT_MAX_HEAVY_KEYS = 1024;
+
+    private final int requestLimit;
+    private final long windowSizeInMs;
+    private final long heavyThreshold;
+    private final int maxHeavyKeys;
+    private final KeyResolver resolver;
+    private final ThreadLocal<KeySink> keySinks = ThreadLocal.withInitial(KeySink::new);
+    private final KeyRelease releaseKey = this::release;
+    private final WindowBoundary windowBoundary;
+    private final SlidingWindowCounterRateLimiter heavyKeys;
+    private final Object rotation = new Object();
+    private volatile Windows windows;
+
+    public SketchSlidingWindowCounterRateLimiter(int requestLimit, int windowSizeInSeconds, KeyResolver resolver) {
+        this(requestLimit, windowSizeInSeconds, resolver, DEFAULT_EPSILON, DEFAULT_CONFIDENCE, DEFAULT_MAX_HEAVY_KEYS);
+    }
+
+    // epsilon: overestimate, as a fraction of a window's total count, that is exceeded with probability
+    // at most 1 - confidence.
+    public SketchSlidingWindowCounterRateLimiter(int requestLimit, int windowSizeInSeconds, KeyResolver resolver,
+                                                 double epsilon, double confidence, int maxHeavyKeys) {
+        if (maxHeavyKeys < 0) throw new IllegalArgumentException("maxHeavyKeys must not be negative: " + maxHeavyKeys);
+
+        this.requestLimit = requestLimit;
+        this.windowSizeInMs = windowSizeInSeconds * 1000L;
+        this.heavyThreshold = Math.max(1, requestLimit / 2);
+        this.maxHeavyKeys = maxHeavyKeys;
+        this.resolver = resolver;
+        this.windowBoundary = new WindowBoundary(windowSizeInMs);
+        this.heavyKeys = new SlidingWindowCounterRateLimiter(requestLimit, windowSizeInSeconds, resolver, EvictionConfig.DEFAULT);
+        this.windows = new Windows(0, CountMinSketch.withError(epsilon, confidence), CountMinSketch.withError(epsilon, confidence));
+    }
+
+    @Override
+    public boolean allowRequest(String userId, String ip, long incomingTimestamp, int permits) {
+        RateLimiter.checkPermits(permits);
+        heavyKeys.tick(incomingTimestamp);
+        KeySink keys = keySinks.get();
+        resolver.resolveKeys(userId, ip, keys);
+
+        for (int i = 0; i < keys.size(); i++) {
+            String key = keys.key(i);
+            heavyKeys.recordAccess(key);
+            if (!tryAcquire(key, keys.hash(i), incomingTimestamp, permits)) {
+                KeyRelease.rollback(keys, i, incomingTimestamp, permits, releaseKey);
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public boolean tryAcquire(String key, long incomingTimestamp, int permits) {
+        return tryAcquire(key, KeyHash.hash64(key), incomingTimestamp, permits);
+    }
+
+    // `hash` is KeyHash.hash64(key).
+    private boolean tryAcquire(String key, long hash, long incomingTimestamp, int permits) {
+        if (heavyKeys.isTracked(key)) return heavyKeys.tryAcquire(key, incomingTimestamp, permits);
+
+        Windows current = windowsAt(incomingTimestamp);
+        // a late request from an older window weighs the previous window in full
+        double progressInWindow = Math.max(0, (double) (incomingTimestamp - current.start) / windowSizeInMs);
+        long previousCount = current.previous.estimate(hash);
+        long currentCount = current.current.add(hash, permits);
+
+        if ((1 - progressInWindow) * previousCount + currentCount > requestLimit) {
+            current.current.add(hash, -permits);
+            return false;
+        }
+
+        if (currentCount >= heavyThreshold && heavyKeys.trackedKeyCount() < maxHeavyKeys) {
+            heavyKeys.seed(key, incomingTimestamp, (int) currentCount, (int) Math.min(previousCount, requestLimit));
+        }
+        return true;
+    }
+
+    @Override
+    public void tick(long now) {
+        heavyKeys.tick(now);
+    }
+
+    @Override
+    public void recordAccess(String key) {
+        heavyKeys.recordAccess(key);
+    }
+
+    @Override
+    public void releasePermits(String userId, String ip, long incomingTimestamp, int permits) {
+        KeySink keys = keySinks.get();
+        resolver.resolveKeys(userId, ip, keys);
+        KeyRelease.rollback(keys, keys.size(), incomingTimestamp, permits, releaseKey);
+    }
+
+    // The permits went to the current window, which may have become the previous one since.
+    @Override
+    public void release(String key, long incomingTimestamp, int permits) {
+        if (heavyKeys.isTracked(key)) {
+            heavyKeys.release(key, incomingTimestamp, permits);
+            return;
+        }
+
+        Windows current = windows;
+        long windowStart = windowBoundary.startOf(incomingTimestamp);
+        if (windowStart == current.start) {
+            current.current.add(KeyHash.hash64(key), -permits);
+        } else if (windowStart == current.start - windowSizeInMs) {
+            current.previous.add(KeyHash.hash64(key), -permits);
+        }
+    }
+
+    public int getHeavyKeyCount() {
+        return heavyKeys.trackedKeyCount();
+    }
+
+    // Both sketches; heavy keys come on top, at most maxHeavyKeys map entries.
+    public long getSketchMemoryInBytes() {
+        Windows current = windows;
+        return current.current.getMemoryInBytes() + current.previous.getMemoryInBytes();
+    }
+
+    @Override
+    public void writeSnapshot(SnapshotWriter out, long changedSince) {
+        Windows current = windows;
+        out.putLong(current.start);
+        out.putInt(current.current.getWidth());
+        out.putInt(current.current.getDepth());
+        current.current.writeSnapshot(out);
+        current.previous.writeSnapshot(out);
+        heavyKeys.writeSnapshot(out, changedSince);
+    }
+
+    // Sketches of other dimensions are skipped; their keys start over.
+    @Override
+    public void readSnapshot(SnapshotReader in) {
+        long start = in.getLong();
+        int width = in.getInt();
+        int depth = in.getInt();
+
+        synchronized (rotation) {
+            Windows current = windows;
+            if (width == current.current.getWidth() && depth == current.current.getDepth()) {
+                current.current.readSnapshot(in);
+                current.previous.readSnapshot(in);
+                windows = new Windows(start, current.current, current.previous);
+            } else {
+                CountMinSketch.skipSnapshot(in, width, depth);
+                CountMinSketch.skipSnapshot(in, width, depth);
+            }
+        }
+        heavyKeys.readSnapshot(in);
+    }
+
+    private Windows windowsAt(long incomingTimestamp) {
+        Windows current = windows;
+        long windowStart = windowBoundary.startOf(incomingTimestamp);
+        if (windowStart <= current.start) return current;
+
+        synchronized (rotation) {
+            current = windows;
+            if (windowStart > current.start) {
+                // a new sketch becomes the current one; the current one stays as the previous one if the
+                // window just ended, otherwise it is over as well. Requests still holding the old windows
+                // may be reading either, so neither is cleared.
+                CountMinSketch previous = windowStart - current.start == windowSizeInMs ? current.current : emptyLike(current.current);
+                current = new Windows(windowStart, emptyLike(current.current), previous);
+                windows = current;
+            }
+            return current;
+        }
+    }
+
+    private static CountMinSketch emptyLike(CountMinSketch sketch) {
+        return new CountMinSketch(sketch.getWidth(), sketch.getDepth());
+    }
+
+    private static final class Windows {
+        private final long start;
+        private final CountMinSketch current;
+        private final CountMinSketch previous;
+
+        private Windows(long start, CountMinSketch current, CountMinSketch previous) {
+            this.start = start;
+            this.current = current;
+            this.previous = previous;
+        }
+    }
+}
@@ -1,59 +1,296 @@
 package SlidingWindowCounter;
 
+import Core.Batch.RequestBatch;
+import Core.Decision;
+import Core.Eviction.EvictionConfig;
+import Core.Eviction.EvictionResult;
+import Core.Eviction.KeyExpiry;
+import Core.KeyRelease;
+import Core.LimitOverrides;
 import Core.RateLimiter;
+import Core.Request;
 import Core.Resolver.KeyResolver;
+import Core.Resolver.KeySink;
+import Core.Snapshot.MapSnapshot;
+import Core.Snapshot.SnapshotReader;
+import Core.Snapshot.SnapshotWriter;
+import Core.Snapshot.Snapshottable;
+import Core.Time.WindowBoundary;
+import Core.WaitableKeyLimiter;
 
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 
-public class SlidingWindowCounterRateLimiter implements RateLimiter {
+public class SlidingWindowCounterRateLimiter implements RateLimiter, WaitableKeyLimiter, Snapshottable {
     private final int requestLimit;
     private final long windowSizeInMs;
+    private final WindowBoundary windows;
     private KeyResolver resolver;
+    private final ThreadLocal<KeySink> keySinks = ThreadLocal.withInitial(KeySink::new);
+    private final KeyRelease releaseKey = this::release;
+    private final KeyExpiry keyExpiry;
+    private final LimitOverrides limitOverrides = new LimitOverrides();
 
     private Map<String, SlidingCounterUserBucket> userBucketMap = new ConcurrentHashMap<>();
+    private final MapSnapshot.Codec<SlidingCounterUserBucket> snapshotCodec = new MapSnapshot.Codec<>() {
+        @Override
+        public long lastUpdatedAt(SlidingCounterUserBucket bucket) {
+            return bucket.getCurrentWindowSize() + windowSizeInMs - 1;
+        }
+
+        @Override
+        public void write(SlidingCounterUserBucket bucket, SnapshotWriter out) {
+            out.putLong(bucket.getCurrentWindowSize());
+            out.putInt(bucket.getCurrentWindowCounter());
+            out.putInt(bucket.getPrevWindowCounter());
+        }
+
+        @Override
+        public SlidingCounterUserBucket read(SnapshotReader in) {
+            SlidingCounterUserBucket bucket = new SlidingCounterUserBucket(in.getLong());
+            bucket.setCurrentWindowCounter(in.getInt());
+            bucket.setPrevWindowCounter(in.getInt());
+            return bucket;
+        }
+    };
 
     public SlidingWindowCounterRateLimiter(int requestLimit, int windowSizeInSeconds, KeyResolver resolver) {
+        this(requestLimit, windowSizeInSeconds, resolver, EvictionConfig.DEFAULT);
+    }
+
+    public SlidingWindowCounterRateLimiter(int requestLimit, int windowSizeInSeconds, KeyResolver resolver, EvictionConfig evictionConfig) {
         this.requestLimit = requestLimit;
         this.windowSizeInMs = windowSizeInSeconds * 1000L;
+        this.windows = new WindowBoundary(windowSizeInMs);
         this.resolver = resolver;
+        // the previous window still weighs in until two full windows have passed
+        this.keyExpiry = new KeyExpiry(evictionConfig, 2 * windowSizeInMs, this::evictIfExpired);
     }
 
     @Override
-    public boolean allowRequest(String userId, String ip, long incomingTimestamp) {
-        List<String> keys = resolver.resolveKey(userId, ip);
+    public boolean allowRequest(String userId, String ip, long incomingTimestamp, int permits) {
+        return admit(userId, ip, incomingTimestamp, permits, null);
+    }
+
+    // Remaining is what the weighted count leaves, reset is when the counted permits stop weighing in.
+    @Override
+    public boolean allowRequest(String userId, String ip, long incomingTimestamp, int permits, Decision decision) {
+        decision.start(incomingTimestamp);
+        return admit(userId, ip, incomingTimestamp, permits, decision);
+    }
+
+    private boolean admit(String userId, String ip, long incomingTimestamp, int permits, Decision decision) {
+        RateLimiter.checkPermits(permits);
+        keyExpiry.tick(incomingTimestamp);
+        KeySink keys = keySinks.get();
+        resolver.resolveKeys(userId, ip, keys);
+
+        for (int i = 0; i < keys.size(); i++) {
+            String key = keys.key(i);
+            keyExpiry.recordAccess(key);
+            if (!tryAcquire(key, incomingTimestamp, permits, decision)) {
+                KeyRelease.rollback(keys, i, incomingTimestamp, permits, releaseKey);
+                if (decision != null) decision.reject(WaitableKeyLimiter.nextPermitAt(this, keys, incomingTimestamp, permits));
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public boolean tryAcquire(String key, long incomingTimestamp, int permits) {
+        return tryAcquire(key, incomingTimestamp, permits, null);
+    }
+
+    private boolean tryAcquire(String key, long incomingTimestamp, int permits, Decision decision) {
         AtomicBoolean allowed = new AtomicBoolean(true);
+        int limit = limitOverrides.limitFor(key, requestLimit);
 
-        for (String key : keys) {
-            long currentWindowStart = (incomingTimestamp / windowSizeInMs) * windowSizeInMs;
-            double progressInWindow = (double) (incomingTimestamp - currentWindowStart) / windowSizeInMs;
+        userBucketMap.compute(key, (id, bucket) -> {
+            if (bucket == null) {
+                keyExpiry.onNewKey(id, incomingTimestamp);
+                bucket = new SlidingCounterUserBucket(windowStartOf(incomingTimestamp));
+            }
 
-            userBucketMap.compute(key, (id, bucket) -> {
-                if (bucket == null) {
-                    bucket = new SlidingCounterUserBucket(currentWindowStart);
-                }
+            allowed.set(tryCount(bucket, incomingTimestamp, permits, limit, decision));
+            return bucket;
+        });
+
+        return allowed.get();
+    }
 
-                updateBucketForCurrentWindow(bucket, currentWindowStart);
+    // Read under the bucket's bin lock, since its counters are updated in place.
+    @Override
+    public long nextPermitAt(String key, long now, int permits) {
+        int limit = limitOverrides.limitFor(key, requestLimit);
+        if (permits > limit) return NEVER;
 
-                double estimatedRequests = (1 - progressInWindow) * bucket.getPrevWindowCounter() + bucket.getCurrentWindowCounter();
+        long[] next = {now};
+        userBucketMap.computeIfPresent(key, (id, bucket) -> {
+            next[0] = nextPermitAt(bucket, now, permits, limit);
+            return bucket;
+        });
+        return next[0];
+    }
 
-                if (estimatedRequests + 1 > requestLimit) {
-                    allowed.set(false);
-                    return bucket;
-                }
+    // One compute per key for the whole batch instead of one per request.
+    @Override
+    public boolean[] allowRequests(List<Request> requests) {
+        keyExpiry.tick(RequestBatch.latestTimestamp(requests));
 
-                bucket.setCurrentWindowCounter(bucket.getCurrentWindowCounter() + 1);
+        return RequestBatch.admit(requests, resolver, (key, batch, indices, count, allowed) -> {
+            keyExpiry.recordAccess(key);
+            int limit = limitOverrides.limitFor(key, requestLimit);
+            userBucketMap.compute(key, (id, bucket) -> {
+                for (int i = 0; i < count; i++) {
+                    Request request = batch.get(indices[i]);
+                    long incomingTimestamp = request.getTimestamp();
+                    if (bucket == null) {
+                        keyExpiry.onNewKey(id, incomingTimestamp);
+                        bucket = new SlidingCounterUserBucket(windowStartOf(incomingTimestamp));
+                    }
+
+                    if (!tryCount(bucket, incomingTimestamp, request.getPermits(), limit, null)) allowed[indices[i]] = false;
+                }
                 return bucket;
             });
+        }, releaseKey);
+    }
+
+    // Per-key replacements for the configured limit; see LimitOverrides.
+    public LimitOverrides getLimitOverrides() {
+        return limitOverrides;
+    }
+
+    public KeyExpiry getKeyExpiry() {
+        return keyExpiry;
+    }
 
-            if (!allowed.get()) {
-                break;
+    @Override
+    public void writeSnapshot(SnapshotWriter out, long changedSince) {
+        MapSnapshot.write(userBucketMap, out, changedSince, snapshotCodec);
+    }
+
+    @Override
+    public void readSnapshot(SnapshotReader in) {
+        MapSnapshot.read(in, userBucketMap, snapshotCodec, keyExpiry);
+    }
+
+    @Override
+    public void tick(long now) {
+        keyExpiry.tick(now);
+    }
+
+    @Override
+    public void recordAccess(String key) {
+        keyExpiry.recordAccess(key);
+    }
+
+    @Override
+    public void releasePermits(String userId, String ip, long incomingTimestamp, int permits) {
+        KeySink keys = keySinks.get();
+        resolver.resolveKeys(userId, ip, keys);
+        KeyRelease.rollback(keys, keys.size(), incomingTimestamp, permits, releaseKey);
+    }
+
+    // The permits went to the current window, which may have become the previous one since.
+    @Override
+    public void release(String key, long incomingTimestamp, int permits) {
+        long windowStart = windowStartOf(incomingTimestamp);
+
+        userBucketMap.computeIfPresent(key, (id, bucket) -> {
+            if (bucket.getCurrentWindowSize() == windowStart) {
+                bucket.setCurrentWindowCounter(Math.max(0, bucket.getCurrentWindowCounter() - permits));
+            } else if (bucket.getCurrentWindowSize() == windowStart + windowSizeInMs) {
+                bucket.setPrevWindowCounter(Math.max(0, bucket.getPrevWindowCounter() - permits));
             }
+            return bucket;
+        });
+    }
+
+    // For SketchSlidingWindowCounterRateLimiter, which tracks its heavy keys here.
+    boolean isTracked(String key) {
+        return userBucketMap.containsKey(key);
+    }
+
+    int trackedKeyCount() {
+        return userBucketMap.size();
+    }
+
+    // Starts tracking `key` with the counts it has so far, unless it is tracked already.
+    void seed(String key, long incomingTimestamp, int currentWindowCount, int previousWindowCount) {
+        userBucketMap.computeIfAbsent(key, id -> {
+            keyExpiry.onNewKey(id, incomingTimestamp);
+            SlidingCounterUserBucket bucket = new SlidingCounterUserBucket(windowStartOf(incomingTimestamp));
+            bucket.setCurrentWindowCounter(currentWindowCount);
+            bucket.setPrevWindowCounter(previousWindowCount);
+            return bucket;
+        });
+    }
+
+    private EvictionResult evictIfExpired(String key, long now, boolean force) {
+        return KeyExpiry.removeIf(userBucketMap, key, force,
+                bucket -> bucket.getCurrentWindowSize() + 2 * windowSizeInMs <= now);
+    }
+
+    // Caller holds the bucket's bin lock. `decision` may be null.
+    private boolean tryCount(SlidingCounterUserBucket bucket, long incomingTimestamp, int permits, int limit, Decision decision) {
+        long currentWindowStart = windowStartOf(incomingTimestamp);
+        double progressInWindow = (double) (incomingTimestamp - currentWindowStart) / windowSizeInMs;
+
+        updateBucketForCurrentWindow(bucket, currentWindowStart);
+
+        double estimatedRequests = (1 - progressInWindow) * bucket.getPrevWindowCounter() + bucket.getCurrentWindowCounter();
+
+        if (estimatedRequests + permits > limit) {
+            if (decision != null) decision.recordRejectingKey(limit, (long) Math.max(0, limit - estimatedRequests), resetAt(bucket));
+            return false;
         }
 
-        return allowed.get();
+        bucket.setCurrentWindowCounter(bucket.getCurrentWindowCounter() + permits);
+        if (decision != null) decision.recordKey(limit, (long) (limit - estimatedRequests - permits), resetAt(bucket));
+        return true;
+    }
+
+    // The current window's permits weigh in until the end of the next window, the previous window's until
+    // the end of this one.
+    private long resetAt(SlidingCounterUserBucket bucket) {
+        if (bucket.getCurrentWindowCounter() > 0) return bucket.getCurrentWindowSize() + 2 * windowSizeInMs;
+        if (bucket.getPrevWindowCounter() > 0) return bucket.getCurrentWindowSize() + windowSizeInMs;
+        return bucket.getCurrentWindowSize();
+    }
+
+    // The counters as of now's window, then as they will be in each of the next two (after which both
+    // have aged out), until one has room.
+    private long nextPermitAt(SlidingCounterUserBucket bucket, long now, int permits, int limit) {
+        long windowStart = windowStartOf(now);
+        long windowsAhead = (windowStart - bucket.getCurrentWindowSize()) / windowSizeInMs;
+        if (windowsAhead < 0) return now;
+
+        int current = windowsAhead == 0 ? bucket.getCurrentWindowCounter() : 0;
+        int previous = windowsAhead == 0 ? bucket.getPrevWindowCounter() : windowsAhead == 1 ? bucket.getCurrentWindowCounter() : 0;
+
+        long at = earliestInWindow(windowStart, current, previous, permits, limit, now);
+        if (at == NEVER) at = earliestInWindow(windowStart + windowSizeInMs, 0, current, permits, limit, windowStart + windowSizeInMs);
+        return at != NEVER ? at : windowStart + 2 * windowSizeInMs;
+    }
+
+    // tryCount admits once (1 - progress) * previous + current + permits <= limit, and the previous window's
+    // weight only goes down as the window progresses.
+    private long earliestInWindow(long windowStart, int current, int previous, int permits, int limit, long from) {
+        int room = limit - current - permits;
+        if (room < 0 || (room == 0 && previous > 0)) return NEVER;
+        if (room >= previous) return from;
+
+        double progress = 1 - (double) room / previous;
+        return Math.max(from, windowStart + (long) Math.ceil(progress * windowSizeInMs));
+    }
+
+    private long windowStartOf(long incomingTimestamp) {
+        return windows.startOf(incomingTimestamp);
     }
 
     private void updateBucketForCurrentWindow(SlidingCounterUserBucket bucket, long currentWindowStart) {
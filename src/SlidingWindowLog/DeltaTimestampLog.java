@@ -0,0 +1,52 @@
+package SlidingWindowLog;
+
+/*
+ * Compressed mode: timestamps are stored as int offsets from a per-key base, halving the footprint.
+ * Live entries always lie within one window of the newest request, so whenever an offset no longer fits
+ * in an int the log is simply rebased onto its oldest entry (or the new timestamp when empty).
+ */
+final class DeltaTimestampLog extends TimestampLog {
+    private long base;
+    private int[] offsets;
+
+    DeltaTimestampLog(int initialCapacity) {
+        this.offsets = new int[initialCapacity];
+    }
+
+    @Override
+    protected int capacity() {
+        return offsets.length;
+    }
+
+    @Override
+    protected long timestampAt(int index) {
+        return base + offsets[index];
+    }
+
+    @Override
+    protected void store(int index, long timestamp) {
+        long offset = timestamp - base;
+
+        if (offset != (int) offset) {
+            long newBase = size > 0 ? Math.min(timestampAt(head), timestamp) : timestamp;
+            for (int i = 0; i < size; i++) {
+                int slot = (head + i) % offsets.length;
+                offsets[slot] = (int) (base + offsets[slot] - newBase);
+            }
+            base = newBase;
+            offset = timestamp - base;
+        }
+
+        offsets[index] = (int) offset;
+    }
+
+    @Override
+    protected void grow(int newCapacity) {
+        int[] grown = new int[newCapacity];
+        for (int i = 0; i < size; i++) {
+            grown[i] = offsets[(head + i) % offsets.length];
+        }
+        offsets = grown;
+        head = 0;
+    }
+}
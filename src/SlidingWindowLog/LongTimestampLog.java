@@ -0,0 +1,34 @@
+package SlidingWindowLog;
+
+final class LongTimestampLog extends TimestampLog {
+    private long[] timestamps;
+
+    LongTimestampLog(int initialCapacity) {
+        this.timestamps = new long[initialCapacity];
+    }
+
+    @Override
+    protected int capacity() {
+        return timestamps.length;
+    }
+
+    @Override
+    protected long timestampAt(int index) {
+        return timestamps[index];
+    }
+
+    @Override
+    protected void store(int index, long timestamp) {
+        timestamps[index] = timestamp;
+    }
+
+    @Override
+    protected void grow(int newCapacity) {
+        long[] grown = new long[newCapacity];
+        for (int i = 0; i < size; i++) {
+            grown[i] = timestamps[(head + i) % timestamps.length];
+        }
+        timestamps = grown;
+        head = 0;
+    }
+}
@@ -0,0 +1,167 @@
+package SlidingWindowLog;
+
+import Core.Eviction.EvictionConfig;
+import Core.Eviction.EvictionResult;
+import Core.Eviction.KeyExpiry;
+import Core.KeyLimiter;
+import Core.KeyRelease;
+import Core.LimitOverrides;
+import Core.RateLimiter;
+import Core.Resolver.KeyResolver;
+import Core.Resolver.KeySink;
+import Core.Snapshot.MapSnapshot;
+import Core.Snapshot.SnapshotReader;
+import Core.Snapshot.SnapshotWriter;
+import Core.Snapshot.Snapshottable;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Sliding log keeping each key's timestamps in a primitive ring buffer (8 bytes per request, or 4 in
+ * compressed mode) instead of a ConcurrentLinkedDeque<Long> node plus boxed Long per request.
+ */
+public class RingBufferSlidingLogRateLimiter implements RateLimiter, KeyLimiter, Snapshottable {
+
+    private final int requestLimit;
+    private final long windowSizeInMs;
+    private final boolean compressed;
+    private final KeyResolver resolver;
+    private final ThreadLocal<KeySink> keySinks = ThreadLocal.withInitial(KeySink::new);
+    private final KeyRelease releaseKey = this::release;
+    private final KeyExpiry keyExpiry;
+    private final Map<String, TimestampLog> userBucket = new ConcurrentHashMap<>();
+    private final LimitOverrides limitOverrides = new LimitOverrides();
+    private final MapSnapshot.Codec<TimestampLog> snapshotCodec = new MapSnapshot.Codec<>() {
+        @Override
+        public long lastUpdatedAt(TimestampLog log) {
+            return log.newestTimestamp();
+        }
+
+        @Override
+        public void write(TimestampLog log, SnapshotWriter out) {
+            log.writeEntries(out);
+        }
+
+        @Override
+        public TimestampLog read(SnapshotReader in) {
+            TimestampLog log = TimestampLog.create(requestLimit, compressed);
+            // the entries were admitted when written, whatever limit the key has now
+            for (int count = in.getInt(); count > 0; count--) {
+                log.tryRecord(in.getLong(), windowSizeInMs, in.getInt(), Integer.MAX_VALUE);
+            }
+            return log;
+        }
+    };
+
+    public RingBufferSlidingLogRateLimiter(int requestLimit, long windowSizeInSeconds, KeyResolver resolver) {
+        this(requestLimit, windowSizeInSeconds, resolver, false);
+    }
+
+    public RingBufferSlidingLogRateLimiter(int requestLimit, long windowSizeInSeconds, KeyResolver resolver, boolean compressed) {
+        this(requestLimit, windowSizeInSeconds, resolver, compressed, EvictionConfig.DEFAULT);
+    }
+
+    public RingBufferSlidingLogRateLimiter(int requestLimit, long windowSizeInSeconds, KeyResolver resolver, boolean compressed,
+                                           EvictionConfig evictionConfig) {
+        this.requestLimit = requestLimit;
+        this.windowSizeInMs = windowSizeInSeconds * 1000L;
+        this.resolver = resolver;
+        this.compressed = compressed;
+        this.keyExpiry = new KeyExpiry(evictionConfig, windowSizeInMs + 1, this::evictIfIdle);
+    }
+
+    @Override
+    public boolean allowRequest(String userId, String ip, long incomingTimestamp, int permits) {
+        RateLimiter.checkPermits(permits);
+        keyExpiry.tick(incomingTimestamp);
+        KeySink keys = keySinks.get();
+        resolver.resolveKeys(userId, ip, keys);
+
+        for (int i = 0; i < keys.size(); i++) {
+            String key = keys.key(i);
+            keyExpiry.recordAccess(key);
+            if (!tryAcquire(key, incomingTimestamp, permits)) {
+                KeyRelease.rollback(keys, i, incomingTimestamp, permits, releaseKey);
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    public boolean tryAcquire(String key, long incomingTimestamp) {
+        return tryAcquire(key, incomingTimestamp, 1);
+    }
+
+    @Override
+    public boolean tryAcquire(String key, long incomingTimestamp, int permits) {
+        int limit = limitOverrides.limitFor(key, requestLimit);
+        while (true) {
+            TimestampLog log = userBucket.get(key);
+            if (log == null) {
+                log = userBucket.computeIfAbsent(key, id -> {
+                    keyExpiry.onNewKey(id, incomingTimestamp);
+                    return TimestampLog.create(requestLimit, compressed);
+                });
+            }
+
+            int result = log.tryRecord(incomingTimestamp, windowSizeInMs, permits, limit);
+            if (result != TimestampLog.RETIRED) {
+                return result == TimestampLog.RECORDED;
+            }
+            userBucket.remove(key, log);
+        }
+    }
+
+    // Per-key replacements for the configured limit; see LimitOverrides.
+    public LimitOverrides getLimitOverrides() {
+        return limitOverrides;
+    }
+
+    public KeyExpiry getKeyExpiry() {
+        return keyExpiry;
+    }
+
+    @Override
+    public void writeSnapshot(SnapshotWriter out, long changedSince) {
+        MapSnapshot.write(userBucket, out, changedSince, snapshotCodec);
+    }
+
+    @Override
+    public void readSnapshot(SnapshotReader in) {
+        MapSnapshot.read(in, userBucket, snapshotCodec, keyExpiry);
+    }
+
+    @Override
+    public void tick(long now) {
+        keyExpiry.tick(now);
+    }
+
+    @Override
+    public void recordAccess(String key) {
+        keyExpiry.recordAccess(key);
+    }
+
+    @Override
+    public void releasePermits(String userId, String ip, long incomingTimestamp, int permits) {
+        KeySink keys = keySinks.get();
+        resolver.resolveKeys(userId, ip, keys);
+        KeyRelease.rollback(keys, keys.size(), incomingTimestamp, permits, releaseKey);
+    }
+
+    @Override
+    public void release(String key, long incomingTimestamp, int permits) {
+        TimestampLog log = userBucket.get(key);
+        if (log != null) log.release(incomingTimestamp, permits);
+    }
+
+    private EvictionResult evictIfIdle(String key, long now, boolean force) {
+        TimestampLog log = userBucket.get(key);
+        if (log == null) return EvictionResult.ABSENT;
+        if (!log.retireIfIdle(now, windowSizeInMs, force)) return EvictionResult.RETAINED;
+
+        userBucket.remove(key, log);
+        return EvictionResult.EVICTED;
+    }
+}
@@ -1,50 +1,196 @@
 package SlidingWindowLog;
 
+import Core.Decision;
+import Core.Eviction.EvictionConfig;
+import Core.Eviction.EvictionResult;
+import Core.Eviction.KeyExpiry;
+import Core.KeyRelease;
+import Core.LimitOverrides;
 import Core.RateLimiter;
 import Core.Resolver.KeyResolver;
+import Core.Resolver.KeySink;
+import Core.Snapshot.MapSnapshot;
+import Core.Snapshot.SnapshotReader;
+import Core.Snapshot.SnapshotWriter;
+import Core.Snapshot.Snapshottable;
+import Core.WaitableKeyLimiter;
 
-import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.atomic.AtomicBoolean;
 
-public class SlidingLogRateLimiter implements RateLimiter {
+public class SlidingLogRateLimiter implements RateLimiter, WaitableKeyLimiter, Snapshottable {
+    private static final MapSnapshot.Codec<SlidingLogUserBucket> SNAPSHOT_CODEC = new MapSnapshot.Codec<>() {
+        @Override
+        public long lastUpdatedAt(SlidingLogUserBucket bucket) {
+            return bucket.isEmpty() ? Long.MIN_VALUE : bucket.getNewestTimestamp();
+        }
+
+        @Override
+        public void write(SlidingLogUserBucket bucket, SnapshotWriter out) {
+            bucket.writeEntries(out);
+        }
+
+        @Override
+        public SlidingLogUserBucket read(SnapshotReader in) {
+            return SlidingLogUserBucket.readEntries(in);
+        }
+    };
 
     private final int requestLimit;
     private final long windowSizeInMs;
     private KeyResolver resolver;
-    private final Map<String, ConcurrentLinkedDeque<Long>> userBucket = new ConcurrentHashMap<>();
+    private final ThreadLocal<KeySink> keySinks = ThreadLocal.withInitial(KeySink::new);
+    private final KeyRelease releaseKey = this::release;
+    private final KeyExpiry keyExpiry;
+    private final LimitOverrides limitOverrides = new LimitOverrides();
+    private final Map<String, SlidingLogUserBucket> userBucket = new ConcurrentHashMap<>();
 
     public SlidingLogRateLimiter(int requestLimit, long windowSizeInSeconds, KeyResolver resolver) {
+        this(requestLimit, windowSizeInSeconds, resolver, EvictionConfig.DEFAULT);
+    }
+
+    public SlidingLogRateLimiter(int requestLimit, long windowSizeInSeconds, KeyResolver resolver, EvictionConfig evictionConfig) {
         this.requestLimit = requestLimit;
         this.windowSizeInMs = windowSizeInSeconds * 1000L;
         this.resolver = resolver;
+        this.keyExpiry = new KeyExpiry(evictionConfig, windowSizeInMs + 1, this::evictIfEmpty);
     }
 
     @Override
-    public boolean allowRequest(String userId, String ip, long incomingTimestamp) {
-        List<String> keys = resolver.resolveKey(userId, ip);
-        AtomicBoolean setAllowRequest = new AtomicBoolean(true);
+    public boolean allowRequest(String userId, String ip, long incomingTimestamp, int permits) {
+        return admit(userId, ip, incomingTimestamp, permits, null);
+    }
 
-        for (String key: keys) {
-            ConcurrentLinkedDeque<Long> timestampQueue = userBucket.computeIfAbsent(key, (id) -> new ConcurrentLinkedDeque<>());
+    // Remaining is what the log leaves, reset is when its newest entry ages out.
+    @Override
+    public boolean allowRequest(String userId, String ip, long incomingTimestamp, int permits, Decision decision) {
+        decision.start(incomingTimestamp);
+        return admit(userId, ip, incomingTimestamp, permits, decision);
+    }
 
-            long windowStartOffset = incomingTimestamp - windowSizeInMs;
+    private boolean admit(String userId, String ip, long incomingTimestamp, int permits, Decision decision) {
+        RateLimiter.checkPermits(permits);
+        keyExpiry.tick(incomingTimestamp);
+        KeySink keys = keySinks.get();
+        resolver.resolveKeys(userId, ip, keys);
 
-            while (!timestampQueue.isEmpty() && timestampQueue.peekFirst() <= windowStartOffset) {
-                timestampQueue.pollFirst();
+        for (int i = 0; i < keys.size(); i++) {
+            String key = keys.key(i);
+            keyExpiry.recordAccess(key);
+            if (!tryAcquire(key, incomingTimestamp, permits, decision)) {
+                KeyRelease.rollback(keys, i, incomingTimestamp, permits, releaseKey);
+                if (decision != null) decision.reject(WaitableKeyLimiter.nextPermitAt(this, keys, incomingTimestamp, permits));
+                return false;
             }
+        }
+
+        return true;
+    }
 
-            if (timestampQueue.size() < requestLimit) {
-                timestampQueue.offerLast(incomingTimestamp);
+    @Override
+    public boolean tryAcquire(String key, long incomingTimestamp, int permits) {
+        return tryAcquire(key, incomingTimestamp, permits, null);
+    }
+
+    private boolean tryAcquire(String key, long incomingTimestamp, int permits, Decision decision) {
+        AtomicBoolean setAllowRequest = new AtomicBoolean(true);
+        long windowStartOffset = incomingTimestamp - windowSizeInMs;
+        int limit = limitOverrides.limitFor(key, requestLimit);
+
+        userBucket.compute(key, (id, timestampLog) -> {
+            if (timestampLog == null) {
+                keyExpiry.onNewKey(id, incomingTimestamp);
+                timestampLog = new SlidingLogUserBucket();
+            }
+
+            timestampLog.evictOlderThan(windowStartOffset);
+
+            if (timestampLog.getPermitsInWindow() + permits <= limit) {
+                timestampLog.record(incomingTimestamp, permits);
+                if (decision != null) decision.recordKey(limit, limit - timestampLog.getPermitsInWindow(), agedOutAt(timestampLog.getNewestTimestamp()));
             } else {
                 setAllowRequest.set(false);
+                if (decision != null) {
+                    decision.recordRejectingKey(limit, Math.max(0, limit - timestampLog.getPermitsInWindow()),
+                            agedOutAt(timestampLog.getNewestTimestamp()));
+                }
             }
-
-            if (!setAllowRequest.get()) break;
-        }
+            return timestampLog;
+        });
 
         return setAllowRequest.get();
     }
+
+    // When enough of the oldest entries have aged out to make room. Evicts under the log's bin lock, as
+    // tryAcquire would.
+    @Override
+    public long nextPermitAt(String key, long now, int permits) {
+        int limit = limitOverrides.limitFor(key, requestLimit);
+        if (permits > limit) return NEVER;
+
+        long[] next = {now};
+        userBucket.computeIfPresent(key, (id, timestampLog) -> {
+            timestampLog.evictOlderThan(now - windowSizeInMs);
+            long excess = timestampLog.getPermitsInWindow() + permits - limit;
+            if (excess > 0) next[0] = Math.max(now, agedOutAt(timestampLog.timestampFreeing(excess)));
+            return timestampLog;
+        });
+        return next[0];
+    }
+
+    // Per-key replacements for the configured limit; see LimitOverrides.
+    public LimitOverrides getLimitOverrides() {
+        return limitOverrides;
+    }
+
+    public KeyExpiry getKeyExpiry() {
+        return keyExpiry;
+    }
+
+    @Override
+    public void writeSnapshot(SnapshotWriter out, long changedSince) {
+        MapSnapshot.write(userBucket, out, changedSince, SNAPSHOT_CODEC);
+    }
+
+    @Override
+    public void readSnapshot(SnapshotReader in) {
+        MapSnapshot.read(in, userBucket, SNAPSHOT_CODEC, keyExpiry);
+    }
+
+    @Override
+    public void tick(long now) {
+        keyExpiry.tick(now);
+    }
+
+    @Override
+    public void recordAccess(String key) {
+        keyExpiry.recordAccess(key);
+    }
+
+    @Override
+    public void releasePermits(String userId, String ip, long incomingTimestamp, int permits) {
+        KeySink keys = keySinks.get();
+        resolver.resolveKeys(userId, ip, keys);
+        KeyRelease.rollback(keys, keys.size(), incomingTimestamp, permits, releaseKey);
+    }
+
+    @Override
+    public void release(String key, long incomingTimestamp, int permits) {
+        userBucket.computeIfPresent(key, (id, timestampLog) -> {
+            timestampLog.release(incomingTimestamp, permits);
+            return timestampLog;
+        });
+    }
+
+    // An entry counts for as long as it is not older than the window.
+    private long agedOutAt(long timestamp) {
+        return timestamp + windowSizeInMs + 1;
+    }
+
+    private EvictionResult evictIfEmpty(String key, long now, boolean force) {
+        long windowStartOffset = now - windowSizeInMs;
+        return KeyExpiry.removeIf(userBucket, key, force,
+                timestampLog -> timestampLog.isEmpty() || timestampLog.getNewestTimestamp() < windowStartOffset);
+    }
 }
@@ -0,0 +1,88 @@
+package SlidingWindowLog;
+
+import Core.Snapshot.SnapshotReader;
+import Core.Snapshot.SnapshotWriter;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+
+// One entry per admitted request with its weight, plus the running total of the weights in the log.
+public class SlidingLogUserBucket {
+    private final Deque<Entry> entries = new ArrayDeque<>();
+    private long permitsInWindow;
+
+    public void evictOlderThan(long windowStartOffset) {
+        while (!entries.isEmpty() && entries.peekFirst().timestamp < windowStartOffset) {
+            permitsInWindow -= entries.pollFirst().permits;
+        }
+    }
+
+    public void record(long timestamp, int permits) {
+        entries.offerLast(new Entry(timestamp, permits));
+        permitsInWindow += permits;
+    }
+
+    // Takes `permits` off the newest entry recorded at `timestamp` that holds that many, dropping the entry
+    // once it holds none, if it is still in the log. Entries sharing a timestamp are interchangeable.
+    public void release(long timestamp, int permits) {
+        Iterator<Entry> newestFirst = entries.descendingIterator();
+        while (newestFirst.hasNext()) {
+            Entry entry = newestFirst.next();
+            if (entry.timestamp == timestamp && entry.permits >= permits) {
+                entry.permits -= permits;
+                if (entry.permits == 0) newestFirst.remove();
+                permitsInWindow -= permits;
+                return;
+            }
+        }
+    }
+
+    public long getPermitsInWindow() {
+        return permitsInWindow;
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    public long getNewestTimestamp() {
+        return entries.peekLast().timestamp;
+    }
+
+    // Timestamp of the entry whose eviction, oldest first, frees at least `permits` in total. The log must
+    // hold that many.
+    public long timestampFreeing(long permits) {
+        long freed = 0;
+        for (Entry entry : entries) {
+            freed += entry.permits;
+            if (freed >= permits) return entry.timestamp;
+        }
+        throw new IllegalStateException("log holds " + permitsInWindow + " permits, not " + permits);
+    }
+
+    public void writeEntries(SnapshotWriter out) {
+        out.putInt(entries.size());
+        for (Entry entry : entries) {
+            out.putLong(entry.timestamp);
+            out.putInt(entry.permits);
+        }
+    }
+
+    public static SlidingLogUserBucket readEntries(SnapshotReader in) {
+        SlidingLogUserBucket bucket = new SlidingLogUserBucket();
+        for (int count = in.getInt(); count > 0; count--) {
+            bucket.record(in.getLong(), in.getInt());
+        }
+        return bucket;
+    }
+
+    private static final class Entry {
+        private final long timestamp;
+        private int permits;
+
+        private Entry(long timestamp, int permits) {
+            this.timestamp = timestamp;
+            this.permits = permits;
+        }
+    }
+}
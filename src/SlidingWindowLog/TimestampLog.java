@@ -0,0 +1,158 @@
+package SlidingWindowLog;
+
+import Core.Snapshot.SnapshotWriter;
+import java.util.Arrays;
+
+/*
+ * Per-key request log backed by a primitive ring buffer. Capacity grows by doubling up to the limit the
+ * request is checked against, so keys that only ever see a handful of requests stay small. The limit is
+ * passed with each request rather than fixed per log, so a per-key override applies to a log already in use.
+ *
+ * Size is tracked, and eviction only ever looks at the head, so both checks are O(1) (amortised for
+ * eviction: every timestamp is evicted at most once). Check and append happen under the log's monitor,
+ * which keeps the limit exact under concurrency. An evicted log is retired under the same monitor so a
+ * racing request can tell it has to start over on the log that replaced it.
+ *
+ * A weighted request is still one entry: its weight goes to a parallel int[] that is only allocated once
+ * a key actually sees a weight other than 1, so unweighted keys pay nothing for it.
+ */
+abstract class TimestampLog {
+    static final int RECORDED = 0;
+    static final int REJECTED = 1;
+    static final int RETIRED = 2;
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    protected int head;
+    protected int size;
+    private int[] weights;
+    private long permitsInWindow;
+    private boolean retired;
+
+    static TimestampLog create(int requestLimit, boolean compressed) {
+        int initialCapacity = Math.min(INITIAL_CAPACITY, Math.max(1, requestLimit));
+        return compressed ? new DeltaTimestampLog(initialCapacity) : new LongTimestampLog(initialCapacity);
+    }
+
+    // `limit` is the permit limit: every entry weighs at least 1, so it also bounds the size.
+    synchronized int tryRecord(long incomingTimestamp, long windowSizeInMs, int permits, int limit) {
+        if (retired) {
+            return RETIRED;
+        }
+
+        long windowStartOffset = incomingTimestamp - windowSizeInMs;
+
+        while (size > 0 && timestampAt(head) < windowStartOffset) {
+            permitsInWindow -= weightAt(head);
+            head = (head + 1) % capacity();
+            size--;
+        }
+
+        if (permitsInWindow + permits > limit) {
+            return REJECTED;
+        }
+
+        if (size == capacity()) {
+            // size < permitsInWindow + permits <= limit here, so this always grows
+            int newCapacity = (int) Math.min(limit, capacity() * 2L);
+            growWeights(newCapacity);
+            grow(newCapacity);
+        }
+
+        int index = (head + size) % capacity();
+        store(index, incomingTimestamp);
+        storeWeight(index, permits);
+        permitsInWindow += permits;
+        size++;
+        return RECORDED;
+    }
+
+    // Takes back permits of a request whose other keys rejected it, or that went unused: the newest entry
+    // at `timestamp` holding that many gives them up. An emptied entry is removed and the entries recorded
+    // after it (usually none) move back by one.
+    synchronized void release(long timestamp, int permits) {
+        for (int n = size - 1; n >= 0; n--) {
+            int index = (head + n) % capacity();
+            if (timestampAt(index) != timestamp || weightAt(index) < permits) continue;
+
+            permitsInWindow -= permits;
+            if (weightAt(index) > permits) {
+                storeWeight(index, weightAt(index) - permits);
+                return;
+            }
+
+            for (int k = n; k < size - 1; k++) {
+                int from = (head + k + 1) % capacity();
+                int to = (head + k) % capacity();
+                store(to, timestampAt(from));
+                storeWeight(to, weightAt(from));
+            }
+            size--;
+            return;
+        }
+    }
+
+    // Retires the log if nothing in it is younger than the window, or unconditionally when forced.
+    synchronized boolean retireIfIdle(long now, long windowSizeInMs, boolean force) {
+        if (!force && size > 0 && timestampAt((head + size - 1) % capacity()) >= now - windowSizeInMs) {
+            return false;
+        }
+
+        retired = true;
+        return true;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    // Long.MIN_VALUE once the log holds nothing (or was retired).
+    synchronized long newestTimestamp() {
+        return retired || size == 0 ? Long.MIN_VALUE : timestampAt((head + size - 1) % capacity());
+    }
+
+    // Oldest first, as restore replays them through tryRecord.
+    synchronized void writeEntries(SnapshotWriter out) {
+        int count = retired ? 0 : size;
+        out.putInt(count);
+        for (int n = 0; n < count; n++) {
+            int index = (head + n) % capacity();
+            out.putLong(timestampAt(index));
+            out.putInt(weightAt(index));
+        }
+    }
+
+    private int weightAt(int index) {
+        return weights == null ? 1 : weights[index];
+    }
+
+    private void storeWeight(int index, int permits) {
+        if (weights == null && permits != 1) {
+            weights = new int[capacity()];
+            Arrays.fill(weights, 1);
+        }
+        if (weights != null) {
+            weights[index] = permits;
+        }
+    }
+
+    // Runs before the subclass grows, while head still points into the old layout.
+    private void growWeights(int newCapacity) {
+        if (weights == null) return;
+
+        int[] grown = new int[newCapacity];
+        for (int i = 0; i < size; i++) {
+            grown[i] = weights[(head + i) % weights.length];
+        }
+        weights = grown;
+    }
+
+    protected abstract int capacity();
+
+    protected abstract long timestampAt(int index);
+
+    protected abstract void store(int index, long timestamp);
+
+    // Must lay entries out again from index 0 and reset head.
+    protected abstract void grow(int newCapacity);
+}
@@ -0,0 +1,142 @@
+package Striped;
+
+import Core.RateLimiter;
+import Core.Resolver.KeyResolver;
+import Core.Resolver.KeySink;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/*
+ * Routes keys flagged as hot (e.g. HybridKeyResolver.GLOBAL_KEY) to striped counters and everything else
+ * to a regular per-key limiter, so a node-wide limit never funnels every request through one map entry.
+ *
+ * Hot keys are charged first: their permits can be handed back to a stripe cheaply when a later hot key
+ * or the delegate rejects the request, whereas the delegate's own keys have no way back once it said yes.
+ *
+ * A request is resolved once. Its cold keys are set aside for the delegate, whose resolver hands them over
+ * when the delegate asks for the same request on the same thread instead of resolving it again.
+ */
+public class HotKeyRateLimiter implements RateLimiter {
+    private final KeyResolver resolver;
+    private final Map<String, StripedCounter> hotKeys;
+    private final RateLimiter delegate;
+    private final ThreadLocal<RequestKeys> requestKeys = ThreadLocal.withInitial(RequestKeys::new);
+
+    public HotKeyRateLimiter(KeyResolver resolver, Map<String, StripedCounter> hotKeys,
+                             Function<KeyResolver, RateLimiter> delegateFactory) {
+        this.resolver = resolver;
+        this.hotKeys = Map.copyOf(hotKeys);
+        this.delegate = delegateFactory.apply(new ColdKeyResolver());
+    }
+
+    @Override
+    public boolean allowRequest(String userId, String ip, long incomingTimestamp, int permits) {
+        RateLimiter.checkPermits(permits);
+        RequestKeys request = requestKeys.get();
+        KeySink keys = request.resolve(userId, ip);
+
+        try {
+            for (int i = 0; i < keys.size(); i++) {
+                StripedCounter counter = hotKeys.get(keys.key(i));
+                if (counter != null && !counter.tryAcquire(incomingTimestamp, permits)) {
+                    releaseHotKeys(keys, i, incomingTimestamp, permits);
+                    return false;
+                }
+            }
+
+            if (!delegate.allowRequest(userId, ip, incomingTimestamp, permits)) {
+                releaseHotKeys(keys, keys.size(), incomingTimestamp, permits);
+                return false;
+            }
+
+            return true;
+        } finally {
+            request.done();
+        }
+    }
+
+    @Override
+    public void releasePermits(String userId, String ip, long incomingTimestamp, int permits) {
+        RequestKeys request = requestKeys.get();
+        KeySink keys = request.resolve(userId, ip);
+
+        try {
+            releaseHotKeys(keys, keys.size(), incomingTimestamp, permits);
+            delegate.releasePermits(userId, ip, incomingTimestamp, permits);
+        } finally {
+            request.done();
+        }
+    }
+
+    private void releaseHotKeys(KeySink keys, int charged, long incomingTimestamp, int permits) {
+        for (int i = charged - 1; i >= 0; i--) {
+            StripedCounter counter = hotKeys.get(keys.key(i));
+            if (counter != null) counter.release(incomingTimestamp, permits);
+        }
+    }
+
+    // The keys of the request this thread is deciding: all of them, and the cold ones for the delegate.
+    private final class RequestKeys {
+        private final KeySink all = new KeySink();
+        private final KeySink cold = new KeySink();
+        // for a delegate resolving something other than the request in hand
+        private final KeySink scratch = new KeySink();
+        private String userId;
+        private String ip;
+
+        private KeySink resolve(String userId, String ip) {
+            resolver.resolveKeys(userId, ip, all);
+            cold.clear();
+            for (int i = 0; i < all.size(); i++) {
+                if (!hotKeys.containsKey(all.key(i))) cold.add(all, i);
+            }
+            this.userId = userId;
+            this.ip = ip;
+            return all;
+        }
+
+        private boolean isResolved(String userId, String ip) {
+            return this.userId == userId && this.ip == ip;
+        }
+
+        private void done() {
+            userId = null;
+            ip = null;
+        }
+    }
+
+    private final class ColdKeyResolver implements KeyResolver {
+        @Override
+        public List<String> resolveKey(String userId, String ip) {
+            List<String> keys = resolver.resolveKey(userId, ip);
+            List<String> coldKeys = new ArrayList<>(keys.size());
+
+            for (String key : keys) {
+                if (!hotKeys.containsKey(key)) coldKeys.add(key);
+            }
+
+            return coldKeys;
+        }
+
+        @Override
+        public void resolveKeys(String userId, String ip, KeySink sink) {
+            RequestKeys request = requestKeys.get();
+            sink.clear();
+            if (request.isResolved(userId, ip)) {
+                for (int i = 0; i < request.cold.size(); i++) {
+                    sink.add(request.cold, i);
+                }
+                return;
+            }
+
+            KeySink keys = request.scratch;
+            resolver.resolveKeys(userId, ip, keys);
+            for (int i = 0; i < keys.size(); i++) {
+                if (!hotKeys.containsKey(keys.key(i))) sink.add(keys, i);
+            }
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package Striped;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+ * Fixed window budget for a single very hot key (global / tenant wide limits).
+ *
+ * The window budget lives in one central word, but threads draw from it in chunks and keep the chunk in a
+ * per-stripe slot (one cache line each), so the steady state is an uncontended CAS on a thread-local line
+ * instead of every core hammering one map entry. When the central budget runs dry, a thread steals from
+ * the other stripes before giving up, which rebalances permits stuck in idle stripes.
+ *
+ * The budget is never over-admitted. The configured error is the number of permits that may sit cached
+ * in other stripes once the key is drained, i.e. how far a single thread can be under-admitted.
+ *
+ * A weighted acquire gathers its permits from the own stripe, the central word and other stripes in turn.
+ * If they do not add up it is denied and what it gathered goes back to its stripe, still usable.
+ *
+ * Central and stripe words hold the window index in the high 32 bits and a permit count in the low 32.
+ */
+public class StripedCounter {
+    private static final int COUNT_BITS = 32;
+    private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+    private static final int LONGS_PER_CACHE_LINE = 8;
+
+    private final int limit;
+    private final long windowSizeInMs;
+    private final int stripeMask;
+    private final int chunkSize;
+    private final AtomicLong central = new AtomicLong();
+    private final AtomicLongArray stripes;
+    private volatile int drainedWindow = -1;
+
+    public StripedCounter(int limit, long windowSizeInSeconds, int maxCachedPermits) {
+        this(limit, windowSizeInSeconds, Runtime.getRuntime().availableProcessors() * 2, maxCachedPermits);
+    }
+
+    public StripedCounter(int limit, long windowSizeInSeconds, int stripeCount, int maxCachedPermits) {
+        int stripesPowerOfTwo = stripeCount <= 1 ? 1 : 1 << (32 - Integer.numberOfLeadingZeros(stripeCount - 1));
+
+        this.limit = limit;
+        this.windowSizeInMs = windowSizeInSeconds * 1000L;
+        this.stripeMask = stripesPowerOfTwo - 1;
+        this.chunkSize = Math.max(1, maxCachedPermits / stripesPowerOfTwo);
+        // one spare line in front so stripe 0 does not share a line with the array header
+        this.stripes = new AtomicLongArray((stripesPowerOfTwo + 1) * LONGS_PER_CACHE_LINE);
+    }
+
+    public boolean tryAcquire(long incomingTimestamp) {
+        return tryAcquire(incomingTimestamp, 1);
+    }
+
+    public boolean tryAcquire(long incomingTimestamp, int permits) {
+        int window = (int) (incomingTimestamp / windowSizeInMs);
+        int slot = stripeSlot();
+        long gathered = 0;
+
+        while (true) {
+            long cached = stripes.get(slot);
+            if (windowIndex(cached) - window >= 0 && count(cached) > 0) {
+                long take = Math.min(count(cached), permits - gathered);
+                if (!stripes.compareAndSet(slot, cached, cached - take)) continue;
+
+                gathered += take;
+                if (gathered == permits) return true;
+            }
+
+            long granted = refill(window, slot, permits - gathered);
+            if (granted == 0) {
+                if (gathered > 0) {
+                    deposit(slot, window, gathered);
+                    // they are stealable again
+                    drainedWindow = -1;
+                }
+                return false;
+            }
+
+            gathered += granted;
+            if (gathered >= permits) {
+                if (gathered > permits) deposit(slot, window, gathered - permits);
+                return true;
+            }
+        }
+    }
+
+    // Hands permits back to the calling thread's stripe, as long as their window is still current there.
+    public void release(long incomingTimestamp, int permits) {
+        int window = (int) (incomingTimestamp / windowSizeInMs);
+        int slot = stripeSlot();
+
+        while (true) {
+            long cached = stripes.get(slot);
+            if (windowIndex(cached) - window > 0) return;
+
+            long updated = windowIndex(cached) == window ? cached + permits : pack(window, permits);
+            if (stripes.compareAndSet(slot, cached, updated)) break;
+        }
+        drainedWindow = -1;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    // Takes what is still needed plus a chunk to cache, as far as the central budget goes.
+    private long refill(int window, int ownSlot, long needed) {
+        while (true) {
+            long state = central.get();
+            int centralWindow = windowIndex(state);
+
+            if (centralWindow - window < 0) {
+                central.compareAndSet(state, pack(window, limit));
+                continue;
+            }
+
+            long remaining = count(state);
+            if (remaining == 0) {
+                return drainedWindow == centralWindow ? 0 : steal(centralWindow, ownSlot);
+            }
+
+            long take = Math.min(needed - 1 + chunkSize, remaining);
+            if (central.compareAndSet(state, state - take)) {
+                return take;
+            }
+        }
+    }
+
+    private long steal(int window, int ownSlot) {
+        for (int stripe = 0; stripe <= stripeMask; stripe++) {
+            int slot = slotOf(stripe);
+            if (slot == ownSlot) continue;
+
+            while (true) {
+                long cached = stripes.get(slot);
+                long available = count(cached);
+                if (windowIndex(cached) != window || available == 0) break;
+
+                long take = (available + 1) / 2;
+                if (stripes.compareAndSet(slot, cached, cached - take)) return take;
+            }
+        }
+
+        drainedWindow = window;
+        return 0;
+    }
+
+    private void deposit(int slot, int window, long permits) {
+        while (true) {
+            long cached = stripes.get(slot);
+            long updated = windowIndex(cached) == window ? cached + permits : pack(window, permits);
+            if (stripes.compareAndSet(slot, cached, updated)) return;
+        }
+    }
+
+    private int stripeSlot() {
+        long id = Thread.currentThread().getId();
+        int stripe = (int) ((id * 0x9E3779B97F4A7C15L) >>> 40) & stripeMask;
+        return slotOf(stripe);
+    }
+
+    private static int slotOf(int stripe) {
+        return (stripe + 1) * LONGS_PER_CACHE_LINE;
+    }
+
+    private static long pack(int window, long count) {
+        return ((long) window << COUNT_BITS) | count;
+    }
+
+    private static int windowIndex(long state) {
+        return (int) (state >>> COUNT_BITS);
+    }
+
+    private static long count(long state) {
+        return state & COUNT_MASK;
+    }
+}
@@ -0,0 +1,210 @@
+package Test;
+
+import Adaptive.AdaptiveRateLimiter;
+import Adaptive.AimdController;
+import Adaptive.GradientController;
+import Adaptive.OutcomeSample;
+import Adaptive.RateController;
+import Core.Resolver.HybridKeyResolver;
+import Core.Time.ManualClock;
+import FixedWindow.FixedWindowRateLimiter;
+import Tiered.Tier;
+import Tiered.TieredRateLimiter;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class AdaptiveRateLimiterTest {
+
+    private static final long FAST = Duration.ofMillis(5).toNanos();
+    private static final long SLOW = Duration.ofMillis(50).toNanos();
+
+    private long currentTimeStampInMs;
+
+    @Before
+    public void setUp() throws Exception {
+        currentTimeStampInMs = ManualClock.START;
+    }
+
+    @Test
+    public void admitsTheCurrentRateWithItsBurst() {
+        // 100 per second with 100 ms of burst: 10 at once, then one every 10 ms
+        AdaptiveRateLimiter rateLimiter = new AdaptiveRateLimiter(new AimdController(10, 1000, 100, 10, 0.9,
+                Duration.ofMillis(20), 0.01));
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(rateLimiter.allowRequest("user" + i, "", currentTimeStampInMs));
+        }
+        assertFalse(rateLimiter.allowRequest("user10", "", currentTimeStampInMs));
+        assertFalse(rateLimiter.allowRequest("user10", "", currentTimeStampInMs + 9));
+        assertTrue(rateLimiter.allowRequest("user10", "", currentTimeStampInMs + 10));
+        assertFalse(rateLimiter.allowRequest("user11", "", currentTimeStampInMs + 10, 2));
+        assertTrue(rateLimiter.allowRequest("user11", "", currentTimeStampInMs + 30, 2));
+    }
+
+    @Test
+    public void aimdBacksOffOnLatencyOrErrorsAndProbesBackUp() {
+        AdaptiveRateLimiter rateLimiter = new AdaptiveRateLimiter(new AimdController(10, 1000, 100, 10, 0.5,
+                Duration.ofMillis(20), 0.01), AdaptiveRateLimiter.DEFAULT_BURST, 100, 10);
+        rateLimiter.tick(currentTimeStampInMs);
+
+        report(rateLimiter, 10, 0, SLOW);
+        rateLimiter.tick(currentTimeStampInMs += 100);
+        assertEquals(50, rateLimiter.getRate(), 1e-9);
+
+        report(rateLimiter, 9, 1, FAST);
+        rateLimiter.tick(currentTimeStampInMs += 100);
+        assertEquals(25, rateLimiter.getRate(), 1e-9);
+
+        report(rateLimiter, 10, 0, FAST);
+        rateLimiter.tick(currentTimeStampInMs += 100);
+        assertEquals(35, rateLimiter.getRate(), 1e-9);
+
+        // never below minRate
+        for (int i = 0; i < 10; i++) {
+            report(rateLimiter, 0, 10, FAST);
+            rateLimiter.tick(currentTimeStampInMs += 100);
+        }
+        assertEquals(10, rateLimiter.getRate(), 1e-9);
+    }
+
+    @Test
+    public void rateHoldsUntilEnoughOutcomesCameIn() {
+        List<OutcomeSample> samples = new ArrayList<>();
+        AdaptiveRateLimiter rateLimiter = new AdaptiveRateLimiter(new RateController() {
+            @Override
+            public double initialRate() {
+                return 100;
+            }
+
+            @Override
+            public double nextRate(double rate, OutcomeSample sample) {
+                samples.add(sample);
+                return rate / 2;
+            }
+        }, AdaptiveRateLimiter.DEFAULT_BURST, 100, 10);
+        rateLimiter.tick(currentTimeStampInMs);
+
+        report(rateLimiter, 6, 0, FAST);
+        rateLimiter.tick(currentTimeStampInMs += 100);
+        assertEquals(100, rateLimiter.getRate(), 1e-9);
+        assertTrue(samples.isEmpty());
+
+        // the first interval's outcomes carry over
+        report(rateLimiter, 2, 2, SLOW);
+        rateLimiter.tick(currentTimeStampInMs += 50);
+        assertTrue(samples.isEmpty());
+        rateLimiter.tick(currentTimeStampInMs += 50);
+        assertEquals(50, rateLimiter.getRate(), 1e-9);
+
+        OutcomeSample sample = samples.get(0);
+        assertEquals(10, sample.getCount());
+        assertEquals(2, sample.getErrorCount());
+        assertEquals((6 * FAST + 2 * SLOW) / 8, sample.getMeanLatencyInNanos());
+    }
+
+    @Test
+    public void gradientFollowsTheLatencyTrend() {
+        GradientController controller = new GradientController(10, 1000, 100);
+        double rate = controller.initialRate();
+
+        // steady latency: the rate grows towards maxRate
+        for (int i = 0; i < 50; i++) {
+            rate = controller.nextRate(rate, new OutcomeSample(100, 0, FAST));
+        }
+        assertTrue(rate > 200);
+        assertEquals(FAST, controller.getBaselineLatencyInNanos(), 1);
+        double healthy = rate;
+
+        // latency ten times the baseline: the gradient bottoms out and the rate falls
+        for (int i = 0; i < 20; i++) {
+            rate = controller.nextRate(rate, new OutcomeSample(100, 0, SLOW));
+        }
+        assertTrue(rate < healthy / 2);
+
+        // back to normal: growing again
+        double degraded = rate;
+        rate = controller.nextRate(rate, new OutcomeSample(100, 0, FAST));
+        assertTrue(rate > degraded);
+
+        for (int i = 0; i < 200; i++) {
+            rate = controller.nextRate(rate, new OutcomeSample(100, 50, FAST));
+        }
+        assertEquals(10, rate, 1e-9);
+    }
+
+    @Test
+    public void delegateRejectionHandsTheGlobalPermitBack() {
+        AdaptiveRateLimiter rateLimiter = new AdaptiveRateLimiter(new FixedWindowRateLimiter(1, 60, new HybridKeyResolver()),
+                new AimdController(10, 10, Duration.ofMillis(20)), Duration.ofMillis(200), 100, 10);
+
+        // 10 per second with 200 ms of burst: 2 at once
+        assertTrue(rateLimiter.allowRequest("user1", "", currentTimeStampInMs));
+        assertFalse(rateLimiter.allowRequest("user1", "", currentTimeStampInMs));
+        assertTrue(rateLimiter.allowRequest("user2", "", currentTimeStampInMs));
+        assertFalse(rateLimiter.allowRequest("user3", "", currentTimeStampInMs));
+    }
+
+    @Test
+    public void guardsTheGlobalTierOfATieredLimiter() {
+        HybridKeyResolver resolver = new HybridKeyResolver(true);
+        AdaptiveRateLimiter global = new AdaptiveRateLimiter(new AimdController(10, 10, Duration.ofMillis(20)));
+        TieredRateLimiter rateLimiter = new TieredRateLimiter(resolver, List.of(
+                new Tier(HybridKeyResolver.USER_KEY_PREFIX, new FixedWindowRateLimiter(1, 60, resolver)),
+                new Tier(HybridKeyResolver.GLOBAL_KEY, global)));
+
+        // 10 per second with 100 ms of burst: 1 at once, whoever asks
+        assertTrue(rateLimiter.allowRequest("user1", "", currentTimeStampInMs));
+        assertFalse(rateLimiter.allowRequest("user2", "", currentTimeStampInMs + 50));
+        assertTrue(rateLimiter.allowRequest("user2", "", currentTimeStampInMs + 100));
+        // user1's own limit rejects first, so the global permit is not spent
+        assertFalse(rateLimiter.allowRequest("user1", "", currentTimeStampInMs + 200));
+        assertTrue(rateLimiter.allowRequest("user3", "", currentTimeStampInMs + 200));
+    }
+
+    @Test
+    public void concurrentReportsAreAllCounted() throws Exception {
+        List<OutcomeSample> samples = new ArrayList<>();
+        AdaptiveRateLimiter rateLimiter = new AdaptiveRateLimiter(new RateController() {
+            @Override
+            public double initialRate() {
+                return 100;
+            }
+
+            @Override
+            public double nextRate(double rate, OutcomeSample sample) {
+                samples.add(sample);
+                return rate;
+            }
+        }, AdaptiveRateLimiter.DEFAULT_BURST, 100, 1);
+        rateLimiter.tick(currentTimeStampInMs);
+
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> report(rateLimiter, 10_000, 1_000, FAST));
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        rateLimiter.tick(currentTimeStampInMs + 100);
+        assertEquals(44_000, samples.get(0).getCount());
+        assertEquals(4_000, samples.get(0).getErrorCount());
+        assertEquals(FAST, samples.get(0).getMeanLatencyInNanos());
+    }
+
+    private static void report(AdaptiveRateLimiter rateLimiter, int successes, int errors, long latencyInNanos) {
+        for (int i = 0; i < successes; i++) {
+            rateLimiter.recordSuccess(latencyInNanos);
+        }
+        for (int i = 0; i < errors; i++) {
+            rateLimiter.recordError();
+        }
+    }
+}
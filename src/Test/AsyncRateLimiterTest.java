@@ -0,0 +1,293 @@
+package Test;
+
+import Async.AsyncRateLimiter;
+import Core.RateLimiter;
+import Core.Request;
+import Core.Resolver.HybridKeyResolver;
+import Core.Resolver.KeyResolver;
+import Core.Time.ManualClock;
+import FixedWindow.FixedWindowRateLimiter;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class AsyncRateLimiterTest {
+
+    private final KeyResolver resolver = new HybridKeyResolver();
+    private long currentTimeStampInMs;
+    // Tasks only run when the test says so.
+    private final Queue<Runnable> tasks = new ArrayDeque<>();
+    private final Executor executor = tasks::add;
+
+    @Before
+    public void setUp() throws Exception {
+        currentTimeStampInMs = ManualClock.START;
+    }
+
+    @Test
+    public void uncontendedLocalDecisionsRunInline() {
+        AsyncRateLimiter rateLimiter = new AsyncRateLimiter(new FixedWindowRateLimiter(2, 60, resolver), resolver, executor);
+
+        assertTrue(rateLimiter.allowRequest("user1", "10.0.0.1", currentTimeStampInMs).toCompletableFuture().isDone());
+        assertTrue(rateLimiter.allowRequest("user1", "10.0.0.1", currentTimeStampInMs).toCompletableFuture().join());
+        assertFalse(rateLimiter.allowRequest("user1", "10.0.0.1", currentTimeStampInMs).toCompletableFuture().join());
+
+        assertTrue(tasks.isEmpty());
+        assertEquals(3, rateLimiter.getInlineDecisionCount());
+        assertEquals(0, rateLimiter.getOffloadedDecisionCount());
+    }
+
+    @Test
+    public void remoteDecisionsAlwaysGoToTheExecutor() {
+        AsyncRateLimiter rateLimiter = new AsyncRateLimiter(new FixedWindowRateLimiter(2, 60, resolver), resolver, executor,
+                16, true);
+
+        CompletableFuture<Boolean> decision = rateLimiter.allowRequest("user1", "", currentTimeStampInMs).toCompletableFuture();
+        assertFalse(decision.isDone());
+        assertEquals(1, rateLimiter.getPendingCount());
+
+        runTasks();
+        assertTrue(decision.join());
+        assertEquals(0, rateLimiter.getPendingCount());
+        assertEquals(1, rateLimiter.getOffloadedDecisionCount());
+    }
+
+    @Test
+    public void contendedKeyIsOffloadedInsteadOfWaitedFor() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        RateLimiter slow = (userId, ip, incomingTimestamp, permits) -> {
+            if (userId.equals("slow")) {
+                entered.countDown();
+                await(release);
+            }
+            return true;
+        };
+        AsyncRateLimiter rateLimiter = new AsyncRateLimiter(slow, resolver, executor);
+
+        Thread holder = new Thread(() -> rateLimiter.allowRequest("slow", "10.0.0.1", currentTimeStampInMs));
+        holder.start();
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+
+        // the same ip under another user contends too; another user and ip do not
+        CompletableFuture<Boolean> contended = rateLimiter.allowRequest("user1", "10.0.0.1", currentTimeStampInMs).toCompletableFuture();
+        CompletableFuture<Boolean> free = rateLimiter.allowRequest("user2", "10.0.0.2", currentTimeStampInMs).toCompletableFuture();
+        assertFalse(contended.isDone());
+        assertTrue(free.isDone());
+
+        release.countDown();
+        holder.join();
+        runTasks();
+        assertTrue(contended.join());
+        assertEquals(1, rateLimiter.getOffloadedDecisionCount());
+    }
+
+    @Test
+    public void sharedGlobalKeyIsContendedByEveryUser() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        RateLimiter slow = (userId, ip, incomingTimestamp, permits) -> {
+            if (userId.equals("slow")) {
+                entered.countDown();
+                await(release);
+            }
+            return true;
+        };
+        AsyncRateLimiter rateLimiter = new AsyncRateLimiter(slow, new HybridKeyResolver(true), executor);
+
+        Thread holder = new Thread(() -> rateLimiter.allowRequest("slow", "10.0.0.1", currentTimeStampInMs));
+        holder.start();
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+
+        // no user or ip in common, but both requests are charged to GLOBAL
+        CompletableFuture<Boolean> other = rateLimiter.allowRequest("user2", "10.0.0.2", currentTimeStampInMs).toCompletableFuture();
+        assertFalse(other.isDone());
+
+        release.countDown();
+        holder.join();
+        runTasks();
+        assertTrue(other.join());
+        assertEquals(1, rateLimiter.getOffloadedDecisionCount());
+    }
+
+    @Test
+    public void offloadedDecisionKeepsItsKeysOffTheInlinePath() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        RateLimiter slow = (userId, ip, incomingTimestamp, permits) -> {
+            if (userId.equals("slow")) {
+                entered.countDown();
+                await(release);
+            }
+            return true;
+        };
+        AsyncRateLimiter rateLimiter = new AsyncRateLimiter(slow, resolver, executor);
+
+        Thread holder = new Thread(() -> rateLimiter.allowRequest("slow", "10.0.0.1", currentTimeStampInMs));
+        holder.start();
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Boolean> offloaded = rateLimiter.allowRequest("user1", "10.0.0.1", currentTimeStampInMs).toCompletableFuture();
+        release.countDown();
+        holder.join();
+
+        // the inline holder is gone, but user1 and 10.0.0.1 are still queued on the executor
+        CompletableFuture<Boolean> sameUser = rateLimiter.allowRequest("user1", "10.0.0.2", currentTimeStampInMs).toCompletableFuture();
+        CompletableFuture<Boolean> sameIp = rateLimiter.releasePermits("user2", "10.0.0.1", currentTimeStampInMs, 1)
+                .thenApply(done -> true).toCompletableFuture();
+        CompletableFuture<boolean[]> batch = rateLimiter.allowRequests(List.of(new Request("user3", "10.0.0.3", currentTimeStampInMs),
+                new Request("user1", "10.0.0.3", currentTimeStampInMs))).toCompletableFuture();
+        assertFalse(sameUser.isDone() || sameIp.isDone() || batch.isDone());
+        assertEquals(4, tasks.size());
+
+        runTasks();
+        assertTrue(offloaded.join() && sameUser.join() && sameIp.join());
+        assertArrayEquals(new boolean[]{true, true}, batch.join());
+        // all released: inline again
+        assertTrue(rateLimiter.allowRequest("user1", "10.0.0.1", currentTimeStampInMs).toCompletableFuture().isDone());
+        assertTrue(tasks.isEmpty());
+    }
+
+    @Test
+    public void fullExecutorRejectsAtOnce() {
+        AsyncRateLimiter rateLimiter = new AsyncRateLimiter(new FixedWindowRateLimiter(5, 60, resolver), resolver, executor,
+                2, true);
+
+        CompletableFuture<Boolean> first = rateLimiter.allowRequest("user1", "", currentTimeStampInMs).toCompletableFuture();
+        CompletableFuture<Boolean> second = rateLimiter.allowRequest("user1", "", currentTimeStampInMs).toCompletableFuture();
+        CompletableFuture<Boolean> third = rateLimiter.allowRequest("user1", "", currentTimeStampInMs).toCompletableFuture();
+
+        assertTrue(third.isCompletedExceptionally());
+        CompletionException e = assertThrows(CompletionException.class, third::join);
+        assertTrue(e.getCause() instanceof RejectedExecutionException);
+        assertEquals(1, rateLimiter.getOverloadRejectionCount());
+
+        runTasks();
+        assertTrue(first.join() && second.join());
+        assertEquals(0, rateLimiter.getPendingCount());
+        // room again once the executor has caught up
+        assertFalse(rateLimiter.allowRequest("user1", "", currentTimeStampInMs).toCompletableFuture().isCompletedExceptionally());
+    }
+
+    @Test
+    public void limiterFailuresSurfaceInTheStage() {
+        RateLimiter broken = (userId, ip, incomingTimestamp, permits) -> {
+            throw new IllegalStateException("backend down");
+        };
+
+        CompletableFuture<Boolean> inline = new AsyncRateLimiter(broken, resolver, executor)
+                .allowRequest("user1", "", currentTimeStampInMs).toCompletableFuture();
+        CompletableFuture<Boolean> offloaded = new AsyncRateLimiter(broken, resolver, executor, 16, true)
+                .allowRequest("user1", "", currentTimeStampInMs).toCompletableFuture();
+        runTasks();
+
+        for (CompletableFuture<Boolean> decision : List.of(inline, offloaded)) {
+            CompletionException e = assertThrows(CompletionException.class, decision::join);
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    @Test
+    public void batchIsDecidedInlineUnlessAKeyIsBusy() {
+        AsyncRateLimiter rateLimiter = new AsyncRateLimiter(new FixedWindowRateLimiter(2, 60, resolver), resolver, executor);
+        List<Request> requests = List.of(
+                new Request("user1", "10.0.0.1", currentTimeStampInMs),
+                new Request("user1", "10.0.0.2", currentTimeStampInMs),
+                new Request("user1", "10.0.0.3", currentTimeStampInMs));
+
+        CompletableFuture<boolean[]> allowed = rateLimiter.allowRequests(requests).toCompletableFuture();
+        assertTrue(allowed.isDone());
+        assertArrayEquals(new boolean[]{true, true, false}, allowed.join());
+        assertTrue(tasks.isEmpty());
+    }
+
+    @Test
+    public void processorDeliversDecisionsInOrderUnderDemand() throws Exception {
+        AsyncRateLimiter rateLimiter = new AsyncRateLimiter(new FixedWindowRateLimiter(3, 60, resolver), resolver,
+                Runnable::run, 16, true);
+        Flow.Processor<Request, Boolean> processor = rateLimiter.processor(2);
+        CollectingSubscriber subscriber = new CollectingSubscriber();
+        processor.subscribe(subscriber);
+
+        try (SubmissionPublisher<Request> publisher = new SubmissionPublisher<>()) {
+            publisher.subscribe(processor);
+            for (int i = 0; i < 5; i++) {
+                publisher.submit(new Request("user1", "", currentTimeStampInMs));
+            }
+
+            subscriber.subscription.request(2);
+            subscriber.awaitDecisions(2);
+            Thread.sleep(50);
+            // no demand past the first two, so nothing more comes
+            assertEquals(2, subscriber.decisions.size());
+
+            subscriber.subscription.request(Long.MAX_VALUE);
+            subscriber.awaitDecisions(5);
+        }
+
+        assertTrue(subscriber.completed.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of(true, true, true, false, false), subscriber.decisions);
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class CollectingSubscriber implements Flow.Subscriber<Boolean> {
+        private final List<Boolean> decisions = new ArrayList<>();
+        private final CountDownLatch completed = new CountDownLatch(1);
+        private volatile Flow.Subscription subscription;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public synchronized void onNext(Boolean allowed) {
+            decisions.add(allowed);
+            notifyAll();
+        }
+
+        @Override
+        public void onError(Throwable error) {
+        }
+
+        @Override
+        public void onComplete() {
+            completed.countDown();
+        }
+
+        private synchronized void awaitDecisions(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (decisions.size() < count && System.currentTimeMillis() < deadline) {
+                wait(100);
+            }
+            assertEquals(count, decisions.size());
+        }
+    }
+}
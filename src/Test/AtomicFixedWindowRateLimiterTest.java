@@ -0,0 +1,103 @@
+package Test;
+
+import Core.Resolver.HybridKeyResolver;
+import Core.Resolver.KeyResolver;
+import Core.Time.ManualClock;
+import FixedWindow.AtomicFixedWindowRateLimiter;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class AtomicFixedWindowRateLimiterTest {
+
+    private KeyResolver resolver;
+    private long currentTimeStampInMs;
+
+    @Before
+    public void setUp() throws Exception {
+        resolver = new HybridKeyResolver();
+        currentTimeStampInMs = ManualClock.START;
+    }
+
+    @Test
+    public void allowRequestWithinLimit() {
+        AtomicFixedWindowRateLimiter rateLimiter = new AtomicFixedWindowRateLimiter(5, 60, resolver);
+
+        for (int i = 0; i < 5; i++) {
+            assertTrue(rateLimiter.allowRequest("user1", "", currentTimeStampInMs));
+        }
+    }
+
+    @Test
+    public void rejectRequestOverLimit() {
+        AtomicFixedWindowRateLimiter rateLimiter = new AtomicFixedWindowRateLimiter(5, 60, resolver);
+
+        for (int i = 0; i < 5; i++) {
+            rateLimiter.allowRequest("user1", "", currentTimeStampInMs);
+        }
+
+        assertFalse(rateLimiter.allowRequest("user1", "", currentTimeStampInMs));
+    }
+
+    @Test
+    public void testNewWindowReset() {
+        AtomicFixedWindowRateLimiter rateLimiter = new AtomicFixedWindowRateLimiter(2, 60, resolver);
+
+        assertTrue(rateLimiter.allowRequest("user1", "", currentTimeStampInMs));
+        assertTrue(rateLimiter.allowRequest("user1", "", currentTimeStampInMs));
+        assertFalse(rateLimiter.allowRequest("user1", "", currentTimeStampInMs));
+
+        assertTrue(rateLimiter.allowRequest("user1", "", currentTimeStampInMs + 60000));
+    }
+
+    @Test
+    public void testLateRequestDoesNotResetWindow() {
+        AtomicFixedWindowRateLimiter rateLimiter = new AtomicFixedWindowRateLimiter(2, 60, resolver);
+        long nextWindow = currentTimeStampInMs + 60000;
+
+        assertTrue(rateLimiter.allowRequest("user1", "", nextWindow));
+        assertTrue(rateLimiter.allowRequest("user1", "", currentTimeStampInMs));
+        assertFalse(rateLimiter.allowRequest("user1", "", nextWindow));
+    }
+
+    @Test
+    public void testMultipleUsersWithSameIP() {
+        AtomicFixedWindowRateLimiter rateLimiter = new AtomicFixedWindowRateLimiter(3, 60, resolver);
+
+        assertTrue(rateLimiter.allowRequest("user1", "192.168.0.10", currentTimeStampInMs));
+        assertTrue(rateLimiter.allowRequest("user2", "192.168.0.10", currentTimeStampInMs));
+        assertTrue(rateLimiter.allowRequest("user3", "192.168.0.10", currentTimeStampInMs));
+        assertFalse(rateLimiter.allowRequest("user1", "192.168.0.10", currentTimeStampInMs));
+    }
+
+    @Test
+    public void testLimitHoldsUnderContention() throws InterruptedException {
+        AtomicFixedWindowRateLimiter rateLimiter = new AtomicFixedWindowRateLimiter(1000, 60, resolver);
+        AtomicInteger allowed = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[8];
+
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < 500; i++) {
+                    if (rateLimiter.tryAcquire("hot", currentTimeStampInMs)) allowed.incrementAndGet();
+                }
+            });
+            threads[t].start();
+        }
+
+        start.countDown();
+        for (Thread thread : threads) thread.join();
+
+        assertEquals(1000, allowed.get());
+    }
+}
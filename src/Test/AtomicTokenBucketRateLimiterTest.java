@@ -0,0 +1,147 @@
+package Test;
+
+import Core.Resolver.HybridKeyResolver;
+import Core.Resolver.KeyResolver;
+import Core.Time.ManualClock;
+import TokenBucket.AtomicTokenBucketRateLimiter;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class AtomicTokenBucketRateLimiterTest {
+
+    private AtomicTokenBucketRateLimiter rateLimiter;
+    private KeyResolver resolver;
+    private long currentTimeStampInMs;
+    private final long tokenFillRateDefault = 1;
+    private final int capacity = 5;
+
+    @Before
+    public void setUp() throws Exception {
+        resolver = new HybridKeyResolver();
+        currentTimeStampInMs = ManualClock.START;
+        rateLimiter = new AtomicTokenBucketRateLimiter(resolver, tokenFillRateDefault, capacity);
+    }
+
+    @Test
+    public void testAllowWithinCapacity() {
+        for (int i = 0; i < capacity; i++) {
+            assertTrue(rateLimiter.allowRequest("user1", "", currentTimeStampInMs));
+        }
+    }
+
+    @Test
+    public void testRejectAfterExceedingCapacity() {
+        for (int i = 0; i < capacity; i++) {
+            assertTrue(rateLimiter.allowRequest("user1", "", currentTimeStampInMs));
+        }
+        assertFalse(rateLimiter.allowRequest("user1", "", currentTimeStampInMs));
+    }
+
+    @Test
+    public void testRefillAfterWait() {
+        for (int i = 0; i < capacity; i++) {
+            assertTrue(rateLimiter.allowRequest("user1", "", currentTimeStampInMs));
+        }
+        assertFalse(rateLimiter.allowRequest("user1", "", currentTimeStampInMs));
+
+        long newTime = currentTimeStampInMs + 2000;
+        assertTrue(rateLimiter.allowRequest("user1", "", newTime));
+        assertTrue(rateLimiter.allowRequest("user1", "", newTime));
+        assertFalse(rateLimiter.allowRequest("user1", "", newTime));
+    }
+
+    @Test
+    public void testOutOfOrderTimestamps() {
+        assertTrue(rateLimiter.allowRequest("user1", "", currentTimeStampInMs));
+        assertTrue(rateLimiter.allowRequest("user1", "", currentTimeStampInMs - 1000));
+        for (int i = 0; i < capacity - 2; i++) {
+            assertTrue(rateLimiter.allowRequest("user1", "", currentTimeStampInMs));
+        }
+        assertFalse(rateLimiter.allowRequest("user1", "", currentTimeStampInMs));
+    }
+
+    @Test
+    public void testMaxCapacityNeverExceeded() {
+        for (int i = 0; i < capacity; i++) {
+            assertTrue(rateLimiter.allowRequest("user1", "", currentTimeStampInMs));
+        }
+
+        long later = currentTimeStampInMs + 10000;
+        for (int i = 0; i < capacity; i++) {
+            assertTrue(rateLimiter.allowRequest("user1", "", later));
+        }
+        assertFalse(rateLimiter.allowRequest("user1", "", later));
+    }
+
+    @Test
+    public void testRefillRateMustGiveATokenInterval() {
+        assertThrows(IllegalArgumentException.class, () -> new AtomicTokenBucketRateLimiter(resolver, 0, capacity));
+        assertThrows(IllegalArgumentException.class, () -> new AtomicTokenBucketRateLimiter(resolver, -1, capacity));
+        assertThrows(IllegalArgumentException.class, () -> new AtomicTokenBucketRateLimiter(resolver, 2_000_000_000L, capacity));
+
+        // one token per nanosecond is the fastest
+        AtomicTokenBucketRateLimiter fastest = new AtomicTokenBucketRateLimiter(resolver, 1_000_000_000L, 1);
+        assertTrue(fastest.allowRequest("user1", "", currentTimeStampInMs));
+        assertFalse(fastest.allowRequest("user1", "", currentTimeStampInMs));
+        assertTrue(fastest.allowRequestAtNanos("user1", "", currentTimeStampInMs * 1_000_000 + 1, 1));
+    }
+
+    @Test
+    public void testCapacityHoldsUnderContention() throws InterruptedException {
+        AtomicTokenBucketRateLimiter limiter = new AtomicTokenBucketRateLimiter(resolver, 1, 1000);
+        AtomicInteger allowed = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[8];
+
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < 500; i++) {
+                    if (limiter.tryAcquire("hot", currentTimeStampInMs)) allowed.incrementAndGet();
+                }
+            });
+            threads[t].start();
+        }
+
+        start.countDown();
+        for (Thread thread : threads) thread.join();
+
+        assertEquals(1000, allowed.get());
+    }
+
+    @Test
+    public void testSteadyStateDoesNotAllocate() {
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        // create the key and let the loop below get past class initialisation and compilation
+        for (int round = 0; round < 5; round++) {
+            acquireAtTenPerSecond(currentTimeStampInMs + round * 10_000L);
+        }
+
+        long before = threadMXBean.getThreadAllocatedBytes(threadId);
+        int allowed = acquireAtTenPerSecond(currentTimeStampInMs + 50_000L);
+        long after = threadMXBean.getThreadAllocatedBytes(threadId);
+
+        assertTrue("both allowed and denied paths must be exercised", allowed > 0 && allowed < 100_000);
+        assertEquals(0, after - before);
+    }
+
+    private int acquireAtTenPerSecond(long startTimestamp) {
+        int allowed = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (rateLimiter.tryAcquire("user1", startTimestamp + i / 10)) allowed++;
+        }
+        return allowed;
+    }
+}
@@ -0,0 +1,218 @@
+package Test;
+
+import Blocking.BlockingRateLimiter;
+import Blocking.PermitTimer;
+import Core.Resolver.HybridKeyResolver;
+import Core.Time.ManualClock;
+import SlidingWindowCounter.SlidingWindowCounterRateLimiter;
+import TokenBucket.AtomicTokenBucketRateLimiter;
+import TokenBucket.TokenBucketRateLimiter;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class BlockingRateLimiterTest {
+
+    private static final String KEY = "USER_ID: user1";
+
+    // The timer only runs when the test advances the clock.
+    private final ManualClock clock = new ManualClock();
+    private PermitTimer timer;
+
+    @Before
+    public void setUp() throws Exception {
+        timer = new PermitTimer(clock::millis, 1, 64);
+    }
+
+    @Test
+    public void availablePermitsAreAcquiredAtOnce() {
+        BlockingRateLimiter rateLimiter = new BlockingRateLimiter(new TokenBucketRateLimiter(new HybridKeyResolver(), 1, 5), timer);
+
+        for (int i = 0; i < 5; i++) {
+            assertTrue(rateLimiter.acquireAsync(KEY, 1, Duration.ZERO).join());
+        }
+        assertFalse(rateLimiter.acquireAsync(KEY, 1, Duration.ZERO).join());
+        assertEquals(0, rateLimiter.getWaiterCount());
+    }
+
+    @Test
+    public void waiterIsServedAtTheExactNextPermitTime() {
+        BlockingRateLimiter rateLimiter = new BlockingRateLimiter(new TokenBucketRateLimiter(new HybridKeyResolver(), 10, 1), timer);
+        assertTrue(rateLimiter.acquireAsync(KEY, 1, Duration.ZERO).join());
+
+        CompletableFuture<Boolean> waiter = rateLimiter.acquireAsync(KEY, 1, Duration.ofSeconds(1));
+
+        advance(99);
+        assertFalse(waiter.isDone());
+        advance(1);
+        assertTrue(waiter.isDone());
+        assertTrue(waiter.join());
+    }
+
+    @Test
+    public void waitersAreServedInArrivalOrder() {
+        BlockingRateLimiter rateLimiter = new BlockingRateLimiter(new TokenBucketRateLimiter(new HybridKeyResolver(), 10, 3), timer);
+        assertTrue(rateLimiter.acquireAsync(KEY, 3, Duration.ZERO).join());
+
+        List<Integer> order = new ArrayList<>();
+        CompletableFuture<Boolean> large = rateLimiter.acquireAsync(KEY, 3, Duration.ofSeconds(1));
+        CompletableFuture<Boolean> small = rateLimiter.acquireAsync(KEY, 1, Duration.ofSeconds(1));
+        large.thenRun(() -> order.add(3));
+        small.thenRun(() -> order.add(1));
+
+        // one token would fit the small request, but it queued behind the large one
+        advance(100);
+        assertFalse(small.isDone());
+
+        advance(200);
+        assertTrue(large.join());
+        assertFalse(small.isDone());
+
+        advance(100);
+        assertTrue(small.join());
+        assertEquals(List.of(3, 1), order);
+    }
+
+    @Test
+    public void timedOutWaiterLeavesTheQueue() {
+        BlockingRateLimiter rateLimiter = new BlockingRateLimiter(new TokenBucketRateLimiter(new HybridKeyResolver(), 10, 5), timer);
+        assertTrue(rateLimiter.acquireAsync(KEY, 5, Duration.ZERO).join());
+
+        CompletableFuture<Boolean> large = rateLimiter.acquireAsync(KEY, 5, Duration.ofMillis(500));
+        CompletableFuture<Boolean> small = rateLimiter.acquireAsync(KEY, 1, Duration.ofSeconds(5));
+
+        advance(499);
+        assertFalse(large.isDone());
+        advance(1);
+        // the bucket holds 5 tokens again by now, so the small request goes straight through
+        assertFalse(large.join());
+        assertTrue(small.join());
+        assertEquals(0, rateLimiter.getWaiterCount());
+    }
+
+    @Test
+    public void failsAtOnceWhenThePermitComesAfterTheDeadline() {
+        BlockingRateLimiter rateLimiter = new BlockingRateLimiter(new TokenBucketRateLimiter(new HybridKeyResolver(), 1, 1), timer);
+        assertTrue(rateLimiter.acquireAsync(KEY, 1, Duration.ZERO).join());
+
+        CompletableFuture<Boolean> waiter = rateLimiter.acquireAsync(KEY, 1, Duration.ofMillis(999));
+
+        assertTrue(waiter.isDone());
+        assertFalse(waiter.join());
+        // more than the bucket holds never fits
+        assertFalse(rateLimiter.acquireAsync(KEY, 2, Duration.ofDays(1)).join());
+    }
+
+    @Test
+    public void bucketThatNeverRefillsFailsWaitersAtOnce() {
+        TokenBucketRateLimiter bucket = new TokenBucketRateLimiter(new HybridKeyResolver(), 0, 2);
+        BlockingRateLimiter rateLimiter = new BlockingRateLimiter(bucket, timer);
+        assertTrue(rateLimiter.acquireAsync(KEY, 2, Duration.ZERO).join());
+
+        CompletableFuture<Boolean> waiter = rateLimiter.acquireAsync(KEY, 1, Duration.ofSeconds(1));
+        assertTrue(waiter.isDone());
+        assertFalse(waiter.join());
+        assertEquals(0, rateLimiter.getWaiterCount());
+    }
+
+    @Test
+    public void queuedWaiterThatCanNoLongerFitFailsInsteadOfPolling() {
+        TokenBucketRateLimiter bucket = new TokenBucketRateLimiter(new HybridKeyResolver(), 10, 3);
+        BlockingRateLimiter rateLimiter = new BlockingRateLimiter(bucket, timer);
+        assertTrue(rateLimiter.acquireAsync(KEY, 3, Duration.ZERO).join());
+        CompletableFuture<Boolean> waiter = rateLimiter.acquireAsync(KEY, 3, Duration.ofSeconds(10));
+
+        // the key's limit drops below the waiter's request while it sleeps
+        bucket.getLimitOverrides().set(KEY, 2);
+        advance(300);
+        assertTrue(waiter.isDone());
+        assertFalse(waiter.join());
+        assertEquals(0, rateLimiter.getWaiterCount());
+    }
+
+    @Test
+    public void slidingWindowCounterWaiterIsServedOnceThePreviousWindowWeighsLessEnough() {
+        BlockingRateLimiter rateLimiter = new BlockingRateLimiter(new SlidingWindowCounterRateLimiter(5, 60, new HybridKeyResolver()), timer);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(rateLimiter.acquireAsync(KEY, 1, Duration.ZERO).join());
+        }
+
+        CompletableFuture<Boolean> waiter = rateLimiter.acquireAsync(KEY, 1, Duration.ofMinutes(2));
+
+        // next window: 5 previous requests weigh 5 * (1 - progress); one more fits from 20% in
+        advance(60_000 + 11_999);
+        assertFalse(waiter.isDone());
+        advance(1);
+        assertTrue(waiter.join());
+    }
+
+    @Test
+    public void casTokenBucketWaiterIsServedAtTheExactNextPermitTime() {
+        BlockingRateLimiter rateLimiter = new BlockingRateLimiter(new AtomicTokenBucketRateLimiter(new HybridKeyResolver(), 10, 2), timer);
+        assertTrue(rateLimiter.acquireAsync(KEY, 2, Duration.ZERO).join());
+
+        CompletableFuture<Boolean> waiter = rateLimiter.acquireAsync(KEY, 2, Duration.ofSeconds(1));
+
+        advance(199);
+        assertFalse(waiter.isDone());
+        advance(1);
+        assertTrue(waiter.join());
+        assertFalse(rateLimiter.acquireAsync(KEY, 3, Duration.ofSeconds(1)).join());
+    }
+
+    @Test
+    public void servedWaiterLeavesTheTimerWheel() {
+        BlockingRateLimiter rateLimiter = new BlockingRateLimiter(new TokenBucketRateLimiter(new HybridKeyResolver(), 10, 1), timer);
+        assertTrue(rateLimiter.acquireAsync(KEY, 1, Duration.ZERO).join());
+        CompletableFuture<Boolean> waiter = rateLimiter.acquireAsync(KEY, 1, Duration.ofSeconds(10));
+
+        advance(100);
+        assertTrue(waiter.join());
+        // its 10 s deadline would otherwise be put back on every revolution of the 64 ms wheel
+        advance(64);
+        assertEquals(0, timer.getScheduledCount());
+    }
+
+    @Test
+    public void blockingCallersOnRealTimeGetEveryPermitInTurn() throws Exception {
+        try (PermitTimer realTimer = new PermitTimer().start()) {
+            BlockingRateLimiter rateLimiter = new BlockingRateLimiter(new TokenBucketRateLimiter(new HybridKeyResolver(), 100, 1), realTimer);
+            AtomicInteger acquired = new AtomicInteger();
+            List<Thread> threads = new ArrayList<>();
+
+            long start = System.nanoTime();
+            for (int t = 0; t < 4; t++) {
+                Thread thread = new Thread(() -> {
+                    try {
+                        for (int i = 0; i < 5; i++) {
+                            if (rateLimiter.acquire(KEY, Duration.ofSeconds(5))) acquired.incrementAndGet();
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+                threads.add(thread);
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+
+            assertEquals(20, acquired.get());
+            // 1 token up front, 19 more at 100 per second
+            assertTrue(System.nanoTime() - start >= 180_000_000L);
+        }
+    }
+
+    private void advance(long ms) {
+        clock.advanceMillis(ms);
+        timer.runDueTasks();
+    }
+}
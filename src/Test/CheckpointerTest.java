@@ -0,0 +1,157 @@
+package Test;
+
+import Core.Resolver.HybridKeyResolver;
+import Core.Snapshot.Checkpointer;
+import Core.Snapshot.SnapshotWriter;
+import Core.Store.OffHeapLongStateStore;
+import Core.Time.ManualClock;
+import FixedWindow.AtomicFixedWindowRateLimiter;
+import TokenBucket.TokenBucketRateLimiter;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class CheckpointerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path directory;
+    private long currentTimeStampInMs;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = folder.getRoot().toPath();
+        currentTimeStampInMs = ManualClock.START;
+    }
+
+    @Test
+    public void deltaOnlyHoldsKeysUpdatedSinceTheLastCheckpoint() throws IOException {
+        TokenBucketRateLimiter rateLimiter = new TokenBucketRateLimiter(new HybridKeyResolver(), 1, 5);
+        Checkpointer checkpointer = new Checkpointer(directory, Map.of("tokens", rateLimiter), 1000, 10, Runnable::run);
+
+        for (int i = 0; i < 10_000; i++) {
+            rateLimiter.allowRequest("user" + i, "", currentTimeStampInMs);
+        }
+        checkpointer.checkpoint(currentTimeStampInMs + 5000);
+
+        rateLimiter.allowRequest("user1", "", currentTimeStampInMs + 10_000);
+        checkpointer.checkpoint(currentTimeStampInMs + 10_000);
+
+        List<Path> files = files();
+        assertEquals(2, files.size());
+        assertTrue(files.get(0).toString().endsWith(".full"));
+        assertTrue(files.get(1).toString().endsWith(".delta"));
+        assertTrue(Files.size(files.get(1)) * 100 < Files.size(files.get(0)));
+    }
+
+    @Test
+    public void offHeapDeltaOnlyHoldsWrittenPages() throws IOException {
+        AtomicFixedWindowRateLimiter rateLimiter = new AtomicFixedWindowRateLimiter(5, 60, new HybridKeyResolver(),
+                OffHeapLongStateStore.factory(1_000_000));
+        Checkpointer checkpointer = new Checkpointer(directory, Map.of("windows", rateLimiter), 1000, 10, Runnable::run);
+
+        for (int i = 0; i < 1000; i++) {
+            rateLimiter.allowRequest("user" + i, "", currentTimeStampInMs);
+        }
+        checkpointer.checkpoint(currentTimeStampInMs);
+        rateLimiter.allowRequest("user1", "", currentTimeStampInMs + 5000);
+        checkpointer.checkpoint(currentTimeStampInMs + 5000);
+
+        List<Path> files = files();
+        // one 64 KB page, against every page of the table
+        assertTrue(Files.size(files.get(1)) < 70_000);
+        assertTrue(Files.size(files.get(0)) > 20_000_000);
+    }
+
+    @Test
+    public void offHeapStateMovesToATableOfAnotherSize() {
+        AtomicFixedWindowRateLimiter before = new AtomicFixedWindowRateLimiter(5, 60, new HybridKeyResolver(),
+                OffHeapLongStateStore.factory(10_000));
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(before.allowRequest("user" + i, "", currentTimeStampInMs, 4));
+        }
+        new Checkpointer(directory, Map.of("windows", before), 1000, 10, Runnable::run).checkpoint(currentTimeStampInMs);
+
+        AtomicFixedWindowRateLimiter after = new AtomicFixedWindowRateLimiter(5, 60, new HybridKeyResolver(),
+                OffHeapLongStateStore.factory(50_000));
+        new Checkpointer(directory, Map.of("windows", after), 1000, 10, Runnable::run).restore();
+
+        assertEquals(1000, after.getStateStore().size());
+        for (int i = 0; i < 1000; i++) {
+            assertFalse(after.allowRequest("user" + i, "", currentTimeStampInMs, 2));
+            assertTrue(after.allowRequest("user" + i, "", currentTimeStampInMs));
+        }
+    }
+
+    @Test
+    public void newFullCheckpointReplacesOlderFiles() throws IOException {
+        TokenBucketRateLimiter rateLimiter = new TokenBucketRateLimiter(new HybridKeyResolver(), 1, 5);
+        Checkpointer checkpointer = new Checkpointer(directory, Map.of("tokens", rateLimiter), 1000, 2, Runnable::run);
+
+        for (int i = 0; i < 4; i++) {
+            rateLimiter.allowRequest("user1", "", currentTimeStampInMs + i * 1000);
+            checkpointer.checkpoint(currentTimeStampInMs + i * 1000);
+        }
+
+        // full, delta, delta, then a new full alone
+        List<Path> files = files();
+        assertEquals(1, files.size());
+        assertTrue(files.get(0).toString().endsWith(".full"));
+    }
+
+    @Test
+    public void tickCheckpointsOnTheExecutorOncePerInterval() {
+        TokenBucketRateLimiter rateLimiter = new TokenBucketRateLimiter(new HybridKeyResolver(), 1, 5);
+        List<Runnable> background = new ArrayList<>();
+        Checkpointer checkpointer = new Checkpointer(directory, Map.of("tokens", rateLimiter), 1000, 10, background::add);
+
+        checkpointer.tick(currentTimeStampInMs);
+        checkpointer.tick(currentTimeStampInMs + 999);
+        assertTrue(background.isEmpty());
+
+        checkpointer.tick(currentTimeStampInMs + 1000);
+        checkpointer.tick(currentTimeStampInMs + 1500);
+        assertEquals(1, background.size());
+
+        background.get(0).run();
+        assertEquals(1, files().size());
+        assertNull(checkpointer.getLastFailure());
+    }
+
+    @Test
+    public void restoreStartsFromNothingWithoutCheckpoints() {
+        TokenBucketRateLimiter rateLimiter = new TokenBucketRateLimiter(new HybridKeyResolver(), 1, 5);
+        assertEquals(0, new Checkpointer(directory.resolve("missing"), Map.of("tokens", rateLimiter), 1000, 10, Runnable::run).restore());
+    }
+
+    @Test
+    public void uncommittedSnapshotLeavesNoFile() throws IOException {
+        try (SnapshotWriter out = new SnapshotWriter(directory.resolve("0000000000000000001.full"), currentTimeStampInMs)) {
+            out.beginSection("tokens");
+            out.putLong(42);
+        }
+
+        assertEquals(0, Files.list(directory).count());
+    }
+
+    private List<Path> files() {
+        try (Stream<Path> listing = Files.list(directory)) {
+            return listing.sorted().collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
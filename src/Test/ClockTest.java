@@ -0,0 +1,125 @@
+package Test;
+
+import Core.Resolver.HybridKeyResolver;
+import Core.Resolver.KeyResolver;
+import Core.Time.CachedClock;
+import Core.Time.ClockedRateLimiter;
+import Core.Time.ManualClock;
+import Core.Time.WindowBoundary;
+import FixedWindow.FixedWindowRateLimiter;
+import TokenBucket.AtomicTokenBucketRateLimiter;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Duration;
+
+import static org.junit.Assert.*;
+
+public class ClockTest {
+
+    private KeyResolver resolver;
+    private ManualClock clock;
+
+    @Before
+    public void setUp() throws Exception {
+        resolver = new HybridKeyResolver();
+        clock = new ManualClock();
+    }
+
+    @Test
+    public void manualClockOnlyMovesWhenAdvanced() {
+        assertEquals(ManualClock.START, clock.millis());
+        assertEquals(ManualClock.START * 1_000_000L, clock.nanos());
+
+        clock.advance(Duration.ofNanos(1_500_000));
+        assertEquals(ManualClock.START + 1, clock.millis());
+        assertEquals(ManualClock.START * 1_000_000L + 1_500_000, clock.nanos());
+
+        assertEquals(ManualClock.START + 10, clock.advanceMillis(9));
+    }
+
+    @Test
+    public void cachedClockKeepsTheTimeOfItsLastUpdate() {
+        CachedClock cachedClock = new CachedClock(clock, 1);
+
+        clock.advanceMillis(5);
+        assertEquals(ManualClock.START, cachedClock.millis());
+        assertEquals(clock.nanos(), cachedClock.nanos());
+
+        cachedClock.update();
+        assertEquals(ManualClock.START + 5, cachedClock.millis());
+
+        clock.set(ManualClock.START);
+        cachedClock.update();
+        assertEquals(ManualClock.START + 5, cachedClock.millis());
+    }
+
+    @Test
+    public void cachedClockTickerRefreshesTheTime() throws InterruptedException {
+        try (CachedClock cachedClock = new CachedClock(clock, 1).start()) {
+            clock.advanceMillis(1000);
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while (cachedClock.millis() != ManualClock.START + 1000 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+            assertEquals(ManualClock.START + 1000, cachedClock.millis());
+        }
+    }
+
+    @Test
+    public void windowBoundaryIsComputedOncePerWindow() {
+        WindowBoundary windows = new WindowBoundary(60_000);
+
+        WindowBoundary.Window first = windows.windowOf(ManualClock.START + 10);
+        assertEquals(ManualClock.START, first.getStart());
+        assertEquals(ManualClock.START + 60_000, first.getEnd());
+        assertEquals(ManualClock.START / 60_000, first.getIndex());
+        assertSame(first, windows.windowOf(ManualClock.START + 59_999));
+
+        WindowBoundary.Window second = windows.windowOf(ManualClock.START + 60_000);
+        assertEquals(ManualClock.START + 60_000, second.getStart());
+
+        // a straggler from the previous window gets its own start, and does not move the cache back
+        assertEquals(ManualClock.START, windows.startOf(ManualClock.START + 30_000));
+        assertSame(second, windows.windowOf(ManualClock.START + 90_000));
+    }
+
+    @Test
+    public void clockedLimiterStampsRequestsWithTheClock() {
+        ClockedRateLimiter rateLimiter = new ClockedRateLimiter(new FixedWindowRateLimiter(2, 60, resolver), clock);
+
+        assertTrue(rateLimiter.allowRequestNow("user1", ""));
+        assertTrue(rateLimiter.allowRequestNow("user1", ""));
+        assertFalse(rateLimiter.allowRequestNow("user1", ""));
+
+        clock.advanceMillis(60_000);
+        assertTrue(rateLimiter.allowRequestNow("user1", "", 2));
+        assertFalse(rateLimiter.allowRequest("user1", "", clock.millis()));
+    }
+
+    @Test
+    public void nanosecondModeRefillsWithinAMillisecond() {
+        // one token every 100 us
+        ClockedRateLimiter millis = new ClockedRateLimiter(new AtomicTokenBucketRateLimiter(resolver, 10_000, 1), clock);
+        ClockedRateLimiter nanos = new ClockedRateLimiter(new AtomicTokenBucketRateLimiter(resolver, 10_000, 1), clock, true);
+
+        assertTrue(millis.allowRequestNow("user1", ""));
+        assertTrue(nanos.allowRequestNow("user1", ""));
+        assertFalse(nanos.allowRequestNow("user1", ""));
+
+        clock.advance(Duration.ofNanos(100_000));
+        assertFalse(millis.allowRequestNow("user1", ""));
+        assertTrue(nanos.allowRequestNow("user1", ""));
+        assertFalse(nanos.allowRequestNow("user1", ""));
+
+        clock.advance(Duration.ofNanos(900_000));
+        assertTrue(millis.allowRequestNow("user1", ""));
+        assertTrue(nanos.allowRequestNow("user1", ""));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nanosecondModeNeedsANanoLimiter() {
+        new ClockedRateLimiter(new FixedWindowRateLimiter(2, 60, resolver), clock, true);
+    }
+}
@@ -0,0 +1,153 @@
+package Test;
+
+import Core.Decision;
+import Core.Metrics.InstrumentedRateLimiter;
+import Core.Metrics.RecordingMetrics;
+import Core.Resolver.HybridKeyResolver;
+import Core.Resolver.KeyResolver;
+import Core.Time.ManualClock;
+import FixedWindow.AtomicFixedWindowRateLimiter;
+import FixedWindow.FixedWindowRateLimiter;
+import SlidingWindowCounter.SlidingWindowCounterRateLimiter;
+import SlidingWindowLog.SlidingLogRateLimiter;
+import TokenBucket.TokenBucketRateLimiter;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DecisionTest {
+
+    private KeyResolver resolver;
+    private long currentTimeStampInMs;
+    private final Decision decision = new Decision();
+
+    @Before
+    public void setUp() throws Exception {
+        resolver = new HybridKeyResolver();
+        currentTimeStampInMs = ManualClock.START;
+    }
+
+    @Test
+    public void tokenBucketReportsTokensLeftAndRefillTimes() {
+        // one token per ms
+        TokenBucketRateLimiter rateLimiter = new TokenBucketRateLimiter(resolver, 1000, 5);
+
+        assertTrue(rateLimiter.allowRequest("user1", "", currentTimeStampInMs, 2, decision));
+        assertEquals(5, decision.getLimit());
+        assertEquals(3, decision.getRemaining());
+        assertEquals(2, decision.getResetAfterMillis());
+        assertEquals(0, decision.getRetryAfterMillis());
+
+        assertTrue(rateLimiter.allowRequest("user1", "", currentTimeStampInMs, 3, decision));
+        assertFalse(rateLimiter.allowRequest("user1", "", currentTimeStampInMs, 4, decision));
+        assertEquals(0, decision.getRemaining());
+        assertEquals(5, decision.getResetAfterMillis());
+        assertEquals(4, decision.getRetryAfterMillis());
+
+        assertFalse(rateLimiter.allowRequest("user1", "", currentTimeStampInMs + 3, 4));
+        assertTrue(rateLimiter.allowRequest("user1", "", currentTimeStampInMs + 4, 4));
+    }
+
+    @Test
+    public void bucketThatNeverRefillsNeverSaysRetry() {
+        TokenBucketRateLimiter rateLimiter = new TokenBucketRateLimiter(resolver, 0, 2);
+
+        assertTrue(rateLimiter.allowRequest("user1", "", currentTimeStampInMs, 2, decision));
+        assertEquals(Decision.NEVER, decision.getResetAfterMillis());
+        assertFalse(rateLimiter.allowRequest("user1", "", currentTimeStampInMs + 1000, 1, decision));
+        assertEquals(Decision.NEVER, decision.getRetryAfterMillis());
+        assertEquals(Decision.NEVER, rateLimiter.nextPermitAt(HybridKeyResolver.USER_KEY_PREFIX + "user1", currentTimeStampInMs, 1));
+    }
+
+    @Test
+    public void fixedWindowResetsAtTheWindowEnd() {
+        FixedWindowRateLimiter rateLimiter = new FixedWindowRateLimiter(3, 60, resolver);
+
+        assertTrue(rateLimiter.allowRequest("user1", "", currentTimeStampInMs + 10_000, 1, decision));
+        assertEquals(2, decision.getRemaining());
+        assertEquals(50_000, decision.getResetAfterMillis());
+
+        assertTrue(rateLimiter.allowRequest("user1", "", currentTimeStampInMs + 10_000, 2, decision));
+        assertFalse(rateLimiter.allowRequest("user1", "", currentTimeStampInMs + 20_000, 1, decision));
+        assertEquals(0, decision.getRemaining());
+        assertEquals(40_000, decision.getRetryAfterMillis());
+
+        assertFalse(rateLimiter.allowRequest("user1", "", currentTimeStampInMs + 20_000, 4, decision));
+        assertEquals(Decision.NEVER, decision.getRetryAfterMillis());
+    }
+
+    @Test
+    public void slidingLogRetriesOnceTheOldestEntriesAgeOut() {
+        SlidingLogRateLimiter rateLimiter = new SlidingLogRateLimiter(3, 10, resolver);
+
+        assertTrue(rateLimiter.allowRequest("user1", "", currentTimeStampInMs));
+        assertTrue(rateLimiter.allowRequest("user1", "", currentTimeStampInMs + 1000));
+        assertTrue(rateLimiter.allowRequest("user1", "", currentTimeStampInMs + 2000, 1, decision));
+        assertEquals(0, decision.getRemaining());
+        assertEquals(10_001, decision.getResetAfterMillis());
+
+        assertFalse(rateLimiter.allowRequest("user1", "", currentTimeStampInMs + 3000, 2, decision));
+        // the two oldest entries have to go
+        assertEquals(currentTimeStampInMs + 11_001, decision.getRetryAt());
+
+        assertFalse(rateLimiter.allowRequest("user1", "", currentTimeStampInMs + 11_000, 2));
+        assertTrue(rateLimiter.allowRequest("user1", "", currentTimeStampInMs + 11_001, 2));
+    }
+
+    @Test
+    public void slidingWindowCounterRetryIsWhenThePreviousWindowWeighsLittleEnough() {
+        SlidingWindowCounterRateLimiter rateLimiter = new SlidingWindowCounterRateLimiter(10, 60, resolver);
+
+        assertTrue(rateLimiter.allowRequest("user1", "", currentTimeStampInMs, 10, decision));
+        assertEquals(0, decision.getRemaining());
+        assertEquals(120_000, decision.getResetAfterMillis());
+
+        assertFalse(rateLimiter.allowRequest("user1", "", currentTimeStampInMs + 30_000, 1, decision));
+        // 9 of room once the previous window's 10 weigh 0.9
+        assertEquals(currentTimeStampInMs + 66_000, decision.getRetryAt());
+
+        assertFalse(rateLimiter.allowRequest("user1", "", decision.getRetryAt() - 1));
+        assertTrue(rateLimiter.allowRequest("user1", "", decision.getRetryAt()));
+    }
+
+    @Test
+    public void tightestKeyIsReportedAndTheLatestRetryWins() {
+        TokenBucketRateLimiter rateLimiter = new TokenBucketRateLimiter(resolver, 1000, 5);
+
+        assertTrue(rateLimiter.allowRequest("user1", "", currentTimeStampInMs, 5));
+        assertTrue(rateLimiter.allowRequest("", "10.0.0.1", currentTimeStampInMs + 3, 5));
+
+        // the user key rejects with 4 tokens, the ip key would need 4 ms more than it
+        assertFalse(rateLimiter.allowRequest("user1", "10.0.0.1", currentTimeStampInMs + 4, 5, decision));
+        assertEquals(4, decision.getRemaining());
+        assertEquals(4, decision.getRetryAfterMillis());
+
+        assertTrue(rateLimiter.allowRequest("user1", "10.0.0.2", currentTimeStampInMs + 10, 2, decision));
+        assertEquals(3, decision.getRemaining());
+        assertTrue(rateLimiter.allowRequest("user2", "10.0.0.1", currentTimeStampInMs + 10, 4, decision));
+        assertEquals(1, decision.getRemaining());
+    }
+
+    @Test
+    public void limitersWithoutDetailsLeaveThemUnknown() {
+        AtomicFixedWindowRateLimiter rateLimiter = new AtomicFixedWindowRateLimiter(1, 60, resolver);
+
+        assertTrue(rateLimiter.allowRequest("user1", "", currentTimeStampInMs, 1, decision));
+        assertEquals(Decision.UNKNOWN, decision.getRemaining());
+        assertFalse(rateLimiter.allowRequest("user1", "", currentTimeStampInMs, 1, decision));
+        assertEquals(Decision.UNKNOWN, decision.getRetryAfterMillis());
+    }
+
+    @Test
+    public void instrumentedLimiterPassesTheDecisionThrough() {
+        RecordingMetrics metrics = new RecordingMetrics();
+        InstrumentedRateLimiter rateLimiter = new InstrumentedRateLimiter(resolver,
+                keyResolver -> new FixedWindowRateLimiter(1, 60, keyResolver), metrics.forLimiter("fixed"));
+
+        assertTrue(rateLimiter.allowRequest("user1", "", currentTimeStampInMs, 1, decision));
+        assertFalse(rateLimiter.allowRequest("user1", "", currentTimeStampInMs, 1, decision));
+        assertEquals(60_000, decision.getRetryAfterMillis());
+        assertEquals(1, metrics.getStats("fixed").getDeniedCount());
+    }
+}
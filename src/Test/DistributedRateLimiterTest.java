@@ -0,0 +1,227 @@
+package Test;
+
+import Core.RateLimiter;
+import Core.Request;
+import Core.Resolver.HybridKeyResolver;
+import Core.Time.ManualClock;
+import Distributed.EmbeddedRespServer;
+import Distributed.RateLimitScripts;
+import Distributed.RedisLongStateStore;
+import Distributed.RedisSlidingWindowCounterRateLimiter;
+import Distributed.RedisTokenBucketRateLimiter;
+import Distributed.RespClient;
+import Distributed.RespException;
+import FixedWindow.AtomicFixedWindowRateLimiter;
+import TokenBucket.AtomicTokenBucketRateLimiter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class DistributedRateLimiterTest {
+
+    private EmbeddedRespServer server;
+    private RespClient nodeA;
+    private RespClient nodeB;
+    private long currentTimeStampInMs;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new EmbeddedRespServer();
+        nodeA = new RespClient("127.0.0.1", server.getPort());
+        nodeB = new RespClient("127.0.0.1", server.getPort());
+        currentTimeStampInMs = ManualClock.START;
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        nodeA.close();
+        nodeB.close();
+        server.close();
+    }
+
+    @Test
+    public void tokenBucketLimitIsSharedBetweenNodes() {
+        RateLimiter a = new RedisTokenBucketRateLimiter(nodeA, "rl:", new HybridKeyResolver(), 1, 4);
+        RateLimiter b = new RedisTokenBucketRateLimiter(nodeB, "rl:", new HybridKeyResolver(), 1, 4);
+
+        assertTrue(a.allowRequest("user1", "", currentTimeStampInMs));
+        assertTrue(b.allowRequest("user1", "", currentTimeStampInMs));
+        assertTrue(a.allowRequest("user1", "", currentTimeStampInMs));
+        assertTrue(b.allowRequest("user1", "", currentTimeStampInMs));
+        assertFalse(a.allowRequest("user1", "", currentTimeStampInMs));
+        assertFalse(b.allowRequest("user1", "", currentTimeStampInMs));
+
+        // one token per second
+        assertTrue(b.allowRequest("user1", "", currentTimeStampInMs + 1000));
+        assertFalse(a.allowRequest("user1", "", currentTimeStampInMs + 1000));
+    }
+
+    @Test
+    public void tokenBucketRefillRateMustFitTheServersMicroseconds() {
+        assertThrows(IllegalArgumentException.class, () -> new RedisTokenBucketRateLimiter(nodeA, "rl:", new HybridKeyResolver(), 0, 4));
+        assertThrows(IllegalArgumentException.class, () -> new RedisTokenBucketRateLimiter(nodeA, "rl:", new HybridKeyResolver(), 2_000_000, 4));
+
+        // one token per microsecond is the fastest: a millisecond refills a thousand. A second's burst, so
+        // the key outlives the test on the server's real clock.
+        RateLimiter fastest = new RedisTokenBucketRateLimiter(nodeA, "rl:", new HybridKeyResolver(), 1_000_000, 1_000_000);
+        assertTrue(fastest.allowRequest("user1", "", currentTimeStampInMs, 1_000_000));
+        assertFalse(fastest.allowRequest("user1", "", currentTimeStampInMs, 1));
+        assertFalse(fastest.allowRequest("user1", "", currentTimeStampInMs + 1, 1001));
+        assertTrue(fastest.allowRequest("user1", "", currentTimeStampInMs + 1, 1000));
+    }
+
+    @Test
+    public void slidingWindowCounterLimitIsSharedBetweenNodes() {
+        RateLimiter a = new RedisSlidingWindowCounterRateLimiter(nodeA, "rl:", 4, 60, new HybridKeyResolver());
+        RateLimiter b = new RedisSlidingWindowCounterRateLimiter(nodeB, "rl:", 4, 60, new HybridKeyResolver());
+
+        for (int i = 0; i < 2; i++) {
+            assertTrue(a.allowRequest("user1", "", currentTimeStampInMs));
+            assertTrue(b.allowRequest("user1", "", currentTimeStampInMs));
+        }
+        assertFalse(a.allowRequest("user1", "", currentTimeStampInMs + 1000));
+
+        // halfway through the next window, half of the previous one still counts
+        assertTrue(b.allowRequest("user1", "", currentTimeStampInMs + 90_000));
+        assertTrue(a.allowRequest("user1", "", currentTimeStampInMs + 90_000));
+        assertFalse(b.allowRequest("user1", "", currentTimeStampInMs + 90_000));
+    }
+
+    @Test
+    public void keyPrefixesSeparateLimits() {
+        RateLimiter a = new RedisTokenBucketRateLimiter(nodeA, "a:", new HybridKeyResolver(), 1, 1);
+        RateLimiter b = new RedisTokenBucketRateLimiter(nodeA, "b:", new HybridKeyResolver(), 1, 1);
+
+        assertTrue(a.allowRequest("user1", "", currentTimeStampInMs));
+        assertTrue(b.allowRequest("user1", "", currentTimeStampInMs));
+        assertFalse(a.allowRequest("user1", "", currentTimeStampInMs));
+    }
+
+    @Test
+    public void rejectionByOneKeyChargesNoOtherKey() {
+        RateLimiter rateLimiter = new RedisSlidingWindowCounterRateLimiter(nodeA, "rl:", 2, 60, new HybridKeyResolver());
+
+        assertTrue(rateLimiter.allowRequest("user1", "10.0.0.1", currentTimeStampInMs));
+        assertTrue(rateLimiter.allowRequest("user2", "10.0.0.1", currentTimeStampInMs));
+        assertFalse(rateLimiter.allowRequest("user3", "10.0.0.1", currentTimeStampInMs));
+
+        // user3 was not charged for the request its ip rejected
+        assertTrue(rateLimiter.allowRequest("user3", "", currentTimeStampInMs));
+        assertTrue(rateLimiter.allowRequest("user3", "", currentTimeStampInMs));
+        assertFalse(rateLimiter.allowRequest("user3", "", currentTimeStampInMs));
+    }
+
+    @Test
+    public void weightedRequestsChargeTheirPermits() {
+        RateLimiter tokenBucket = new RedisTokenBucketRateLimiter(nodeA, "tb:", new HybridKeyResolver(), 1, 5);
+        RateLimiter slidingCounter = new RedisSlidingWindowCounterRateLimiter(nodeA, "sc:", 5, 60, new HybridKeyResolver());
+
+        for (RateLimiter rateLimiter : List.of(tokenBucket, slidingCounter)) {
+            assertFalse(rateLimiter.allowRequest("user1", "", currentTimeStampInMs, 6));
+            assertTrue(rateLimiter.allowRequest("user1", "", currentTimeStampInMs, 3));
+            assertFalse(rateLimiter.allowRequest("user1", "", currentTimeStampInMs, 3));
+            assertTrue(rateLimiter.allowRequest("user1", "", currentTimeStampInMs, 2));
+            assertFalse(rateLimiter.allowRequest("user1", "", currentTimeStampInMs));
+        }
+    }
+
+    @Test
+    public void pipelinedBatchDecidesLikeSequentialCalls() {
+        List<Request> requests = Arrays.asList(
+                new Request("user1", "10.0.0.1", currentTimeStampInMs),
+                new Request("user1", "10.0.0.1", currentTimeStampInMs, 2),
+                new Request("user2", "10.0.0.1", currentTimeStampInMs),
+                new Request("user1", "", currentTimeStampInMs, 2),
+                new Request("user2", "10.0.0.2", currentTimeStampInMs + 1000),
+                new Request("user1", "10.0.0.1", currentTimeStampInMs + 1000));
+
+        RateLimiter batched = new RedisTokenBucketRateLimiter(nodeA, "batch:", new HybridKeyResolver(), 1, 4);
+        RateLimiter sequential = new RedisTokenBucketRateLimiter(nodeB, "sequential:", new HybridKeyResolver(), 1, 4);
+        boolean[] expected = new boolean[requests.size()];
+        for (int i = 0; i < expected.length; i++) {
+            Request request = requests.get(i);
+            expected[i] = sequential.allowRequest(request.getUserId(), request.getIp(), request.getTimestamp(), request.getPermits());
+        }
+
+        assertArrayEquals(expected, batched.allowRequests(requests));
+    }
+
+    @Test
+    public void scriptsAreReloadedAfterTheServerForgetsThem() {
+        RateLimiter rateLimiter = new RedisTokenBucketRateLimiter(nodeA, "rl:", new HybridKeyResolver(), 1, 2);
+        assertTrue(rateLimiter.allowRequest("user1", "", currentTimeStampInMs));
+
+        nodeA.call("SCRIPT", "FLUSH");
+
+        assertTrue(rateLimiter.allowRequest("user1", "", currentTimeStampInMs));
+        assertFalse(rateLimiter.allowRequest("user1", "", currentTimeStampInMs));
+        assertArrayEquals(new boolean[]{false, false},
+                rateLimiter.allowRequests(List.of(new Request("user1", "", currentTimeStampInMs), new Request("user1", "", currentTimeStampInMs))));
+    }
+
+    @Test(expected = RespException.class)
+    public void embeddedServerRefusesUnregisteredScripts() {
+        nodeA.call("EVAL", "return redis.call('FLUSHALL')", "0");
+    }
+
+    @Test
+    public void compareAndSetOnlyWritesOverTheExpectedState() {
+        assertEquals(1L, nodeA.evalSha(RateLimitScripts.COMPARE_AND_SET, List.of("state"), "0", "7", "60000"));
+        assertEquals(0L, nodeB.evalSha(RateLimitScripts.COMPARE_AND_SET, List.of("state"), "0", "9", "60000"));
+        assertEquals("7", nodeB.call("GET", "state"));
+    }
+
+    @Test
+    public void atomicLimitersShareStateThroughRedisStore() {
+        AtomicTokenBucketRateLimiter tokenBucketA = new AtomicTokenBucketRateLimiter(new HybridKeyResolver(), 1, 3,
+                RedisLongStateStore.factory(nodeA, "tb:"));
+        AtomicTokenBucketRateLimiter tokenBucketB = new AtomicTokenBucketRateLimiter(new HybridKeyResolver(), 1, 3,
+                RedisLongStateStore.factory(nodeB, "tb:"));
+        AtomicFixedWindowRateLimiter fixedWindowA = new AtomicFixedWindowRateLimiter(3, 60, new HybridKeyResolver(),
+                RedisLongStateStore.factory(nodeA, "fw:"));
+        AtomicFixedWindowRateLimiter fixedWindowB = new AtomicFixedWindowRateLimiter(3, 60, new HybridKeyResolver(),
+                RedisLongStateStore.factory(nodeB, "fw:"));
+
+        assertTrue(tokenBucketA.allowRequest("user1", "10.0.0.1", currentTimeStampInMs, 2));
+        assertTrue(fixedWindowA.allowRequest("user1", "10.0.0.1", currentTimeStampInMs, 2));
+
+        assertFalse(tokenBucketB.allowRequest("user1", "10.0.0.1", currentTimeStampInMs, 2));
+        assertFalse(fixedWindowB.allowRequest("user1", "10.0.0.1", currentTimeStampInMs, 2));
+        assertTrue(tokenBucketB.allowRequest("user1", "10.0.0.1", currentTimeStampInMs));
+        assertTrue(fixedWindowB.allowRequest("user1", "10.0.0.1", currentTimeStampInMs));
+        assertFalse(tokenBucketA.allowRequest("user1", "10.0.0.1", currentTimeStampInMs));
+        assertFalse(fixedWindowA.allowRequest("user1", "10.0.0.1", currentTimeStampInMs));
+
+        assertFalse(fixedWindowA.allowRequest("user1", "10.0.0.1", currentTimeStampInMs + 59_999));
+        assertTrue(fixedWindowB.allowRequest("user1", "10.0.0.1", currentTimeStampInMs + 60_000));
+    }
+
+    @Test
+    public void concurrentNodesNeverOverAdmit() throws Exception {
+        RateLimiter a = new RedisTokenBucketRateLimiter(nodeA, "rl:", new HybridKeyResolver(), 1, 50);
+        RateLimiter b = new RedisTokenBucketRateLimiter(nodeB, "rl:", new HybridKeyResolver(), 1, 50);
+        AtomicInteger allowed = new AtomicInteger();
+
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            RateLimiter rateLimiter = t % 2 == 0 ? a : b;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 20; i++) {
+                    if (rateLimiter.allowRequest("user1", "", currentTimeStampInMs)) allowed.incrementAndGet();
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(50, allowed.get());
+    }
+}
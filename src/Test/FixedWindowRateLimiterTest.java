@@ -2,12 +2,11 @@ package Test;
 
 import Core.Resolver.HybridKeyResolver;
 import Core.Resolver.KeyResolver;
+import Core.Time.ManualClock;
 import FixedWindow.FixedWindowRateLimiter;
 import org.junit.Before;
 import org.junit.Test;
 
-import java.time.Instant;
-
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -19,14 +18,13 @@ public class FixedWindowRateLimiterTest {
     @Before
     public void setUp() throws Exception {
         resolver = new HybridKeyResolver();
-        currentTimeStampInMs = Instant.now().toEpochMilli();
+        currentTimeStampInMs = ManualClock.START;
     }
 
     @Test
     public void allowRequestWithinLimit() {
 
         FixedWindowRateLimiter fixedWindowRateLimiter = new FixedWindowRateLimiter(5, 60, resolver);
-        long now = Instant.now().toEpochMilli();
 
         for (int i = 0; i < 5; i++) {
             assertTrue(fixedWindowRateLimiter.allowRequest("user1", "", currentTimeStampInMs));
@@ -47,7 +45,6 @@ public class FixedWindowRateLimiterTest {
     @Test
     public void testNewWindowReset() {
         FixedWindowRateLimiter rateLimiter = new FixedWindowRateLimiter(2, 60, resolver);
-        long now = Instant.now().toEpochMilli();
 
         assertTrue(rateLimiter.allowRequest("user1","", currentTimeStampInMs));
         assertTrue(rateLimiter.allowRequest("user1", "", currentTimeStampInMs));
@@ -59,7 +56,6 @@ public class FixedWindowRateLimiterTest {
     @Test
     public void testUserAndIPRateLimiting() {
         FixedWindowRateLimiter rateLimiter = new FixedWindowRateLimiter(3, 60, resolver);
-        long now = Instant.now().toEpochMilli();
 
         assertTrue(rateLimiter.allowRequest("user1", "192.168.1.1", currentTimeStampInMs));
         assertTrue(rateLimiter.allowRequest("user1", "192.168.1.1", currentTimeStampInMs));
@@ -71,7 +67,6 @@ public class FixedWindowRateLimiterTest {
     @Test
     public void testMultipleUsersWithSameIP() {
         FixedWindowRateLimiter fixedWindowRateLimiter = new FixedWindowRateLimiter(3, 60, resolver);
-        long now = Instant.now().toEpochMilli();
 
         assertTrue(fixedWindowRateLimiter.allowRequest("user1", "192.168.0.10", currentTimeStampInMs));
         assertTrue(fixedWindowRateLimiter.allowRequest("user2", "192.168.0.10", currentTimeStampInMs));
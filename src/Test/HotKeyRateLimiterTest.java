@@ -0,0 +1,145 @@
+package Test;
+
+import Core.Resolver.HybridKeyResolver;
+import Core.Resolver.KeyResolver;
+import Core.Time.ManualClock;
+import FixedWindow.FixedWindowRateLimiter;
+import Striped.HotKeyRateLimiter;
+import Striped.StripedCounter;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class HotKeyRateLimiterTest {
+
+    private KeyResolver resolver;
+    private long currentTimeStampInMs;
+
+    @Before
+    public void setUp() throws Exception {
+        resolver = new HybridKeyResolver(true);
+        currentTimeStampInMs = ManualClock.START;
+    }
+
+    @Test
+    public void globalLimitAppliesAcrossUsers() {
+        HotKeyRateLimiter rateLimiter = new HotKeyRateLimiter(resolver,
+                Map.of(HybridKeyResolver.GLOBAL_KEY, new StripedCounter(3, 60, 1, 1)),
+                cold -> new FixedWindowRateLimiter(10, 60, cold));
+
+        assertTrue(rateLimiter.allowRequest("user1", "", currentTimeStampInMs));
+        assertTrue(rateLimiter.allowRequest("user2", "", currentTimeStampInMs));
+        assertTrue(rateLimiter.allowRequest("user3", "", currentTimeStampInMs));
+        assertFalse(rateLimiter.allowRequest("user4", "", currentTimeStampInMs));
+
+        assertTrue(rateLimiter.allowRequest("user4", "", currentTimeStampInMs + 60000));
+    }
+
+    @Test
+    public void perUserLimitStillApplies() {
+        HotKeyRateLimiter rateLimiter = new HotKeyRateLimiter(resolver,
+                Map.of(HybridKeyResolver.GLOBAL_KEY, new StripedCounter(100, 60, 64)),
+                cold -> new FixedWindowRateLimiter(2, 60, cold));
+
+        assertTrue(rateLimiter.allowRequest("user1", "", currentTimeStampInMs));
+        assertTrue(rateLimiter.allowRequest("user1", "", currentTimeStampInMs));
+        assertFalse(rateLimiter.allowRequest("user1", "", currentTimeStampInMs));
+        assertTrue(rateLimiter.allowRequest("user2", "", currentTimeStampInMs));
+    }
+
+    @Test
+    public void requestRejectedByDelegateDoesNotSpendGlobalBudget() {
+        HotKeyRateLimiter rateLimiter = new HotKeyRateLimiter(resolver,
+                Map.of(HybridKeyResolver.GLOBAL_KEY, new StripedCounter(3, 60, 1, 1)),
+                cold -> new FixedWindowRateLimiter(1, 60, cold));
+
+        assertTrue(rateLimiter.allowRequest("user1", "", currentTimeStampInMs));
+        for (int i = 0; i < 10; i++) {
+            assertFalse(rateLimiter.allowRequest("user1", "", currentTimeStampInMs));
+        }
+
+        assertTrue(rateLimiter.allowRequest("user2", "", currentTimeStampInMs));
+        assertTrue(rateLimiter.allowRequest("user3", "", currentTimeStampInMs));
+        assertFalse(rateLimiter.allowRequest("user4", "", currentTimeStampInMs));
+    }
+
+    @Test
+    public void stripedCounterNeverOverAdmits() throws InterruptedException {
+        int limit = 2000;
+        int maxCachedPermits = 128;
+        StripedCounter counter = new StripedCounter(limit, 60, 8, maxCachedPermits);
+        AtomicInteger allowed = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[8];
+
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < 1000; i++) {
+                    if (counter.tryAcquire(currentTimeStampInMs)) allowed.incrementAndGet();
+                }
+            });
+            threads[t].start();
+        }
+
+        start.countDown();
+        for (Thread thread : threads) thread.join();
+
+        assertTrue("over-admitted: " + allowed.get(), allowed.get() <= limit);
+        assertTrue("under-admitted past the cache bound: " + allowed.get(), allowed.get() >= limit - maxCachedPermits);
+    }
+
+    @Test
+    public void drainedStripesAreRebalanced() {
+        StripedCounter counter = new StripedCounter(10, 60, 4, 40);
+
+        // this thread caches the whole budget in its stripe
+        assertTrue(counter.tryAcquire(currentTimeStampInMs));
+
+        AtomicInteger allowedElsewhere = new AtomicInteger();
+        Thread other = new Thread(() -> {
+            while (counter.tryAcquire(currentTimeStampInMs)) allowedElsewhere.incrementAndGet();
+        });
+        other.start();
+        try {
+            other.join();
+        } catch (InterruptedException e) {
+            fail();
+        }
+
+        assertTrue(allowedElsewhere.get() > 0);
+    }
+
+    @Test
+    public void eachRequestIsResolvedOnce() {
+        AtomicInteger resolutions = new AtomicInteger();
+        KeyResolver counting = new KeyResolver() {
+            @Override
+            public List<String> resolveKey(String userId, String ip) {
+                resolutions.incrementAndGet();
+                return resolver.resolveKey(userId, ip);
+            }
+        };
+        HotKeyRateLimiter rateLimiter = new HotKeyRateLimiter(counting,
+                Map.of(HybridKeyResolver.GLOBAL_KEY, new StripedCounter(3, 60, 1, 1)),
+                cold -> new FixedWindowRateLimiter(1, 60, cold));
+
+        assertTrue(rateLimiter.allowRequest("user1", "", currentTimeStampInMs));
+        assertFalse(rateLimiter.allowRequest("user1", "", currentTimeStampInMs));
+        rateLimiter.releasePermits("user1", "", currentTimeStampInMs, 1);
+        assertEquals(3, resolutions.get());
+
+        // the delegate only ever saw user1's own key, and got its permit back
+        assertTrue(rateLimiter.allowRequest("user1", "", currentTimeStampInMs));
+    }
+}
@@ -0,0 +1,123 @@
+package Test;
+
+import Core.Resolver.HybridKeyResolver;
+import Core.Resolver.InterningKeyResolver;
+import Core.Resolver.KeySink;
+import Core.Store.KeyHash;
+import Core.Store.OffHeapLongStateStore;
+import Core.Time.ManualClock;
+import FixedWindow.AtomicFixedWindowRateLimiter;
+import TokenBucket.AtomicTokenBucketRateLimiter;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class InterningKeyResolverTest {
+
+    private long currentTimeStampInMs;
+
+    @Before
+    public void setUp() throws Exception {
+        currentTimeStampInMs = ManualClock.START;
+    }
+
+    @Test
+    public void resolvesTheSameKeysAsHybridResolver() {
+        String[][] inputs = {{"user1", "10.0.0.1"}, {"user1", ""}, {"", "10.0.0.1"}, {" ", "  "}, {"user2", " "}};
+
+        for (boolean includeGlobalKey : new boolean[]{false, true}) {
+            HybridKeyResolver hybrid = new HybridKeyResolver(includeGlobalKey);
+            InterningKeyResolver interning = new InterningKeyResolver(includeGlobalKey);
+            KeySink sink = new KeySink();
+
+            for (String[] input : inputs) {
+                assertEquals(hybrid.resolveKey(input[0], input[1]), interning.resolveKey(input[0], input[1]));
+
+                interning.resolveKeys(input[0], input[1], sink);
+                assertEquals(hybrid.resolveKey(input[0], input[1]).size(), sink.size());
+                for (int i = 0; i < sink.size(); i++) {
+                    assertEquals(hybrid.resolveKey(input[0], input[1]).get(i), sink.key(i));
+                    assertEquals(KeyHash.hash64(sink.key(i)), sink.hash(i));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void repeatedCallsReuseTheSameKeyInstances() {
+        InterningKeyResolver resolver = new InterningKeyResolver();
+        KeySink first = new KeySink();
+        KeySink second = new KeySink();
+
+        resolver.resolveKeys("user1", "10.0.0.1", first);
+        resolver.resolveKeys("user1", "10.0.0.1", second);
+
+        assertEquals(2, second.size());
+        assertSame(first.key(0), second.key(0));
+        assertSame(first.key(1), second.key(1));
+    }
+
+    @Test
+    public void sinkIsReplacedNotAppended() {
+        InterningKeyResolver resolver = new InterningKeyResolver();
+        KeySink sink = new KeySink();
+
+        resolver.resolveKeys("user1", "10.0.0.1", sink);
+        resolver.resolveKeys("user2", "", sink);
+
+        assertEquals(1, sink.size());
+        assertEquals("USER_ID: user2", sink.key(0));
+    }
+
+    @Test
+    public void defaultResolveKeysHashesLazily() {
+        KeySink sink = new KeySink();
+        new HybridKeyResolver(true).resolveKeys("user1", "10.0.0.1", sink);
+
+        assertEquals(3, sink.size());
+        for (int i = 0; i < sink.size(); i++) {
+            assertEquals(KeyHash.hash64(sink.key(i)), sink.hash(i));
+        }
+    }
+
+    @Test
+    public void cacheIsBoundedAndReplacesOldValues() {
+        InterningKeyResolver resolver = new InterningKeyResolver(false, 2);
+        KeySink sink = new KeySink();
+
+        for (int i = 0; i < 100; i++) {
+            resolver.resolveKeys("user" + i, "10.0.0." + i, sink);
+            assertEquals("USER_ID: user" + i, sink.key(0));
+            assertEquals("IP: 10.0.0." + i, sink.key(1));
+        }
+        assertTrue(resolver.getCachedValueCount() <= 4);
+
+        // the latest values took their slots over
+        String userKey = sink.key(0);
+        resolver.resolveKeys("user99", " ", sink);
+        assertEquals(1, sink.size());
+        assertSame(userKey, sink.key(0));
+        resolver.resolveKeys("user99", " ", sink);
+        assertEquals(1, sink.size());
+    }
+
+    @Test
+    public void precomputedHashesAddressTheSameOffHeapState() {
+        AtomicFixedWindowRateLimiter fixedWindow = new AtomicFixedWindowRateLimiter(3, 60, new InterningKeyResolver(),
+                OffHeapLongStateStore.factory(1024));
+        AtomicTokenBucketRateLimiter tokenBucket = new AtomicTokenBucketRateLimiter(new InterningKeyResolver(), 1, 3,
+                OffHeapLongStateStore.factory(1024));
+
+        for (int i = 0; i < 2; i++) {
+            assertTrue(fixedWindow.allowRequest("user1", "", currentTimeStampInMs));
+            assertTrue(tokenBucket.allowRequest("user1", "", currentTimeStampInMs));
+        }
+
+        // the string path hashes the key itself and must land on the same slot
+        assertTrue(fixedWindow.tryAcquire("USER_ID: user1", currentTimeStampInMs));
+        assertTrue(tokenBucket.tryAcquire("USER_ID: user1", currentTimeStampInMs));
+        assertFalse(fixedWindow.allowRequest("user1", "", currentTimeStampInMs));
+        assertFalse(tokenBucket.allowRequest("user1", "", currentTimeStampInMs));
+    }
+}
@@ -0,0 +1,120 @@
+package Test;
+
+import Core.Eviction.EvictionConfig;
+import Core.Eviction.EvictionPolicy;
+import Core.Resolver.HybridKeyResolver;
+import Core.Resolver.KeyResolver;
+import Core.Time.ManualClock;
+import FixedWindow.AtomicFixedWindowRateLimiter;
+import FixedWindow.FixedWindowRateLimiter;
+import SlidingWindowLog.RingBufferSlidingLogRateLimiter;
+import TokenBucket.AtomicTokenBucketRateLimiter;
+import TokenBucket.TokenBucketRateLimiter;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class KeyExpiryTest {
+
+    private KeyResolver resolver;
+    private long currentTimeStampInMs;
+
+    @Before
+    public void setUp() throws Exception {
+        resolver = new HybridKeyResolver();
+        currentTimeStampInMs = ManualClock.START;
+    }
+
+    @Test
+    public void idleKeysAreEvictedOnceWindowExpires() {
+        FixedWindowRateLimiter rateLimiter = new FixedWindowRateLimiter(5, 60, resolver, EvictionConfig.idleExpiry(1000));
+
+        for (int i = 0; i < 100; i++) {
+            rateLimiter.allowRequest("user" + i, "", currentTimeStampInMs);
+        }
+        assertEquals(100, rateLimiter.getKeyExpiry().getTrackedKeyCount());
+
+        rateLimiter.allowRequest("trigger", "", currentTimeStampInMs + 61000);
+
+        assertEquals(100, rateLimiter.getKeyExpiry().getIdleEvictionCount());
+        assertEquals(1, rateLimiter.getKeyExpiry().getTrackedKeyCount());
+    }
+
+    @Test
+    public void activeKeysKeepTheirState() {
+        TokenBucketRateLimiter rateLimiter = new TokenBucketRateLimiter(resolver, 1, 5, EvictionConfig.idleExpiry(1000));
+
+        for (int i = 0; i < 5; i++) {
+            assertTrue(rateLimiter.allowRequest("user1", "", currentTimeStampInMs));
+        }
+
+        // bucket needs 5s to refill; a sweep 2s in must keep the partially drained bucket
+        assertTrue(rateLimiter.allowRequest("user1", "", currentTimeStampInMs + 2000));
+        assertTrue(rateLimiter.allowRequest("user1", "", currentTimeStampInMs + 2000));
+        assertFalse(rateLimiter.allowRequest("user1", "", currentTimeStampInMs + 2000));
+        assertEquals(0, rateLimiter.getKeyExpiry().getEvictionCount());
+    }
+
+    @Test
+    public void evictedLockFreeKeysStartFresh() {
+        AtomicTokenBucketRateLimiter tokenBucket = new AtomicTokenBucketRateLimiter(resolver, 1, 2, EvictionConfig.idleExpiry(1000));
+        AtomicFixedWindowRateLimiter fixedWindow = new AtomicFixedWindowRateLimiter(2, 1, resolver, EvictionConfig.idleExpiry(1000));
+        RingBufferSlidingLogRateLimiter slidingLog = new RingBufferSlidingLogRateLimiter(2, 1, resolver, false, EvictionConfig.idleExpiry(1000));
+
+        for (int i = 0; i < 2; i++) {
+            assertTrue(tokenBucket.allowRequest("user1", "", currentTimeStampInMs));
+            assertTrue(fixedWindow.allowRequest("user1", "", currentTimeStampInMs));
+            assertTrue(slidingLog.allowRequest("user1", "", currentTimeStampInMs));
+        }
+
+        long later = currentTimeStampInMs + 10_000;
+        tokenBucket.allowRequest("other", "", later);
+        fixedWindow.allowRequest("other", "", later);
+        slidingLog.allowRequest("other", "", later);
+
+        assertEquals(1, tokenBucket.getStateStore().getEvictionCount());
+        assertEquals(1, fixedWindow.getStateStore().getEvictionCount());
+        assertEquals(1, slidingLog.getKeyExpiry().getIdleEvictionCount());
+
+        for (int i = 0; i < 2; i++) {
+            assertTrue(tokenBucket.allowRequest("user1", "", later));
+            assertTrue(fixedWindow.allowRequest("user1", "", later));
+            assertTrue(slidingLog.allowRequest("user1", "", later));
+        }
+        assertFalse(tokenBucket.allowRequest("user1", "", later));
+        assertFalse(fixedWindow.allowRequest("user1", "", later));
+        assertFalse(slidingLog.allowRequest("user1", "", later));
+    }
+
+    @Test
+    public void keyCountIsCappedWithLru() {
+        FixedWindowRateLimiter rateLimiter = new FixedWindowRateLimiter(5, 60, resolver,
+                EvictionConfig.bounded(1000, 10, EvictionPolicy.LRU));
+
+        for (int i = 0; i < 100; i++) {
+            rateLimiter.allowRequest("user" + i, "", currentTimeStampInMs);
+        }
+        rateLimiter.allowRequest("trigger", "", currentTimeStampInMs);
+
+        assertTrue(rateLimiter.getKeyExpiry().getTrackedKeyCount() <= 11);
+        assertTrue(rateLimiter.getKeyExpiry().getCapacityEvictionCount() >= 90);
+    }
+
+    @Test
+    public void tinyLfuKeepsFrequentKeyThroughFloodOfOneOffKeys() {
+        FixedWindowRateLimiter rateLimiter = new FixedWindowRateLimiter(5, 60, resolver,
+                EvictionConfig.bounded(1000, 50, EvictionPolicy.W_TINY_LFU));
+
+        for (int i = 0; i < 4; i++) {
+            assertTrue(rateLimiter.allowRequest("frequent", "", currentTimeStampInMs));
+        }
+        for (int i = 0; i < 1000; i++) {
+            rateLimiter.allowRequest("once" + i, "", currentTimeStampInMs);
+        }
+
+        assertTrue(rateLimiter.getKeyExpiry().getTrackedKeyCount() <= 50 + 16);
+        assertTrue(rateLimiter.allowRequest("frequent", "", currentTimeStampInMs));
+        assertFalse("frequent key must still be at its limit", rateLimiter.allowRequest("frequent", "", currentTimeStampInMs));
+    }
+}
@@ -0,0 +1,124 @@
+package Test;
+
+import Core.Resolver.HybridKeyResolver;
+import Core.Resolver.KeyResolver;
+import Core.Time.ManualClock;
+import LeakyBucket.LeakyBucketRateLimiter;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class LeakyBucketRateLimiterTest {
+
+    private LeakyBucketRateLimiter rateLimiter;
+    private KeyResolver resolver;
+    private long currentTimeStampInMs;
+    private final long leakRate = 2;
+    private final int capacity = 4;
+
+    @Before
+    public void setUp() throws Exception {
+        resolver = new HybridKeyResolver();
+        currentTimeStampInMs = ManualClock.START;
+        rateLimiter = new LeakyBucketRateLimiter(resolver, leakRate, capacity);
+    }
+
+    @Test
+    public void testAllowUpToCapacity() {
+        for (int i = 0; i < capacity; i++) {
+            assertTrue(rateLimiter.allowRequest("user1", "", currentTimeStampInMs));
+        }
+        assertFalse(rateLimiter.allowRequest("user1", "", currentTimeStampInMs));
+    }
+
+    @Test
+    public void testBucketLeaksAtConfiguredRate() {
+        for (int i = 0; i < capacity; i++) {
+            assertTrue(rateLimiter.allowRequest("user1", "", currentTimeStampInMs));
+        }
+
+        // 2 per second: one slot frees up every 500 ms
+        assertFalse(rateLimiter.allowRequest("user1", "", currentTimeStampInMs + 499));
+        assertTrue(rateLimiter.allowRequest("user1", "", currentTimeStampInMs + 500));
+        assertFalse(rateLimiter.allowRequest("user1", "", currentTimeStampInMs + 500));
+
+        assertTrue(rateLimiter.allowRequest("user1", "", currentTimeStampInMs + 1500));
+        assertTrue(rateLimiter.allowRequest("user1", "", currentTimeStampInMs + 1500));
+        assertFalse(rateLimiter.allowRequest("user1", "", currentTimeStampInMs + 1500));
+    }
+
+    @Test
+    public void testIdleBucketDrainsCompletely() {
+        for (int i = 0; i < capacity; i++) {
+            assertTrue(rateLimiter.allowRequest("user1", "", currentTimeStampInMs));
+        }
+
+        long later = currentTimeStampInMs + 60_000;
+        for (int i = 0; i < capacity; i++) {
+            assertTrue(rateLimiter.allowRequest("user1", "", later));
+        }
+        assertFalse(rateLimiter.allowRequest("user1", "", later));
+    }
+
+    @Test
+    public void testShapingSpacesBurstAtLeakRate() {
+        assertEquals(0, rateLimiter.shapeRequest("user1", "", currentTimeStampInMs));
+        assertEquals(500, rateLimiter.shapeRequest("user1", "", currentTimeStampInMs));
+        assertEquals(1000, rateLimiter.shapeRequest("user1", "", currentTimeStampInMs));
+        assertEquals(1500, rateLimiter.shapeRequest("user1", "", currentTimeStampInMs));
+        assertEquals(LeakyBucketRateLimiter.REJECTED, rateLimiter.shapeRequest("user1", "", currentTimeStampInMs));
+
+        assertEquals(1500, rateLimiter.shapeRequest("user1", "", currentTimeStampInMs + 500));
+    }
+
+    @Test
+    public void testShapingDelayIsTheLongestAcrossKeys() {
+        assertEquals(0, rateLimiter.shapeRequest("user1", "10.0.0.1", currentTimeStampInMs));
+        assertEquals(500, rateLimiter.shapeRequest("user1", "10.0.0.1", currentTimeStampInMs));
+        // user2 has an empty bucket of its own but queues behind the shared ip
+        assertEquals(1000, rateLimiter.shapeRequest("user2", "10.0.0.1", currentTimeStampInMs));
+    }
+
+    @Test
+    public void testLeakRateMustGiveALeakInterval() {
+        assertThrows(IllegalArgumentException.class, () -> new LeakyBucketRateLimiter(resolver, 0, capacity));
+        assertThrows(IllegalArgumentException.class, () -> new LeakyBucketRateLimiter(resolver, 2_000_000_000L, capacity));
+
+        // one permit per nanosecond is the fastest: a millisecond drains a million
+        LeakyBucketRateLimiter fastest = new LeakyBucketRateLimiter(resolver, 1_000_000_000L, 1);
+        assertTrue(fastest.allowRequest("user1", "", currentTimeStampInMs));
+        assertFalse(fastest.allowRequest("user1", "", currentTimeStampInMs));
+        assertTrue(fastest.allowRequest("user1", "", currentTimeStampInMs + 1));
+    }
+
+    @Test
+    public void testLimitHoldsUnderContention() throws InterruptedException {
+        LeakyBucketRateLimiter limiter = new LeakyBucketRateLimiter(resolver, 1, 1000);
+        AtomicInteger allowed = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[8];
+
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < 500; i++) {
+                    if (limiter.tryAcquire("hot", currentTimeStampInMs)) allowed.incrementAndGet();
+                }
+            });
+            threads[t].start();
+        }
+
+        start.countDown();
+        for (Thread thread : threads) thread.join();
+
+        assertEquals(1000, allowed.get());
+    }
+}
@@ -0,0 +1,218 @@
+package Test;
+
+import Core.RateLimiter;
+import Core.Resolver.HybridKeyResolver;
+import Core.Time.ManualClock;
+import FixedWindow.AtomicFixedWindowRateLimiter;
+import Leasing.LeasingRateLimiter;
+import TokenBucket.AtomicTokenBucketRateLimiter;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class LeasingRateLimiterTest {
+
+    private static final long LEASE_DURATION = 1000;
+
+    // Background work is queued and only runs when the test says so.
+    private final List<Runnable> background = new ArrayList<>();
+    private long currentTimeStampInMs;
+
+    @Before
+    public void setUp() throws Exception {
+        currentTimeStampInMs = ManualClock.START;
+        background.clear();
+    }
+
+    @Test
+    public void neverAdmitsMoreThanTheAuthority() {
+        RateLimiter authority = new AtomicFixedWindowRateLimiter(100, 60, new HybridKeyResolver());
+        LeasingRateLimiter rateLimiter = new LeasingRateLimiter(authority, 1, 64, LEASE_DURATION, Runnable::run);
+
+        int allowed = 0;
+        for (int i = 0; i < 1000; i++) {
+            if (rateLimiter.allowRequest("user1", "10.0.0.1", currentTimeStampInMs + i / 50)) allowed++;
+        }
+
+        // leases shrink back to single permits once blocks are refused, so none of the budget is stranded
+        assertEquals(100, allowed);
+        assertEquals(0, rateLimiter.getLeasedPermitCount());
+    }
+
+    @Test
+    public void hotPairReachesTheAuthorityRarely() {
+        RateLimiter authority = new AtomicTokenBucketRateLimiter(new HybridKeyResolver(), 100_000, 100_000);
+        LeasingRateLimiter rateLimiter = new LeasingRateLimiter(authority, 1, 1000, LEASE_DURATION, Runnable::run);
+
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(rateLimiter.allowRequest("user1", "10.0.0.1", currentTimeStampInMs + i / 10));
+        }
+
+        assertTrue(rateLimiter.getRemoteCallCount() < 100);
+    }
+
+    @Test
+    public void coldPairDoesNotHoardPermits() {
+        RateLimiter authority = new AtomicFixedWindowRateLimiter(10, 60, new HybridKeyResolver());
+        LeasingRateLimiter rateLimiter = new LeasingRateLimiter(authority, 1, 1000, LEASE_DURATION, Runnable::run);
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(rateLimiter.allowRequest("cold", "10.0.0.1", currentTimeStampInMs + i * 10_000));
+            assertEquals(0, rateLimiter.getLeasedPermitCount());
+        }
+
+        // the ip's remaining budget is all still with the authority
+        for (int i = 0; i < 7; i++) {
+            assertTrue(authority.allowRequest("other", "10.0.0.1", currentTimeStampInMs + 30_000));
+        }
+        assertFalse(authority.allowRequest("other", "10.0.0.1", currentTimeStampInMs + 30_000));
+    }
+
+    @Test
+    public void refillsInTheBackgroundBeforeTheLeaseRunsOut() {
+        RateLimiter authority = new AtomicFixedWindowRateLimiter(10_000, 60, new HybridKeyResolver());
+        LeasingRateLimiter rateLimiter = new LeasingRateLimiter(authority, 1, 100, LEASE_DURATION, background::add);
+
+        int servedRemotely = 0;
+        for (int i = 0; i < 2000; i++) {
+            long calls = rateLimiter.getRemoteCallCount();
+            assertTrue(rateLimiter.allowRequest("user1", "10.0.0.1", currentTimeStampInMs));
+            if (rateLimiter.getRemoteCallCount() > calls) servedRemotely++;
+
+            background.forEach(Runnable::run);
+            background.clear();
+        }
+
+        // only the lease's first requests wait for the authority, once it has grown the refills keep ahead
+        assertTrue(servedRemotely < 10);
+        long calls = rateLimiter.getRemoteCallCount();
+        assertTrue(calls < 100);
+    }
+
+    @Test
+    public void idleLeasesAreReturned() {
+        RateLimiter authority = new AtomicFixedWindowRateLimiter(100, 60, new HybridKeyResolver());
+        LeasingRateLimiter rateLimiter = new LeasingRateLimiter(authority, 1, 64, LEASE_DURATION, Runnable::run);
+
+        for (int i = 0; i < 30; i++) {
+            assertTrue(rateLimiter.allowRequest("user1", "10.0.0.1", currentTimeStampInMs));
+        }
+        long leased = rateLimiter.getLeasedPermitCount();
+        assertTrue(leased > 0);
+
+        rateLimiter.returnIdleLeases(currentTimeStampInMs + LEASE_DURATION - 1);
+        assertEquals(leased, rateLimiter.getLeasedPermitCount());
+
+        rateLimiter.returnIdleLeases(currentTimeStampInMs + LEASE_DURATION);
+        assertEquals(0, rateLimiter.getLeasedPermitCount());
+        assertTrue(authority.allowRequest("user2", "10.0.0.1", currentTimeStampInMs, 70));
+    }
+
+    @Test
+    public void expiredLeaseIsReturnedNotSpent() {
+        RateLimiter authority = new AtomicFixedWindowRateLimiter(100, 60, new HybridKeyResolver());
+        LeasingRateLimiter rateLimiter = new LeasingRateLimiter(authority, 1, 64, LEASE_DURATION, Runnable::run);
+
+        for (int i = 0; i < 30; i++) {
+            assertTrue(rateLimiter.allowRequest("user1", "10.0.0.1", currentTimeStampInMs));
+        }
+        long calls = rateLimiter.getRemoteCallCount();
+
+        // a minute later the old window's permits are gone: the lease goes back and a new one is taken
+        assertTrue(rateLimiter.allowRequest("user1", "10.0.0.1", currentTimeStampInMs + 60_000));
+        assertTrue(rateLimiter.getRemoteCallCount() >= calls + 2);
+    }
+
+    @Test
+    public void eachBlockExpiresAndIsReturnedOnItsOwn() {
+        RateLimiter limit = new AtomicFixedWindowRateLimiter(10_000, 60, new HybridKeyResolver());
+        List<long[]> grants = new ArrayList<>();
+        List<long[]> releases = new ArrayList<>();
+        RateLimiter authority = new RateLimiter() {
+            @Override
+            public boolean allowRequest(String userId, String ip, long incomingTimestamp, int permits) {
+                boolean allowed = limit.allowRequest(userId, ip, incomingTimestamp, permits);
+                if (allowed) grants.add(new long[]{incomingTimestamp, permits});
+                return allowed;
+            }
+
+            @Override
+            public void releasePermits(String userId, String ip, long incomingTimestamp, int permits) {
+                releases.add(new long[]{incomingTimestamp, permits});
+            }
+        };
+        LeasingRateLimiter rateLimiter = new LeasingRateLimiter(authority, 1, 100, LEASE_DURATION, background::add);
+
+        int allowed = 0;
+        for (long at : new long[]{0, 600, 1000, 1500}) {
+            for (int i = 0; i < 90; i++) {
+                if (rateLimiter.allowRequest("user1", "10.0.0.1", currentTimeStampInMs + at)) allowed++;
+                while (!background.isEmpty()) background.remove(0).run();
+            }
+        }
+        rateLimiter.returnIdleLeases(Long.MAX_VALUE);
+        while (!background.isEmpty()) background.remove(0).run();
+
+        // the first block outlived the refill at +600 and went back when it expired, stamped with its own time
+        assertEquals(currentTimeStampInMs, releases.get(0)[0]);
+
+        long granted = 0;
+        List<Long> grantedAt = new ArrayList<>();
+        for (long[] grant : grants) {
+            granted += grant[1];
+            grantedAt.add(grant[0]);
+        }
+        long released = 0;
+        for (long[] release : releases) {
+            released += release[1];
+            assertTrue(grantedAt.contains(release[0]));
+        }
+        assertEquals(granted, allowed + released);
+    }
+
+    @Test
+    public void leaseRetiredWhileItsBlockIsGrantedHandsTheBlockBack() {
+        RateLimiter limit = new AtomicFixedWindowRateLimiter(10, 60, new HybridKeyResolver());
+        LeasingRateLimiter[] leasing = new LeasingRateLimiter[1];
+        RateLimiter authority = new RateLimiter() {
+            @Override
+            public boolean allowRequest(String userId, String ip, long incomingTimestamp, int permits) {
+                // the idle sweep retires the lease while the request holding it is at the authority
+                leasing[0].returnIdleLeases(Long.MAX_VALUE);
+                return limit.allowRequest(userId, ip, incomingTimestamp, permits);
+            }
+
+            @Override
+            public void releasePermits(String userId, String ip, long incomingTimestamp, int permits) {
+                limit.releasePermits(userId, ip, incomingTimestamp, permits);
+            }
+        };
+        leasing[0] = new LeasingRateLimiter(authority, 10, 10, LEASE_DURATION, Runnable::run);
+
+        assertTrue(leasing[0].allowRequest("user1", "10.0.0.1", currentTimeStampInMs));
+
+        // the request kept its permit; the other nine of the block are back with the authority
+        assertEquals(0, leasing[0].getLeasedPermitCount());
+        assertTrue(limit.allowRequest("user2", "10.0.0.1", currentTimeStampInMs, 9));
+    }
+
+    @Test
+    public void weightedRequestsLargerThanTheLease() {
+        RateLimiter authority = new AtomicFixedWindowRateLimiter(10, 60, new HybridKeyResolver());
+        LeasingRateLimiter rateLimiter = new LeasingRateLimiter(authority, 1, 4, LEASE_DURATION, Runnable::run);
+
+        assertTrue(rateLimiter.allowRequest("user1", "10.0.0.1", currentTimeStampInMs, 8));
+        assertFalse(rateLimiter.allowRequest("user1", "10.0.0.1", currentTimeStampInMs, 3));
+        assertTrue(rateLimiter.allowRequest("user1", "10.0.0.1", currentTimeStampInMs, 2));
+        assertFalse(rateLimiter.allowRequest("user1", "10.0.0.1", currentTimeStampInMs));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvalidLeaseSizes() {
+        new LeasingRateLimiter(new AtomicFixedWindowRateLimiter(10, 60, new HybridKeyResolver()), 4, 2, LEASE_DURATION, Runnable::run);
+    }
+}
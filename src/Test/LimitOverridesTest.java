@@ -0,0 +1,195 @@
+package Test;
+
+import Core.Eviction.EvictionConfig;
+import Core.LimitOverrides;
+import Core.RateLimiter;
+import Core.Request;
+import Core.Resolver.HybridKeyResolver;
+import Core.Time.ManualClock;
+import FixedWindow.AtomicFixedWindowRateLimiter;
+import FixedWindow.FixedWindowRateLimiter;
+import LeakyBucket.LeakyBucketRateLimiter;
+import SlidingWindowCounter.SlidingWindowCounterRateLimiter;
+import SlidingWindowLog.RingBufferSlidingLogRateLimiter;
+import SlidingWindowLog.SlidingLogRateLimiter;
+import TokenBucket.AtomicTokenBucketRateLimiter;
+import TokenBucket.TokenBucketRateLimiter;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class LimitOverridesTest {
+
+    private static final String PREMIUM_KEY = HybridKeyResolver.USER_KEY_PREFIX + "premium";
+
+    private long currentTimeStampInMs;
+
+    @Before
+    public void setUp() throws Exception {
+        currentTimeStampInMs = ManualClock.START;
+    }
+
+    @Test
+    public void overrideRaisesTheLimitOfOneKeyOnly() {
+        FixedWindowRateLimiter rateLimiter = new FixedWindowRateLimiter(5, 60, new HybridKeyResolver());
+        rateLimiter.getLimitOverrides().set(PREMIUM_KEY, 10);
+
+        assertEquals(10, countAllowed(rateLimiter, "premium", 20));
+        assertEquals(5, countAllowed(rateLimiter, "regular", 20));
+    }
+
+    @Test
+    public void changesApplyToCountedStateWithoutResettingIt() {
+        SlidingWindowCounterRateLimiter rateLimiter = new SlidingWindowCounterRateLimiter(5, 60, new HybridKeyResolver());
+        assertEquals(3, countAllowed(rateLimiter, "premium", 3));
+
+        rateLimiter.getLimitOverrides().set(PREMIUM_KEY, 4);
+        assertEquals(1, countAllowed(rateLimiter, "premium", 5));
+
+        rateLimiter.getLimitOverrides().remove(PREMIUM_KEY);
+        assertEquals(1, countAllowed(rateLimiter, "premium", 5));
+    }
+
+    @Test
+    public void tokenBucketOverrideIsTheKeysCapacity() {
+        TokenBucketRateLimiter rateLimiter = new TokenBucketRateLimiter(new HybridKeyResolver(), 1, 5);
+        rateLimiter.getLimitOverrides().set(PREMIUM_KEY, 8);
+
+        assertEquals(8, countAllowed(rateLimiter, "premium", 20));
+
+        // refills up to the overridden capacity, not the configured one
+        long later = currentTimeStampInMs + 60_000;
+        int allowed = 0;
+        for (int i = 0; i < 20; i++) {
+            if (rateLimiter.allowRequest("premium", "", later)) allowed++;
+        }
+        assertEquals(8, allowed);
+    }
+
+    @Test
+    public void overrideCanLowerTheLimit() {
+        SlidingLogRateLimiter rateLimiter = new SlidingLogRateLimiter(5, 60, new HybridKeyResolver());
+        rateLimiter.getLimitOverrides().set(PREMIUM_KEY, 2);
+
+        assertEquals(2, countAllowed(rateLimiter, "premium", 5));
+    }
+
+    @Test
+    public void batchesUseTheOverriddenLimit() {
+        FixedWindowRateLimiter rateLimiter = new FixedWindowRateLimiter(5, 60, new HybridKeyResolver());
+        rateLimiter.getLimitOverrides().set(PREMIUM_KEY, 7);
+
+        List<Request> requests = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            requests.add(new Request("premium", "", currentTimeStampInMs));
+        }
+
+        int allowed = 0;
+        for (boolean decision : rateLimiter.allowRequests(requests)) {
+            if (decision) allowed++;
+        }
+        assertEquals(7, allowed);
+    }
+
+    @Test
+    public void lockFreeLimitersTakeTheLimitThroughTheTransition() {
+        HybridKeyResolver resolver = new HybridKeyResolver();
+        AtomicFixedWindowRateLimiter fixedWindow = new AtomicFixedWindowRateLimiter(5, 60, resolver);
+        AtomicTokenBucketRateLimiter tokenBucket = new AtomicTokenBucketRateLimiter(resolver, 1, 5);
+        LeakyBucketRateLimiter leakyBucket = new LeakyBucketRateLimiter(resolver, 1, 5);
+        RingBufferSlidingLogRateLimiter slidingLog = new RingBufferSlidingLogRateLimiter(5, 60, resolver);
+        fixedWindow.getLimitOverrides().set(PREMIUM_KEY, 10);
+        tokenBucket.getLimitOverrides().set(PREMIUM_KEY, 10);
+        leakyBucket.getLimitOverrides().set(PREMIUM_KEY, 10);
+        slidingLog.getLimitOverrides().set(PREMIUM_KEY, 10);
+
+        for (RateLimiter rateLimiter : List.of(fixedWindow, tokenBucket, leakyBucket, slidingLog)) {
+            assertEquals(10, countAllowed(rateLimiter, "premium", 20));
+            assertEquals(5, countAllowed(rateLimiter, "regular", 20));
+        }
+    }
+
+    @Test
+    public void lockFreeBatchesUseTheOverriddenLimitForEveryWeight() {
+        HybridKeyResolver resolver = new HybridKeyResolver();
+        AtomicFixedWindowRateLimiter fixedWindow = new AtomicFixedWindowRateLimiter(5, 60, resolver);
+        AtomicTokenBucketRateLimiter tokenBucket = new AtomicTokenBucketRateLimiter(resolver, 1, 5);
+        LeakyBucketRateLimiter leakyBucket = new LeakyBucketRateLimiter(resolver, 1, 5);
+        fixedWindow.getLimitOverrides().set(PREMIUM_KEY, 7);
+        tokenBucket.getLimitOverrides().set(PREMIUM_KEY, 7);
+        leakyBucket.getLimitOverrides().set(PREMIUM_KEY, 7);
+
+        List<Request> requests = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            requests.add(new Request("premium", "", currentTimeStampInMs, 2));
+        }
+        for (int i = 0; i < 3; i++) {
+            requests.add(new Request("premium", "", currentTimeStampInMs));
+        }
+
+        for (RateLimiter rateLimiter : List.of(fixedWindow, tokenBucket, leakyBucket)) {
+            assertArrayEquals(new boolean[]{true, true, true, true, false, false}, rateLimiter.allowRequests(requests));
+        }
+    }
+
+    @Test
+    public void tokenBucketEvictionKeepsKeysNotYetFullAtTheirCapacity() {
+        AtomicTokenBucketRateLimiter rateLimiter = new AtomicTokenBucketRateLimiter(new HybridKeyResolver(), 1, 2,
+                EvictionConfig.idleExpiry(1000));
+        rateLimiter.getLimitOverrides().set(PREMIUM_KEY, 10);
+        assertEquals(10, countAllowed(rateLimiter, "premium", 20));
+
+        // 5 tokens back: full at the configured capacity, but not at the key's own
+        currentTimeStampInMs += 5_000;
+        rateLimiter.allowRequest("other", "", currentTimeStampInMs);
+
+        assertEquals(5, countAllowed(rateLimiter, "premium", 20));
+    }
+
+    @Test
+    public void replaceAllSwapsTheWholeTable() {
+        LimitOverrides overrides = new LimitOverrides();
+        overrides.set("a", 10);
+        overrides.set("b", 20);
+
+        overrides.replaceAll(Map.of("b", 30, "c", 40));
+
+        assertEquals(Map.of("b", 30, "c", 40), overrides.snapshot());
+        assertEquals(5, overrides.limitFor("a", 5));
+        assertEquals(30, overrides.limitFor("b", 5));
+        assertEquals(40, overrides.maxLimit(5));
+        assertEquals(50, overrides.maxLimit(50));
+    }
+
+    @Test
+    public void rejectedTableLeavesTheCurrentOneInPlace() {
+        LimitOverrides overrides = new LimitOverrides();
+        overrides.set("a", 10);
+
+        try {
+            overrides.replaceAll(Map.of("a", 20, "b", 0));
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+        }
+
+        assertEquals(Map.of("a", 10), overrides.snapshot());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void limitsMustBePositive() {
+        new LimitOverrides().set("a", 0);
+    }
+
+    private int countAllowed(RateLimiter rateLimiter, String userId, int requests) {
+        int allowed = 0;
+        for (int i = 0; i < requests; i++) {
+            if (rateLimiter.allowRequest(userId, "", currentTimeStampInMs)) allowed++;
+        }
+        return allowed;
+    }
+}
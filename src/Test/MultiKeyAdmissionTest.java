@@ -0,0 +1,130 @@
+package Test;
+
+import Core.RateLimiter;
+import Core.Request;
+import Core.Resolver.HybridKeyResolver;
+import Core.Time.ManualClock;
+import FixedWindow.AtomicFixedWindowRateLimiter;
+import FixedWindow.FixedWindowRateLimiter;
+import LeakyBucket.LeakyBucketRateLimiter;
+import SlidingWindowCounter.SlidingWindowCounterRateLimiter;
+import SlidingWindowLog.RingBufferSlidingLogRateLimiter;
+import SlidingWindowLog.SlidingLogRateLimiter;
+import TokenBucket.AtomicTokenBucketRateLimiter;
+import TokenBucket.TokenBucketRateLimiter;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.*;
+
+@RunWith(Parameterized.class)
+public class MultiKeyAdmissionTest {
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> limiters() {
+        Supplier<RateLimiter> tokenBucket = () -> new TokenBucketRateLimiter(new HybridKeyResolver(), 1, 5);
+        Supplier<RateLimiter> atomicTokenBucket = () -> new AtomicTokenBucketRateLimiter(new HybridKeyResolver(), 1, 5);
+        Supplier<RateLimiter> leakyBucket = () -> new LeakyBucketRateLimiter(new HybridKeyResolver(), 1, 5);
+        Supplier<RateLimiter> fixedWindow = () -> new FixedWindowRateLimiter(5, 60, new HybridKeyResolver());
+        Supplier<RateLimiter> atomicFixedWindow = () -> new AtomicFixedWindowRateLimiter(5, 60, new HybridKeyResolver());
+        Supplier<RateLimiter> slidingWindowCounter = () -> new SlidingWindowCounterRateLimiter(5, 60, new HybridKeyResolver());
+        Supplier<RateLimiter> slidingLog = () -> new SlidingLogRateLimiter(5, 60, new HybridKeyResolver());
+        Supplier<RateLimiter> ringBufferLog = () -> new RingBufferSlidingLogRateLimiter(5, 60, new HybridKeyResolver());
+        Supplier<RateLimiter> compressedRingBufferLog = () -> new RingBufferSlidingLogRateLimiter(5, 60, new HybridKeyResolver(), true);
+
+        return Arrays.asList(new Object[][]{
+                {"TokenBucket", tokenBucket},
+                {"AtomicTokenBucket", atomicTokenBucket},
+                {"LeakyBucket", leakyBucket},
+                {"FixedWindow", fixedWindow},
+                {"AtomicFixedWindow", atomicFixedWindow},
+                {"SlidingWindowCounter", slidingWindowCounter},
+                {"SlidingLog", slidingLog},
+                {"RingBufferSlidingLog", ringBufferLog},
+                {"RingBufferSlidingLog (compressed)", compressedRingBufferLog},
+        });
+    }
+
+    private final Supplier<RateLimiter> factory;
+    private long currentTimeStampInMs;
+
+    public MultiKeyAdmissionTest(String name, Supplier<RateLimiter> factory) {
+        this.factory = factory;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        currentTimeStampInMs = ManualClock.START;
+    }
+
+    @Test
+    public void rejectionOnIpKeyDoesNotSpendUserBudget() {
+        RateLimiter rateLimiter = factory.get();
+        for (int i = 0; i < 5; i++) {
+            assertTrue(rateLimiter.allowRequest("attacker" + i, "10.0.0.1", currentTimeStampInMs));
+        }
+
+        for (int i = 0; i < 10; i++) {
+            assertFalse(rateLimiter.allowRequest("victim", "10.0.0.1", currentTimeStampInMs));
+        }
+
+        for (int i = 0; i < 5; i++) {
+            assertTrue(rateLimiter.allowRequest("victim", "10.0.0.2", currentTimeStampInMs));
+        }
+        assertFalse(rateLimiter.allowRequest("victim", "10.0.0.2", currentTimeStampInMs));
+    }
+
+    @Test
+    public void rejectedWeightedRequestGivesBackItsWholeWeight() {
+        RateLimiter rateLimiter = factory.get();
+        assertTrue(rateLimiter.allowRequest("attacker", "10.0.0.1", currentTimeStampInMs, 4));
+
+        assertFalse(rateLimiter.allowRequest("victim", "10.0.0.1", currentTimeStampInMs, 3));
+
+        assertTrue(rateLimiter.allowRequest("victim", "10.0.0.2", currentTimeStampInMs, 5));
+    }
+
+    @Test
+    public void releasedPermitsCanBeSpentAgainOnEveryKey() {
+        RateLimiter rateLimiter = factory.get();
+        assertTrue(rateLimiter.allowRequest("user1", "10.0.0.1", currentTimeStampInMs, 5));
+        assertFalse(rateLimiter.allowRequest("user1", "10.0.0.1", currentTimeStampInMs));
+
+        // part of a weighted grant comes back
+        rateLimiter.releasePermits("user1", "10.0.0.1", currentTimeStampInMs, 3);
+
+        assertTrue(rateLimiter.allowRequest("user2", "10.0.0.1", currentTimeStampInMs, 3));
+        assertTrue(rateLimiter.allowRequest("user1", "10.0.0.2", currentTimeStampInMs, 3));
+        assertFalse(rateLimiter.allowRequest("user1", "10.0.0.2", currentTimeStampInMs));
+    }
+
+    @Test
+    public void batchRejectionOnIpKeyDoesNotSpendUserBudget() {
+        List<Request> requests = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            requests.add(new Request("attacker" + i, "10.0.0.1", currentTimeStampInMs));
+        }
+        for (int i = 0; i < 10; i++) {
+            requests.add(new Request("victim", "10.0.0.1", currentTimeStampInMs));
+        }
+
+        RateLimiter rateLimiter = factory.get();
+        boolean[] allowed = rateLimiter.allowRequests(requests);
+        for (int i = 0; i < requests.size(); i++) {
+            assertEquals(i < 5, allowed[i]);
+        }
+
+        for (int i = 0; i < 5; i++) {
+            assertTrue(rateLimiter.allowRequest("victim", "10.0.0.2", currentTimeStampInMs));
+        }
+        assertFalse(rateLimiter.allowRequest("victim", "10.0.0.2", currentTimeStampInMs));
+    }
+}
@@ -0,0 +1,152 @@
+package Test;
+
+import Core.Resolver.HybridKeyResolver;
+import Core.Resolver.KeyResolver;
+import Core.Store.LongStateStore;
+import Core.Store.OffHeapLongStateStore;
+import Core.Time.ManualClock;
+import FixedWindow.AtomicFixedWindowRateLimiter;
+import TokenBucket.AtomicTokenBucketRateLimiter;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class OffHeapLongStateStoreTest {
+
+    private static final LongStateStore.Transition INCREMENT = (state, now, argument) -> state + 1;
+    private static final LongStateStore.Freshness NEVER_FRESH = (state, now) -> false;
+
+    private KeyResolver resolver;
+    private long currentTimeStampInMs;
+
+    @Before
+    public void setUp() throws Exception {
+        resolver = new HybridKeyResolver();
+        currentTimeStampInMs = ManualClock.START;
+    }
+
+    @Test
+    public void keysKeepSeparateState() {
+        OffHeapLongStateStore store = new OffHeapLongStateStore(10_000, 1000, NEVER_FRESH);
+
+        for (int i = 0; i < 10_000; i++) {
+            assertEquals(0, store.apply("key" + i, currentTimeStampInMs, 0, INCREMENT));
+        }
+        for (int i = 0; i < 10_000; i++) {
+            assertEquals(1, store.apply("key" + i, currentTimeStampInMs, 0, INCREMENT));
+        }
+
+        assertEquals(10_000, store.size());
+        assertEquals(0, store.getOverflowCount());
+        assertTrue("16 bytes per slot at a 0.75 load factor", store.getMemoryInBytes() <= 10_000 * 32L);
+    }
+
+    @Test
+    public void keysThatDoNotFitShareTheOverflowState() {
+        OffHeapLongStateStore store = new OffHeapLongStateStore(16, 1000, NEVER_FRESH);
+        long keys = store.capacity() * 2;
+
+        for (int i = 0; i < keys; i++) {
+            store.apply("key" + i, currentTimeStampInMs, 0, INCREMENT);
+        }
+
+        assertTrue(store.size() <= store.capacity());
+        assertTrue(store.size() > store.capacity() * 9 / 10);
+        assertEquals(keys - store.size(), store.getOverflowCount());
+    }
+
+    @Test
+    public void limitersBehaveTheSameOffHeap() {
+        AtomicTokenBucketRateLimiter tokenBucket = new AtomicTokenBucketRateLimiter(resolver, 1, 3, OffHeapLongStateStore.factory(1000));
+        AtomicFixedWindowRateLimiter fixedWindow = new AtomicFixedWindowRateLimiter(3, 60, resolver, OffHeapLongStateStore.factory(1000));
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(tokenBucket.allowRequest("user1", "192.168.0.1", currentTimeStampInMs));
+            assertTrue(fixedWindow.allowRequest("user1", "192.168.0.1", currentTimeStampInMs));
+        }
+        assertFalse(tokenBucket.allowRequest("user2", "192.168.0.1", currentTimeStampInMs));
+        assertFalse(fixedWindow.allowRequest("user2", "192.168.0.1", currentTimeStampInMs));
+
+        assertTrue(tokenBucket.allowRequest("user1", "192.168.0.1", currentTimeStampInMs + 1000));
+        assertTrue(fixedWindow.allowRequest("user1", "192.168.0.1", currentTimeStampInMs + 60000));
+    }
+
+    @Test
+    public void idleKeysAreSweptAndStartFresh() {
+        AtomicFixedWindowRateLimiter rateLimiter = new AtomicFixedWindowRateLimiter(2, 1, resolver, OffHeapLongStateStore.factory(1000));
+
+        for (int i = 0; i < 100; i++) {
+            rateLimiter.allowRequest("user" + i, "", currentTimeStampInMs);
+        }
+        assertTrue(rateLimiter.allowRequest("user0", "", currentTimeStampInMs));
+        assertFalse(rateLimiter.allowRequest("user0", "", currentTimeStampInMs));
+        assertEquals(100, rateLimiter.getStateStore().size());
+
+        long later = currentTimeStampInMs + 10_000;
+        rateLimiter.allowRequest("trigger", "", later);
+
+        assertEquals(100, rateLimiter.getStateStore().getEvictionCount());
+        assertEquals(1, rateLimiter.getStateStore().size());
+        assertTrue(rateLimiter.allowRequest("user0", "", later));
+        assertTrue(rateLimiter.allowRequest("user0", "", later));
+        assertFalse(rateLimiter.allowRequest("user0", "", later));
+    }
+
+    @Test
+    public void churnLeavesEmptySlotsForLookupsToStopAt() {
+        // state: when the key was last used; fresh after a second, which is also how long a sweep pass takes
+        LongStateStore.Transition touch = (state, now, argument) -> now;
+        OffHeapLongStateStore store = new OffHeapLongStateStore(1000, 1000, (state, now) -> state <= now - 1000);
+        long now = currentTimeStampInMs;
+
+        // 300 new ips a second, each used once: 100 times the table's size over the run
+        int next = 0;
+        for (int second = 0; second < 100 * (int) store.capacity() / 300; second++) {
+            for (int i = 0; i < 300; i++) {
+                store.apply("ip" + next++, now, 0, touch);
+            }
+            for (int ms = 0; ms < 1000; ms += 10) {
+                store.tick(now += 10);
+            }
+        }
+
+        assertEquals(0, store.getOverflowCount());
+        assertTrue(store.size() <= 1000);
+        int longest = 0;
+        for (int i = 0; i < 1000; i++) {
+            longest = Math.max(longest, store.probeLength("absent" + i));
+        }
+        assertTrue("longest miss " + longest, longest < 64);
+    }
+
+    @Test
+    public void testLimitHoldsUnderContention() throws InterruptedException {
+        AtomicTokenBucketRateLimiter rateLimiter = new AtomicTokenBucketRateLimiter(resolver, 1, 1000, OffHeapLongStateStore.factory(1000));
+        AtomicInteger allowed = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[8];
+
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < 500; i++) {
+                    if (rateLimiter.tryAcquire("hot", currentTimeStampInMs)) allowed.incrementAndGet();
+                }
+            });
+            threads[t].start();
+        }
+
+        start.countDown();
+        for (Thread thread : threads) thread.join();
+
+        assertEquals(1000, allowed.get());
+    }
+}
@@ -0,0 +1,203 @@
+package Test;
+
+import Core.Metrics.HeavyHitters;
+import Core.Metrics.InstrumentedRateLimiter;
+import Core.Metrics.LatencyHistogram;
+import Core.Metrics.RecordingMetrics;
+import Core.Request;
+import Core.Resolver.HybridKeyResolver;
+import Core.Resolver.KeyResolver;
+import Core.Time.ManualClock;
+import FixedWindow.FixedWindowRateLimiter;
+import TokenBucket.AtomicTokenBucketRateLimiter;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class RateLimiterMetricsTest {
+
+    private long currentTimeStampInMs;
+    private RecordingMetrics metrics;
+
+    @Before
+    public void setUp() throws Exception {
+        currentTimeStampInMs = ManualClock.START;
+        // every rejecting key into the sketch, so the top keys are exact
+        metrics = new RecordingMetrics(RecordingMetrics.DEFAULT_KEY_CLASSES, RecordingMetrics.DEFAULT_TOP_KEYS, 1);
+    }
+
+    @Test
+    public void countsDecisionsPerLimiterAndRejectingKeyClass() {
+        KeyResolver resolver = new HybridKeyResolver();
+        InstrumentedRateLimiter rateLimiter = new InstrumentedRateLimiter(resolver,
+                keys -> new FixedWindowRateLimiter(3, 60, keys), metrics.forLimiter("fixed"), 1);
+
+        // the fourth is rejected by the user key, the next one by the ip key
+        for (int i = 0; i < 4; i++) {
+            rateLimiter.allowRequest("user1", "10.0.0.1", currentTimeStampInMs);
+        }
+        rateLimiter.allowRequest("user2", "10.0.0.1", currentTimeStampInMs);
+        rateLimiter.allowRequest("user3", "", currentTimeStampInMs);
+
+        RecordingMetrics.LimiterStats stats = metrics.getStats("fixed");
+        assertEquals(4, stats.getAllowedCount());
+        assertEquals(2, stats.getDeniedCount());
+        assertEquals(1, stats.getDeniedCount(HybridKeyResolver.USER_KEY_PREFIX));
+        assertEquals(1, stats.getDeniedCount(HybridKeyResolver.IP_KEY_PREFIX));
+        assertEquals(0, stats.getDeniedCount(HybridKeyResolver.GLOBAL_KEY));
+        assertEquals(6, stats.getLatency().getCount());
+        assertEquals(Set.of("fixed"), metrics.getLimiterNames());
+
+        Set<String> deniedKeys = new HashSet<>();
+        stats.getTopDeniedKeys().forEach(entry -> deniedKeys.add(entry.getKey()));
+        assertEquals(Set.of(HybridKeyResolver.USER_KEY_PREFIX + "user1", HybridKeyResolver.IP_KEY_PREFIX + "10.0.0.1"), deniedKeys);
+    }
+
+    @Test
+    public void mostDeniedKeysComeFirst() {
+        KeyResolver resolver = new HybridKeyResolver();
+        InstrumentedRateLimiter rateLimiter = new InstrumentedRateLimiter(resolver,
+                keys -> new AtomicTokenBucketRateLimiter(keys, 1, 1), metrics.forLimiter("bucket"), 16);
+
+        for (int user = 0; user < 50; user++) {
+            for (int i = 0; i <= user % 5; i++) {
+                rateLimiter.allowRequest("user" + user, "", currentTimeStampInMs);
+            }
+        }
+        for (int i = 0; i < 100; i++) {
+            rateLimiter.allowRequest("abuser", "", currentTimeStampInMs);
+        }
+
+        List<Map.Entry<String, Long>> top = metrics.getStats("bucket").getTopDeniedKeys();
+        assertEquals(RecordingMetrics.DEFAULT_TOP_KEYS, top.size());
+        assertEquals(HybridKeyResolver.USER_KEY_PREFIX + "abuser", top.get(0).getKey());
+        assertTrue(top.get(0).getValue() >= 99);
+        // 250 requests, one in 16 of them timed at random: about 16, and all but never outside these bounds
+        long timed = metrics.getStats("bucket").getLatency().getCount();
+        assertTrue(timed >= 2 && timed <= 40);
+    }
+
+    @Test
+    public void sampledDeniedKeysStillFindTheAbuser() {
+        RecordingMetrics sampled = new RecordingMetrics();
+        InstrumentedRateLimiter rateLimiter = new InstrumentedRateLimiter(new HybridKeyResolver(),
+                keys -> new AtomicTokenBucketRateLimiter(keys, 1, 1), sampled.forLimiter("bucket"));
+
+        for (int user = 0; user < 50; user++) {
+            for (int i = 0; i <= user % 5; i++) {
+                rateLimiter.allowRequest("user" + user, "", currentTimeStampInMs);
+            }
+        }
+        for (int i = 0; i < 1000; i++) {
+            rateLimiter.allowRequest("abuser", "", currentTimeStampInMs);
+        }
+
+        // the counts stay exact, the sketch sees about one rejection in 8, each standing for 8
+        RecordingMetrics.LimiterStats stats = sampled.getStats("bucket");
+        assertEquals(1099, stats.getDeniedCount());
+        assertEquals(1099, stats.getDeniedCount(HybridKeyResolver.USER_KEY_PREFIX));
+        Map.Entry<String, Long> top = stats.getTopDeniedKeys().get(0);
+        assertEquals(HybridKeyResolver.USER_KEY_PREFIX + "abuser", top.getKey());
+        assertEquals(0, top.getValue() % RecordingMetrics.DEFAULT_DENIED_KEY_SAMPLING);
+        assertTrue(top.getValue() >= 500 && top.getValue() <= 2000);
+    }
+
+    @Test
+    public void batchesReportEveryRequest() {
+        KeyResolver resolver = new HybridKeyResolver();
+        InstrumentedRateLimiter rateLimiter = new InstrumentedRateLimiter(resolver,
+                keys -> new FixedWindowRateLimiter(2, 60, keys), metrics.forLimiter("fixed"));
+
+        List<Request> requests = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            requests.add(new Request("user1", "", currentTimeStampInMs));
+        }
+        rateLimiter.allowRequests(requests);
+
+        assertEquals(2, metrics.getStats("fixed").getAllowedCount());
+        assertEquals(3, metrics.getStats("fixed").getDeniedCount());
+    }
+
+    @Test
+    public void rejectionsWithoutARejectingKeyCountInTheTotalOnly() {
+        InstrumentedRateLimiter rateLimiter = new InstrumentedRateLimiter(new HybridKeyResolver(true),
+                keys -> (userId, ip, incomingTimestamp, permits) -> false, metrics.forLimiter("closed"));
+
+        rateLimiter.allowRequest("user1", "10.0.0.1", currentTimeStampInMs);
+
+        RecordingMetrics.LimiterStats stats = metrics.getStats("closed");
+        assertEquals(1, stats.getDeniedCount());
+        assertEquals(0, stats.getDeniedCount(HybridKeyResolver.USER_KEY_PREFIX));
+        assertEquals(0, stats.getDeniedCount(RecordingMetrics.OTHER_KEY_CLASS));
+        assertTrue(stats.getTopDeniedKeys().isEmpty());
+    }
+
+    @Test
+    public void gaugesAreReadWhenAskedFor() {
+        FixedWindowRateLimiter fixedWindow = new FixedWindowRateLimiter(2, 60, new HybridKeyResolver());
+        metrics.forLimiter("fixed").registerKeyExpiry(fixedWindow.getKeyExpiry());
+
+        assertEquals(0L, (long) metrics.getStats("fixed").getGauges().get("keys"));
+
+        fixedWindow.allowRequest("user1", "10.0.0.1", currentTimeStampInMs);
+
+        assertEquals(2L, (long) metrics.getStats("fixed").getGauges().get("keys"));
+        assertEquals(0L, (long) metrics.getStats("fixed").getGauges().get("evictions"));
+    }
+
+    @Test
+    public void histogramPercentilesAreWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 10_000; i++) {
+            histogram.record(i * 1000L);
+        }
+
+        assertEquals(10_000, histogram.getCount());
+        assertEquals(10_000_000, histogram.getMax());
+        assertEquals(5_000_000, histogram.getValueAtPercentile(50), 5_000_000 / 16.0);
+        assertEquals(9_900_000, histogram.getValueAtPercentile(99), 9_900_000 / 16.0);
+        assertEquals(10_000_000, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void histogramRecordsFromManyThreads() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    histogram.record(i);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(40_000, histogram.getCount());
+        assertEquals(9_999, histogram.getMax());
+    }
+
+    @Test
+    public void heavyHittersKeepTheKMostFrequent() {
+        HeavyHitters heavyHitters = new HeavyHitters(3);
+        for (int key = 0; key < 100; key++) {
+            for (int i = 0; i <= key; i++) {
+                heavyHitters.add("key" + key);
+            }
+        }
+
+        List<Map.Entry<String, Long>> top = heavyHitters.top();
+        assertEquals(List.of("key99", "key98", "key97"), List.of(top.get(0).getKey(), top.get(1).getKey(), top.get(2).getKey()));
+        assertTrue(top.get(0).getValue() >= 100);
+    }
+}
@@ -0,0 +1,156 @@
+package Test;
+
+import Core.RateLimiter;
+import Core.Request;
+import Core.Resolver.HybridKeyResolver;
+import Core.Time.ManualClock;
+import Distributed.EmbeddedRespServer;
+import Distributed.RateLimitScripts;
+import Distributed.RedisSlidingWindowCounterRateLimiter;
+import Distributed.RedisTokenBucketRateLimiter;
+import Distributed.RespClient;
+import Distributed.RespScript;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+/*
+ * Runs the Lua in RateLimitScripts on a real Redis and checks that it decides, and stores, exactly what the
+ * Java twins in EmbeddedRespServer do. The other tests only ever run the twins.
+ *
+ * Opt-in: skipped unless REDIS_URL is set, e.g. REDIS_URL=redis://localhost:6379 mvn test. Keys get a
+ * random prefix and expire within two minutes; nothing else on the server is touched.
+ */
+public class RedisScriptsIntegrationTest {
+
+    private EmbeddedRespServer embeddedServer;
+    private RespClient redis;
+    private RespClient embedded;
+    private String prefix;
+    private Random random;
+
+    @Before
+    public void setUp() throws Exception {
+        String url = System.getenv("REDIS_URL");
+        Assume.assumeTrue("REDIS_URL is not set", url != null && !url.isEmpty());
+
+        URI uri = URI.create(url);
+        redis = new RespClient(uri.getHost(), uri.getPort() < 0 ? 6379 : uri.getPort());
+        embeddedServer = new EmbeddedRespServer();
+        embedded = new RespClient("127.0.0.1", embeddedServer.getPort());
+        prefix = "rl-it:" + UUID.randomUUID() + ":";
+        random = new Random(42);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (redis != null) redis.close();
+        if (embedded != null) embedded.close();
+        if (embeddedServer != null) embeddedServer.close();
+    }
+
+    @Test
+    public void tokenBucketScriptMatchesItsTwin() {
+        // 10 s per token, 4 tokens of burst: every key lives at least 10 s, longer than the test runs
+        long interval = 10_000_000;
+        long burst = 4 * interval;
+        long now = ManualClock.START * 1000;
+
+        for (int i = 0; i < 300; i++) {
+            now += random.nextInt(3_000_000);
+            List<String> keys = someKeys();
+            String[] args = {Long.toString(now), Long.toString(interval), Long.toString(burst), Integer.toString(1 + random.nextInt(3))};
+
+            assertSameReply(i, RateLimitScripts.TOKEN_BUCKET, keys, args);
+            assertSameValues(i, allKeys(""));
+        }
+    }
+
+    @Test
+    public void slidingWindowCounterScriptMatchesItsTwin() {
+        long window = 60_000;
+        long now = ManualClock.START;
+
+        for (int i = 0; i < 300; i++) {
+            now += random.nextInt(20_000);
+            List<String> keys = someKeys();
+            String[] args = {Long.toString(now), Long.toString(window), "5", Integer.toString(1 + random.nextInt(2))};
+
+            assertSameReply(i, RateLimitScripts.SLIDING_WINDOW_COUNTER, keys, args);
+            long current = Math.floorDiv(now, window);
+            assertSameValues(i, allKeys(":" + current));
+            assertSameValues(i, allKeys(":" + (current - 1)));
+        }
+    }
+
+    @Test
+    public void compareAndSetScriptMatchesItsTwin() {
+        List<String> key = List.of(prefix + "state");
+        String last = "0";
+
+        for (int i = 0; i < 100; i++) {
+            String expected = random.nextBoolean() ? last : Integer.toString(random.nextInt(4));
+            String next = Integer.toString(random.nextInt(1000));
+
+            assertSameReply(i, RateLimitScripts.COMPARE_AND_SET, key, expected, next, "60000");
+            assertSameValues(i, key);
+            last = (String) redis.call("GET", key.get(0));
+        }
+    }
+
+    @Test
+    public void limitersDecideTheSameOnRedisAsOnTheEmbeddedServer() {
+        RateLimiter[] onRedis = {
+                new RedisTokenBucketRateLimiter(redis, prefix + "tb:", new HybridKeyResolver(), 1, 4),
+                new RedisSlidingWindowCounterRateLimiter(redis, prefix + "sc:", 4, 60, new HybridKeyResolver())};
+        RateLimiter[] onEmbedded = {
+                new RedisTokenBucketRateLimiter(embedded, prefix + "tb:", new HybridKeyResolver(), 1, 4),
+                new RedisSlidingWindowCounterRateLimiter(embedded, prefix + "sc:", 4, 60, new HybridKeyResolver())};
+
+        long now = ManualClock.START;
+        for (int batch = 0; batch < 20; batch++) {
+            List<Request> requests = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                now += random.nextInt(500);
+                requests.add(new Request("user" + random.nextInt(3), random.nextBoolean() ? "10.0.0." + random.nextInt(2) : "",
+                        now, 1 + random.nextInt(2)));
+            }
+
+            for (int l = 0; l < onRedis.length; l++) {
+                assertArrayEquals("batch " + batch, onEmbedded[l].allowRequests(requests), onRedis[l].allowRequests(requests));
+            }
+        }
+    }
+
+    // One to three distinct keys out of three, in a random order.
+    private List<String> someKeys() {
+        List<String> keys = new ArrayList<>(allKeys(""));
+        Collections.shuffle(keys, random);
+        return keys.subList(0, 1 + random.nextInt(keys.size()));
+    }
+
+    private List<String> allKeys(String suffix) {
+        return List.of(prefix + "k0" + suffix, prefix + "k1" + suffix, prefix + "k2" + suffix);
+    }
+
+    private void assertSameReply(int step, RespScript script, List<String> keys, String... args) {
+        Object expected = embedded.evalSha(script, keys, args);
+        assertEquals("step " + step + " " + keys + " " + List.of(args), expected, redis.evalSha(script, keys, args));
+    }
+
+    private void assertSameValues(int step, List<String> keys) {
+        for (String key : keys) {
+            assertEquals("step " + step + " " + key, embedded.call("GET", key), redis.call("GET", key));
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package Test;
+
+import Core.RateLimiter;
+import Core.Request;
+import Core.Resolver.HybridKeyResolver;
+import Core.Time.ManualClock;
+import FixedWindow.AtomicFixedWindowRateLimiter;
+import FixedWindow.FixedWindowRateLimiter;
+import LeakyBucket.LeakyBucketRateLimiter;
+import SlidingWindowCounter.SlidingWindowCounterRateLimiter;
+import SlidingWindowLog.RingBufferSlidingLogRateLimiter;
+import TokenBucket.AtomicTokenBucketRateLimiter;
+import TokenBucket.TokenBucketRateLimiter;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.*;
+
+@RunWith(Parameterized.class)
+public class RequestBatchTest {
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> limiters() {
+        Supplier<RateLimiter> tokenBucket = () -> new TokenBucketRateLimiter(new HybridKeyResolver(), 1, 5);
+        Supplier<RateLimiter> atomicTokenBucket = () -> new AtomicTokenBucketRateLimiter(new HybridKeyResolver(), 1, 5);
+        Supplier<RateLimiter> leakyBucket = () -> new LeakyBucketRateLimiter(new HybridKeyResolver(), 1, 5);
+        Supplier<RateLimiter> fixedWindow = () -> new FixedWindowRateLimiter(5, 60, new HybridKeyResolver());
+        Supplier<RateLimiter> atomicFixedWindow = () -> new AtomicFixedWindowRateLimiter(5, 60, new HybridKeyResolver());
+        Supplier<RateLimiter> slidingWindowCounter = () -> new SlidingWindowCounterRateLimiter(5, 60, new HybridKeyResolver());
+        Supplier<RateLimiter> slidingLog = () -> new RingBufferSlidingLogRateLimiter(5, 60, new HybridKeyResolver());
+
+        return Arrays.asList(new Object[][]{
+                {"TokenBucket", tokenBucket},
+                {"AtomicTokenBucket", atomicTokenBucket},
+                {"LeakyBucket", leakyBucket},
+                {"FixedWindow", fixedWindow},
+                {"AtomicFixedWindow", atomicFixedWindow},
+                {"SlidingWindowCounter", slidingWindowCounter},
+                {"RingBufferSlidingLog (default batch)", slidingLog},
+        });
+    }
+
+    private final Supplier<RateLimiter> factory;
+    private long currentTimeStampInMs;
+
+    public RequestBatchTest(String name, Supplier<RateLimiter> factory) {
+        this.factory = factory;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        currentTimeStampInMs = ManualClock.START;
+    }
+
+    @Test
+    public void batchMatchesSequentialCalls() {
+        List<Request> requests = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            // user and ip limits interleave: ip "10.0.0.1" is shared by users 0..3
+            requests.add(new Request("user" + (i % 4), "10.0.0." + (i % 2 == 0 ? 1 : 2), currentTimeStampInMs + i));
+        }
+
+        RateLimiter sequential = factory.get();
+        boolean[] expected = new boolean[requests.size()];
+        for (int i = 0; i < expected.length; i++) {
+            Request request = requests.get(i);
+            expected[i] = sequential.allowRequest(request.getUserId(), request.getIp(), request.getTimestamp());
+        }
+
+        assertArrayEquals(expected, factory.get().allowRequests(requests));
+    }
+
+    @Test
+    public void batchesOfChangingSizeMatchSequentialCalls() {
+        RateLimiter sequential = factory.get();
+        RateLimiter batched = factory.get();
+
+        // more callers and keys than the batch scratch space starts out with, then a small batch reusing it;
+        // every caller is distinct, so both go request by request
+        for (int size : new int[]{300, 7}) {
+            List<Request> requests = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                requests.add(new Request("user" + (i % 150), "10.0.0." + (i % 7), currentTimeStampInMs));
+            }
+
+            boolean[] expected = new boolean[size];
+            for (int i = 0; i < size; i++) {
+                Request request = requests.get(i);
+                expected[i] = sequential.allowRequest(request.getUserId(), request.getIp(), request.getTimestamp());
+            }
+            assertArrayEquals(expected, batched.allowRequests(requests));
+        }
+    }
+
+    @Test
+    public void largeBatchOfRepeatingCallersMatchesSequentialCalls() {
+        // 150 callers four times each are grouped, in more groups than the scratch space starts out with;
+        // the ips they share reject most of them, and the user keys give the permits back
+        List<Request> requests = new ArrayList<>();
+        for (int i = 0; i < 600; i++) {
+            requests.add(new Request("user" + (i % 150), "10.0.0." + (i % 150 % 7), currentTimeStampInMs));
+        }
+
+        RateLimiter sequential = factory.get();
+        boolean[] expected = new boolean[requests.size()];
+        for (int i = 0; i < expected.length; i++) {
+            Request request = requests.get(i);
+            expected[i] = sequential.allowRequest(request.getUserId(), request.getIp(), request.getTimestamp());
+        }
+
+        assertArrayEquals(expected, factory.get().allowRequests(requests));
+    }
+
+    @Test
+    public void batchSharesStateWithSingleCalls() {
+        RateLimiter rateLimiter = factory.get();
+        assertTrue(rateLimiter.allowRequest("user1", "", currentTimeStampInMs));
+        assertTrue(rateLimiter.allowRequest("user1", "", currentTimeStampInMs));
+
+        List<Request> requests = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            requests.add(new Request("user1", "", currentTimeStampInMs));
+        }
+
+        assertArrayEquals(new boolean[]{true, true, true, false, false}, rateLimiter.allowRequests(requests));
+        assertFalse(rateLimiter.allowRequest("user1", "", currentTimeStampInMs));
+    }
+
+    @Test
+    public void emptyBatch() {
+        assertEquals(0, factory.get().allowRequests(new ArrayList<>()).length);
+    }
+}
@@ -0,0 +1,153 @@
+package Test;
+
+import Core.Resolver.HybridKeyResolver;
+import Core.Resolver.KeyResolver;
+import Core.Time.ManualClock;
+import SlidingWindowLog.RingBufferSlidingLogRateLimiter;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+@RunWith(Parameterized.class)
+public class RingBufferSlidingLogRateLimiterTest {
+
+    @Parameterized.Parameters(name = "compressed={0}")
+    public static Collection<Object[]> modes() {
+        return Arrays.asList(new Object[][]{{false}, {true}});
+    }
+
+    private final boolean compressed;
+    private KeyResolver resolver;
+    private long currentTimeStampInMs;
+
+    public RingBufferSlidingLogRateLimiterTest(boolean compressed) {
+        this.compressed = compressed;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        resolver = new HybridKeyResolver();
+        currentTimeStampInMs = ManualClock.START;
+    }
+
+    private RingBufferSlidingLogRateLimiter limiter(int requestLimit, long windowSizeInSeconds) {
+        return new RingBufferSlidingLogRateLimiter(requestLimit, windowSizeInSeconds, resolver, compressed);
+    }
+
+    @Test
+    public void rejectRequestOverLimit() {
+        RingBufferSlidingLogRateLimiter rateLimiter = limiter(3, 60);
+
+        assertTrue(rateLimiter.allowRequest("User1", "", currentTimeStampInMs));
+        assertTrue(rateLimiter.allowRequest("User1", "", currentTimeStampInMs + 1000));
+        assertTrue(rateLimiter.allowRequest("User1", "", currentTimeStampInMs + 3000));
+        assertFalse(rateLimiter.allowRequest("User1", "", currentTimeStampInMs + 8000));
+    }
+
+    @Test
+    public void allowRequestAfterExceedingWindowLimit() {
+        RingBufferSlidingLogRateLimiter rateLimiter = limiter(4, 60);
+
+        assertTrue(rateLimiter.allowRequest("User1", "", currentTimeStampInMs));
+        assertTrue(rateLimiter.allowRequest("User1", "", currentTimeStampInMs + 1000));
+        assertTrue(rateLimiter.allowRequest("User1", "", currentTimeStampInMs + 3000));
+        assertTrue(rateLimiter.allowRequest("User1", "", currentTimeStampInMs + 5000));
+        assertFalse(rateLimiter.allowRequest("User1", "", currentTimeStampInMs + 14000));
+
+        assertFalse(rateLimiter.allowRequest("User1", "", currentTimeStampInMs + 60000));
+        assertTrue(rateLimiter.allowRequest("User1", "", currentTimeStampInMs + 61000));
+    }
+
+    @Test
+    public void testMultipleUsersWithHybridLimit() {
+        RingBufferSlidingLogRateLimiter rateLimiter = limiter(3, 60);
+
+        assertTrue(rateLimiter.allowRequest("user1", "192.168.1.1", currentTimeStampInMs));
+        assertTrue(rateLimiter.allowRequest("user1", "192.168.1.1", currentTimeStampInMs + 1000));
+        assertTrue(rateLimiter.allowRequest("user2", "192.168.1.1", currentTimeStampInMs + 2000));
+        assertFalse(rateLimiter.allowRequest("user3", "192.168.1.1", currentTimeStampInMs + 3000));
+
+        assertTrue(rateLimiter.allowRequest("user3", "192.168.1.1", currentTimeStampInMs + 62000));
+    }
+
+    @Test
+    public void ringWrapsAndGrowsPastInitialCapacity() {
+        RingBufferSlidingLogRateLimiter rateLimiter = limiter(20, 10);
+
+        for (int round = 0; round < 5; round++) {
+            long roundStart = currentTimeStampInMs + round * 20_000L;
+            for (int i = 0; i < 20; i++) {
+                assertTrue(rateLimiter.allowRequest("user1", "", roundStart + i * 100));
+            }
+            assertFalse(rateLimiter.allowRequest("user1", "", roundStart + 2000));
+        }
+    }
+
+    @Test
+    public void weightsSurviveGrowthAndEviction() {
+        RingBufferSlidingLogRateLimiter rateLimiter = limiter(40, 10);
+
+        // unit entries first, so the weights array is allocated mid-log and then grown with it
+        for (int i = 0; i < 6; i++) {
+            assertTrue(rateLimiter.allowRequest("user1", "", currentTimeStampInMs + i));
+        }
+        for (int i = 0; i < 10; i++) {
+            assertTrue(rateLimiter.allowRequest("user1", "", currentTimeStampInMs + 100 + i, 3));
+        }
+        assertFalse(rateLimiter.allowRequest("user1", "", currentTimeStampInMs + 200, 5));
+        assertTrue(rateLimiter.allowRequest("user1", "", currentTimeStampInMs + 200, 4));
+
+        // the six unit entries expire: exactly six permits come back
+        long later = currentTimeStampInMs + 10_050;
+        assertFalse(rateLimiter.allowRequest("user1", "", later, 7));
+        assertTrue(rateLimiter.allowRequest("user1", "", later, 6));
+        assertFalse(rateLimiter.allowRequest("user1", "", later));
+    }
+
+    @Test
+    public void timestampsFarApartStayExact() {
+        RingBufferSlidingLogRateLimiter rateLimiter = limiter(2, 1);
+        long monthLater = currentTimeStampInMs + 30L * 24 * 60 * 60 * 1000;
+
+        assertTrue(rateLimiter.allowRequest("user1", "", currentTimeStampInMs));
+        assertTrue(rateLimiter.allowRequest("user1", "", monthLater));
+        assertTrue(rateLimiter.allowRequest("user1", "", monthLater + 10));
+        assertFalse(rateLimiter.allowRequest("user1", "", monthLater + 20));
+        assertTrue(rateLimiter.allowRequest("user1", "", monthLater + 1011));
+    }
+
+    @Test
+    public void testLimitHoldsUnderContention() throws InterruptedException {
+        RingBufferSlidingLogRateLimiter rateLimiter = limiter(1000, 60);
+        AtomicInteger allowed = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[8];
+
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < 500; i++) {
+                    if (rateLimiter.tryAcquire("hot", currentTimeStampInMs)) allowed.incrementAndGet();
+                }
+            });
+            threads[t].start();
+        }
+
+        start.countDown();
+        for (Thread thread : threads) thread.join();
+
+        assertEquals(1000, allowed.get());
+    }
+}
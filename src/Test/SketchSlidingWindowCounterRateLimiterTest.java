@@ -0,0 +1,128 @@
+package Test;
+
+import Core.Resolver.HybridKeyResolver;
+import Core.Resolver.KeyResolver;
+import Core.Store.KeyHash;
+import Core.Time.ManualClock;
+import SlidingWindowCounter.CountMinSketch;
+import SlidingWindowCounter.SketchSlidingWindowCounterRateLimiter;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SketchSlidingWindowCounterRateLimiterTest {
+
+    private KeyResolver resolver;
+    private long currentTimeStampInMs;
+
+    @Before
+    public void setUp() throws Exception {
+        resolver = new HybridKeyResolver();
+        currentTimeStampInMs = ManualClock.START;
+    }
+
+    @Test
+    public void rejectsRequestsOverTheLimitPerKey() {
+        SketchSlidingWindowCounterRateLimiter rateLimiter = new SketchSlidingWindowCounterRateLimiter(5, 60, resolver);
+
+        for (int i = 0; i < 5; i++) {
+            assertTrue(rateLimiter.allowRequest("", "10.0.0.1", currentTimeStampInMs + i));
+        }
+        assertFalse(rateLimiter.allowRequest("", "10.0.0.1", currentTimeStampInMs + 10));
+        assertTrue(rateLimiter.allowRequest("", "10.0.0.2", currentTimeStampInMs + 10, 5));
+        assertFalse(rateLimiter.allowRequest("", "10.0.0.3", currentTimeStampInMs + 10, 6));
+    }
+
+    @Test
+    public void previousWindowWeighsInByItsOverlap() {
+        // no heavy keys, so every decision comes from the sketches
+        SketchSlidingWindowCounterRateLimiter rateLimiter = new SketchSlidingWindowCounterRateLimiter(10, 60, resolver,
+                1e-3, 0.99, 0);
+
+        assertTrue(rateLimiter.allowRequest("", "10.0.0.1", currentTimeStampInMs, 10));
+        assertFalse(rateLimiter.allowRequest("", "10.0.0.1", currentTimeStampInMs + 30_000));
+
+        // half way through the next window: 0.5 * 10 of the previous one still counts
+        assertTrue(rateLimiter.allowRequest("", "10.0.0.1", currentTimeStampInMs + 90_000, 5));
+        assertFalse(rateLimiter.allowRequest("", "10.0.0.1", currentTimeStampInMs + 90_000));
+
+        // two windows later both have aged out
+        assertTrue(rateLimiter.allowRequest("", "10.0.0.1", currentTimeStampInMs + 240_000, 10));
+        assertEquals(0, rateLimiter.getHeavyKeyCount());
+    }
+
+    @Test
+    public void heavyKeysMoveToExactCounting() {
+        SketchSlidingWindowCounterRateLimiter rateLimiter = new SketchSlidingWindowCounterRateLimiter(10, 60, resolver);
+
+        for (int i = 0; i < 4; i++) {
+            assertTrue(rateLimiter.allowRequest("", "10.0.0.1", currentTimeStampInMs));
+        }
+        assertEquals(0, rateLimiter.getHeavyKeyCount());
+
+        assertTrue(rateLimiter.allowRequest("", "10.0.0.1", currentTimeStampInMs));
+        assertEquals(1, rateLimiter.getHeavyKeyCount());
+
+        // seeded with the 5 counted so far
+        assertTrue(rateLimiter.allowRequest("", "10.0.0.1", currentTimeStampInMs, 5));
+        assertFalse(rateLimiter.allowRequest("", "10.0.0.1", currentTimeStampInMs));
+    }
+
+    @Test
+    public void sketchMemoryStaysFixedWhateverTheKeyCount() {
+        SketchSlidingWindowCounterRateLimiter rateLimiter = new SketchSlidingWindowCounterRateLimiter(100, 60, resolver);
+        long memory = rateLimiter.getSketchMemoryInBytes();
+        assertTrue(memory < 4 << 20);
+
+        for (int i = 0; i < 200_000; i++) {
+            assertTrue(rateLimiter.allowRequest("", "ip" + i, currentTimeStampInMs));
+        }
+
+        assertEquals(memory, rateLimiter.getSketchMemoryInBytes());
+        assertEquals(0, rateLimiter.getHeavyKeyCount());
+    }
+
+    @Test
+    public void crowdedSketchRejectsEarlyButNeverLate() {
+        // 16 x 2 counters for 200 keys: every counter is shared
+        SketchSlidingWindowCounterRateLimiter rateLimiter = new SketchSlidingWindowCounterRateLimiter(3, 60, resolver,
+                0.2, 0.8, 0);
+
+        int allowed = 0;
+        for (int i = 0; i < 200; i++) {
+            int allowedForKey = 0;
+            for (int request = 0; request < 4; request++) {
+                if (rateLimiter.allowRequest("", "ip" + i, currentTimeStampInMs)) allowedForKey++;
+            }
+            assertTrue(allowedForKey <= 3);
+            allowed += allowedForKey;
+        }
+        assertTrue(allowed < 600);
+    }
+
+    @Test
+    public void rejectedRequestHandsBackPermitsOfEarlierKeys() {
+        SketchSlidingWindowCounterRateLimiter rateLimiter = new SketchSlidingWindowCounterRateLimiter(2, 60, resolver,
+                1e-3, 0.99, 0);
+
+        assertTrue(rateLimiter.allowRequest("", "10.0.0.1", currentTimeStampInMs, 2));
+        // user1 is charged, then the ip rejects and user1 gets its permit back
+        assertFalse(rateLimiter.allowRequest("user1", "10.0.0.1", currentTimeStampInMs));
+        assertTrue(rateLimiter.allowRequest("user1", "", currentTimeStampInMs, 2));
+    }
+
+    @Test
+    public void sketchDimensionsFollowErrorAndConfidence() {
+        CountMinSketch sketch = CountMinSketch.withError(1e-4, 0.999);
+        assertEquals(32768, sketch.getWidth());
+        assertEquals(7, sketch.getDepth());
+
+        long hash = KeyHash.hash64("IP: 10.0.0.1");
+        assertEquals(3, sketch.add(hash, 3));
+        assertEquals(1, sketch.add(hash, -2));
+        assertEquals(1, sketch.estimate(hash));
+        sketch.clear();
+        assertEquals(0, sketch.estimate(hash));
+    }
+}
@@ -2,12 +2,11 @@ package Test;
 
 import Core.Resolver.HybridKeyResolver;
 import Core.Resolver.KeyResolver;
+import Core.Time.ManualClock;
 import SlidingWindowLog.SlidingLogRateLimiter;
 import org.junit.Before;
 import org.junit.Test;
 
-import java.time.Instant;
-
 import static org.junit.Assert.*;
 
 public class SlidingLogRateLimiterTest {
@@ -18,7 +17,7 @@ public class SlidingLogRateLimiterTest {
     @Before
     public void setUp() throws Exception {
         resolver = new HybridKeyResolver();
-        currentTimeStampInSecond = Instant.now().toEpochMilli();
+        currentTimeStampInSecond = ManualClock.START;
     }
 
     @Test
@@ -26,8 +25,8 @@ public class SlidingLogRateLimiterTest {
         SlidingLogRateLimiter rateLimiter = new SlidingLogRateLimiter(3, 60, resolver);
 
         assertTrue(rateLimiter.allowRequest("user1", "", currentTimeStampInSecond));
-        assertTrue(rateLimiter.allowRequest("user1", "", currentTimeStampInSecond + 5));
-        assertTrue(rateLimiter.allowRequest("user1", "", currentTimeStampInSecond + 7));
+        assertTrue(rateLimiter.allowRequest("user1", "", currentTimeStampInSecond + 5 * 1000L));
+        assertTrue(rateLimiter.allowRequest("user1", "", currentTimeStampInSecond + 7 * 1000L));
     }
 
     @Test
@@ -35,9 +34,9 @@ public class SlidingLogRateLimiterTest {
         SlidingLogRateLimiter rateLimiter = new SlidingLogRateLimiter(3, 60, resolver);
 
         assertTrue(rateLimiter.allowRequest("User1", "", currentTimeStampInSecond));
-        assertTrue(rateLimiter.allowRequest("User1", "", currentTimeStampInSecond + 1));
-        assertTrue(rateLimiter.allowRequest("User1", "", currentTimeStampInSecond + 3));
-        assertFalse(rateLimiter.allowRequest("User1", "", currentTimeStampInSecond + 8));
+        assertTrue(rateLimiter.allowRequest("User1", "", currentTimeStampInSecond + 1 * 1000L));
+        assertTrue(rateLimiter.allowRequest("User1", "", currentTimeStampInSecond + 3 * 1000L));
+        assertFalse(rateLimiter.allowRequest("User1", "", currentTimeStampInSecond + 8 * 1000L));
     }
 
     @Test
@@ -45,13 +44,13 @@ public class SlidingLogRateLimiterTest {
         SlidingLogRateLimiter rateLimiter = new SlidingLogRateLimiter(4, 60, resolver);
 
         assertTrue(rateLimiter.allowRequest("User1", "", currentTimeStampInSecond));
-        assertTrue(rateLimiter.allowRequest("User1", "", currentTimeStampInSecond + 1));
-        assertTrue(rateLimiter.allowRequest("User1", "", currentTimeStampInSecond + 3));
-        assertTrue(rateLimiter.allowRequest("User1", "", currentTimeStampInSecond + 5));
-        assertFalse(rateLimiter.allowRequest("User1", "", currentTimeStampInSecond + 14));
+        assertTrue(rateLimiter.allowRequest("User1", "", currentTimeStampInSecond + 1 * 1000L));
+        assertTrue(rateLimiter.allowRequest("User1", "", currentTimeStampInSecond + 3 * 1000L));
+        assertTrue(rateLimiter.allowRequest("User1", "", currentTimeStampInSecond + 5 * 1000L));
+        assertFalse(rateLimiter.allowRequest("User1", "", currentTimeStampInSecond + 14 * 1000L));
 
-        assertFalse(rateLimiter.allowRequest("User1", "", currentTimeStampInSecond + 60));
-        assertTrue(rateLimiter.allowRequest("User1", "", currentTimeStampInSecond + 61));
+        assertFalse(rateLimiter.allowRequest("User1", "", currentTimeStampInSecond + 60 * 1000L));
+        assertTrue(rateLimiter.allowRequest("User1", "", currentTimeStampInSecond + 61 * 1000L));
     }
 
     @Test
@@ -59,21 +58,21 @@ public class SlidingLogRateLimiterTest {
         SlidingLogRateLimiter rateLimiter = new SlidingLogRateLimiter(4, 60, resolver);
 
         assertTrue(rateLimiter.allowRequest("User1", "", currentTimeStampInSecond));
-        assertTrue(rateLimiter.allowRequest("User2", "", currentTimeStampInSecond + 1));
-        assertTrue(rateLimiter.allowRequest("User1", "", currentTimeStampInSecond + 3));
-        assertTrue(rateLimiter.allowRequest("User2", "", currentTimeStampInSecond + 5));
-        assertTrue(rateLimiter.allowRequest("User1", "", currentTimeStampInSecond + 14));
-        assertTrue(rateLimiter.allowRequest("User2", "", currentTimeStampInSecond + 15));
-        assertTrue(rateLimiter.allowRequest("User2", "", currentTimeStampInSecond + 16));
-        assertTrue(rateLimiter.allowRequest("User1", "", currentTimeStampInSecond + 20));
-
-        assertFalse(rateLimiter.allowRequest("User1", "", currentTimeStampInSecond + 25));
-        assertFalse(rateLimiter.allowRequest("User1", "", currentTimeStampInSecond + 28));
-        assertFalse(rateLimiter.allowRequest("User2", "", currentTimeStampInSecond + 29));
-
-        assertTrue(rateLimiter.allowRequest("User2", "", currentTimeStampInSecond + 65));
-        assertTrue(rateLimiter.allowRequest("User2", "", currentTimeStampInSecond + 77));
-        assertTrue(rateLimiter.allowRequest("User1", "", currentTimeStampInSecond + 80));
+        assertTrue(rateLimiter.allowRequest("User2", "", currentTimeStampInSecond + 1 * 1000L));
+        assertTrue(rateLimiter.allowRequest("User1", "", currentTimeStampInSecond + 3 * 1000L));
+        assertTrue(rateLimiter.allowRequest("User2", "", currentTimeStampInSecond + 5 * 1000L));
+        assertTrue(rateLimiter.allowRequest("User1", "", currentTimeStampInSecond + 14 * 1000L));
+        assertTrue(rateLimiter.allowRequest("User2", "", currentTimeStampInSecond + 15 * 1000L));
+        assertTrue(rateLimiter.allowRequest("User2", "", currentTimeStampInSecond + 16 * 1000L));
+        assertTrue(rateLimiter.allowRequest("User1", "", currentTimeStampInSecond + 20 * 1000L));
+
+        assertFalse(rateLimiter.allowRequest("User1", "", currentTimeStampInSecond + 25 * 1000L));
+        assertFalse(rateLimiter.allowRequest("User1", "", currentTimeStampInSecond + 28 * 1000L));
+        assertFalse(rateLimiter.allowRequest("User2", "", currentTimeStampInSecond + 29 * 1000L));
+
+        assertTrue(rateLimiter.allowRequest("User2", "", currentTimeStampInSecond + 65 * 1000L));
+        assertTrue(rateLimiter.allowRequest("User2", "", currentTimeStampInSecond + 77 * 1000L));
+        assertTrue(rateLimiter.allowRequest("User1", "", currentTimeStampInSecond + 80 * 1000L));
     }
 
     @Test
@@ -81,11 +80,11 @@ public class SlidingLogRateLimiterTest {
         SlidingLogRateLimiter rateLimiter = new SlidingLogRateLimiter(3, 60, resolver);
 
         assertTrue(rateLimiter.allowRequest("user1", "192.168.1.1", currentTimeStampInSecond));
-        assertTrue(rateLimiter.allowRequest("user1", "192.168.1.1", currentTimeStampInSecond + 1));
-        assertTrue(rateLimiter.allowRequest("user2", "192.168.1.1", currentTimeStampInSecond + 2));
-        assertFalse(rateLimiter.allowRequest("user3", "192.168.1.1", currentTimeStampInSecond + 3));
+        assertTrue(rateLimiter.allowRequest("user1", "192.168.1.1", currentTimeStampInSecond + 1 * 1000L));
+        assertTrue(rateLimiter.allowRequest("user2", "192.168.1.1", currentTimeStampInSecond + 2 * 1000L));
+        assertFalse(rateLimiter.allowRequest("user3", "192.168.1.1", currentTimeStampInSecond + 3 * 1000L));
 
-        assertTrue(rateLimiter.allowRequest("user3", "192.168.1.1", currentTimeStampInSecond + 62));
+        assertTrue(rateLimiter.allowRequest("user3", "192.168.1.1", currentTimeStampInSecond + 62 * 1000L));
     }
 
 
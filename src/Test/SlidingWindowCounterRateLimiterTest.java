@@ -2,12 +2,11 @@ package Test;
 
 import Core.Resolver.HybridKeyResolver;
 import Core.Resolver.KeyResolver;
+import Core.Time.ManualClock;
 import SlidingWindowCounter.SlidingWindowCounterRateLimiter;
 import org.junit.Before;
 import org.junit.Test;
 
-import java.time.Instant;
-
 import static org.junit.Assert.*;
 public class SlidingWindowCounterRateLimiterTest {
     private KeyResolver resolver;
@@ -18,7 +17,8 @@ public class SlidingWindowCounterRateLimiterTest {
     @Before
     public void setUp() throws Exception {
         resolver = new HybridKeyResolver();
-        currentTimestampInMs = Instant.now().toEpochMilli();
+        // start at a window boundary so the offsets below never straddle two windows by accident
+        currentTimestampInMs = ManualClock.START;
     }
 
 
@@ -0,0 +1,128 @@
+package Test;
+
+import Core.RateLimiter;
+import Core.Resolver.HybridKeyResolver;
+import Core.Snapshot.Checkpointer;
+import Core.Snapshot.Snapshottable;
+import Core.Store.OffHeapLongStateStore;
+import Core.Time.ManualClock;
+import FixedWindow.AtomicFixedWindowRateLimiter;
+import FixedWindow.FixedWindowRateLimiter;
+import LeakyBucket.LeakyBucketRateLimiter;
+import SlidingWindowCounter.SketchSlidingWindowCounterRateLimiter;
+import SlidingWindowCounter.SlidingWindowCounterRateLimiter;
+import SlidingWindowLog.RingBufferSlidingLogRateLimiter;
+import SlidingWindowLog.SlidingLogRateLimiter;
+import TokenBucket.AtomicTokenBucketRateLimiter;
+import TokenBucket.TokenBucketRateLimiter;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.*;
+
+@RunWith(Parameterized.class)
+public class SnapshotRestoreTest {
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> limiters() {
+        Supplier<RateLimiter> tokenBucket = () -> new TokenBucketRateLimiter(new HybridKeyResolver(), 1, 5);
+        Supplier<RateLimiter> atomicTokenBucket = () -> new AtomicTokenBucketRateLimiter(new HybridKeyResolver(), 1, 5);
+        Supplier<RateLimiter> offHeapTokenBucket = () -> new AtomicTokenBucketRateLimiter(new HybridKeyResolver(), 1, 5,
+                OffHeapLongStateStore.factory(100_000));
+        Supplier<RateLimiter> leakyBucket = () -> new LeakyBucketRateLimiter(new HybridKeyResolver(), 1, 5);
+        Supplier<RateLimiter> fixedWindow = () -> new FixedWindowRateLimiter(5, 60, new HybridKeyResolver());
+        Supplier<RateLimiter> atomicFixedWindow = () -> new AtomicFixedWindowRateLimiter(5, 60, new HybridKeyResolver());
+        Supplier<RateLimiter> offHeapFixedWindow = () -> new AtomicFixedWindowRateLimiter(5, 60, new HybridKeyResolver(),
+                OffHeapLongStateStore.factory(100_000));
+        Supplier<RateLimiter> slidingWindowCounter = () -> new SlidingWindowCounterRateLimiter(5, 60, new HybridKeyResolver());
+        Supplier<RateLimiter> sketchSlidingWindowCounter = () -> new SketchSlidingWindowCounterRateLimiter(5, 60, new HybridKeyResolver(),
+                0.01, 0.99, 16);
+        Supplier<RateLimiter> slidingLog = () -> new SlidingLogRateLimiter(5, 60, new HybridKeyResolver());
+        Supplier<RateLimiter> ringBufferLog = () -> new RingBufferSlidingLogRateLimiter(5, 60, new HybridKeyResolver());
+        Supplier<RateLimiter> compressedRingBufferLog = () -> new RingBufferSlidingLogRateLimiter(5, 60, new HybridKeyResolver(), true);
+
+        return Arrays.asList(new Object[][]{
+                {"TokenBucket", tokenBucket},
+                {"AtomicTokenBucket", atomicTokenBucket},
+                {"AtomicTokenBucket (off heap)", offHeapTokenBucket},
+                {"LeakyBucket", leakyBucket},
+                {"FixedWindow", fixedWindow},
+                {"AtomicFixedWindow", atomicFixedWindow},
+                {"AtomicFixedWindow (off heap)", offHeapFixedWindow},
+                {"SlidingWindowCounter", slidingWindowCounter},
+                {"SketchSlidingWindowCounter", sketchSlidingWindowCounter},
+                {"SlidingLog", slidingLog},
+                {"RingBufferSlidingLog", ringBufferLog},
+                {"RingBufferSlidingLog (compressed)", compressedRingBufferLog},
+        });
+    }
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Supplier<RateLimiter> factory;
+    private long currentTimeStampInMs;
+
+    public SnapshotRestoreTest(String name, Supplier<RateLimiter> factory) {
+        this.factory = factory;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        currentTimeStampInMs = ManualClock.START;
+    }
+
+    @Test
+    public void restartedLimiterKeepsSpentBudget() {
+        RateLimiter before = factory.get();
+        for (int i = 0; i < 3; i++) {
+            assertTrue(before.allowRequest("user" + i, "10.0.0.1", currentTimeStampInMs));
+        }
+        assertTrue(before.allowRequest("user0", "", currentTimeStampInMs, 2));
+        checkpointer(before).checkpoint(currentTimeStampInMs);
+
+        RateLimiter after = factory.get();
+        assertEquals(1, checkpointer(after).restore());
+
+        assertTrue(after.allowRequest("user3", "10.0.0.1", currentTimeStampInMs, 2));
+        assertFalse(after.allowRequest("user4", "10.0.0.1", currentTimeStampInMs));
+        assertTrue(after.allowRequest("user0", "", currentTimeStampInMs, 2));
+        assertFalse(after.allowRequest("user0", "", currentTimeStampInMs));
+        assertTrue(after.allowRequest("user9", "10.0.0.2", currentTimeStampInMs, 5));
+    }
+
+    @Test
+    public void deltasAreAppliedOverTheFullCheckpoint() {
+        RateLimiter before = factory.get();
+        Checkpointer checkpointer = checkpointer(before);
+        assertTrue(before.allowRequest("user1", "", currentTimeStampInMs, 2));
+        assertTrue(before.allowRequest("user2", "", currentTimeStampInMs, 1));
+        checkpointer.checkpoint(currentTimeStampInMs);
+
+        assertTrue(before.allowRequest("user1", "", currentTimeStampInMs + 10, 2));
+        checkpointer.checkpoint(currentTimeStampInMs + 10);
+        assertTrue(before.allowRequest("user3", "", currentTimeStampInMs + 20, 4));
+        checkpointer.checkpoint(currentTimeStampInMs + 20);
+
+        RateLimiter after = factory.get();
+        assertEquals(3, checkpointer(after).restore());
+
+        assertFalse(after.allowRequest("user1", "", currentTimeStampInMs + 30, 2));
+        assertTrue(after.allowRequest("user1", "", currentTimeStampInMs + 30));
+        assertTrue(after.allowRequest("user2", "", currentTimeStampInMs + 30, 4));
+        assertFalse(after.allowRequest("user3", "", currentTimeStampInMs + 30, 2));
+    }
+
+    private Checkpointer checkpointer(RateLimiter rateLimiter) {
+        return new Checkpointer(folder.getRoot().toPath(), Map.of("limiter", (Snapshottable) rateLimiter), 1000, 10, Runnable::run);
+    }
+}
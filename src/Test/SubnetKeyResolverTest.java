@@ -0,0 +1,170 @@
+package Test;
+
+import Core.Resolver.HybridKeyResolver;
+import Core.Resolver.InterningKeyResolver;
+import Core.Resolver.IpAddress;
+import Core.Resolver.IpPrefixTrie;
+import Core.Resolver.KeySink;
+import Core.Resolver.PrefixPolicy;
+import Core.Resolver.SubnetKeyResolver;
+import Core.Store.KeyHash;
+import Core.Time.ManualClock;
+import FixedWindow.FixedWindowRateLimiter;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SubnetKeyResolverTest {
+
+    private long currentTimeStampInMs;
+
+    @Before
+    public void setUp() throws Exception {
+        currentTimeStampInMs = ManualClock.START;
+    }
+
+    @Test
+    public void parsesIpv4AndIpv6Addresses() {
+        assertEquals("192.168.1.77/32", IpAddress.of("192.168.1.77").toString());
+        assertTrue(IpAddress.of("0.0.0.0").isV4());
+        assertEquals("2001:db8:0:0:0:0:0:1/128", IpAddress.of("2001:db8::1").toString());
+        assertEquals("0:0:0:0:0:0:0:0/128", IpAddress.of("::").toString());
+        assertEquals("fe80:0:0:0:0:0:0:0/128", IpAddress.of("fe80::").toString());
+        assertEquals("1:2:3:4:5:6:7:8/128", IpAddress.of("1:2:3:4:5:6:7:8").toString());
+        assertEquals("64:ff9b:0:0:0:0:c000:221/128", IpAddress.of("64:ff9b::192.0.2.33").toString());
+
+        IpAddress mapped = IpAddress.of("::ffff:10.0.0.1");
+        assertTrue(mapped.isV4());
+        assertEquals("10.0.0.1/32", mapped.toString());
+
+        IpAddress address = IpAddress.of("10.0.0.1");
+        for (String invalid : new String[]{"", " ", "1.2.3", "1.2.3.4.5", "256.1.1.1", "1.2.3.4 ", "1::2::3", "12345::",
+                ":1::", "1:2:3:4:5:6:7", "1:2:3:4:5:6:7:8:9", "1:2:3:4:5:6:7::8", "::1.2.3", "fe80::1%eth0", "[::1]", "user1"}) {
+            assertFalse(invalid, address.parse(invalid));
+        }
+        assertEquals("10.0.0.1/32", address.toString());
+    }
+
+    @Test
+    public void addressesOfOneSubnetShareAKey() {
+        SubnetKeyResolver resolver = new SubnetKeyResolver(new HybridKeyResolver());
+
+        assertEquals(List.of("USER_ID: user1", "IP: 203.0.113.0/24"), resolver.resolveKey("user1", "203.0.113.7"));
+        assertEquals(List.of("IP: 203.0.113.0/24"), resolver.resolveKey("", "203.0.113.250"));
+        assertEquals(List.of("IP: 203.0.114.0/24"), resolver.resolveKey("", "203.0.114.1"));
+
+        assertEquals(List.of("IP: 2001:db8:0:1:0:0:0:0/64"), resolver.resolveKey("", "2001:db8:0:1::1"));
+        assertEquals(List.of("IP: 2001:db8:0:1:0:0:0:0/64"), resolver.resolveKey("", "2001:db8:0:1:ffff:ffff:ffff:ffff"));
+        assertEquals(List.of("IP: 2001:db8:0:2:0:0:0:0/64"), resolver.resolveKey("", "2001:db8:0:2::1"));
+    }
+
+    @Test
+    public void sinkGetsTheSameKeysWithTheirHashes() {
+        SubnetKeyResolver resolver = new SubnetKeyResolver(new InterningKeyResolver(true));
+        KeySink first = new KeySink();
+        KeySink second = new KeySink();
+
+        for (String ip : new String[]{"203.0.113.7", "2001:db8::1", "not an ip", ""}) {
+            resolver.resolveKeys("user1", ip, first);
+            assertEquals(resolver.resolveKey("user1", ip), keysOf(first));
+            for (int i = 0; i < first.size(); i++) {
+                assertEquals(KeyHash.hash64(first.key(i)), first.hash(i));
+            }
+        }
+
+        resolver.resolveKeys("user1", "203.0.113.7", first);
+        resolver.resolveKeys("user2", "203.0.113.8", second);
+        assertSame(first.key(2), second.key(2));
+    }
+
+    @Test
+    public void unparsableIpFallsBackToTheDelegate() {
+        SubnetKeyResolver resolver = new SubnetKeyResolver(new HybridKeyResolver());
+
+        assertEquals(List.of("USER_ID: user1", "IP: fe80::1%eth0"), resolver.resolveKey("user1", "fe80::1%eth0"));
+        assertEquals(List.of("USER_ID: user1"), resolver.resolveKey("user1", " "));
+    }
+
+    @Test
+    public void longestMatchingPolicyWins() {
+        SubnetKeyResolver resolver = new SubnetKeyResolver(new HybridKeyResolver());
+        resolver.setPolicy("10.0.0.0/8", PrefixPolicy.aggregate(16));
+        resolver.setPolicy("10.1.2.0/24", PrefixPolicy.aggregate(32));
+        resolver.setPolicy("10.1.3.0/24", PrefixPolicy.allow());
+        resolver.setPolicy("2001:db8::/32", PrefixPolicy.aggregate(48));
+
+        assertEquals(List.of("IP: 10.9.0.0/16"), resolver.resolveKey("", "10.9.8.7"));
+        assertEquals(List.of("IP: 10.1.2.3/32"), resolver.resolveKey("", "10.1.2.3"));
+        assertEquals(List.of("USER_ID: user1"), resolver.resolveKey("user1", "10.1.3.3"));
+        assertEquals(List.of("IP: 11.1.3.0/24"), resolver.resolveKey("", "11.1.3.3"));
+        assertEquals(List.of("IP: 2001:db8:5:0:0:0:0:0/48"), resolver.resolveKey("", "2001:db8:5:6::1"));
+        assertEquals(4, resolver.getPolicyCount());
+
+        resolver.removePolicy("10.1.3.0/24");
+        assertEquals(List.of("IP: 10.1.0.0/16"), resolver.resolveKey("", "10.1.3.3"));
+        assertEquals(3, resolver.getPolicyCount());
+    }
+
+    @Test
+    public void rejectsPoliciesThatDoNotFitTheRange() {
+        SubnetKeyResolver resolver = new SubnetKeyResolver(new HybridKeyResolver());
+
+        assertThrows(IllegalArgumentException.class, () -> resolver.setPolicy("10.0.0.0/33", PrefixPolicy.allow()));
+        assertThrows(IllegalArgumentException.class, () -> resolver.setPolicy("10.0.0.0/8", PrefixPolicy.aggregate(40)));
+        assertThrows(IllegalArgumentException.class, () -> resolver.setPolicy("10.0.0/8", PrefixPolicy.allow()));
+        assertThrows(IllegalArgumentException.class, () -> resolver.setPolicy("10.0.0.0/x", PrefixPolicy.allow()));
+    }
+
+    @Test
+    public void trieFindsTheLongestPrefixAndForgetsRemovedOnes() {
+        IpPrefixTrie<String> trie = new IpPrefixTrie<>();
+        IpAddress address = IpAddress.of("2001:db8:1:2::3");
+        IpAddress other = IpAddress.of("2001:db9::1");
+
+        trie.put(0, 0, 0, "default");
+        trie.put(address.getHigh(), address.getLow(), 32, "/32");
+        trie.put(address.getHigh(), address.getLow(), 64, "/64");
+        trie.put(address.getHigh(), address.getLow(), 128, "/128");
+        trie.put(other.getHigh(), other.getLow(), 31, "/31");
+
+        assertEquals("/128", trie.lookup(address));
+        assertEquals("/64", trie.lookup(IpAddress.of("2001:db8:1:2::4")));
+        assertEquals("/32", trie.lookup(IpAddress.of("2001:db8:ffff::")));
+        // 2001:db8::/31 also contains 2001:db9::
+        assertEquals("/31", trie.lookup(other));
+        assertEquals("default", trie.lookup(IpAddress.of("10.0.0.1")));
+        assertEquals(5, trie.size());
+
+        trie.remove(address.getHigh(), address.getLow(), 64);
+        trie.remove(address.getHigh(), address.getLow(), 48);
+        assertEquals("/32", trie.lookup(IpAddress.of("2001:db8:1:2::4")));
+        assertEquals("/128", trie.lookup(address));
+        assertEquals(4, trie.size());
+
+        trie.remove(0, 0, 0);
+        assertNull(trie.lookup(IpAddress.of("10.0.0.1")));
+    }
+
+    @Test
+    public void rotatingAddressesShareOneLimit() {
+        SubnetKeyResolver resolver = new SubnetKeyResolver(new InterningKeyResolver());
+        FixedWindowRateLimiter rateLimiter = new FixedWindowRateLimiter(3, 60, resolver);
+
+        assertTrue(rateLimiter.allowRequest("", "198.51.100.1", currentTimeStampInMs));
+        assertTrue(rateLimiter.allowRequest("", "198.51.100.2", currentTimeStampInMs));
+        assertTrue(rateLimiter.allowRequest("", "198.51.100.3", currentTimeStampInMs));
+        assertFalse(rateLimiter.allowRequest("", "198.51.100.4", currentTimeStampInMs));
+        assertTrue(rateLimiter.allowRequest("", "198.51.101.4", currentTimeStampInMs));
+    }
+
+    private static List<String> keysOf(KeySink sink) {
+        String[] keys = new String[sink.size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = sink.key(i);
+        }
+        return List.of(keys);
+    }
+}
@@ -0,0 +1,122 @@
+package Test;
+
+import Core.Resolver.HybridKeyResolver;
+import Core.Resolver.KeyResolver;
+import Core.Resolver.TenantKeyResolver;
+import Core.Time.ManualClock;
+import FixedWindow.FixedWindowRateLimiter;
+import SlidingWindowCounter.SlidingWindowCounterRateLimiter;
+import Tiered.Tier;
+import Tiered.TieredRateLimiter;
+import TokenBucket.AtomicTokenBucketRateLimiter;
+import TokenBucket.TokenBucketRateLimiter;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TieredRateLimiterTest {
+
+    private long currentTimeStampInMs;
+
+    @Before
+    public void setUp() throws Exception {
+        currentTimeStampInMs = ManualClock.START;
+    }
+
+    @Test
+    public void userAndIpKeysHaveTheirOwnLimits() {
+        KeyResolver resolver = new HybridKeyResolver();
+        TieredRateLimiter rateLimiter = new TieredRateLimiter(resolver, List.of(
+                new Tier(HybridKeyResolver.USER_KEY_PREFIX, new FixedWindowRateLimiter(2, 60, resolver)),
+                new Tier(HybridKeyResolver.IP_KEY_PREFIX, new TokenBucketRateLimiter(resolver, 1, 5))));
+
+        assertTrue(rateLimiter.allowRequest("user1", "10.0.0.1", currentTimeStampInMs));
+        assertTrue(rateLimiter.allowRequest("user1", "10.0.0.2", currentTimeStampInMs));
+        assertFalse(rateLimiter.allowRequest("user1", "10.0.0.3", currentTimeStampInMs));
+
+        for (int i = 2; i <= 5; i++) {
+            assertTrue(rateLimiter.allowRequest("user" + i, "10.0.0.9", currentTimeStampInMs));
+        }
+        assertTrue(rateLimiter.allowRequest("user6", "10.0.0.9", currentTimeStampInMs));
+        assertFalse(rateLimiter.allowRequest("user7", "10.0.0.9", currentTimeStampInMs));
+    }
+
+    @Test
+    public void laterTierRejectionHandsBackEarlierTiers() {
+        KeyResolver resolver = new HybridKeyResolver();
+        TieredRateLimiter rateLimiter = new TieredRateLimiter(resolver, List.of(
+                new Tier(HybridKeyResolver.USER_KEY_PREFIX, new FixedWindowRateLimiter(1, 60, resolver)),
+                new Tier(HybridKeyResolver.IP_KEY_PREFIX, new SlidingWindowCounterRateLimiter(1, 60, resolver))));
+
+        assertTrue(rateLimiter.allowRequest("user1", "10.0.0.1", currentTimeStampInMs));
+        // user2 passes its own tier, then the ip tier rejects and user2 gets its permit back
+        assertFalse(rateLimiter.allowRequest("user2", "10.0.0.1", currentTimeStampInMs));
+        assertTrue(rateLimiter.allowRequest("user2", "10.0.0.2", currentTimeStampInMs));
+    }
+
+    @Test
+    public void tenantTierLimitsAllUsersOfATenant() {
+        KeyResolver resolver = new TenantKeyResolver(new HybridKeyResolver(), userId -> userId.split("-")[0]);
+        TieredRateLimiter rateLimiter = new TieredRateLimiter(resolver, List.of(
+                new Tier(HybridKeyResolver.USER_KEY_PREFIX, new FixedWindowRateLimiter(2, 60, resolver)),
+                new Tier(TenantKeyResolver.TENANT_KEY_PREFIX, new FixedWindowRateLimiter(3, 60, resolver))));
+
+        assertTrue(rateLimiter.allowRequest("acme-1", "", currentTimeStampInMs));
+        assertTrue(rateLimiter.allowRequest("acme-1", "", currentTimeStampInMs));
+        assertFalse(rateLimiter.allowRequest("acme-1", "", currentTimeStampInMs));
+        assertTrue(rateLimiter.allowRequest("acme-2", "", currentTimeStampInMs));
+        assertFalse(rateLimiter.allowRequest("acme-3", "", currentTimeStampInMs));
+
+        assertTrue(rateLimiter.allowRequest("globex-1", "", currentTimeStampInMs));
+    }
+
+    @Test
+    public void globalTierCapsEveryoneTogether() {
+        KeyResolver resolver = new HybridKeyResolver(true);
+        TieredRateLimiter rateLimiter = new TieredRateLimiter(resolver, List.of(
+                new Tier(HybridKeyResolver.USER_KEY_PREFIX, new FixedWindowRateLimiter(5, 60, resolver)),
+                new Tier(HybridKeyResolver.GLOBAL_KEY, new AtomicTokenBucketRateLimiter(resolver, 1, 10))));
+
+        int allowed = 0;
+        for (int i = 0; i < 20; i++) {
+            if (rateLimiter.allowRequest("user" + (i % 4), "10.0.0.1", currentTimeStampInMs)) allowed++;
+        }
+
+        assertEquals(10, allowed);
+    }
+
+    @Test
+    public void keysWithoutATierAreNotLimited() {
+        KeyResolver resolver = new HybridKeyResolver();
+        TieredRateLimiter rateLimiter = new TieredRateLimiter(resolver, List.of(
+                new Tier(HybridKeyResolver.USER_KEY_PREFIX, new FixedWindowRateLimiter(1, 60, resolver))));
+
+        for (int i = 0; i < 100; i++) {
+            assertTrue(rateLimiter.allowRequest("", "10.0.0.1", currentTimeStampInMs));
+        }
+    }
+
+    @Test
+    public void weightedRequestsAndReleasedPermitsApplyToEveryTier() {
+        KeyResolver resolver = new HybridKeyResolver();
+        TieredRateLimiter rateLimiter = new TieredRateLimiter(resolver, List.of(
+                new Tier(HybridKeyResolver.USER_KEY_PREFIX, new FixedWindowRateLimiter(5, 60, resolver)),
+                new Tier(HybridKeyResolver.IP_KEY_PREFIX, new SlidingWindowCounterRateLimiter(5, 60, resolver))));
+
+        assertTrue(rateLimiter.allowRequest("user1", "10.0.0.1", currentTimeStampInMs, 4));
+        assertFalse(rateLimiter.allowRequest("user2", "10.0.0.1", currentTimeStampInMs, 2));
+        assertFalse(rateLimiter.allowRequest("user1", "10.0.0.2", currentTimeStampInMs, 2));
+
+        rateLimiter.releasePermits("user1", "10.0.0.1", currentTimeStampInMs, 3);
+
+        assertTrue(rateLimiter.allowRequest("user1", "10.0.0.1", currentTimeStampInMs, 4));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void needsAtLeastOneTier() {
+        new TieredRateLimiter(new HybridKeyResolver(), List.of());
+    }
+}
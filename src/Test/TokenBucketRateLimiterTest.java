@@ -2,12 +2,11 @@ package Test;
 
 import Core.Resolver.HybridKeyResolver;
 import Core.Resolver.KeyResolver;
+import Core.Time.ManualClock;
 import TokenBucket.TokenBucketRateLimiter;
 import org.junit.Before;
 import org.junit.Test;
 
-import java.time.Instant;
-
 import static org.junit.Assert.*;
 
 public class TokenBucketRateLimiterTest {
@@ -21,7 +20,7 @@ public class TokenBucketRateLimiterTest {
     @Before
     public void setUp() throws Exception {
         resolver = new HybridKeyResolver();
-        currentTimeStampInMs = Instant.now().toEpochMilli();
+        currentTimeStampInMs = ManualClock.START;
         rateLimiter = new TokenBucketRateLimiter(resolver, tokenFillRateDefault, capacity);
     }
 
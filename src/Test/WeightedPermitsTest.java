@@ -0,0 +1,119 @@
+package Test;
+
+import Core.RateLimiter;
+import Core.Request;
+import Core.Resolver.HybridKeyResolver;
+import Core.Time.ManualClock;
+import FixedWindow.AtomicFixedWindowRateLimiter;
+import FixedWindow.FixedWindowRateLimiter;
+import LeakyBucket.LeakyBucketRateLimiter;
+import SlidingWindowCounter.SlidingWindowCounterRateLimiter;
+import SlidingWindowLog.RingBufferSlidingLogRateLimiter;
+import SlidingWindowLog.SlidingLogRateLimiter;
+import Striped.HotKeyRateLimiter;
+import Striped.StripedCounter;
+import TokenBucket.AtomicTokenBucketRateLimiter;
+import TokenBucket.TokenBucketRateLimiter;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.*;
+
+@RunWith(Parameterized.class)
+public class WeightedPermitsTest {
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> limiters() {
+        Supplier<RateLimiter> tokenBucket = () -> new TokenBucketRateLimiter(new HybridKeyResolver(), 1, 5);
+        Supplier<RateLimiter> atomicTokenBucket = () -> new AtomicTokenBucketRateLimiter(new HybridKeyResolver(), 1, 5);
+        Supplier<RateLimiter> leakyBucket = () -> new LeakyBucketRateLimiter(new HybridKeyResolver(), 1, 5);
+        Supplier<RateLimiter> fixedWindow = () -> new FixedWindowRateLimiter(5, 60, new HybridKeyResolver());
+        Supplier<RateLimiter> atomicFixedWindow = () -> new AtomicFixedWindowRateLimiter(5, 60, new HybridKeyResolver());
+        Supplier<RateLimiter> slidingWindowCounter = () -> new SlidingWindowCounterRateLimiter(5, 60, new HybridKeyResolver());
+        Supplier<RateLimiter> slidingLog = () -> new SlidingLogRateLimiter(5, 60, new HybridKeyResolver());
+        Supplier<RateLimiter> ringBufferLog = () -> new RingBufferSlidingLogRateLimiter(5, 60, new HybridKeyResolver());
+        Supplier<RateLimiter> compressedRingBufferLog = () -> new RingBufferSlidingLogRateLimiter(5, 60, new HybridKeyResolver(), true);
+        // the global striped counter is the binding limit here
+        Supplier<RateLimiter> hotKey = () -> new HotKeyRateLimiter(new HybridKeyResolver(true),
+                Map.of(HybridKeyResolver.GLOBAL_KEY, new StripedCounter(5, 60, 4, 8)),
+                cold -> new FixedWindowRateLimiter(100, 60, cold));
+
+        return Arrays.asList(new Object[][]{
+                {"TokenBucket", tokenBucket},
+                {"AtomicTokenBucket", atomicTokenBucket},
+                {"LeakyBucket", leakyBucket},
+                {"FixedWindow", fixedWindow},
+                {"AtomicFixedWindow", atomicFixedWindow},
+                {"SlidingWindowCounter", slidingWindowCounter},
+                {"SlidingLog", slidingLog},
+                {"RingBufferSlidingLog", ringBufferLog},
+                {"RingBufferSlidingLog (compressed)", compressedRingBufferLog},
+                {"HotKey", hotKey},
+        });
+    }
+
+    private final Supplier<RateLimiter> factory;
+    private long currentTimeStampInMs;
+
+    public WeightedPermitsTest(String name, Supplier<RateLimiter> factory) {
+        this.factory = factory;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        currentTimeStampInMs = ManualClock.START;
+    }
+
+    @Test
+    public void weightedRequestsAddUpToTheLimit() {
+        RateLimiter rateLimiter = factory.get();
+
+        assertTrue(rateLimiter.allowRequest("user1", "", currentTimeStampInMs, 3));
+        assertTrue(rateLimiter.allowRequest("user1", "", currentTimeStampInMs, 2));
+        assertFalse(rateLimiter.allowRequest("user1", "", currentTimeStampInMs));
+    }
+
+    @Test
+    public void deniedWeightedRequestConsumesNothing() {
+        RateLimiter rateLimiter = factory.get();
+
+        assertTrue(rateLimiter.allowRequest("user1", "", currentTimeStampInMs, 4));
+        assertFalse(rateLimiter.allowRequest("user1", "", currentTimeStampInMs, 2));
+        assertTrue(rateLimiter.allowRequest("user1", "", currentTimeStampInMs));
+        assertFalse(rateLimiter.allowRequest("user1", "", currentTimeStampInMs));
+    }
+
+    @Test
+    public void requestHeavierThanTheLimitIsNeverAllowed() {
+        RateLimiter rateLimiter = factory.get();
+
+        assertFalse(rateLimiter.allowRequest("user1", "", currentTimeStampInMs, 6));
+        for (int i = 0; i < 5; i++) {
+            assertTrue(rateLimiter.allowRequest("user1", "", currentTimeStampInMs));
+        }
+    }
+
+    @Test
+    public void batchHonoursWeights() {
+        List<Request> requests = Arrays.asList(
+                new Request("user1", "", currentTimeStampInMs, 3),
+                new Request("user1", "", currentTimeStampInMs, 3),
+                new Request("user1", "", currentTimeStampInMs, 2),
+                new Request("user1", "", currentTimeStampInMs));
+
+        assertArrayEquals(new boolean[]{true, false, true, false}, factory.get().allowRequests(requests));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nonPositivePermitsAreRejected() {
+        factory.get().allowRequest("user1", "", currentTimeStampInMs, 0);
+    }
+}
@@ -0,0 +1,26 @@
+package Tiered;
+
+import Core.KeyLimiter;
+
+// One key class of a TieredRateLimiter: the keys that start with keyPrefix, and the limiter they are charged to.
+public final class Tier {
+    private final String keyPrefix;
+    private final KeyLimiter limiter;
+
+    public Tier(String keyPrefix, KeyLimiter limiter) {
+        this.keyPrefix = keyPrefix;
+        this.limiter = limiter;
+    }
+
+    public String getKeyPrefix() {
+        return keyPrefix;
+    }
+
+    public KeyLimiter getLimiter() {
+        return limiter;
+    }
+
+    boolean claims(String key) {
+        return key.startsWith(keyPrefix);
+    }
+}
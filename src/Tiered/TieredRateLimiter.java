@@ -0,0 +1,83 @@
+package Tiered;
+
+import Core.KeyLimiter;
+import Core.KeyRelease;
+import Core.RateLimiter;
+import Core.Resolver.KeyResolver;
+import Core.Resolver.KeySink;
+
+import java.util.List;
+
+/*
+ * Different limits per key class in one limiter: each key a request resolves to (user, IP, tenant,
+ * global...) is charged to the tier of its class, with that tier's own algorithm and limits.
+ *
+ * A request is resolved once and its keys are walked once, in resolver order, exactly as a single
+ * strategy's allowRequest walks them. A key goes to the first tier whose prefix it starts with. The first
+ * key that rejects ends the request, and the keys charged before it are handed back whatever their tier
+ * (see KeyRelease). Keys that no tier claims are not limited.
+ *
+ * A tier's limiter is a plain strategy instance, used through its per-key half (KeyLimiter) and only ever
+ * given its own tier's keys. Its own resolver is not consulted.
+ */
+public class TieredRateLimiter implements RateLimiter {
+    private final KeyResolver resolver;
+    private final Tier[] tiers;
+    private final ThreadLocal<KeySink> keySinks = ThreadLocal.withInitial(KeySink::new);
+    private final KeyRelease releaseKey = this::release;
+
+    public TieredRateLimiter(KeyResolver resolver, List<Tier> tiers) {
+        if (tiers.isEmpty()) throw new IllegalArgumentException("at least one tier is needed");
+
+        this.resolver = resolver;
+        this.tiers = tiers.toArray(new Tier[0]);
+    }
+
+    @Override
+    public boolean allowRequest(String userId, String ip, long incomingTimestamp, int permits) {
+        RateLimiter.checkPermits(permits);
+        for (Tier tier : tiers) {
+            tier.getLimiter().tick(incomingTimestamp);
+        }
+        KeySink keys = keySinks.get();
+        resolver.resolveKeys(userId, ip, keys);
+
+        for (int i = 0; i < keys.size(); i++) {
+            String key = keys.key(i);
+            KeyLimiter limiter = limiterOf(key);
+            if (limiter == null) continue;
+
+            limiter.recordAccess(key);
+            if (!limiter.tryAcquire(key, incomingTimestamp, permits)) {
+                KeyRelease.rollback(keys, i, incomingTimestamp, permits, releaseKey);
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public void releasePermits(String userId, String ip, long incomingTimestamp, int permits) {
+        KeySink keys = keySinks.get();
+        resolver.resolveKeys(userId, ip, keys);
+        KeyRelease.rollback(keys, keys.size(), incomingTimestamp, permits, releaseKey);
+    }
+
+    public List<Tier> getTiers() {
+        return List.of(tiers);
+    }
+
+    // Unclaimed keys were never charged, so they have nothing to hand back.
+    private void release(String key, long incomingTimestamp, int permits) {
+        KeyLimiter limiter = limiterOf(key);
+        if (limiter != null) limiter.release(key, incomingTimestamp, permits);
+    }
+
+    private KeyLimiter limiterOf(String key) {
+        for (Tier tier : tiers) {
+            if (tier.claims(key)) return tier.getLimiter();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,296 @@
+package TokenBucket;
+
+import Core.Batch.RequestBatch;
+import Core.Eviction.EvictionConfig;
+import Core.KeyRelease;
+import Core.LimitOverrides;
+import Core.NanoRateLimiter;
+import Core.RateLimiter;
+import Core.Request;
+import Core.Resolver.KeyResolver;
+import Core.Resolver.KeySink;
+import Core.Snapshot.SnapshotReader;
+import Core.Snapshot.SnapshotWriter;
+import Core.Snapshot.Snapshottable;
+import Core.WaitableKeyLimiter;
+import Core.Store.ConcurrentMapLongStateStore;
+import Core.Store.LongStateStore;
+
+import java.util.List;
+
+/*
+ * Token bucket whose per-key state is a single long updated in place with a CAS.
+ *
+ * The long is a virtual "bucket empty at" time in nanoseconds: tokens(now) = (now - state) / tokenInterval,
+ * capped at capacity. Taking a token moves the state forward by one interval, refill is implicit in the
+ * clock moving forward, so time and token count never need to be stored (or swapped) separately.
+ *
+ * A weighted request moves the state by `permits` intervals at once, so it costs the same single CAS.
+ *
+ * The rate is whole tokens per second, from 1 up to one per nanosecond; the interval between tokens is
+ * that many nanoseconds, rounded down. A bucket that never refills has no interval, so a rate of 0 is
+ * rejected rather than read as one.
+ *
+ * Request times are milliseconds, so a token interval below one millisecond (a refill rate above 1000/s)
+ * refills in steps of one millisecond. allowRequestAtNanos takes the time in nanoseconds instead and
+ * refills by the nanosecond; the store still sees the millisecond, for eviction. Weighted requests refill
+ * to the millisecond either way (see takePermits).
+ *
+ * Where the long lives is up to the LongStateStore: a map of AtomicLongs by default, or off heap for
+ * very large key counts. A state of 0 (empty in 1970) reads as a full bucket, which is what a new key gets.
+ *
+ * A key's capacity (the configured one or its override) travels in the transition argument, so the store
+ * never needs the key. Eviction has no key either, so it only drops a bucket full at the largest capacity
+ * any key has: dropping one that is full at its own smaller capacity would hand out the difference again.
+ *
+ * As a WaitableKeyLimiter it is the one to put behind a Blocking.BlockingRateLimiter for virtual threads:
+ * with the off-heap store nothing on its path is a monitor, with the map store only a key's first insert.
+ */
+public class AtomicTokenBucketRateLimiter implements NanoRateLimiter, WaitableKeyLimiter, Snapshottable {
+    private static final long NANOS_PER_MILLI = 1_000_000L;
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    private static final int MAX_REQUESTS_PER_ARGUMENT = (1 << 12) - 1;
+
+    private final LongStateStore tokenBuckets;
+    private final KeyResolver resolver;
+    private final ThreadLocal<KeySink> keySinks = ThreadLocal.withInitial(KeySink::new);
+    private final long tokenIntervalInNanos;
+    private final int capacity;
+    private final LongStateStore.Transition takeTokens = this::takeTokens;
+    private final LongStateStore.Transition takePermits = this::takePermits;
+    private final LongStateStore.Transition returnTokens = this::returnTokens;
+    private final LongStateStore.Transition readState = (state, now, argument) -> state;
+    private final KeyRelease releaseKey = this::release;
+    private final LimitOverrides limitOverrides = new LimitOverrides();
+
+    public AtomicTokenBucketRateLimiter(KeyResolver resolver, long tokenRefillRateInSec, int capacity) {
+        this(resolver, tokenRefillRateInSec, capacity, EvictionConfig.DEFAULT);
+    }
+
+    public AtomicTokenBucketRateLimiter(KeyResolver resolver, long tokenRefillRateInSec, int capacity, EvictionConfig evictionConfig) {
+        this(resolver, tokenRefillRateInSec, capacity, ConcurrentMapLongStateStore.factory(evictionConfig));
+    }
+
+    public AtomicTokenBucketRateLimiter(KeyResolver resolver, long tokenRefillRateInSec, int capacity, LongStateStore.Factory storeFactory) {
+        if (tokenRefillRateInSec < 1 || tokenRefillRateInSec > NANOS_PER_SECOND) {
+            throw new IllegalArgumentException("tokenRefillRateInSec must be in [1, " + NANOS_PER_SECOND + "]: " + tokenRefillRateInSec);
+        }
+
+        this.resolver = resolver;
+        this.tokenIntervalInNanos = NANOS_PER_SECOND / tokenRefillRateInSec;
+        this.capacity = capacity;
+        long burstInNanos = capacity * tokenIntervalInNanos;
+        this.tokenBuckets = storeFactory.create((burstInNanos + NANOS_PER_MILLI - 1) / NANOS_PER_MILLI, this::isFull);
+    }
+
+    @Override
+    public boolean allowRequest(String userId, String ip, long incomingRequestTimestamp, int permits) {
+        RateLimiter.checkPermits(permits);
+        return allowRequest(userId, ip, incomingRequestTimestamp, 0, permits);
+    }
+
+    @Override
+    public boolean allowRequestAtNanos(String userId, String ip, long nanoTimestamp, int permits) {
+        RateLimiter.checkPermits(permits);
+        return allowRequest(userId, ip, Math.floorDiv(nanoTimestamp, NANOS_PER_MILLI), Math.floorMod(nanoTimestamp, NANOS_PER_MILLI), permits);
+    }
+
+    private boolean allowRequest(String userId, String ip, long incomingRequestTimestamp, long nanosPastMilli, int permits) {
+        tokenBuckets.tick(incomingRequestTimestamp);
+        KeySink keys = keySinks.get();
+        resolver.resolveKeys(userId, ip, keys);
+        LongStateStore.Transition transition = permits == 1 ? takeTokens : takePermits;
+        long now = incomingRequestTimestamp * NANOS_PER_MILLI + (permits == 1 ? nanosPastMilli : 0);
+
+        for (int i = 0; i < keys.size(); i++) {
+            String key = keys.key(i);
+            tokenBuckets.recordAccess(key);
+            int keyCapacity = limitOverrides.limitFor(key, capacity);
+            long argument = permits == 1 ? tokens(keyCapacity, nanosPastMilli, 1) : weighted(keyCapacity, permits);
+            long emptyAt = tokenBuckets.apply(keys, i, incomingRequestTimestamp, argument, transition);
+            if (admitted(emptyAt, now, keyCapacity, permits, 1) == 0) {
+                KeyRelease.rollback(keys, i, incomingRequestTimestamp, permits, releaseKey);
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    public boolean tryAcquire(String key, long incomingRequestTimestamp) {
+        return tryAcquire(key, incomingRequestTimestamp, 1);
+    }
+
+    // Allocation free once the key exists.
+    @Override
+    public boolean tryAcquire(String key, long incomingRequestTimestamp, int permits) {
+        int keyCapacity = limitOverrides.limitFor(key, capacity);
+        long emptyAt = permits == 1
+                ? tokenBuckets.apply(key, incomingRequestTimestamp, tokens(keyCapacity, 0, 1), takeTokens)
+                : tokenBuckets.apply(key, incomingRequestTimestamp, weighted(keyCapacity, permits), takePermits);
+        return admitted(emptyAt, incomingRequestTimestamp * NANOS_PER_MILLI, keyCapacity, permits, 1) > 0;
+    }
+
+    @Override
+    public long nextPermitAt(String key, long now, int permits) {
+        int keyCapacity = limitOverrides.limitFor(key, capacity);
+        if (permits > keyCapacity) return NEVER;
+
+        long emptyAt = tokenBuckets.apply(key, now, 0, readState);
+        long nowInNanos = now * NANOS_PER_MILLI;
+        long permitAtInNanos = Math.max(emptyAt, nowInNanos - keyCapacity * tokenIntervalInNanos) + permits * tokenIntervalInNanos;
+        if (permitAtInNanos <= nowInNanos) return now;
+
+        // requests are timed to the millisecond, so the first one whose millisecond has the tokens
+        return (permitAtInNanos + NANOS_PER_MILLI - 1) / NANOS_PER_MILLI;
+    }
+
+    // Single-token requests of a key sharing a timestamp are admitted with a single CAS. Weighted ones take
+    // a CAS each: the argument has room for the capacity and either a count or a weight, not all three.
+    @Override
+    public boolean[] allowRequests(List<Request> requests) {
+        tokenBuckets.tick(RequestBatch.latestTimestamp(requests));
+
+        return RequestBatch.admit(requests, resolver, (key, batch, indices, count, allowed) -> {
+            tokenBuckets.recordAccess(key);
+            int keyCapacity = limitOverrides.limitFor(key, capacity);
+            for (int run = 0; run < count; ) {
+                Request first = batch.get(indices[run]);
+                long incomingRequestTimestamp = first.getTimestamp();
+                long now = incomingRequestTimestamp * NANOS_PER_MILLI;
+                int permits = first.getPermits();
+                if (permits != 1) {
+                    long emptyAt = tokenBuckets.apply(key, incomingRequestTimestamp, weighted(keyCapacity, permits), takePermits);
+                    if (admitted(emptyAt, now, keyCapacity, permits, 1) == 0) {
+                        allowed[indices[run]] = false;
+                    }
+                    run++;
+                    continue;
+                }
+
+                int end = run + 1;
+                while (end < count && end - run < MAX_REQUESTS_PER_ARGUMENT && sameTimestampAndWeight(first, batch.get(indices[end]))) end++;
+
+                long emptyAt = tokenBuckets.apply(key, incomingRequestTimestamp, tokens(keyCapacity, 0, end - run), takeTokens);
+                for (int i = run + (int) admitted(emptyAt, now, keyCapacity, 1, end - run); i < end; i++) {
+                    allowed[indices[i]] = false;
+                }
+                run = end;
+            }
+        }, releaseKey);
+    }
+
+    // Per-key replacements for the configured capacity; see LimitOverrides.
+    public LimitOverrides getLimitOverrides() {
+        return limitOverrides;
+    }
+
+    public LongStateStore getStateStore() {
+        return tokenBuckets;
+    }
+
+    // Admits as many of the single-token requests as the bucket holds tokens for.
+    private long takeTokens(long emptyAt, long incomingRequestTimestamp, long argument) {
+        long now = incomingRequestTimestamp * NANOS_PER_MILLI + nanosPastMilliOf(argument);
+        return take(emptyAt, now, capacityOf(argument), 1, requestsOf(argument));
+    }
+
+    // Admits one request of the given weight if the bucket holds enough tokens. There is no room left in
+    // the argument for the nanoseconds, so it refills to the millisecond.
+    private long takePermits(long emptyAt, long incomingRequestTimestamp, long argument) {
+        return take(emptyAt, incomingRequestTimestamp * NANOS_PER_MILLI, capacityOf(argument), permitsOf(argument), 1);
+    }
+
+    private long take(long emptyAt, long now, int keyCapacity, long permits, long requests) {
+        long admitted = admitted(emptyAt, now, keyCapacity, permits, requests);
+        if (admitted == 0) {
+            return emptyAt;
+        }
+
+        return Math.max(emptyAt, now - keyCapacity * tokenIntervalInNanos) + admitted * permits * tokenIntervalInNanos;
+    }
+
+    @Override
+    public void writeSnapshot(SnapshotWriter out, long changedSince) {
+        tokenBuckets.writeSnapshot(out, changedSince);
+    }
+
+    @Override
+    public void readSnapshot(SnapshotReader in) {
+        tokenBuckets.readSnapshot(in);
+    }
+
+    @Override
+    public void tick(long now) {
+        tokenBuckets.tick(now);
+    }
+
+    @Override
+    public void recordAccess(String key) {
+        tokenBuckets.recordAccess(key);
+    }
+
+    @Override
+    public void releasePermits(String userId, String ip, long incomingRequestTimestamp, int permits) {
+        KeySink keys = keySinks.get();
+        resolver.resolveKeys(userId, ip, keys);
+        KeyRelease.rollback(keys, keys.size(), incomingRequestTimestamp, permits, releaseKey);
+    }
+
+    @Override
+    public void release(String key, long incomingRequestTimestamp, int permits) {
+        int keyCapacity = limitOverrides.limitFor(key, capacity);
+        tokenBuckets.apply(key, incomingRequestTimestamp, weighted(keyCapacity, permits), returnTokens);
+    }
+
+    // Moves the state back by `permits` intervals, never past a full bucket.
+    private long returnTokens(long emptyAt, long incomingRequestTimestamp, long argument) {
+        long full = incomingRequestTimestamp * NANOS_PER_MILLI - capacityOf(argument) * tokenIntervalInNanos;
+        if (emptyAt <= full) {
+            return emptyAt;
+        }
+
+        return Math.max(full, emptyAt - permitsOf(argument) * tokenIntervalInNanos);
+    }
+
+    private long admitted(long emptyAt, long now, int keyCapacity, long permits, long requests) {
+        long refilledEmptyAt = Math.max(emptyAt, now - keyCapacity * tokenIntervalInNanos);
+        long tokens = (now - refilledEmptyAt) / tokenIntervalInNanos;
+        return Math.min(requests, tokens / permits);
+    }
+
+    private boolean isFull(long emptyAt, long now) {
+        return emptyAt <= now * NANOS_PER_MILLI - limitOverrides.maxLimit(capacity) * tokenIntervalInNanos;
+    }
+
+    private static boolean sameTimestampAndWeight(Request first, Request other) {
+        return other.getTimestamp() == first.getTimestamp() && other.getPermits() == first.getPermits();
+    }
+
+    // Transition arguments carry the key's capacity in the high 32 bits. For takeTokens 20 bits of
+    // nanoseconds past the request's millisecond (0 unless timed in nanoseconds) follow, then the number of
+    // requests in the low 12; for takePermits and returnTokens the low 32 bits are the permits.
+    private static long tokens(int keyCapacity, long nanosPastMilli, int requests) {
+        return ((long) keyCapacity << 32) | (nanosPastMilli << 12) | requests;
+    }
+
+    private static long weighted(int keyCapacity, int permits) {
+        return ((long) keyCapacity << 32) | permits;
+    }
+
+    private static int capacityOf(long argument) {
+        return (int) (argument >>> 32);
+    }
+
+    private static long nanosPastMilliOf(long argument) {
+        return (argument >>> 12) & 0xFFFFFL;
+    }
+
+    private static long requestsOf(long argument) {
+        return argument & MAX_REQUESTS_PER_ARGUMENT;
+    }
+
+    private static long permitsOf(long argument) {
+        return argument & 0xFFFFFFFFL;
+    }
+}
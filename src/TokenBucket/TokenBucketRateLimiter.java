@@ -1,60 +1,260 @@
 package TokenBucket;
 
+import Core.Batch.RequestBatch;
+import Core.Decision;
+import Core.Eviction.EvictionConfig;
+import Core.Eviction.EvictionResult;
+import Core.Eviction.KeyExpiry;
+import Core.KeyRelease;
+import Core.LimitOverrides;
 import Core.RateLimiter;
+import Core.Request;
 import Core.Resolver.KeyResolver;
+import Core.Resolver.KeySink;
+import Core.Snapshot.MapSnapshot;
+import Core.Snapshot.SnapshotReader;
+import Core.Snapshot.SnapshotWriter;
+import Core.Snapshot.Snapshottable;
+import Core.WaitableKeyLimiter;
 
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 
-public class TokenBucketRateLimiter implements RateLimiter {
+public class TokenBucketRateLimiter implements RateLimiter, WaitableKeyLimiter, Snapshottable {
+    // A bucket that refills slower than this is swept at this interval rather than when it would be full;
+    // one that never refills (rate 0) is never full unless it was never used.
+    private static final long MAX_KEY_TTL_IN_MS = 24 * 60 * 60 * 1000L;
+    private static final MapSnapshot.Codec<TokenBucket> SNAPSHOT_CODEC = new MapSnapshot.Codec<>() {
+        @Override
+        public long lastUpdatedAt(TokenBucket bucket) {
+            return bucket.getLastRefillTimestamp();
+        }
+
+        @Override
+        public void write(TokenBucket bucket, SnapshotWriter out) {
+            out.putDouble(bucket.getTokens());
+            out.putLong(bucket.getLastRefillTimestamp());
+        }
+
+        @Override
+        public TokenBucket read(SnapshotReader in) {
+            return new TokenBucket(in.getDouble(), in.getLong());
+        }
+    };
+
     private final Map<String, TokenBucket> tokenBucketMap;
     private final KeyResolver resolver;
+    private final ThreadLocal<KeySink> keySinks = ThreadLocal.withInitial(KeySink::new);
+    private final KeyRelease releaseKey = this::release;
     private final double tokenRefillRate;
     private final int capacity;
+    private final KeyExpiry keyExpiry;
+    private final LimitOverrides limitOverrides = new LimitOverrides();
 
     public TokenBucketRateLimiter(KeyResolver resolver, long tokenRefillRateInSec, int capacity) {
+        this(resolver, tokenRefillRateInSec, capacity, EvictionConfig.DEFAULT);
+    }
+
+    public TokenBucketRateLimiter(KeyResolver resolver, long tokenRefillRateInSec, int capacity, EvictionConfig evictionConfig) {
         this.resolver = resolver;
         this.tokenRefillRate = tokenRefillRateInSec / 1000.0;
         this.capacity = capacity;
         this.tokenBucketMap = new ConcurrentHashMap<>();
+        this.keyExpiry = new KeyExpiry(evictionConfig, (long) Math.min(MAX_KEY_TTL_IN_MS, Math.ceil(capacity / tokenRefillRate)),
+                this::evictIfFull);
     }
 
 
     @Override
-    public boolean allowRequest(String userId, String ip, long incomingRequestTimestamp) {
-        List<String> keys = resolver.resolveKey(userId, ip);
+    public boolean allowRequest(String userId, String ip, long incomingRequestTimestamp, int permits) {
+        return admit(userId, ip, incomingRequestTimestamp, permits, null);
+    }
+
+    // Remaining is the whole tokens left, reset is when the bucket is full again.
+    @Override
+    public boolean allowRequest(String userId, String ip, long incomingRequestTimestamp, int permits, Decision decision) {
+        decision.start(incomingRequestTimestamp);
+        return admit(userId, ip, incomingRequestTimestamp, permits, decision);
+    }
+
+    private boolean admit(String userId, String ip, long incomingRequestTimestamp, int permits, Decision decision) {
+        RateLimiter.checkPermits(permits);
+        keyExpiry.tick(incomingRequestTimestamp);
+        KeySink keys = keySinks.get();
+        resolver.resolveKeys(userId, ip, keys);
+
+        for (int i = 0; i < keys.size(); i++) {
+            String key = keys.key(i);
+            keyExpiry.recordAccess(key);
+            if (!tryAcquire(key, incomingRequestTimestamp, permits, decision)) {
+                KeyRelease.rollback(keys, i, incomingRequestTimestamp, permits, releaseKey);
+                if (decision != null) decision.reject(WaitableKeyLimiter.nextPermitAt(this, keys, incomingRequestTimestamp, permits));
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public boolean tryAcquire(String key, long incomingRequestTimestamp, int permits) {
+        return tryAcquire(key, incomingRequestTimestamp, permits, null);
+    }
+
+    private boolean tryAcquire(String key, long incomingRequestTimestamp, int permits, Decision decision) {
         AtomicBoolean isTokenAvailable = new AtomicBoolean(true);
+        int keyCapacity = limitOverrides.limitFor(key, capacity);
+
+        tokenBucketMap.compute(key, (id, bucket) -> {
+            double newTokenCount;
+            long timeStampForToken;
+
+            if (bucket == null) {
+                keyExpiry.onNewKey(id, incomingRequestTimestamp);
+                newTokenCount = keyCapacity;
+                timeStampForToken = incomingRequestTimestamp;
+            } else if (incomingRequestTimestamp < bucket.getLastRefillTimestamp()) {
+                newTokenCount = bucket.getTokens();
+                timeStampForToken = bucket.getLastRefillTimestamp();
+            } else {
+                double requiredTokensToAdd = (incomingRequestTimestamp - bucket.getLastRefillTimestamp()) * tokenRefillRate;
+                newTokenCount = Math.min(keyCapacity, bucket.getTokens() + requiredTokensToAdd);
+                timeStampForToken = incomingRequestTimestamp;
+            }
+
+            if (newTokenCount < permits) {
+                isTokenAvailable.set(false);
+                if (decision != null) {
+                    decision.recordRejectingKey(keyCapacity, (long) newTokenCount, fullAt(newTokenCount, timeStampForToken, keyCapacity));
+                }
+                return bucket;
+            }
+
+            double tokensLeft = newTokenCount - permits;
+            if (decision != null) decision.recordKey(keyCapacity, (long) tokensLeft, fullAt(tokensLeft, timeStampForToken, keyCapacity));
+            return new TokenBucket(tokensLeft, timeStampForToken);
+        });
+
+        return isTokenAvailable.get();
+    }
+
+    @Override
+    public long nextPermitAt(String key, long now, int permits) {
+        int keyCapacity = limitOverrides.limitFor(key, capacity);
+        if (permits > keyCapacity) return NEVER;
+
+        TokenBucket bucket = tokenBucketMap.get(key);
+        if (bucket == null) return now;
+
+        // tryAcquire refills only up to a timestamp it has not seen yet
+        long refilledAt = Math.max(now, bucket.getLastRefillTimestamp());
+        double tokens = Math.min(keyCapacity, bucket.getTokens() + (refilledAt - bucket.getLastRefillTimestamp()) * tokenRefillRate);
+        if (tokens >= permits) return now;
+        if (tokenRefillRate == 0) return NEVER;
 
-        for (String key: keys) {
+        return refilledAt + (long) Math.ceil((permits - tokens) / tokenRefillRate);
+    }
+
+    // One compute per key for the whole batch instead of one per request.
+    @Override
+    public boolean[] allowRequests(List<Request> requests) {
+        keyExpiry.tick(RequestBatch.latestTimestamp(requests));
+
+        return RequestBatch.admit(requests, resolver, (key, batch, indices, count, allowed) -> {
+            keyExpiry.recordAccess(key);
+            int keyCapacity = limitOverrides.limitFor(key, capacity);
             tokenBucketMap.compute(key, (id, bucket) -> {
-                double newTokenCount;
-                long timeStampForToken;
+                double tokens;
+                long lastRefillTimestamp;
 
                 if (bucket == null) {
-                    newTokenCount = capacity;
-                    timeStampForToken = incomingRequestTimestamp;
-                } else if (incomingRequestTimestamp < bucket.getLastRefillTimestamp()) {
-                    newTokenCount = bucket.getTokens();
-                    timeStampForToken = bucket.getLastRefillTimestamp();
+                    lastRefillTimestamp = batch.get(indices[0]).getTimestamp();
+                    keyExpiry.onNewKey(id, lastRefillTimestamp);
+                    tokens = keyCapacity;
                 } else {
-                    double requiredTokensToAdd = (incomingRequestTimestamp - bucket.getLastRefillTimestamp()) * tokenRefillRate;
-                    newTokenCount = Math.min(capacity, bucket.getTokens() + requiredTokensToAdd);
-                    timeStampForToken = incomingRequestTimestamp;
+                    tokens = bucket.getTokens();
+                    lastRefillTimestamp = bucket.getLastRefillTimestamp();
                 }
 
-                if (newTokenCount < 1) {
-                    isTokenAvailable.set(false);
-                    return bucket;
+                boolean tokenTaken = false;
+                for (int i = 0; i < count; i++) {
+                    Request request = batch.get(indices[i]);
+                    long incomingRequestTimestamp = request.getTimestamp();
+                    if (incomingRequestTimestamp > lastRefillTimestamp) {
+                        tokens = Math.min(keyCapacity, tokens + (incomingRequestTimestamp - lastRefillTimestamp) * tokenRefillRate);
+                        lastRefillTimestamp = incomingRequestTimestamp;
+                    }
+
+                    if (tokens < request.getPermits()) {
+                        allowed[indices[i]] = false;
+                    } else {
+                        tokens -= request.getPermits();
+                        tokenTaken = true;
+                    }
                 }
 
-                return new TokenBucket(newTokenCount - 1, timeStampForToken);
+                return tokenTaken ? new TokenBucket(tokens, lastRefillTimestamp) : bucket;
             });
+        }, releaseKey);
+    }
 
-            if (!isTokenAvailable.get()) break;
-        }
+    // Per-key replacements for the configured limit; see LimitOverrides.
+    public LimitOverrides getLimitOverrides() {
+        return limitOverrides;
+    }
 
-        return isTokenAvailable.get();
+    public KeyExpiry getKeyExpiry() {
+        return keyExpiry;
+    }
+
+    @Override
+    public void writeSnapshot(SnapshotWriter out, long changedSince) {
+        MapSnapshot.write(tokenBucketMap, out, changedSince, SNAPSHOT_CODEC);
+    }
+
+    @Override
+    public void readSnapshot(SnapshotReader in) {
+        MapSnapshot.read(in, tokenBucketMap, SNAPSHOT_CODEC, keyExpiry);
+    }
+
+    @Override
+    public void tick(long now) {
+        keyExpiry.tick(now);
+    }
+
+    @Override
+    public void recordAccess(String key) {
+        keyExpiry.recordAccess(key);
+    }
+
+    @Override
+    public void releasePermits(String userId, String ip, long incomingRequestTimestamp, int permits) {
+        KeySink keys = keySinks.get();
+        resolver.resolveKeys(userId, ip, keys);
+        KeyRelease.rollback(keys, keys.size(), incomingRequestTimestamp, permits, releaseKey);
+    }
+
+    @Override
+    public void release(String key, long incomingRequestTimestamp, int permits) {
+        int keyCapacity = limitOverrides.limitFor(key, capacity);
+        tokenBucketMap.computeIfPresent(key, (id, bucket) ->
+                new TokenBucket(Math.min(keyCapacity, bucket.getTokens() + permits), bucket.getLastRefillTimestamp()));
+    }
+
+    private EvictionResult evictIfFull(String key, long now, boolean force) {
+        return KeyExpiry.removeIf(tokenBucketMap, key, force, bucket -> isFull(bucket, now, limitOverrides.limitFor(key, capacity)));
+    }
+
+    private long fullAt(double tokens, long refilledAt, int keyCapacity) {
+        if (tokens >= keyCapacity) return refilledAt;
+        if (tokenRefillRate == 0) return Decision.NEVER;
+        return refilledAt + (long) Math.ceil((keyCapacity - tokens) / tokenRefillRate);
+    }
+
+    private boolean isFull(TokenBucket bucket, long now, int keyCapacity) {
+        long elapsed = Math.max(0, now - bucket.getLastRefillTimestamp());
+        return bucket.getTokens() + elapsed * tokenRefillRate >= keyCapacity;
     }
 }